@@ -4,7 +4,7 @@ import cn.tedu.mall.ams.exception.CoolSharkException;
 import cn.tedu.mall.ams.mapper.AdminRoleMapper;
 import cn.tedu.mall.ams.mapper.AdminMapper;
 import cn.tedu.mall.ams.service.IAdminService;
-import cn.tedu.mall.ams.utils.IdGeneratorUtils;
+import cn.tedu.mall.common.utils.IdGeneratorUtils;
 import cn.tedu.mall.common.restful.JsonPage;
 import cn.tedu.mall.pojo.admin.dto.AdminAddDTO;
 import cn.tedu.mall.pojo.admin.dto.AdminUpdateDTO;
@@ -47,7 +47,7 @@ public class AdminServiceImpl implements IAdminService {
         Admin admin= new Admin();
         BeanUtils.copyProperties(adminDTO,admin);
         //补充id
-        Long id= IdGeneratorUtils.generatId("admin");
+        Long id= IdGeneratorUtils.getDistributeId("admin");
         admin.setId(id);
         //密码加密
         admin.setPassword(passwordEncoder.encode(admin.getPassword()));
@@ -0,0 +1,261 @@
+package cn.tedu.mall.common.cache;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * 防止缓存击穿的缓存加载工具
+ * 代替 hasKey -> get -> 查询数据库 -> set 的写法,缓存失效时:
+ * 1.同一个JVM中同一个key只有一个线程查询数据库,其它线程等待它的结果
+ * 2.配置了锁时长(lockMillis>0)时,多个节点之间通过Redis锁保证只有一个节点查询数据库,其它节点等待缓存写入
+ * 3.配置了过期后可用时长(staleMillis>0)时,缓存逻辑过期后的一段时间内仍然返回旧值,同时由后台线程刷新缓存
+ * Redis中已有的、不是由本工具写入的值(例如缓存预热写入的),在它过期之前都直接返回
+ * 本工具不是Spring组件,使用Redis的模块需要自己声明为Bean
+ */
+@Slf4j
+public class SingleFlightCacheLoader {
+
+    private static final String LOCK_SUFFIX = ":lock";
+    // 没有获得Redis锁时,检查缓存是否已经写入的间隔
+    private static final long LOCK_WAIT_MILLIS = 50;
+    // 只有锁的持有者才能释放锁
+    private static final DefaultRedisScript<Long> UNLOCK_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end",
+            Long.class);
+
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final long staleMillis;
+    private final long lockMillis;
+    private final Executor refreshExecutor;
+    // 正在加载的key,后到的线程等待同一个结果
+    private final ConcurrentHashMap<String, CompletableFuture<Object>> loading = new ConcurrentHashMap<>();
+    // 正在后台刷新的key
+    private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @param redisTemplate 保存缓存使用的redisTemplate
+     * @param staleMillis 缓存逻辑过期后仍然可以返回旧值的时间,0表示不启用
+     * @param lockMillis 跨节点加载时Redis锁的时长,也是其它节点最长的等待时间,0表示不启用
+     */
+    public SingleFlightCacheLoader(RedisTemplate<String, Object> redisTemplate,
+                                   long staleMillis, long lockMillis) {
+        this(redisTemplate, staleMillis, lockMillis, defaultRefreshExecutor());
+    }
+
+    public SingleFlightCacheLoader(RedisTemplate<String, Object> redisTemplate,
+                                   long staleMillis, long lockMillis, Executor refreshExecutor) {
+        this.redisTemplate = redisTemplate;
+        this.staleMillis = staleMillis;
+        this.lockMillis = lockMillis;
+        this.refreshExecutor = refreshExecutor;
+    }
+
+    /**
+     * 从缓存获取数据,缓存中没有时由loader加载并保存到缓存
+     * @param key 缓存的key
+     * @param ttlMillis 缓存的有效时间
+     * @param loader 查询数据库等的加载方法,返回null时不缓存
+     * @return 缓存或加载的数据
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(String key, long ttlMillis, Supplier<T> loader) {
+        Object cached = redisTemplate.opsForValue().get(key);
+        if (cached instanceof CacheEntry) {
+            CacheEntry entry = (CacheEntry) cached;
+            if (entry.isStale()) {
+                // 逻辑过期,先返回旧值,后台刷新
+                refreshAsync(key, ttlMillis, loader);
+            }
+            return (T) entry.getValue();
+        }
+        if (cached != null) {
+            return (T) cached;
+        }
+        return (T) loadSingleFlight(key, ttlMillis, loader);
+    }
+
+    /**
+     * 删除缓存,数据修改后调用
+     */
+    public void evict(String key) {
+        redisTemplate.delete(key);
+    }
+
+    private Object loadSingleFlight(String key, long ttlMillis, Supplier<?> loader) {
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> existing = loading.putIfAbsent(key, future);
+        if (existing != null) {
+            // 本JVM中已经有线程在加载,等待它的结果
+            try {
+                return existing.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw e;
+            }
+        }
+        try {
+            Object value = loadAcrossNodes(key, ttlMillis, loader);
+            future.complete(value);
+            return value;
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(key, future);
+        }
+    }
+
+    private Object loadAcrossNodes(String key, long ttlMillis, Supplier<?> loader) {
+        if (lockMillis <= 0) {
+            return loadAndPut(key, ttlMillis, loader);
+        }
+        String lockKey = key + LOCK_SUFFIX;
+        String token = UUID.randomUUID().toString();
+        long deadline = System.currentTimeMillis() + lockMillis;
+        while (true) {
+            if (Boolean.TRUE.equals(redisTemplate.opsForValue()
+                    .setIfAbsent(lockKey, token, lockMillis, TimeUnit.MILLISECONDS))) {
+                try {
+                    // 获得锁之前,其它节点可能已经写入了缓存
+                    Object cached = redisTemplate.opsForValue().get(key);
+                    if (cached != null) {
+                        return unwrap(cached);
+                    }
+                    return loadAndPut(key, ttlMillis, loader);
+                } finally {
+                    redisTemplate.execute(UNLOCK_SCRIPT, Collections.singletonList(lockKey), token);
+                }
+            }
+            // 其它节点正在加载,等待它写入缓存
+            try {
+                Thread.sleep(LOCK_WAIT_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return loadAndPut(key, ttlMillis, loader);
+            }
+            Object cached = redisTemplate.opsForValue().get(key);
+            if (cached != null) {
+                return unwrap(cached);
+            }
+            if (System.currentTimeMillis() > deadline) {
+                // 持有锁的节点超时未写入,自己加载
+                log.warn("等待其它节点加载缓存超时,key:{}", key);
+                return loadAndPut(key, ttlMillis, loader);
+            }
+        }
+    }
+
+    private void refreshAsync(String key, long ttlMillis, Supplier<?> loader) {
+        if (!refreshing.add(key)) {
+            return;
+        }
+        try {
+            refreshExecutor.execute(() -> {
+                try {
+                    refresh(key, ttlMillis, loader);
+                } catch (RuntimeException e) {
+                    // 刷新失败继续使用旧值,直到缓存真正过期
+                    log.warn("后台刷新缓存失败,key:{}", key, e);
+                } finally {
+                    refreshing.remove(key);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            refreshing.remove(key);
+        }
+    }
+
+    private void refresh(String key, long ttlMillis, Supplier<?> loader) {
+        if (lockMillis <= 0) {
+            loadAndPut(key, ttlMillis, loader);
+            return;
+        }
+        // 没有获得锁说明其它节点正在刷新,不需要等待
+        String lockKey = key + LOCK_SUFFIX;
+        String token = UUID.randomUUID().toString();
+        if (!Boolean.TRUE.equals(redisTemplate.opsForValue()
+                .setIfAbsent(lockKey, token, lockMillis, TimeUnit.MILLISECONDS))) {
+            return;
+        }
+        try {
+            loadAndPut(key, ttlMillis, loader);
+        } finally {
+            redisTemplate.execute(UNLOCK_SCRIPT, Collections.singletonList(lockKey), token);
+        }
+    }
+
+    private Object loadAndPut(String key, long ttlMillis, Supplier<?> loader) {
+        Object value = loader.get();
+        if (value == null) {
+            return null;
+        }
+        if (staleMillis > 0) {
+            // 缓存实际保存的时间比有效时间多出staleMillis,这段时间内返回旧值并刷新
+            redisTemplate.opsForValue().set(key,
+                    new CacheEntry(value, System.currentTimeMillis() + ttlMillis),
+                    ttlMillis + staleMillis, TimeUnit.MILLISECONDS);
+        } else {
+            redisTemplate.opsForValue().set(key, value, ttlMillis, TimeUnit.MILLISECONDS);
+        }
+        return value;
+    }
+
+    private Object unwrap(Object cached) {
+        return cached instanceof CacheEntry ? ((CacheEntry) cached).getValue() : cached;
+    }
+
+    private static Executor defaultRefreshExecutor() {
+        AtomicInteger index = new AtomicInteger();
+        // 刷新任务过多时直接放弃,请求继续使用旧值
+        return new ThreadPoolExecutor(1, 4, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(256), runnable -> {
+                    Thread thread = new Thread(runnable, "cache-refresh-" + index.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * 缓存中实际保存的对象,记录逻辑过期时间
+     * 需要同时支持Java序列化和Smile序列化,所以保留无参构造方法
+     */
+    private static class CacheEntry implements Serializable {
+        private static final long serialVersionUID = 1L;
+        private Object value;
+        private long refreshAt;
+
+        private CacheEntry() {
+        }
+
+        CacheEntry(Object value, long refreshAt) {
+            this.value = value;
+            this.refreshAt = refreshAt;
+        }
+
+        Object getValue() {
+            return value;
+        }
+
+        boolean isStale() {
+            return System.currentTimeMillis() >= refreshAt;
+        }
+    }
+}
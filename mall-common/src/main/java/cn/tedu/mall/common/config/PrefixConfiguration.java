@@ -30,6 +30,13 @@ public class PrefixConfiguration {
         //秒杀商品库存
         public static final String SECKILL_SKU_STOCK_PREFIX="mall:seckill:sku:stock:";
         public static final String SECKILL_SKU_VO_PREFIX = "mall:seckill:sku:vo:";
+        //秒杀商品详情和spu下的秒杀sku列表,缓存预热时生成
+        public static final String SECKILL_SPU_DETAIL_PREFIX = "mall:seckill:spu:detail:";
+        public static final String SECKILL_SPU_SKUS_PREFIX = "mall:seckill:spu:skus:";
+        //异步秒杀下单的排队凭证
+        public static final String SECKILL_TICKET_PREFIX = "mall:seckill:ticket:";
+        //排队凭证的处理标记,同一个凭证的消息重复投递时只生成一次订单
+        public static final String SECKILL_TICKET_CLAIM_PREFIX = "mall:seckill:ticket:claim:";
 
     }
 }
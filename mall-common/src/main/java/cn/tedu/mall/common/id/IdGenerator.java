@@ -0,0 +1,25 @@
+package cn.tedu.mall.common.id;
+
+import java.util.List;
+
+/**
+ * 获取分布式id的方式,IdGeneratorUtils按配置选择其中一种
+ */
+public interface IdGenerator {
+
+    /**
+     * @param key leaf中的业务标识(biz_tag)
+     */
+    Long next(String key);
+
+    /**
+     * 一次获取count个id
+     */
+    List<Long> next(String key, int count);
+
+    /**
+     * 释放后台线程等资源,作为Spring的bean时在容器关闭时调用
+     */
+    default void close() {
+    }
+}
@@ -0,0 +1,93 @@
+package cn.tedu.mall.common.id;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 一个业务标识(key)的本地id缓冲区
+ * 每次从leaf批量获取id保存在本地,获取id时直接从缓冲区取出
+ * 剩余id数量低于低水位时,由后台线程补充下一批,请求线程不需要等待网络调用
+ */
+@Slf4j
+public class IdPrefetchBuffer {
+
+    private final String key;
+    private final IdRangeFetcher fetcher;
+    private final int batchSize;
+    private final int lowWaterMark;
+    private final long waitMillis;
+    private final Executor executor;
+    private final BlockingQueue<Long> ids = new LinkedBlockingQueue<>();
+    // 同一时间只有一个补充任务
+    private final AtomicBoolean refilling = new AtomicBoolean();
+
+    /**
+     * @param key leaf中的业务标识
+     * @param fetcher 获取id的方式
+     * @param batchSize 每次补充的id数量
+     * @param lowWaterMark 剩余id数量不超过这个值时开始补充
+     * @param waitMillis 缓冲区为空时等待补充的最长时间,超时后直接获取
+     * @param executor 执行补充任务的线程池
+     */
+    public IdPrefetchBuffer(String key, IdRangeFetcher fetcher, int batchSize, int lowWaterMark,
+                            long waitMillis, Executor executor) {
+        this.key = key;
+        this.fetcher = fetcher;
+        this.batchSize = batchSize;
+        this.lowWaterMark = lowWaterMark;
+        this.waitMillis = waitMillis;
+        this.executor = executor;
+    }
+
+    public Long next() {
+        Long id = ids.poll();
+        if (ids.size() <= lowWaterMark) {
+            refillAsync();
+        }
+        if (id != null) {
+            return id;
+        }
+        // 缓冲区已经用完,等待后台补充
+        try {
+            id = ids.poll(waitMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (id != null) {
+            return id;
+        }
+        // 补充失败或太慢,当前线程直接获取一个
+        log.warn("{}的id缓冲区补充超时,直接从leaf获取", key);
+        return fetcher.fetchOne(key);
+    }
+
+    public int remaining() {
+        return ids.size();
+    }
+
+    private void refillAsync() {
+        if (!refilling.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    ids.addAll(fetcher.fetch(key, batchSize));
+                } catch (RuntimeException e) {
+                    // 补充失败不影响缓冲区中剩余的id,下次获取时会再次补充
+                    log.error("{}的id缓冲区补充失败", key, e);
+                } finally {
+                    refilling.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            refilling.set(false);
+        }
+    }
+}
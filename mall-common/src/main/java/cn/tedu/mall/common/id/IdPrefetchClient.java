@@ -0,0 +1,54 @@
+package cn.tedu.mall.common.id;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 带本地缓冲的id客户端,每个业务标识(key)一个缓冲区
+ */
+public class IdPrefetchClient implements IdGenerator {
+
+    private final IdRangeFetcher fetcher;
+    private final int batchSize;
+    private final int lowWaterMark;
+    private final long waitMillis;
+    private final ConcurrentHashMap<String, IdPrefetchBuffer> buffers = new ConcurrentHashMap<>();
+    private final ExecutorService executor;
+
+    public IdPrefetchClient(IdRangeFetcher fetcher, int batchSize, int lowWaterMark, long waitMillis) {
+        this.fetcher = fetcher;
+        this.batchSize = batchSize;
+        this.lowWaterMark = lowWaterMark;
+        this.waitMillis = waitMillis;
+        AtomicInteger index = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(2, runnable -> {
+            Thread thread = new Thread(runnable, "id-prefetch-" + index.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public Long next(String key) {
+        return buffers.computeIfAbsent(key, k ->
+                new IdPrefetchBuffer(k, fetcher, batchSize, lowWaterMark, waitMillis, executor)).next();
+    }
+
+    @Override
+    public List<Long> next(String key, int count) {
+        List<Long> ids = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            ids.add(next(key));
+        }
+        return ids;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
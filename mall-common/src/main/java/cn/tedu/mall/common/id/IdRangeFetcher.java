@@ -0,0 +1,27 @@
+package cn.tedu.mall.common.id;
+
+import java.util.List;
+
+/**
+ * 从发号服务(leaf)获取id
+ */
+public interface IdRangeFetcher {
+
+    /**
+     * @param key leaf中的业务标识(biz_tag)
+     * @param count 需要的id数量
+     * @return 获取到的id,数量等于count
+     */
+    List<Long> fetch(String key, int count);
+
+    /**
+     * 获取一个id,leaf没有返回id时抛出异常
+     */
+    default Long fetchOne(String key) {
+        List<Long> ids = fetch(key, 1);
+        if (ids == null || ids.isEmpty()) {
+            throw new IllegalStateException("leaf没有返回" + key + "的id");
+        }
+        return ids.get(0);
+    }
+}
@@ -0,0 +1,130 @@
+package cn.tedu.mall.common.id;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 通过leaf-server的二进制协议获取id,协议见leaf-server中的LeafBinaryProtocol
+ * 使用TCP长连接,连接用完放回连接池,不需要每次建立连接和解析http
+ */
+public class LeafBinaryIdFetcher implements IdRangeFetcher {
+
+    private static final byte TYPE_SEGMENT = 1;
+    private static final byte TYPE_SNOWFLAKE = 2;
+    private static final byte STATUS_SUCCESS = 0;
+    private static final int CONNECT_TIMEOUT_MILLIS = 3000;
+    private static final int READ_TIMEOUT_MILLIS = 3000;
+
+    private final String host;
+    private final int port;
+    private final BlockingQueue<Connection> idleConnections;
+    private final AtomicInteger requestId = new AtomicInteger();
+
+    /**
+     * @param address leaf-server二进制协议的地址,例如 127.0.0.1:9091
+     * @param maxIdleConnections 连接池中最多保留的空闲连接数
+     */
+    public LeafBinaryIdFetcher(String address, int maxIdleConnections) {
+        int index = address.lastIndexOf(':');
+        this.host = address.substring(0, index);
+        this.port = Integer.parseInt(address.substring(index + 1));
+        this.idleConnections = new ArrayBlockingQueue<>(maxIdleConnections);
+    }
+
+    /**
+     * 获取号段模式的id
+     */
+    @Override
+    public List<Long> fetch(String key, int count) {
+        return request(TYPE_SEGMENT, key, count);
+    }
+
+    /**
+     * 获取snowflake模式的id
+     */
+    public List<Long> fetchSnowflake(String key, int count) {
+        return request(TYPE_SNOWFLAKE, key, count);
+    }
+
+    private List<Long> request(byte type, String key, int count) {
+        Connection connection = idleConnections.poll();
+        try {
+            if (connection == null) {
+                connection = new Connection(host, port);
+            }
+            return connection.request(requestId.incrementAndGet(), type, key, count);
+        } catch (IOException e) {
+            // 连接中的数据已经不完整,不能再放回连接池
+            if (connection != null) {
+                connection.close();
+                connection = null;
+            }
+            throw new UncheckedIOException("从leaf获取id失败,key:" + key, e);
+        } finally {
+            if (connection != null && !idleConnections.offer(connection)) {
+                connection.close();
+            }
+        }
+    }
+
+    private static class Connection {
+        private final Socket socket;
+        private final DataInputStream in;
+        private final DataOutputStream out;
+
+        Connection(String host, int port) throws IOException {
+            socket = new Socket();
+            socket.setTcpNoDelay(true);
+            socket.setSoTimeout(READ_TIMEOUT_MILLIS);
+            socket.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MILLIS);
+            in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        }
+
+        List<Long> request(int requestId, byte type, String key, int count) throws IOException {
+            byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(4 + 1 + 4 + 2 + keyBytes.length);
+            out.writeInt(requestId);
+            out.writeByte(type);
+            out.writeInt(count);
+            out.writeShort(keyBytes.length);
+            out.write(keyBytes);
+            out.flush();
+
+            in.readInt();
+            if (in.readInt() != requestId) {
+                throw new IOException("响应与请求不对应");
+            }
+            if (in.readByte() != STATUS_SUCCESS) {
+                // 服务端的异常不影响连接,读完整个响应后连接可以继续使用
+                long code = in.readLong();
+                throw new IllegalStateException("leaf返回异常,key:" + key + ",code:" + code);
+            }
+            int size = in.readInt();
+            List<Long> ids = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                ids.add(in.readLong());
+            }
+            return ids;
+        }
+
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package cn.tedu.mall.common.id;
+
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 通过leaf-server的HTTP接口获取号段模式的id
+ */
+public class LeafHttpIdFetcher implements IdRangeFetcher {
+
+    private final RestTemplate restTemplate;
+    private final String segmentUrl;
+
+    /**
+     * @param leafUrl leaf-server的地址,例如 http://127.0.0.1:9090
+     * @param connectTimeoutMillis 建立连接的超时时间
+     * @param readTimeoutMillis 等待响应的超时时间,leaf-server没有响应时不会一直占用请求线程
+     */
+    public LeafHttpIdFetcher(String leafUrl, int connectTimeoutMillis, int readTimeoutMillis) {
+        this.segmentUrl = leafUrl + "/api/segment/get/";
+        SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+        requestFactory.setConnectTimeout(connectTimeoutMillis);
+        requestFactory.setReadTimeout(readTimeoutMillis);
+        this.restTemplate = new RestTemplate(requestFactory);
+    }
+
+    @Override
+    public List<Long> fetch(String key, int count) {
+        // 一次请求获取count个id,返回内容以逗号分隔
+        String body = restTemplate.getForObject(segmentUrl + key + "?count=" + count, String.class);
+        List<Long> ids = new ArrayList<>(count);
+        if (body == null || body.isEmpty()) {
+            return ids;
+        }
+        for (String id : body.split(",")) {
+            ids.add(Long.valueOf(id.trim()));
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,119 @@
+package cn.tedu.mall.common.id;
+
+import cn.tedu.mall.common.id.embedded.EmbeddedIdGenerator;
+import cn.tedu.mall.common.utils.IdGeneratorUtils;
+import com.sankuai.inf.leaf.segment.SegmentIDGenImpl;
+import com.sankuai.inf.leaf.segment.dao.impl.IDAllocDaoImpl;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.AutoConfigureAfter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+
+/**
+ * 按mall.leaf.mode配置IdGeneratorUtils获取id的方式,没有配置mode时不生效
+ * embedded模式需要应用自己依赖leaf-core
+ */
+@Slf4j
+@Configuration
+@ConditionalOnProperty(prefix = "mall.leaf", name = "mode")
+@EnableConfigurationProperties(LeafIdProperties.class)
+@AutoConfigureAfter(DataSourceAutoConfiguration.class)
+public class LeafIdAutoConfiguration {
+
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(prefix = "mall.leaf", name = "mode", havingValue = IdGeneratorUtils.MODE_REMOTE)
+    public IdGenerator remoteIdGenerator(LeafIdProperties properties) {
+        return use(new RemoteIdGenerator(
+                createFetcher(properties)));
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(prefix = "mall.leaf", name = "mode", havingValue = IdGeneratorUtils.MODE_BATCH)
+    public IdGenerator batchIdGenerator(LeafIdProperties properties) {
+        return use(IdGeneratorUtils.createPrefetchClient(
+                createFetcher(properties),
+                properties.getBatchSize()));
+    }
+
+    @Bean
+    @ConditionalOnMissingClass("com.sankuai.inf.leaf.segment.SegmentIDGenImpl")
+    @ConditionalOnProperty(prefix = "mall.leaf", name = "mode", havingValue = IdGeneratorUtils.MODE_EMBEDDED)
+    public IdGenerator missingLeafCore() {
+        throw new IllegalStateException("mall.leaf.mode=embedded需要在应用中依赖leaf-core");
+    }
+
+    @Configuration
+    @ConditionalOnClass(SegmentIDGenImpl.class)
+    @ConditionalOnProperty(prefix = "mall.leaf", name = "mode", havingValue = IdGeneratorUtils.MODE_EMBEDDED)
+    static class EmbeddedConfiguration implements DisposableBean {
+
+        // 按mall.leaf.embedded.url创建的数据源,不是Spring管理的bean,容器关闭时由这里关闭
+        private DataSource ownedDataSource;
+
+        @Bean(destroyMethod = "shutdown")
+        @ConditionalOnMissingBean
+        public SegmentIDGenImpl segmentIDGen(LeafIdProperties properties, ObjectProvider<DataSource> dataSource) {
+            LeafIdProperties.Embedded embedded = properties.getEmbedded();
+            DataSource leafDataSource;
+            if (embedded.getUrl() != null) {
+                leafDataSource = DataSourceBuilder.create()
+                        .url(embedded.getUrl())
+                        .username(embedded.getUsername())
+                        .password(embedded.getPassword())
+                        .build();
+                ownedDataSource = leafDataSource;
+            } else {
+                leafDataSource = dataSource.getIfAvailable();
+                if (leafDataSource == null) {
+                    throw new IllegalStateException("mall.leaf.mode=embedded需要配置数据源或mall.leaf.embedded.url");
+                }
+            }
+            SegmentIDGenImpl idGen = new SegmentIDGenImpl();
+            idGen.setDao(new IDAllocDaoImpl(leafDataSource));
+            idGen.setTags(embedded.getTags());
+            if (!idGen.init()) {
+                idGen.shutdown();
+                throw new IllegalStateException("leaf号段模式初始化失败");
+            }
+            return idGen;
+        }
+
+        @Bean
+        @ConditionalOnMissingBean
+        public IdGenerator embeddedIdGenerator(SegmentIDGenImpl segmentIDGen) {
+            return use(new EmbeddedIdGenerator(segmentIDGen));
+        }
+
+        @Override
+        public void destroy() throws Exception {
+            // segmentIDGen依赖当前配置类,会先于这里关闭
+            if (ownedDataSource instanceof AutoCloseable) {
+                ((AutoCloseable) ownedDataSource).close();
+            }
+        }
+    }
+
+    private static IdRangeFetcher createFetcher(LeafIdProperties properties) {
+        return IdGeneratorUtils.createFetcher(properties.getUrl(), properties.getBinaryAddress(),
+                properties.getConnectTimeoutMillis(), properties.getReadTimeoutMillis());
+    }
+
+    private static IdGenerator use(IdGenerator generator) {
+        log.info("IdGeneratorUtils使用{}获取id", generator.getClass().getSimpleName());
+        IdGeneratorUtils.setGenerator(generator);
+        return generator;
+    }
+}
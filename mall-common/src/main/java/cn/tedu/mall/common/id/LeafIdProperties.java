@@ -0,0 +1,54 @@
+package cn.tedu.mall.common.id;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.List;
+
+/**
+ * 分布式id的配置,前缀mall.leaf
+ * mode为remote、batch或embedded,不配置mode时按启动参数(-Dmall.leaf.*)或默认值使用batch模式
+ */
+@Data
+@ConfigurationProperties(prefix = "mall.leaf")
+public class LeafIdProperties {
+    /**
+     * remote:每次请求leaf-server;batch:批量获取并缓存在本地;embedded:在当前进程中运行号段模式
+     */
+    private String mode;
+    /**
+     * leaf-server的http地址
+     */
+    private String url = "http://127.0.0.1:9090";
+    /**
+     * leaf-server二进制协议的地址,配置后remote和batch模式改用二进制协议
+     */
+    private String binaryAddress;
+    /**
+     * 通过http获取id时建立连接的超时时间(毫秒)
+     */
+    private Integer connectTimeoutMillis = 3000;
+    /**
+     * 通过http获取id时等待响应的超时时间(毫秒)
+     */
+    private Integer readTimeoutMillis = 3000;
+    /**
+     * batch模式每次获取的id数量
+     */
+    private Integer batchSize = 100;
+    /**
+     * embedded模式下leaf_alloc表所在的数据库,不配置时使用当前应用的数据源
+     */
+    private Embedded embedded = new Embedded();
+
+    @Data
+    public static class Embedded {
+        private String url;
+        private String username;
+        private String password;
+        /**
+         * 当前服务使用的业务标识,只装载和预热这些key,不配置时装载leaf_alloc中的所有key
+         */
+        private List<String> tags;
+    }
+}
@@ -0,0 +1,26 @@
+package cn.tedu.mall.common.id;
+
+import java.util.List;
+
+/**
+ * 每次获取id都直接请求leaf-server,不在本地缓存
+ * 适用于获取id不频繁、不希望id因为节点重启而不连续的场景
+ */
+public class RemoteIdGenerator implements IdGenerator {
+
+    private final IdRangeFetcher fetcher;
+
+    public RemoteIdGenerator(IdRangeFetcher fetcher) {
+        this.fetcher = fetcher;
+    }
+
+    @Override
+    public Long next(String key) {
+        return fetcher.fetchOne(key);
+    }
+
+    @Override
+    public List<Long> next(String key, int count) {
+        return fetcher.fetch(key, count);
+    }
+}
@@ -0,0 +1,45 @@
+package cn.tedu.mall.common.id.embedded;
+
+import cn.tedu.mall.common.id.IdGenerator;
+import com.sankuai.inf.leaf.IDGen;
+import com.sankuai.inf.leaf.common.BatchResult;
+import com.sankuai.inf.leaf.common.Result;
+import com.sankuai.inf.leaf.common.Status;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 在当前进程中运行leaf的号段模式,直接从共享的leaf_alloc表申请号段
+ * 不同节点申请到的号段由数据库保证不重叠,获取id不需要访问leaf-server
+ */
+public class EmbeddedIdGenerator implements IdGenerator {
+
+    private final IDGen idGen;
+
+    public EmbeddedIdGenerator(IDGen idGen) {
+        this.idGen = idGen;
+    }
+
+    @Override
+    public Long next(String key) {
+        Result result = idGen.get(key);
+        if (result.getStatus() == Status.EXCEPTION) {
+            throw new IllegalStateException("获取id失败,key:" + key + ",code:" + result.getId());
+        }
+        return result.getId();
+    }
+
+    @Override
+    public List<Long> next(String key, int count) {
+        BatchResult result = idGen.get(key, count);
+        if (result.getStatus() == Status.EXCEPTION) {
+            throw new IllegalStateException("获取id失败,key:" + key + ",code:" + result.getCode());
+        }
+        List<Long> ids = new ArrayList<>(count);
+        for (long id : result.getIds()) {
+            ids.add(id);
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,42 @@
+package cn.tedu.mall.common.redis;
+
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+/**
+ * 序列化格式迁移期间使用的序列化器
+ * 读取时根据数据的前几个字节判断格式,Smile和Java序列化的数据都可以读取
+ * 写入的格式由writeSmile决定:所有节点都能读取Smile之前写入Java序列化,之后写入Smile
+ * Redis中的旧数据过期后,即可切换为只使用新格式
+ */
+public class MigratingRedisSerializer implements RedisSerializer<Object> {
+
+    private final SmileRedisSerializer smileSerializer;
+    private final RedisSerializer<Object> javaSerializer;
+    // true写入Smile格式,false写入Java序列化
+    private final boolean writeSmile;
+
+    public MigratingRedisSerializer(SmileRedisSerializer smileSerializer,
+                                    RedisSerializer<Object> javaSerializer,
+                                    boolean writeSmile) {
+        this.smileSerializer = smileSerializer;
+        this.javaSerializer = javaSerializer;
+        this.writeSmile = writeSmile;
+    }
+
+    @Override
+    public byte[] serialize(Object value) throws SerializationException {
+        return writeSmile ? smileSerializer.serialize(value) : javaSerializer.serialize(value);
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        if (SmileRedisSerializer.isSmile(bytes)) {
+            return smileSerializer.deserialize(bytes);
+        }
+        return javaSerializer.deserialize(bytes);
+    }
+}
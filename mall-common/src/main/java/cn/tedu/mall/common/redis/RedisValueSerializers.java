@@ -0,0 +1,40 @@
+package cn.tedu.mall.common.redis;
+
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+/**
+ * 根据配置创建Redis值的序列化器
+ * java: Java序列化,原来的格式
+ * read-smile: 写入Java序列化,读取时兼容Smile格式,切换格式的第一步
+ * write-smile: 写入Smile格式,读取时兼容Java序列化的旧数据,切换格式的第二步(也可以写作migrate)
+ * smile: Jackson Smile二进制格式
+ * 多个节点共用Redis,从java切换到smile要分步滚动发布:
+ * 所有节点都升级到read-smile后,才能有节点改为write-smile;Redis中Java序列化的旧数据过期后,再改为smile
+ */
+public class RedisValueSerializers {
+
+    public static final String JAVA = "java";
+    public static final String READ_SMILE = "read-smile";
+    public static final String WRITE_SMILE = "write-smile";
+    public static final String MIGRATE = "migrate";
+    public static final String SMILE = "smile";
+
+    private RedisValueSerializers() {
+    }
+
+    public static RedisSerializer<Object> of(String mode) {
+        if (JAVA.equalsIgnoreCase(mode)) {
+            return RedisSerializer.java();
+        }
+        if (READ_SMILE.equalsIgnoreCase(mode)) {
+            return new MigratingRedisSerializer(new SmileRedisSerializer(), RedisSerializer.java(), false);
+        }
+        if (WRITE_SMILE.equalsIgnoreCase(mode) || MIGRATE.equalsIgnoreCase(mode)) {
+            return new MigratingRedisSerializer(new SmileRedisSerializer(), RedisSerializer.java(), true);
+        }
+        if (SMILE.equalsIgnoreCase(mode)) {
+            return new SmileRedisSerializer();
+        }
+        throw new IllegalArgumentException("不支持的Redis序列化方式:" + mode);
+    }
+}
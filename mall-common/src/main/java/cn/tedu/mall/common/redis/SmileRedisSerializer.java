@@ -0,0 +1,106 @@
+package cn.tedu.mall.common.redis;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.PropertyAccessor;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.jsontype.BasicPolymorphicTypeValidator;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.io.IOException;
+
+/**
+ * 使用Jackson Smile(二进制JSON)格式序列化Redis中的值
+ * 和Java序列化相比体积更小、速度更快,保存的对象也不需要实现Serializable
+ * 对象中记录了类型信息,读取时不需要指定类型,和RedisSerializer.java()的用法一致
+ * 只读写属性(字段),要求保存的类有无参构造方法,类上的Jackson注解不起作用
+ */
+public class SmileRedisSerializer implements RedisSerializer<Object> {
+
+    // Smile数据的前3个字节固定为 ':' ')' '\n'
+    private static final byte[] HEADER = {':', ')', '\n'};
+
+    private final ObjectMapper objectMapper;
+
+    public SmileRedisSerializer() {
+        // 只允许反序列化项目中的类和JDK中的常用类型,防止反序列化漏洞
+        BasicPolymorphicTypeValidator typeValidator = BasicPolymorphicTypeValidator.builder()
+                .allowIfSubType("cn.tedu.mall.")
+                .allowIfSubType("java.util.")
+                .allowIfSubType("java.math.")
+                .allowIfSubType("java.time.")
+                .allowIfSubType("java.lang.")
+                .build();
+        // 类型信息中的类名会重复出现,开启字符串值共享,重复的类名只保存一次
+        SmileFactory smileFactory = SmileFactory.builder()
+                .enable(SmileGenerator.Feature.CHECK_SHARED_STRING_VALUES)
+                .build();
+        objectMapper = new ObjectMapper(smileFactory);
+        objectMapper.registerModule(new JavaTimeModule());
+        // VO上的Jackson注解(例如@JsonRawValue)是为了控制响应的JSON格式,保存到Redis时忽略
+        objectMapper.disable(MapperFeature.USE_ANNOTATIONS);
+        objectMapper.setVisibility(PropertyAccessor.ALL, JsonAutoDetect.Visibility.NONE);
+        objectMapper.setVisibility(PropertyAccessor.FIELD, JsonAutoDetect.Visibility.ANY);
+        objectMapper.disable(SerializationFeature.FAIL_ON_EMPTY_BEANS);
+        objectMapper.disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+        objectMapper.activateDefaultTyping(typeValidator, ObjectMapper.DefaultTyping.NON_FINAL);
+    }
+
+    @Override
+    public byte[] serialize(Object value) throws SerializationException {
+        if (value == null) {
+            return new byte[0];
+        }
+        try {
+            // 外层再包装一次,保证Integer、String等final类型读取时也能还原为原来的类型
+            return objectMapper.writeValueAsBytes(new Holder(value));
+        } catch (IOException e) {
+            throw new SerializationException("Smile序列化失败:" + value.getClass().getName(), e);
+        }
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        try {
+            return objectMapper.readValue(bytes, Holder.class).value;
+        } catch (IOException e) {
+            throw new SerializationException("Smile反序列化失败", e);
+        }
+    }
+
+    /**
+     * 判断数据是否为Smile格式
+     */
+    public static boolean isSmile(byte[] bytes) {
+        if (bytes == null || bytes.length < HEADER.length) {
+            return false;
+        }
+        for (int i = 0; i < HEADER.length; i++) {
+            if (bytes[i] != HEADER[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // 值的包装类,value属性声明为Object,任何类型的值都会记录类型信息
+    private static class Holder {
+        private Object value;
+
+        private Holder() {
+        }
+
+        Holder(Object value) {
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package cn.tedu.mall.common.utils;
+
+import cn.tedu.mall.common.id.IdGenerator;
+import cn.tedu.mall.common.id.IdPrefetchClient;
+import cn.tedu.mall.common.id.IdRangeFetcher;
+import cn.tedu.mall.common.id.LeafBinaryIdFetcher;
+import cn.tedu.mall.common.id.LeafHttpIdFetcher;
+import cn.tedu.mall.common.id.RemoteIdGenerator;
+
+import java.util.List;
+
+/**
+ * 分布式id工具类,各模块共用
+ * 获取id的方式有三种,由配置mall.leaf.mode选择:
+ * remote:每次获取id都请求leaf-server
+ * batch(默认):id从leaf批量获取后缓存在本地,大部分情况下获取id不需要访问网络
+ * embedded:在当前进程中运行leaf的号段模式,直接访问leaf_alloc表,需要依赖leaf-core
+ * 在Spring配置文件中配置mall.leaf.*时由LeafIdAutoConfiguration设置,也可以通过启动参数配置remote和batch模式:
+ * -Dmall.leaf.mode=remote -Dmall.leaf.url=http://ip:port
+ * 设置了 -Dmall.leaf.binary-address=ip:port 时改用二进制协议获取id
+ * http请求的超时时间通过 -Dmall.leaf.connect-timeout-millis 和 -Dmall.leaf.read-timeout-millis 配置
+ * 启动参数对应的客户端在第一次获取id时才创建,embedded模式只使用LeafIdAutoConfiguration设置的生成器
+ */
+public class IdGeneratorUtils {
+
+    public static final String MODE_REMOTE = "remote";
+    public static final String MODE_BATCH = "batch";
+    public static final String MODE_EMBEDDED = "embedded";
+
+    private static final String LEAF_MODE = System.getProperty("mall.leaf.mode", MODE_BATCH);
+    private static final String LEAF_URL = System.getProperty("mall.leaf.url", "http://127.0.0.1:9090");
+    private static final String LEAF_BINARY_ADDRESS = System.getProperty("mall.leaf.binary-address");
+    private static final int CONNECT_TIMEOUT_MILLIS = Integer.getInteger("mall.leaf.connect-timeout-millis", 3000);
+    private static final int READ_TIMEOUT_MILLIS = Integer.getInteger("mall.leaf.read-timeout-millis", 3000);
+    // 每次从leaf获取的id数量
+    private static final int BATCH_SIZE = Integer.getInteger("mall.leaf.batch-size", 100);
+    private static final long WAIT_MILLIS = 3000;
+
+    private static volatile IdGenerator generator;
+
+    private static IdGenerator generator() {
+        IdGenerator current = generator;
+        if (current == null) {
+            synchronized (IdGeneratorUtils.class) {
+                current = generator;
+                if (current == null) {
+                    current = createDefault(LEAF_MODE);
+                    generator = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    private static IdGenerator createDefault(String mode) {
+        if (MODE_EMBEDDED.equals(mode)) {
+            throw new IllegalStateException("embedded模式的id生成器由LeafIdAutoConfiguration在Spring容器启动时创建");
+        }
+        IdRangeFetcher fetcher = createFetcher(LEAF_URL, LEAF_BINARY_ADDRESS, CONNECT_TIMEOUT_MILLIS, READ_TIMEOUT_MILLIS);
+        if (MODE_REMOTE.equals(mode)) {
+            return new RemoteIdGenerator(fetcher);
+        }
+        return createPrefetchClient(fetcher, BATCH_SIZE);
+    }
+
+    public static IdRangeFetcher createFetcher(String url, String binaryAddress,
+                                               int connectTimeoutMillis, int readTimeoutMillis) {
+        if (binaryAddress != null && !binaryAddress.isEmpty()) {
+            // 补充id的后台线程有2个,保留同样数量的连接
+            return new LeafBinaryIdFetcher(binaryAddress, 2);
+        }
+        return new LeafHttpIdFetcher(url, connectTimeoutMillis, readTimeoutMillis);
+    }
+
+    public static IdPrefetchClient createPrefetchClient(IdRangeFetcher fetcher, int batchSize) {
+        // 剩余id不超过批量的20%时开始补充
+        return new IdPrefetchClient(fetcher, batchSize, batchSize / 5, WAIT_MILLIS);
+    }
+
+    /**
+     * 替换获取id的方式,由LeafIdAutoConfiguration按配置调用,被替换的生成器会关闭
+     */
+    public static void setGenerator(IdGenerator idGenerator) {
+        IdGenerator previous;
+        synchronized (IdGeneratorUtils.class) {
+            previous = generator;
+            generator = idGenerator;
+        }
+        if (previous != null && previous != idGenerator) {
+            previous.close();
+        }
+    }
+
+    /**
+     * @param key leaf中的业务标识(biz_tag),例如 order
+     * @return 分布式id
+     */
+    public static Long getDistributeId(String key) {
+        return generator().next(key);
+    }
+
+    /**
+     * 一次获取多个id,例如订单中的多个订单项
+     */
+    public static List<Long> getDistributeIds(String key, int count) {
+        return generator().next(key, count);
+    }
+}
@@ -0,0 +1,94 @@
+package cn.tedu.mall.common.id;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class IdPrefetchBufferTests {
+
+    // 补充任务在调用线程中直接执行
+    private static final Executor DIRECT = Runnable::run;
+    // 补充任务不执行,模拟后台补充太慢
+    private static final Executor NEVER = task -> { };
+
+    @Test
+    public void testRefillAtLowWaterMark() {
+        CountingFetcher fetcher = new CountingFetcher();
+        IdPrefetchBuffer buffer = new IdPrefetchBuffer("order", fetcher, 10, 2, 1000, DIRECT);
+        // 第一次获取时缓冲区为空,补充一批
+        Assertions.assertEquals(1L, buffer.next());
+        Assertions.assertEquals(1, fetcher.calls.get());
+        Assertions.assertEquals(9, buffer.remaining());
+        // 剩余数量高于低水位时不补充
+        for (long i = 2; i <= 7; i++) {
+            Assertions.assertEquals(i, buffer.next());
+        }
+        Assertions.assertEquals(1, fetcher.calls.get());
+        Assertions.assertEquals(3, buffer.remaining());
+        // 剩余数量降到低水位,补充下一批,已有的id先被使用
+        Assertions.assertEquals(8L, buffer.next());
+        Assertions.assertEquals(2, fetcher.calls.get());
+        Assertions.assertEquals(12, buffer.remaining());
+        Assertions.assertEquals(9L, buffer.next());
+        Assertions.assertEquals(10, fetcher.lastCount);
+    }
+
+    @Test
+    public void testFetchDirectlyWhenRefillTimeout() {
+        CountingFetcher fetcher = new CountingFetcher();
+        IdPrefetchBuffer buffer = new IdPrefetchBuffer("order", fetcher, 10, 2, 50, NEVER);
+        // 等待补充超时后直接获取一个id
+        Assertions.assertEquals(1L, buffer.next());
+        Assertions.assertEquals(1, fetcher.calls.get());
+        Assertions.assertEquals(1, fetcher.lastCount);
+        Assertions.assertEquals(0, buffer.remaining());
+    }
+
+    @Test
+    public void testEmptyResponse() {
+        IdRangeFetcher fetcher = (key, count) -> Collections.emptyList();
+        IdPrefetchBuffer buffer = new IdPrefetchBuffer("order", fetcher, 10, 2, 10, DIRECT);
+        IllegalStateException e = Assertions.assertThrows(IllegalStateException.class, buffer::next);
+        Assertions.assertTrue(e.getMessage().contains("order"));
+        Assertions.assertThrows(IllegalStateException.class, () -> new RemoteIdGenerator(fetcher).next("order"));
+    }
+
+    @Test
+    public void testClientNextCount() {
+        IdPrefetchClient client = new IdPrefetchClient(new CountingFetcher(), 10, 2, 1000);
+        try {
+            List<Long> ids = client.next("order_item", 25);
+            Assertions.assertEquals(25, ids.size());
+            Assertions.assertEquals(25, new HashSet<>(ids).size());
+        } finally {
+            client.close();
+        }
+    }
+
+    /**
+     * 按顺序返回id,记录调用次数
+     */
+    private static class CountingFetcher implements IdRangeFetcher {
+        private final AtomicLong sequence = new AtomicLong();
+        private final AtomicInteger calls = new AtomicInteger();
+        private volatile int lastCount;
+
+        @Override
+        public List<Long> fetch(String key, int count) {
+            calls.incrementAndGet();
+            lastCount = count;
+            List<Long> ids = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                ids.add(sequence.incrementAndGet());
+            }
+            return ids;
+        }
+    }
+}
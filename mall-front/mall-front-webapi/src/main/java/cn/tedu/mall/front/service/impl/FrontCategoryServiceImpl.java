@@ -1,5 +1,6 @@
 package cn.tedu.mall.front.service.impl;
 
+import cn.tedu.mall.common.cache.SingleFlightCacheLoader;
 import cn.tedu.mall.common.exception.CoolSharkServiceException;
 import cn.tedu.mall.common.restful.ResponseCode;
 import cn.tedu.mall.front.service.IFrontCategoryService;
@@ -11,7 +12,6 @@ import lombok.extern.slf4j.Slf4j;
 import org.apache.dubbo.config.annotation.DubboReference;
 import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
@@ -28,44 +28,31 @@ public class FrontCategoryServiceImpl implements IFrontCategoryService {
     @DubboReference
     private IForFrontCategoryService dubboCategoryService;
 
-    // 装配操作Redis的对象
+    // 防止缓存击穿的缓存加载工具
     @Autowired
-    private RedisTemplate redisTemplate;
+    private SingleFlightCacheLoader cacheLoader;
 
     // 在开发时,使用Redis规范:使用Key时这个Key必须是一个常量,避免拼写错误
     public static final String CATEGORY_TREE_KEY="category_tree";
 
     @Override
     public FrontCategoryTreeVO categoryTree() {
-        // 先检查Redis中是否已经保存了三级分类树对象
-        if(redisTemplate.hasKey(CATEGORY_TREE_KEY)){
-            // redis中如果已经有了这个key直接获取即可
-            FrontCategoryTreeVO<FrontCategoryEntity> treeVO=
-                    (FrontCategoryTreeVO<FrontCategoryEntity>)
-                    redisTemplate.boundValueOps(CATEGORY_TREE_KEY).get();
-            // 将从Redis中查询出的对象返回
-            return treeVO;
-        }
-        // Redis中如果没有三级分类树信息,表示本次情况可能是首次访问
+        // 先检查Redis中是否已经保存了三级分类树对象,有就直接返回
+        // Redis中如果没有三级分类树信息,表示本次情况可能是首次访问或缓存已过期
         // 就需要从数据库中查询分类对象结合后,构建三级分类树,再保存到Redis中了
-        // Dubbo调用查询所有分类对象的方法
-        List<CategoryStandardVO> categoryStandardVOs =
-                        dubboCategoryService.getCategoryList();
-        // CategoryStandardVO是没有children属性的,FrontCategoryEntity是有children属性的
-        // 下面编写一个专门的方法,用于构建三级分类树对象
-        // 大概思路就是先将CategoryStandardVO类型对象转换为FrontCategoryEntity
-        // 然后在进行正确的父子关联
-        // 整个转换的过程比较复杂,所以我们单独编写一个方法
-        FrontCategoryTreeVO<FrontCategoryEntity> treeVO=
-                                        initTree(categoryStandardVOs);
-        // 上面方法完成了三级分类树的构建,返回包含树结构的treeVO对象
-        // 下面要将这个对象保存在Redis中,在后面的请求中直接从Redis中获取treeVO提高效率
-        redisTemplate.boundValueOps(CATEGORY_TREE_KEY)
-                .set(treeVO,1, TimeUnit.MINUTES);
-        // 上面的方法定义了保存到Redis数据的内容和有效期
+        // 缓存过期时大量并发请求只有一个会真正查询,其它请求等待它的结果或返回旧的分类树
         // 我们代码中建议定义较小的有效期,例如1分钟,在上线的项目中保存时间会长,例如24小时甚至更长
-        // 别忘了最后也返回treeVO
-        return treeVO;
+        return cacheLoader.get(CATEGORY_TREE_KEY, TimeUnit.MINUTES.toMillis(1), () -> {
+            // Dubbo调用查询所有分类对象的方法
+            List<CategoryStandardVO> categoryStandardVOs =
+                            dubboCategoryService.getCategoryList();
+            // CategoryStandardVO是没有children属性的,FrontCategoryEntity是有children属性的
+            // 下面编写一个专门的方法,用于构建三级分类树对象
+            // 大概思路就是先将CategoryStandardVO类型对象转换为FrontCategoryEntity
+            // 然后在进行正确的父子关联
+            // 整个转换的过程比较复杂,所以我们单独编写一个方法
+            return initTree(categoryStandardVOs);
+        });
     }
 
     private FrontCategoryTreeVO<FrontCategoryEntity>
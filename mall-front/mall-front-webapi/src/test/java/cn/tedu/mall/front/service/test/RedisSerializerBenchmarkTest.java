@@ -0,0 +1,165 @@
+package cn.tedu.mall.front.service.test;
+
+import cn.tedu.mall.common.redis.RedisValueSerializers;
+import cn.tedu.mall.pojo.front.entity.FrontCategoryEntity;
+import cn.tedu.mall.pojo.front.vo.FrontCategoryTreeVO;
+import cn.tedu.mall.pojo.seckill.vo.SeckillSkuVO;
+import cn.tedu.mall.pojo.seckill.vo.SeckillSpuVO;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 比较Java序列化和Smile序列化的耗时和数据大小
+ * 不需要启动Spring容器,耗时对比默认跳过,指定benchmark=true时运行:
+ * mvn test -pl mall-front/mall-front-webapi -Dtest=RedisSerializerBenchmarkTest -Dbenchmark=true
+ */
+@Slf4j
+public class RedisSerializerBenchmarkTest {
+
+    private static final int WARMUP = 5000;
+    private static final int ITERATIONS = 20000;
+
+    private final RedisSerializer<Object> java = RedisValueSerializers.of(RedisValueSerializers.JAVA);
+    private final RedisSerializer<Object> smile = RedisValueSerializers.of(RedisValueSerializers.SMILE);
+    private final RedisSerializer<Object> readSmile = RedisValueSerializers.of(RedisValueSerializers.READ_SMILE);
+    private final RedisSerializer<Object> writeSmile = RedisValueSerializers.of(RedisValueSerializers.WRITE_SMILE);
+
+    @Test
+    public void roundTrip() {
+        for (Object value : samples()) {
+            Assertions.assertEquals(value, smile.deserialize(smile.serialize(value)));
+            // 迁移期间,旧格式和新格式的数据都可以读取
+            Assertions.assertEquals(value, writeSmile.deserialize(java.serialize(value)));
+            Assertions.assertEquals(value, writeSmile.deserialize(writeSmile.serialize(value)));
+            // 第一步写入的仍是Java序列化,没有升级的节点也能读取
+            Assertions.assertEquals(value, java.deserialize(readSmile.serialize(value)));
+            Assertions.assertEquals(value, readSmile.deserialize(smile.serialize(value)));
+        }
+        Assertions.assertEquals(1234567, smile.deserialize(smile.serialize(1234567)));
+        Assertions.assertEquals(100L, smile.deserialize(smile.serialize(100L)));
+    }
+
+    @Test
+    public void benchmark() {
+        Assumptions.assumeTrue(Boolean.getBoolean("benchmark"), "没有指定benchmark=true,跳过");
+        for (Object value : samples()) {
+            measure("java", java, value);
+            measure("smile", smile, value);
+        }
+    }
+
+    private void measure(String name, RedisSerializer<Object> serializer, Object value) {
+        byte[] bytes = serializer.serialize(value);
+        for (int i = 0; i < WARMUP; i++) {
+            serializer.deserialize(serializer.serialize(value));
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            bytes = serializer.serialize(value);
+        }
+        long serializeNanos = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            serializer.deserialize(bytes);
+        }
+        long deserializeNanos = System.nanoTime() - start;
+        log.info("{} {} 序列化:{} ns/op  反序列化:{} ns/op  大小:{} bytes",
+                value.getClass().getSimpleName(), name,
+                serializeNanos / ITERATIONS, deserializeNanos / ITERATIONS, bytes.length);
+    }
+
+    private List<Object> samples() {
+        List<Object> samples = new ArrayList<>();
+        samples.add(spuVO());
+        samples.add(skuVO());
+        samples.add(categoryTree());
+        return samples;
+    }
+
+    private SeckillSpuVO spuVO() {
+        SeckillSpuVO spuVO = new SeckillSpuVO();
+        spuVO.setId(2L);
+        spuVO.setName("小米11 Ultra");
+        spuVO.setTypeNumber("MI11U");
+        spuVO.setTitle("小米11 Ultra 1亿像素 2K四曲面屏");
+        spuVO.setDescription("小米11 Ultra 5G手机 陶瓷黑 12GB+256GB");
+        spuVO.setListPrice(new BigDecimal("5999.00"));
+        spuVO.setSeckillListPrice(new BigDecimal("4999.00"));
+        spuVO.setStock(100);
+        spuVO.setStockThreshold(10);
+        spuVO.setUnit("部");
+        spuVO.setBrandId(3L);
+        spuVO.setBrandName("小米");
+        spuVO.setCategoryId(3L);
+        spuVO.setCategoryName("智能手机");
+        spuVO.setAlbumId(1L);
+        spuVO.setPictures("/images/1.jpg,/images/2.jpg");
+        spuVO.setKeywords("小米,手机,5G");
+        spuVO.setTags("热卖,新品");
+        spuVO.setSales(1000);
+        spuVO.setIsPublish(1);
+        spuVO.setStartTime(LocalDateTime.of(2022, 1, 1, 10, 0));
+        spuVO.setEndTime(LocalDateTime.of(2022, 1, 1, 12, 0));
+        return spuVO;
+    }
+
+    private SeckillSkuVO skuVO() {
+        SeckillSkuVO skuVO = new SeckillSkuVO();
+        skuVO.setId(1L);
+        skuVO.setSpuId(2L);
+        skuVO.setTitle("小米11 Ultra 陶瓷黑 12GB+256GB");
+        skuVO.setBarCode("6934177734553");
+        skuVO.setSpecifications("[{\"id\":2,\"name\":\"颜色\",\"value\":\"陶瓷黑\"}]");
+        skuVO.setPictures("/images/1.jpg");
+        skuVO.setPrice(new BigDecimal("5999.00"));
+        skuVO.setSeckillPrice(new BigDecimal("4999.00"));
+        skuVO.setStock(100);
+        skuVO.setSeckillLimit(1);
+        return skuVO;
+    }
+
+    private FrontCategoryTreeVO<FrontCategoryEntity> categoryTree() {
+        List<FrontCategoryEntity> firstLevels = new ArrayList<>();
+        long id = 1;
+        for (int i = 0; i < 5; i++) {
+            FrontCategoryEntity first = category(id++, 0L, 1, "一级分类" + i);
+            List<FrontCategoryEntity> secondLevels = new ArrayList<>();
+            for (int j = 0; j < 5; j++) {
+                FrontCategoryEntity second = category(id++, first.getId(), 2, "二级分类" + j);
+                List<FrontCategoryEntity> thirdLevels = new ArrayList<>();
+                for (int k = 0; k < 5; k++) {
+                    thirdLevels.add(category(id++, second.getId(), 3, "三级分类" + k));
+                }
+                second.setChildrens(thirdLevels);
+                secondLevels.add(second);
+            }
+            first.setChildrens(secondLevels);
+            firstLevels.add(first);
+        }
+        FrontCategoryTreeVO<FrontCategoryEntity> treeVO = new FrontCategoryTreeVO<>();
+        treeVO.setCategories(firstLevels);
+        return treeVO;
+    }
+
+    private FrontCategoryEntity category(Long id, Long parentId, Integer depth, String name) {
+        FrontCategoryEntity category = new FrontCategoryEntity();
+        category.setId(id);
+        category.setParentId(parentId);
+        category.setDepth(depth);
+        category.setName(name);
+        category.setKeywords(name);
+        category.setSort(0);
+        category.setActive(1);
+        category.setDisplay(1);
+        category.setParent(depth < 3 ? 1 : 0);
+        return category;
+    }
+}
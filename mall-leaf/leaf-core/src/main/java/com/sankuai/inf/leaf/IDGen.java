@@ -1,8 +1,27 @@
 package com.sankuai.inf.leaf;
 
+import com.sankuai.inf.leaf.common.BatchResult;
 import com.sankuai.inf.leaf.common.Result;
+import com.sankuai.inf.leaf.common.Status;
 
 public interface IDGen {
     Result get(String key);
+
+    /**
+     * 一次获取count个id,默认逐个调用get(key)
+     * 号段模式会从当前号段中一次预留连续的id
+     */
+    default BatchResult get(String key, int count) {
+        long[] ids = new long[count];
+        for (int i = 0; i < count; i++) {
+            Result result = get(key);
+            if (result.getStatus() == Status.EXCEPTION) {
+                return BatchResult.exception(result.getId());
+            }
+            ids[i] = result.getId();
+        }
+        return new BatchResult(ids, Status.SUCCESS);
+    }
+
     boolean init();
 }
@@ -0,0 +1,62 @@
+package com.sankuai.inf.leaf.common;
+
+import java.util.Arrays;
+
+/**
+ * 批量获取id的结果
+ * status为EXCEPTION时ids为空,code为异常码(与Result中的异常id相同)
+ */
+public class BatchResult {
+    private long[] ids;
+    private Status status;
+    private long code;
+
+    public BatchResult() {
+
+    }
+
+    public BatchResult(long[] ids, Status status) {
+        this.ids = ids;
+        this.status = status;
+    }
+
+    public static BatchResult exception(long code) {
+        BatchResult result = new BatchResult(new long[0], Status.EXCEPTION);
+        result.setCode(code);
+        return result;
+    }
+
+    public long[] getIds() {
+        return ids;
+    }
+
+    public void setIds(long[] ids) {
+        this.ids = ids;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public void setStatus(Status status) {
+        this.status = status;
+    }
+
+    public long getCode() {
+        return code;
+    }
+
+    public void setCode(long code) {
+        this.code = code;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("BatchResult{");
+        sb.append("ids=").append(Arrays.toString(ids));
+        sb.append(", status=").append(status);
+        sb.append(", code=").append(code);
+        sb.append('}');
+        return sb.toString();
+    }
+}
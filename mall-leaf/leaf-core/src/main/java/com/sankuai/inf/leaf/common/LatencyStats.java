@@ -0,0 +1,46 @@
+package com.sankuai.inf.leaf.common;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 累计的耗时统计:次数、总耗时、最大耗时
+ * leaf-core不依赖监控框架,由leaf-server按照次数和总耗时导出为Timer
+ */
+public class LatencyStats {
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    public void record(long nanos) {
+        count.increment();
+        totalNanos.add(nanos);
+        long max;
+        while (nanos > (max = maxNanos.get()) && !maxNanos.compareAndSet(max, nanos)) {
+            // 其它线程同时更新了最大值,重新比较
+        }
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public double getTotal(TimeUnit unit) {
+        return (double) totalNanos.sum() / unit.toNanos(1);
+    }
+
+    public double getMax(TimeUnit unit) {
+        return (double) maxNanos.get() / unit.toNanos(1);
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("LatencyStats{");
+        sb.append("count=").append(getCount());
+        sb.append(", totalMillis=").append(getTotal(TimeUnit.MILLISECONDS));
+        sb.append(", maxMillis=").append(getMax(TimeUnit.MILLISECONDS));
+        sb.append('}');
+        return sb.toString();
+    }
+}
@@ -1,6 +1,7 @@
 package com.sankuai.inf.leaf.segment;
 
 import com.sankuai.inf.leaf.IDGen;
+import com.sankuai.inf.leaf.common.BatchResult;
 import com.sankuai.inf.leaf.common.Result;
 import com.sankuai.inf.leaf.common.Status;
 import com.sankuai.inf.leaf.segment.dao.IDAllocDao;
@@ -10,9 +11,11 @@ import org.perf4j.slf4j.Slf4JStopWatch;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.time.Clock;
 import java.util.*;
 import java.util.concurrent.*;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 public class SegmentIDGenImpl implements IDGen {
     private static final Logger logger = LoggerFactory.getLogger(SegmentIDGenImpl.class);
@@ -37,10 +40,53 @@ public class SegmentIDGenImpl implements IDGen {
      * 一个Segment维持时间为15分钟
      */
     private static final long SEGMENT_DURATION = 15 * 60 * 1000L;
-    private ExecutorService service = new ThreadPoolExecutor(5, Integer.MAX_VALUE, 60L, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), new UpdateThreadFactory());
+    /**
+     * 号段用完时等待下一个号段装载的最长时间
+     */
+    private static final long MAX_WAIT_MILLIS = 500;
+    /**
+     * 号段用完时最多触发装载的次数
+     */
+    private static final int MAX_LOAD_ATTEMPTS = 2;
+    /**
+     * 提前装载时预留的最短时间,剩余id按当前速度不够发放这么久时开始装载
+     */
+    private static final long MIN_PRELOAD_LEAD_MILLIS = 1000;
+    /**
+     * 提前装载时预留的时间为最近一次装载耗时的倍数
+     */
+    private static final long PRELOAD_LEAD_FACTOR = 3;
+    /**
+     * step的计算策略:按发放速度计算;没有速度数据时按号段维持时间翻倍或减半
+     */
+    public static final String STEP_POLICY_RATE = "rate";
+    public static final String STEP_POLICY_DURATION = "duration";
+    /**
+     * 后台装载号段的线程数和排队上限
+     */
+    private static final int LOADER_THREADS = 5;
+    private static final int LOADER_QUEUE_CAPACITY = 1024;
+    /**
+     * 启动时并行预热所有key的最长等待时间,超时的key在第一次取id时装载
+     */
+    private static final long PREWARM_TIMEOUT_MILLIS = 10 * 1000L;
+    private final SegmentLoadExecutor loader = new SegmentLoadExecutor(LOADER_THREADS, LOADER_QUEUE_CAPACITY, new UpdateThreadFactory());
+    private ScheduledExecutorService scheduler;
     private volatile boolean initOK = false;
     private Map<String, SegmentBuffer> cache = new ConcurrentHashMap<String, SegmentBuffer>();
     private IDAllocDao dao;
+    /**
+     * 采样发放速度和计算号段维持时间使用的时钟
+     */
+    private Clock clock = Clock.systemUTC();
+    /**
+     * 只装载这些key,为null时装载leaf_alloc中的所有key
+     */
+    private volatile Set<String> tags;
+    /**
+     * 按异常码统计的失败次数
+     */
+    private final ConcurrentMap<Long, LongAdder> errors = new ConcurrentHashMap<>();
 
     public static class UpdateThreadFactory implements ThreadFactory {
 
@@ -52,7 +98,9 @@ public class SegmentIDGenImpl implements IDGen {
 
         @Override
         public Thread newThread(Runnable r) {
-            return new Thread(r, "Thread-Segment-Update-" + nextThreadNum());
+            Thread t = new Thread(r, "Thread-Segment-Update-" + nextThreadNum());
+            t.setDaemon(true);
+            return t;
         }
     }
 
@@ -62,12 +110,8 @@ public class SegmentIDGenImpl implements IDGen {
         // 确保加载到kv后才初始化成功
         updateCacheFromDb();
         initOK = true;
-        updateCacheFromDbAtEveryMinute();
-        return initOK;
-    }
-
-    private void updateCacheFromDbAtEveryMinute() {
-        ScheduledExecutorService service = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        prewarm(new ArrayList<String>(cache.keySet()), true);
+        scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
             @Override
             public Thread newThread(Runnable r) {
                 Thread t = new Thread(r);
@@ -76,7 +120,73 @@ public class SegmentIDGenImpl implements IDGen {
                 return t;
             }
         });
-        service.scheduleWithFixedDelay(new Runnable() {
+        updateCacheFromDbAtEveryMinute();
+        sampleConsumptionAtEverySecond();
+        return initOK;
+    }
+
+    /**
+     * 并行装载所有key的第一个号段,避免第一次取id时同步访问DB
+     * 装载失败的key在装载线程池中计为失败,第一次取id时再装载
+     * @param wait 是否等待装载完成,定时刷新时发现的新key不等待,不占用采样线程
+     */
+    private void prewarm(List<String> tags, boolean wait) {
+        StopWatch sw = new Slf4JStopWatch();
+        final CountDownLatch latch = new CountDownLatch(tags.size());
+        final AtomicInteger failed = new AtomicInteger();
+        for (final String tag : tags) {
+            boolean submitted = loader.submit(tag, new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        if (!initBuffer(tag).isInitOk()) {
+                            failed.incrementAndGet();
+                            throw new IllegalStateException("Prewarm " + tag + " failed");
+                        }
+                    } finally {
+                        latch.countDown();
+                    }
+                }
+            });
+            if (!submitted) {
+                failed.incrementAndGet();
+                latch.countDown();
+            }
+        }
+        if (!wait) {
+            logger.info("Prewarm {} new tags in background", tags.size());
+            return;
+        }
+        try {
+            if (!latch.await(PREWARM_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                logger.warn("Prewarm {} tags timeout, remaining {}", tags.size(), latch.getCount());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (failed.get() > 0) {
+                logger.warn("Prewarm {} tags, failed {}", tags.size(), failed.get());
+            }
+            sw.stop("prewarm", tags.size() + " tags, " + failed.get() + " failed");
+        }
+    }
+
+    private void sampleConsumptionAtEverySecond() {
+        scheduler.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                long now = clock.millis();
+                for (SegmentBuffer buffer : cache.values()) {
+                    if (buffer.isInitOk()) {
+                        buffer.sample(now);
+                    }
+                }
+            }
+        }, 1, 1, TimeUnit.SECONDS);
+    }
+
+    private void updateCacheFromDbAtEveryMinute() {
+        scheduler.scheduleWithFixedDelay(new Runnable() {
             @Override
             public void run() {
                 updateCacheFromDb();
@@ -92,6 +202,10 @@ public class SegmentIDGenImpl implements IDGen {
             if (dbTags == null || dbTags.isEmpty()) {
                 return;
             }
+            if (tags != null) {
+                dbTags = new ArrayList<String>(dbTags);
+                dbTags.retainAll(tags);
+            }
             List<String> cacheTags = new ArrayList<String>(cache.keySet());
             Set<String> insertTagsSet = new HashSet<>(dbTags);
             Set<String> removeTagsSet = new HashSet<>(cacheTags);
@@ -105,13 +219,12 @@ public class SegmentIDGenImpl implements IDGen {
             for (String tag : insertTagsSet) {
                 SegmentBuffer buffer = new SegmentBuffer();
                 buffer.setKey(tag);
-                Segment segment = buffer.getCurrent();
-                segment.setValue(new AtomicLong(0));
-                segment.setMax(0);
-                segment.setStep(0);
                 cache.put(tag, buffer);
                 logger.info("Add tag {} from db to IdCache, SegmentBuffer {}", tag, buffer);
             }
+            if (initOK && !insertTagsSet.isEmpty()) {
+                prewarm(new ArrayList<String>(insertTagsSet), false);
+            }
             //cache中已失效的tags从cache删除
             for(int i = 0; i < dbTags.size(); i++){
                 String tmp = dbTags.get(i);
@@ -133,31 +246,66 @@ public class SegmentIDGenImpl implements IDGen {
     @Override
     public Result get(final String key) {
         if (!initOK) {
-            return new Result(EXCEPTION_ID_IDCACHE_INIT_FALSE, Status.EXCEPTION);
+            return exception(EXCEPTION_ID_IDCACHE_INIT_FALSE);
         }
         if (cache.containsKey(key)) {
-            SegmentBuffer buffer = cache.get(key);
-            if (!buffer.isInitOk()) {
-                synchronized (buffer) {
-                    if (!buffer.isInitOk()) {
-                        try {
-                            updateSegmentFromDb(key, buffer.getCurrent());
-                            logger.info("Init buffer. Update leafkey {} {} from db", key, buffer.getCurrent());
-                            buffer.setInitOk(true);
-                        } catch (Exception e) {
-                            logger.warn("Init buffer {} exception", buffer.getCurrent(), e);
-                        }
+            return getIdFromSegmentBuffer(initBuffer(key));
+        }
+        return exception(EXCEPTION_ID_KEY_NOT_EXISTS);
+    }
+
+    @Override
+    public BatchResult get(final String key, int count) {
+        if (!initOK) {
+            return BatchResult.exception(countError(EXCEPTION_ID_IDCACHE_INIT_FALSE));
+        }
+        if (cache.containsKey(key)) {
+            return getIdsFromSegmentBuffer(initBuffer(key), count);
+        }
+        return BatchResult.exception(countError(EXCEPTION_ID_KEY_NOT_EXISTS));
+    }
+
+    private Result exception(long code) {
+        return new Result(countError(code), Status.EXCEPTION);
+    }
+
+    private long countError(long code) {
+        LongAdder counter = errors.get(code);
+        if (counter == null) {
+            counter = errors.computeIfAbsent(code, k -> new LongAdder());
+        }
+        counter.increment();
+        return code;
+    }
+
+    private SegmentBuffer initBuffer(String key) {
+        SegmentBuffer buffer = cache.get(key);
+        if (!buffer.isInitOk()) {
+            synchronized (buffer) {
+                if (!buffer.isInitOk()) {
+                    try {
+                        buffer.setCurrent(updateSegmentFromDb(key, buffer));
+                        logger.info("Init buffer. Update leafkey {} {} from db", key, buffer.getCurrent());
+                        buffer.setInitOk(true);
+                    } catch (Exception e) {
+                        logger.warn("Init buffer {} exception", buffer.getCurrent(), e);
                     }
                 }
             }
-            return getIdFromSegmentBuffer(cache.get(key));
         }
-        return new Result(EXCEPTION_ID_KEY_NOT_EXISTS, Status.EXCEPTION);
+        return buffer;
     }
 
-    public void updateSegmentFromDb(String key, Segment segment) {
+    /**
+     * 从DB装载新的号段
+     * @return 新创建的Segment,由调用者设置为current或next
+     */
+    public Segment updateSegmentFromDb(String key, SegmentBuffer buffer) {
         StopWatch sw = new Slf4JStopWatch();
-        SegmentBuffer buffer = segment.getBuffer();
+        long start = clock.millis();
+        if (buffer.isInitOk()) {
+            buffer.sample(start);
+        }
         LeafAlloc leafAlloc;
         if (!buffer.isInitOk()) {
             leafAlloc = dao.updateMaxIdAndGetLeafAlloc(key);
@@ -165,13 +313,20 @@ public class SegmentIDGenImpl implements IDGen {
             buffer.setMinStep(leafAlloc.getStep());//leafAlloc中的step为DB中的step
         } else if (buffer.getUpdateTimestamp() == 0) {
             leafAlloc = dao.updateMaxIdAndGetLeafAlloc(key);
-            buffer.setUpdateTimestamp(System.currentTimeMillis());
+            buffer.setUpdateTimestamp(clock.millis());
             buffer.setStep(leafAlloc.getStep());
             buffer.setMinStep(leafAlloc.getStep());//leafAlloc中的step为DB中的step
         } else {
-            long duration = System.currentTimeMillis() - buffer.getUpdateTimestamp();
+            long duration = clock.millis() - buffer.getUpdateTimestamp();
             int nextStep = buffer.getStep();
-            if (duration < SEGMENT_DURATION) {
+            double rate = buffer.getRate();
+            if (rate > 0) {
+                // 按最近的发放速度,让下一个号段大约维持SEGMENT_DURATION,每次最多缩小一半
+                long target = (long) Math.ceil(rate * SEGMENT_DURATION / 1000);
+                target = Math.max(target, nextStep / 2);
+                nextStep = (int) Math.max(buffer.getMinStep(), Math.min(MAX_STEP, target));
+                buffer.setStepPolicy(STEP_POLICY_RATE);
+            } else if (duration < SEGMENT_DURATION) {
                 if (nextStep * 2 > MAX_STEP) {
                     //do nothing
                 } else {
@@ -182,93 +337,143 @@ public class SegmentIDGenImpl implements IDGen {
             } else {
                 nextStep = nextStep / 2 >= buffer.getMinStep() ? nextStep / 2 : nextStep;
             }
-            logger.info("leafKey[{}], step[{}], duration[{}mins], nextStep[{}]", key, buffer.getStep(), String.format("%.2f",((double)duration / (1000 * 60))), nextStep);
+            if (rate <= 0) {
+                buffer.setStepPolicy(STEP_POLICY_DURATION);
+            }
+            logger.info("leafKey[{}], step[{}], duration[{}mins], qps[{}], policy[{}], nextStep[{}]", key, buffer.getStep(), String.format("%.2f",((double)duration / (1000 * 60))), String.format("%.1f", rate), buffer.getStepPolicy(), nextStep);
             LeafAlloc temp = new LeafAlloc();
             temp.setKey(key);
             temp.setStep(nextStep);
             leafAlloc = dao.updateMaxIdByCustomStepAndGetLeafAlloc(temp);
-            buffer.setUpdateTimestamp(System.currentTimeMillis());
+            buffer.setUpdateTimestamp(clock.millis());
             buffer.setStep(nextStep);
             buffer.setMinStep(leafAlloc.getStep());//leafAlloc的step为DB中的step
         }
-        // must set value before set max
         long value = leafAlloc.getMaxId() - buffer.getStep();
-        segment.getValue().set(value);
-        segment.setMax(leafAlloc.getMaxId());
-        segment.setStep(buffer.getStep());
+        Segment segment = new Segment(buffer, value, leafAlloc.getMaxId(), buffer.getStep());
+        buffer.setLoadMillis(clock.millis() - start);
         sw.stop("updateSegmentFromDb", key + " " + segment);
+        return segment;
     }
 
     public Result getIdFromSegmentBuffer(final SegmentBuffer buffer) {
         while (true) {
-            buffer.rLock().lock();
-            try {
-                final Segment segment = buffer.getCurrent();
-                if (!buffer.isNextReady() && (segment.getIdle() < 0.9 * segment.getStep()) && buffer.getThreadRunning().compareAndSet(false, true)) {
-                    service.execute(new Runnable() {
-                        @Override
-                        public void run() {
-                            Segment next = buffer.getSegments()[buffer.nextPos()];
-                            boolean updateOk = false;
-                            try {
-                                updateSegmentFromDb(buffer.getKey(), next);
-                                updateOk = true;
-                                logger.info("update segment {} from db {}", buffer.getKey(), next);
-                            } catch (Exception e) {
-                                logger.warn(buffer.getKey() + " updateSegmentFromDb exception", e);
-                            } finally {
-                                if (updateOk) {
-                                    buffer.wLock().lock();
-                                    buffer.setNextReady(true);
-                                    buffer.getThreadRunning().set(false);
-                                    buffer.wLock().unlock();
-                                } else {
-                                    buffer.getThreadRunning().set(false);
-                                }
-                            }
-                        }
-                    });
-                }
-                long value = segment.getValue().getAndIncrement();
-                if (value < segment.getMax()) {
-                    return new Result(value, Status.SUCCESS);
-                }
-            } finally {
-                buffer.rLock().unlock();
+            final Segment segment = buffer.getCurrent();
+            loadNextIfNeeded(buffer, segment);
+            long value = segment.getValue().getAndIncrement();
+            if (value < segment.getMax()) {
+                buffer.addIssued(1);
+                return new Result(value, Status.SUCCESS);
             }
-            waitAndSleep(buffer);
-            buffer.wLock().lock();
-            try {
-                final Segment segment = buffer.getCurrent();
-                long value = segment.getValue().getAndIncrement();
-                if (value < segment.getMax()) {
-                    return new Result(value, Status.SUCCESS);
-                }
-                if (buffer.isNextReady()) {
-                    buffer.switchPos();
-                    buffer.setNextReady(false);
-                } else {
-                    logger.error("Both two segments in {} are not ready!", buffer);
-                    return new Result(EXCEPTION_ID_TWO_SEGMENTS_ARE_NULL, Status.EXCEPTION);
-                }
-            } finally {
-                buffer.wLock().unlock();
+            if (!switchToNext(buffer, segment)) {
+                logger.error("Both two segments in {} are not ready!", buffer);
+                return exception(EXCEPTION_ID_TWO_SEGMENTS_ARE_NULL);
             }
         }
     }
 
-    private void waitAndSleep(SegmentBuffer buffer) {
-        int roll = 0;
-        while (buffer.getThreadRunning().get()) {
-            roll += 1;
-            if(roll > 10000) {
-                try {
-                    TimeUnit.MILLISECONDS.sleep(10);
+    /**
+     * 从当前号段一次预留连续的count个id,当前号段不够时剩余部分从下一个号段中预留
+     */
+    public BatchResult getIdsFromSegmentBuffer(final SegmentBuffer buffer, int count) {
+        long[] ids = new long[count];
+        int filled = 0;
+        while (true) {
+            final Segment segment = buffer.getCurrent();
+            loadNextIfNeeded(buffer, segment);
+            filled += reserve(segment, ids, filled);
+            if (filled == count) {
+                buffer.addIssued(count);
+                return new BatchResult(ids, Status.SUCCESS);
+            }
+            if (!switchToNext(buffer, segment)) {
+                logger.error("Both two segments in {} are not ready!", buffer);
+                return BatchResult.exception(countError(EXCEPTION_ID_TWO_SEGMENTS_ARE_NULL));
+            }
+        }
+    }
+
+    /**
+     * 一次getAndAdd预留ids中剩余的位置,超过max的部分不使用
+     * @return 实际预留的id个数
+     */
+    private int reserve(Segment segment, long[] ids, int filled) {
+        int need = ids.length - filled;
+        long start = segment.getValue().getAndAdd(need);
+        long end = Math.min(start + need, segment.getMax());
+        int reserved = 0;
+        for (long value = start; value < end; value++) {
+            ids[filled + reserved++] = value;
+        }
+        return reserved;
+    }
+
+    /**
+     * 当前号段已用完,切换到下一个号段,下一个号段正在装载时挂起等待
+     * 装载线程可能在刚切换到的号段用完之后才结束,这时它没有装载新的号段,需要再触发一次装载
+     * @return false表示等待后下一个号段仍然没有装载好
+     */
+    private boolean switchToNext(SegmentBuffer buffer, Segment exhausted) {
+        if (buffer.switchToNext(exhausted)) {
+            return true;
+        }
+        // 只统计真正需要等待的情况
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(MAX_WAIT_MILLIS);
+        try {
+            for (int i = 0; i < MAX_LOAD_ATTEMPTS; i++) {
+                loadNextIfNeeded(buffer, exhausted);
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
                     break;
+                }
+                try {
+                    buffer.awaitNext(exhausted, remaining, TimeUnit.NANOSECONDS);
                 } catch (InterruptedException e) {
-                    logger.warn("Thread {} Interrupted",Thread.currentThread().getName());
+                    logger.warn("Thread {} Interrupted", Thread.currentThread().getName());
+                    Thread.currentThread().interrupt();
                     break;
                 }
+                if (buffer.switchToNext(exhausted)) {
+                    return true;
+                }
+            }
+            return buffer.switchToNext(exhausted);
+        } finally {
+            buffer.getWaits().record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * 按当前发放速度,剩余的id能否支撑到下一个号段装载完成
+     * 发放速度上升时,在达到90%的装载点之前就开始装载
+     */
+    private boolean runsOutSoon(SegmentBuffer buffer, Segment segment) {
+        double rate = buffer.getRate();
+        if (rate <= 0) {
+            return false;
+        }
+        long lead = Math.max(MIN_PRELOAD_LEAD_MILLIS, buffer.getLoadMillis() * PRELOAD_LEAD_FACTOR);
+        return segment.getIdle() < rate * lead / 1000;
+    }
+
+    private void loadNextIfNeeded(final SegmentBuffer buffer, Segment segment) {
+        if (!buffer.isNextReady() && (segment.getIdle() < 0.9 * segment.getStep() || runsOutSoon(buffer, segment)) && buffer.getThreadRunning().compareAndSet(false, true)) {
+            boolean submitted = loader.submit(buffer.getKey(), new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        Segment next = updateSegmentFromDb(buffer.getKey(), buffer);
+                        buffer.setNext(next);
+                        logger.info("update segment {} from db {}", buffer.getKey(), next);
+                    } finally {
+                        buffer.loadFinished();
+                    }
+                }
+            });
+            if (!submitted) {
+                // 排队已满,本次不装载,之后取id时会再次尝试
+                buffer.loadFinished();
             }
         }
     }
@@ -277,6 +482,28 @@ public class SegmentIDGenImpl implements IDGen {
         return dao.getAllLeafAllocs();
     }
 
+    /**
+     * 按异常码统计的失败次数,key为Result中的异常id
+     */
+    public Map<Long, LongAdder> getErrors() {
+        return errors;
+    }
+
+    /**
+     * 停止后台装载号段和定时刷新的线程,在当前进程中嵌入使用时由容器关闭时调用
+     */
+    public void shutdown() {
+        initOK = false;
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        loader.shutdown();
+    }
+
+    public SegmentLoadExecutor getLoader() {
+        return loader;
+    }
+
     public Map<String, SegmentBuffer> getCache() {
         return cache;
     }
@@ -288,4 +515,15 @@ public class SegmentIDGenImpl implements IDGen {
     public void setDao(IDAllocDao dao) {
         this.dao = dao;
     }
+
+    public void setClock(Clock clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * 只装载和预热指定的key,在业务进程中嵌入使用时只需要本服务用到的key,需要在init之前设置
+     */
+    public void setTags(Collection<String> tags) {
+        this.tags = tags == null ? null : new HashSet<String>(tags);
+    }
 }
@@ -0,0 +1,132 @@
+package com.sankuai.inf.leaf.segment;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 后台从DB装载号段的线程池
+ * 线程数和队列长度都有上限,DB变慢时不会无限创建线程;队列满时拒绝装载,由调用者决定如何处理
+ * 同一个key同时只有一个任务在排队,并统计排队、耗时和失败次数
+ */
+public class SegmentLoadExecutor {
+    private static final Logger logger = LoggerFactory.getLogger(SegmentLoadExecutor.class);
+
+    private final ThreadPoolExecutor executor;
+    private final Set<String> queuedKeys = ConcurrentHashMap.newKeySet();
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder succeeded = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder duplicated = new LongAdder();
+    private final LongAdder totalLoadMillis = new LongAdder();
+    private final AtomicLong maxLoadMillis = new AtomicLong();
+    private volatile long lastLoadMillis;
+
+    /**
+     * @param threads 装载线程数
+     * @param queueCapacity 等待装载的任务数上限
+     * @param threadFactory 装载线程的ThreadFactory
+     */
+    public SegmentLoadExecutor(int threads, int queueCapacity, ThreadFactory threadFactory) {
+        executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(queueCapacity), threadFactory, new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * 提交一个key的装载任务
+     * @return false表示这个key已经有任务在排队,或者队列已满被拒绝
+     */
+    public boolean submit(final String key, final Runnable load) {
+        if (!queuedKeys.add(key)) {
+            duplicated.increment();
+            return false;
+        }
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    // 开始执行后允许再次提交,执行期间的重复装载由调用者控制
+                    queuedKeys.remove(key);
+                    long start = System.currentTimeMillis();
+                    try {
+                        load.run();
+                        succeeded.increment();
+                    } catch (RuntimeException e) {
+                        failed.increment();
+                        logger.warn(key + " load segment exception", e);
+                    } finally {
+                        record(System.currentTimeMillis() - start);
+                    }
+                }
+            });
+            submitted.increment();
+            return true;
+        } catch (RejectedExecutionException e) {
+            queuedKeys.remove(key);
+            rejected.increment();
+            logger.warn("Segment load queue is full, reject loading {}", key);
+            return false;
+        }
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    public long getFailedCount() {
+        return failed.sum();
+    }
+
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    public Map<String, Number> stats() {
+        Map<String, Number> stats = new LinkedHashMap<>();
+        long completed = succeeded.sum() + failed.sum();
+        stats.put("threads", executor.getMaximumPoolSize());
+        stats.put("active", executor.getActiveCount());
+        stats.put("queueDepth", executor.getQueue().size());
+        stats.put("queueRemaining", executor.getQueue().remainingCapacity());
+        stats.put("submitted", submitted.sum());
+        stats.put("succeeded", succeeded.sum());
+        stats.put("failed", failed.sum());
+        stats.put("rejected", rejected.sum());
+        stats.put("duplicated", duplicated.sum());
+        stats.put("lastLoadMillis", lastLoadMillis);
+        stats.put("maxLoadMillis", maxLoadMillis.get());
+        stats.put("avgLoadMillis", completed == 0 ? 0 : totalLoadMillis.sum() / completed);
+        return stats;
+    }
+
+    private void record(long millis) {
+        lastLoadMillis = millis;
+        totalLoadMillis.add(millis);
+        long max;
+        do {
+            max = maxLoadMillis.get();
+        } while (millis > max && !maxLoadMillis.compareAndSet(max, millis));
+    }
+}
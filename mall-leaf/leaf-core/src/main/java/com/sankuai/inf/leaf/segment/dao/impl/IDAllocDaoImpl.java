@@ -1,5 +1,6 @@
 package com.sankuai.inf.leaf.segment.dao.impl;
 
+import com.sankuai.inf.leaf.common.LatencyStats;
 import com.sankuai.inf.leaf.segment.dao.IDAllocDao;
 import com.sankuai.inf.leaf.segment.dao.IDAllocMapper;
 import com.sankuai.inf.leaf.segment.model.LeafAlloc;
@@ -12,32 +13,60 @@ import org.apache.ibatis.transaction.TransactionFactory;
 import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
 
 import javax.sql.DataSource;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 public class IDAllocDaoImpl implements IDAllocDao {
 
     SqlSessionFactory sqlSessionFactory;
 
+    /**
+     * 每个方法访问DB的耗时,包括获取连接和提交
+     */
+    private final LatencyStats getAllLeafAllocsLatency = new LatencyStats();
+    private final LatencyStats updateMaxIdLatency = new LatencyStats();
+    private final LatencyStats updateMaxIdByCustomStepLatency = new LatencyStats();
+    private final LatencyStats getAllTagsLatency = new LatencyStats();
+    private final Map<String, LatencyStats> latencies;
+
     public IDAllocDaoImpl(DataSource dataSource) {
         TransactionFactory transactionFactory = new JdbcTransactionFactory();
         Environment environment = new Environment("development", transactionFactory, dataSource);
         Configuration configuration = new Configuration(environment);
         configuration.addMapper(IDAllocMapper.class);
         sqlSessionFactory = new SqlSessionFactoryBuilder().build(configuration);
+        Map<String, LatencyStats> map = new LinkedHashMap<>();
+        map.put("getAllLeafAllocs", getAllLeafAllocsLatency);
+        map.put("updateMaxId", updateMaxIdLatency);
+        map.put("updateMaxIdByCustomStep", updateMaxIdByCustomStepLatency);
+        map.put("getAllTags", getAllTagsLatency);
+        latencies = Collections.unmodifiableMap(map);
+    }
+
+    /**
+     * @return key为方法名,value为这个方法访问DB的耗时
+     */
+    public Map<String, LatencyStats> getLatencies() {
+        return latencies;
     }
 
     @Override
     public List<LeafAlloc> getAllLeafAllocs() {
+        long start = System.nanoTime();
         SqlSession sqlSession = sqlSessionFactory.openSession(false);
         try {
             return sqlSession.selectList("com.sankuai.inf.leaf.segment.dao.IDAllocMapper.getAllLeafAllocs");
         } finally {
             sqlSession.close();
+            getAllLeafAllocsLatency.record(System.nanoTime() - start);
         }
     }
 
     @Override
     public LeafAlloc updateMaxIdAndGetLeafAlloc(String tag) {
+        long start = System.nanoTime();
         SqlSession sqlSession = sqlSessionFactory.openSession();
         try {
             sqlSession.update("com.sankuai.inf.leaf.segment.dao.IDAllocMapper.updateMaxId", tag);
@@ -46,11 +75,13 @@ public class IDAllocDaoImpl implements IDAllocDao {
             return result;
         } finally {
             sqlSession.close();
+            updateMaxIdLatency.record(System.nanoTime() - start);
         }
     }
 
     @Override
     public LeafAlloc updateMaxIdByCustomStepAndGetLeafAlloc(LeafAlloc leafAlloc) {
+        long start = System.nanoTime();
         SqlSession sqlSession = sqlSessionFactory.openSession();
         try {
             sqlSession.update("com.sankuai.inf.leaf.segment.dao.IDAllocMapper.updateMaxIdByCustomStep", leafAlloc);
@@ -59,16 +90,19 @@ public class IDAllocDaoImpl implements IDAllocDao {
             return result;
         } finally {
             sqlSession.close();
+            updateMaxIdByCustomStepLatency.record(System.nanoTime() - start);
         }
     }
 
     @Override
     public List<String> getAllTags() {
+        long start = System.nanoTime();
         SqlSession sqlSession = sqlSessionFactory.openSession(false);
         try {
             return sqlSession.selectList("com.sankuai.inf.leaf.segment.dao.IDAllocMapper.getAllTags");
         } finally {
             sqlSession.close();
+            getAllTagsLatency.record(System.nanoTime() - start);
         }
     }
 }
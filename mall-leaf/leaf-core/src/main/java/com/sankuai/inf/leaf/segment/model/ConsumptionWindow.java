@@ -0,0 +1,64 @@
+package com.sankuai.inf.leaf.segment.model;
+
+/**
+ * 滑动窗口,记录一个key最近一段时间内已发放id的数量,用于计算发放速度
+ * 由定时线程每秒采样一次,装载号段时也会采样一次
+ */
+public class ConsumptionWindow {
+    private final long minIntervalMillis;
+    private final long[] timestamps;
+    private final long[] consumed;
+    private int size;
+    private int last = -1;
+
+    /**
+     * @param capacity 窗口中保留的采样个数
+     * @param minIntervalMillis 两次采样的最小间隔,间隔太短时计算出的速度误差很大,忽略这次采样
+     */
+    public ConsumptionWindow(int capacity, long minIntervalMillis) {
+        this.minIntervalMillis = minIntervalMillis;
+        this.timestamps = new long[capacity];
+        this.consumed = new long[capacity];
+    }
+
+    public synchronized void record(long timestamp, long total) {
+        if (size > 0 && timestamp - timestamps[last] < minIntervalMillis) {
+            return;
+        }
+        last = (last + 1) % timestamps.length;
+        timestamps[last] = timestamp;
+        consumed[last] = total;
+        if (size < timestamps.length) {
+            size++;
+        }
+    }
+
+    /**
+     * 整个窗口内的平均qps,采样不足两个时返回0
+     */
+    public synchronized double qps() {
+        if (size < 2) {
+            return 0;
+        }
+        int first = (last - size + 1 + timestamps.length) % timestamps.length;
+        return rate(first, last);
+    }
+
+    /**
+     * 最近两次采样之间的qps,发放速度上升时比qps()更快反映出来
+     */
+    public synchronized double recentQps() {
+        if (size < 2) {
+            return 0;
+        }
+        return rate((last - 1 + timestamps.length) % timestamps.length, last);
+    }
+
+    private double rate(int from, int to) {
+        long millis = timestamps[to] - timestamps[from];
+        if (millis <= 0) {
+            return 0;
+        }
+        return Math.max(0, consumed[to] - consumed[from]) * 1000.0 / millis;
+    }
+}
@@ -2,40 +2,42 @@ package com.sankuai.inf.leaf.segment.model;
 
 import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * 号段,每次从DB装载都创建新的Segment,max和step创建后不再修改
+ * 已经用完的Segment不会被重新装载,持有旧引用的线程只会取到超过max的值,不会取到重复的id
+ */
 public class Segment {
-    private AtomicLong value = new AtomicLong(0);
-    private volatile long max;
-    private volatile int step;
-    private SegmentBuffer buffer;
-
+    private final AtomicLong value;
+    private final long max;
+    private final int step;
+    private final SegmentBuffer buffer;
+
+    /**
+     * 尚未从DB装载的空号段
+     */
     public Segment(SegmentBuffer buffer) {
+        this(buffer, 0, 0, 0);
+    }
+
+    public Segment(SegmentBuffer buffer, long value, long max, int step) {
         this.buffer = buffer;
+        this.value = new AtomicLong(value);
+        this.max = max;
+        this.step = step;
     }
 
     public AtomicLong getValue() {
         return value;
     }
 
-    public void setValue(AtomicLong value) {
-        this.value = value;
-    }
-
     public long getMax() {
         return max;
     }
 
-    public void setMax(long max) {
-        this.max = max;
-    }
-
     public int getStep() {
         return step;
     }
 
-    public void setStep(int step) {
-        this.step = step;
-    }
-
     public SegmentBuffer getBuffer() {
         return buffer;
     }
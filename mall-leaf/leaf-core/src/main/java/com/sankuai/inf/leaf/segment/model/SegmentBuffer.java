@@ -1,34 +1,67 @@
 package com.sankuai.inf.leaf.segment.model;
 
+import com.sankuai.inf.leaf.common.LatencyStats;
+
 import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * 双buffer
+ * 取id时只读取current的引用,在Segment上做一次CAS,不加锁
+ * 当前号段用完时,由CAS成功的一个线程切换到下一个号段;下一个号段还没装载好时,其它线程挂起等待装载完成
  */
 public class SegmentBuffer {
+    /**
+     * 发放速度窗口的采样个数,每秒采样一次
+     */
+    private static final int WINDOW_SAMPLES = 10;
+    private static final long MIN_SAMPLE_INTERVAL_MILLIS = 500;
+
     private String key;
-    private Segment[] segments; //双buffer
+    private final Segment[] segments; //双buffer,仅用于监控展示
     private volatile int currentPos; //当前的使用的segment的index
-    private volatile boolean nextReady; //下一个segment是否处于可切换状态
+    private final AtomicReference<Segment> current; //当前使用的segment
+    private final AtomicReference<Segment> next; //已装载好、可以切换的下一个segment,没有时为null
     private volatile boolean initOk; //是否初始化完成
     private final AtomicBoolean threadRunning; //线程是否在运行中
-    private final ReadWriteLock lock;
+    private final Lock lock; //只用于等待下一个segment装载完成
+    private final Condition loaded;
 
     private volatile int step;
     private volatile int minStep;
     private volatile long updateTimestamp;
 
+    private final AtomicLong finished; //已用完的segment发放的id数量
+    private final LongAdder issued; //成功返回给调用者的id数量,只增不减
+    private final ConsumptionWindow window; //最近的发放速度
+    private volatile double qps;
+    private volatile double recentQps;
+    private volatile long loadMillis; //最近一次从DB装载号段的耗时
+    private volatile String stepPolicy; //最近一次计算step使用的策略
+    private final AtomicLong switches; //切换号段的次数
+    private final LatencyStats waits; //号段用完时等待下一个号段的耗时
+
     public SegmentBuffer() {
         segments = new Segment[]{new Segment(this), new Segment(this)};
         currentPos = 0;
-        nextReady = false;
+        current = new AtomicReference<>(segments[0]);
+        next = new AtomicReference<>();
         initOk = false;
         threadRunning = new AtomicBoolean(false);
-        lock = new ReentrantReadWriteLock();
+        lock = new ReentrantLock();
+        loaded = lock.newCondition();
+        finished = new AtomicLong(0);
+        issued = new LongAdder();
+        window = new ConsumptionWindow(WINDOW_SAMPLES, MIN_SAMPLE_INTERVAL_MILLIS);
+        switches = new AtomicLong(0);
+        waits = new LatencyStats();
     }
 
     public String getKey() {
@@ -44,7 +77,15 @@ public class SegmentBuffer {
     }
 
     public Segment getCurrent() {
-        return segments[currentPos];
+        return current.get();
+    }
+
+    /**
+     * 初始化时设置第一个segment
+     */
+    public void setCurrent(Segment segment) {
+        segments[currentPos] = segment;
+        current.set(segment);
     }
 
     public int getCurrentPos() {
@@ -55,8 +96,131 @@ public class SegmentBuffer {
         return (currentPos + 1) % 2;
     }
 
-    public void switchPos() {
-        currentPos = nextPos();
+    /**
+     * 下一个segment装载完成后调用,之后可以切换
+     */
+    public void setNext(Segment segment) {
+        segments[nextPos()] = segment;
+        next.set(segment);
+    }
+
+    /**
+     * 当前segment用完后切换到下一个segment,只有一个线程能切换成功
+     * @param exhausted 调用者取id时使用的、已经用完的segment
+     * @return true表示current已经不是exhausted(自己或其它线程已切换),可以重新取id;false表示下一个segment还没有装载好
+     */
+    public boolean switchToNext(Segment exhausted) {
+        if (current.get() != exhausted) {
+            return true;
+        }
+        Segment segment = next.get();
+        if (segment == null) {
+            return false;
+        }
+        if (current.compareAndSet(exhausted, segment)) {
+            finished.addAndGet(exhausted.getStep());
+            next.compareAndSet(segment, null);
+            currentPos = nextPos();
+            switches.incrementAndGet();
+        }
+        return true;
+    }
+
+    /**
+     * 挂起等待,直到下一个segment装载完成、current被切换或装载线程结束
+     */
+    public void awaitNext(Segment exhausted, long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lock();
+        try {
+            while (next.get() == null && current.get() == exhausted && threadRunning.get() && nanos > 0) {
+                nanos = loaded.awaitNanos(nanos);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 装载线程结束(无论成功与否)时调用,唤醒所有等待的线程
+     */
+    public void loadFinished() {
+        lock.lock();
+        try {
+            threadRunning.set(false);
+            loaded.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 本节点已发放的id数量,用于计算发放速度
+     * 切换号段的瞬间可能短暂变小,作为计数器上报时使用getIssued
+     */
+    public long getConsumed() {
+        Segment segment = current.get();
+        long used = Math.min(segment.getValue().get(), segment.getMax()) - (segment.getMax() - segment.getStep());
+        return finished.get() + Math.max(0, used);
+    }
+
+    public void addIssued(long count) {
+        issued.add(count);
+    }
+
+    /**
+     * 成功返回给调用者的id数量,只增不减
+     */
+    public long getIssued() {
+        return issued.sum();
+    }
+
+    /**
+     * 记录一次发放数量的采样并更新qps
+     */
+    public void sample(long timestamp) {
+        window.record(timestamp, getConsumed());
+        qps = window.qps();
+        recentQps = window.recentQps();
+    }
+
+    /**
+     * 用于计算step和提前装载的发放速度,速度上升时取最近一秒的速度
+     */
+    public double getRate() {
+        return Math.max(qps, recentQps);
+    }
+
+    public double getQps() {
+        return qps;
+    }
+
+    public double getRecentQps() {
+        return recentQps;
+    }
+
+    public long getLoadMillis() {
+        return loadMillis;
+    }
+
+    public void setLoadMillis(long loadMillis) {
+        this.loadMillis = loadMillis;
+    }
+
+    public String getStepPolicy() {
+        return stepPolicy;
+    }
+
+    public void setStepPolicy(String stepPolicy) {
+        this.stepPolicy = stepPolicy;
+    }
+
+    public long getSwitchCount() {
+        return switches.get();
+    }
+
+    public LatencyStats getWaits() {
+        return waits;
     }
 
     public boolean isInitOk() {
@@ -68,25 +232,13 @@ public class SegmentBuffer {
     }
 
     public boolean isNextReady() {
-        return nextReady;
-    }
-
-    public void setNextReady(boolean nextReady) {
-        this.nextReady = nextReady;
+        return next.get() != null;
     }
 
     public AtomicBoolean getThreadRunning() {
         return threadRunning;
     }
 
-    public Lock rLock() {
-        return lock.readLock();
-    }
-
-    public Lock wLock() {
-        return lock.writeLock();
-    }
-
     public int getStep() {
         return step;
     }
@@ -117,12 +269,17 @@ public class SegmentBuffer {
         sb.append("key='").append(key).append('\'');
         sb.append(", segments=").append(Arrays.toString(segments));
         sb.append(", currentPos=").append(currentPos);
-        sb.append(", nextReady=").append(nextReady);
+        sb.append(", nextReady=").append(isNextReady());
         sb.append(", initOk=").append(initOk);
         sb.append(", threadRunning=").append(threadRunning);
         sb.append(", step=").append(step);
         sb.append(", minStep=").append(minStep);
         sb.append(", updateTimestamp=").append(updateTimestamp);
+        sb.append(", qps=").append(qps);
+        sb.append(", recentQps=").append(recentQps);
+        sb.append(", loadMillis=").append(loadMillis);
+        sb.append(", stepPolicy=").append(stepPolicy);
+        sb.append(", switches=").append(switches);
         sb.append('}');
         return sb.toString();
     }
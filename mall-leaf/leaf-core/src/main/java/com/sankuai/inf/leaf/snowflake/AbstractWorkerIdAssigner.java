@@ -0,0 +1,68 @@
+package com.sankuai.inf.leaf.snowflake;
+
+import com.sankuai.inf.leaf.snowflake.exception.CheckLastTimeException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 定时上报时间的公共部分,和SnowflakeZookeeperHolder一样每3s上报一次
+ */
+public abstract class AbstractWorkerIdAssigner implements WorkerIdAssigner {
+    private static final Logger LOGGER = LoggerFactory.getLogger(AbstractWorkerIdAssigner.class);
+
+    /**
+     * workerId的最大值,和SnowflakeIDGenImpl的workerIdBits对应
+     */
+    protected static final int MAX_WORKER_ID = 1023;
+    /**
+     * 上报时间的间隔
+     */
+    protected static final long HEARTBEAT_MILLIS = 3000;
+
+    private volatile long lastUpdateTime;
+
+    protected void checkLastTimestamp(long lastTimestamp) {
+        //该节点的时间不能小于最后一次上报的时间
+        if (lastTimestamp > currentTime()) {
+            throw new CheckLastTimeException("init timestamp check error,last heartbeat timestamp gt this node time");
+        }
+    }
+
+    protected void startHeartbeat(final int workerId) {
+        Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "schedule-upload-time");
+                thread.setDaemon(true);
+                return thread;
+            }
+        }).scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                long now = currentTime();
+                if (now < lastUpdateTime) {
+                    return;
+                }
+                try {
+                    heartbeat(workerId, now);
+                    lastUpdateTime = now;
+                } catch (Exception e) {
+                    LOGGER.warn("heartbeat workerId {} error", workerId, e);
+                }
+            }
+        }, HEARTBEAT_MILLIS, HEARTBEAT_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 上报本节点当前的时间
+     */
+    protected abstract void heartbeat(int workerId, long timestamp) throws Exception;
+
+    protected long currentTime() {
+        return System.currentTimeMillis();
+    }
+}
@@ -0,0 +1,153 @@
+package com.sankuai.inf.leaf.snowflake;
+
+import com.sankuai.inf.leaf.snowflake.dao.WorkerLeaseDao;
+import com.sankuai.inf.leaf.snowflake.model.WorkerLease;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 通过数据库租约分配workerId,使用号段模式的leaf数据库(leaf_worker表),不需要zk
+ * 1.表中已有本节点(ip:port)的租约时继续使用原来的workerId
+ * 2.否则接管一个已过期的租约
+ * 3.没有过期的租约时新增一个未使用的workerId
+ * 租约随上报时间一起续期,节点停止后超过租约时间,它的workerId可以被其它节点接管
+ * 续约失败(租约已被接管)或者超过本地记录的租约到期时间时,本节点停止发放id,
+ * 之后每次上报时尝试重新取得同一个workerId的租约,取得后恢复发放
+ */
+public class DbWorkerIdAssigner extends AbstractWorkerIdAssigner {
+    private static final Logger LOGGER = LoggerFactory.getLogger(DbWorkerIdAssigner.class);
+
+    /**
+     * 租约时长,远大于上报间隔,数据库短暂不可用时不会失去租约
+     */
+    private static final long LEASE_MILLIS = 10 * 60 * 1000L;
+
+    private final WorkerLeaseDao dao;
+    private final String endpoint;
+    /**
+     * 本节点租约的到期时间,续约成功后更新,数据库不可用时到期后同样停止发放id
+     */
+    private volatile long leaseExpire;
+    /**
+     * 租约已经被其它节点接管
+     */
+    private volatile boolean leaseLost;
+
+    /**
+     * @param dao      leaf_worker表的dao
+     * @param endpoint 本节点的标识,ip:port
+     */
+    public DbWorkerIdAssigner(WorkerLeaseDao dao, String endpoint) {
+        this.dao = dao;
+        this.endpoint = endpoint;
+    }
+
+    @Override
+    public int assign() {
+        WorkerLease lease = acquire();
+        LOGGER.info("endpoint {} acquire lease {}", endpoint, lease);
+        leaseExpire = lease.getLeaseExpire();
+        startHeartbeat(lease.getWorkerId());
+        return lease.getWorkerId();
+    }
+
+    private WorkerLease acquire() {
+        List<WorkerLease> leases = dao.getAllLeases();
+        long now = currentTime();
+        for (WorkerLease lease : leases) {
+            if (endpoint.equals(lease.getEndpoint())) {
+                checkLastTimestamp(lease.getLastTimestamp());
+                renew(lease, now);
+                if (dao.renewLease(lease)) {
+                    return lease;
+                }
+            }
+        }
+        for (WorkerLease lease : leases) {
+            if (lease.getLeaseExpire() < now) {
+                // 接管其它节点的workerId,同样不能早于它最后一次上报的时间
+                checkLastTimestamp(lease.getLastTimestamp());
+                long expectedLeaseExpire = lease.getLeaseExpire();
+                lease.setEndpoint(endpoint);
+                renew(lease, now);
+                if (dao.takeOverLease(lease, expectedLeaseExpire)) {
+                    return lease;
+                }
+            }
+        }
+        Set<Integer> used = new HashSet<>();
+        for (WorkerLease lease : leases) {
+            used.add(lease.getWorkerId());
+        }
+        for (int workerId = 0; workerId <= MAX_WORKER_ID; workerId++) {
+            if (used.contains(workerId)) {
+                continue;
+            }
+            WorkerLease lease = new WorkerLease();
+            lease.setWorkerId(workerId);
+            lease.setEndpoint(endpoint);
+            renew(lease, now);
+            // 其它节点同时新增了相同的workerId时插入失败,继续尝试下一个
+            if (dao.insertLease(lease)) {
+                return lease;
+            }
+        }
+        throw new IllegalStateException("no available snowflake workerId, all " + (MAX_WORKER_ID + 1) + " leases are in use");
+    }
+
+    @Override
+    public boolean isValid() {
+        return !leaseLost && currentTime() < leaseExpire;
+    }
+
+    @Override
+    protected void heartbeat(int workerId, long timestamp) {
+        if (leaseLost) {
+            reacquire(workerId, timestamp);
+            return;
+        }
+        WorkerLease lease = new WorkerLease();
+        lease.setWorkerId(workerId);
+        lease.setEndpoint(endpoint);
+        renew(lease, timestamp);
+        if (dao.renewLease(lease)) {
+            leaseExpire = lease.getLeaseExpire();
+        } else {
+            leaseLost = true;
+            LOGGER.error("lease of workerId {} is taken over by other endpoint, this node {} stops generating ids", workerId, endpoint);
+        }
+    }
+
+    /**
+     * 租约被接管后,只有它再次过期(或者又回到本节点)时才能重新取得同一个workerId
+     */
+    private void reacquire(int workerId, long timestamp) {
+        for (WorkerLease lease : dao.getAllLeases()) {
+            if (lease.getWorkerId() != workerId) {
+                continue;
+            }
+            boolean own = endpoint.equals(lease.getEndpoint());
+            if (!own && (lease.getLeaseExpire() >= timestamp || lease.getLastTimestamp() > timestamp)) {
+                return;
+            }
+            long expectedLeaseExpire = lease.getLeaseExpire();
+            lease.setEndpoint(endpoint);
+            renew(lease, timestamp);
+            if (own ? dao.renewLease(lease) : dao.takeOverLease(lease, expectedLeaseExpire)) {
+                leaseExpire = lease.getLeaseExpire();
+                leaseLost = false;
+                LOGGER.info("endpoint {} reacquire lease {}, generating ids again", endpoint, lease);
+            }
+            return;
+        }
+    }
+
+    private void renew(WorkerLease lease, long now) {
+        lease.setLastTimestamp(now);
+        lease.setLeaseExpire(now + LEASE_MILLIS);
+    }
+}
@@ -0,0 +1,128 @@
+package com.sankuai.inf.leaf.snowflake;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+
+/**
+ * 通过文件锁分配workerId,适用于所有节点都在同一台机器(或共享同一个支持文件锁的目录)的部署
+ * 目录下每个workerId对应一个文件worker-{id}.lock,进程持有文件锁期间独占这个workerId,进程退出后锁自动释放
+ * 文件内容为最后一次上报的时间
+ */
+public class FileWorkerIdAssigner extends AbstractWorkerIdAssigner {
+    private static final Logger LOGGER = LoggerFactory.getLogger(FileWorkerIdAssigner.class);
+
+    private final File dir;
+    private FileChannel channel;
+    private FileLock lock;
+
+    public FileWorkerIdAssigner(File dir) {
+        this.dir = dir;
+    }
+
+    @Override
+    public synchronized int assign() {
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IllegalStateException("can not create workerId dir " + dir);
+        }
+        for (int workerId = 0; workerId <= MAX_WORKER_ID; workerId++) {
+            if (tryLock(workerId)) {
+                LOGGER.info("lock workerId {} in {}", workerId, dir);
+                startHeartbeat(workerId);
+                return workerId;
+            }
+        }
+        throw new IllegalStateException("no available snowflake workerId in " + dir);
+    }
+
+    private boolean tryLock(int workerId) {
+        RandomAccessFile file = null;
+        try {
+            file = new RandomAccessFile(new File(dir, "worker-" + workerId + ".lock"), "rw");
+            FileChannel fileChannel = file.getChannel();
+            FileLock fileLock;
+            try {
+                fileLock = fileChannel.tryLock();
+            } catch (OverlappingFileLockException e) {
+                // 本进程已经持有这个workerId
+                fileLock = null;
+            }
+            if (fileLock == null) {
+                file.close();
+                return false;
+            }
+            try {
+                checkLastTimestamp(readTimestamp(fileChannel));
+                writeTimestamp(fileChannel, currentTime());
+            } catch (RuntimeException | IOException e) {
+                fileLock.release();
+                file.close();
+                throw e;
+            }
+            channel = fileChannel;
+            lock = fileLock;
+            return true;
+        } catch (IOException e) {
+            LOGGER.warn("lock workerId {} file error", workerId, e);
+            if (file != null) {
+                try {
+                    file.close();
+                } catch (IOException ignored) {
+                }
+            }
+            return false;
+        }
+    }
+
+    @Override
+    protected synchronized void heartbeat(int workerId, long timestamp) throws IOException {
+        if (channel != null) {
+            writeTimestamp(channel, timestamp);
+        }
+    }
+
+    /**
+     * 文件锁释放后不能再使用这个workerId
+     */
+    @Override
+    public synchronized boolean isValid() {
+        return lock != null && lock.isValid();
+    }
+
+    private long readTimestamp(FileChannel fileChannel) throws IOException {
+        if (fileChannel.size() < 8) {
+            return 0;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(8);
+        fileChannel.read(buffer, 0);
+        buffer.flip();
+        return buffer.getLong();
+    }
+
+    private void writeTimestamp(FileChannel fileChannel, long timestamp) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(8);
+        buffer.putLong(timestamp);
+        buffer.flip();
+        fileChannel.write(buffer, 0);
+        fileChannel.force(false);
+    }
+
+    /**
+     * 释放文件锁,停止使用这个workerId
+     */
+    public synchronized void release() throws IOException {
+        if (lock != null) {
+            lock.release();
+            channel.close();
+            lock = null;
+            channel = null;
+        }
+    }
+}
@@ -2,13 +2,15 @@ package com.sankuai.inf.leaf.snowflake;
 
 import com.google.common.base.Preconditions;
 import com.sankuai.inf.leaf.IDGen;
+import com.sankuai.inf.leaf.common.BatchResult;
 import com.sankuai.inf.leaf.common.Result;
 import com.sankuai.inf.leaf.common.Status;
-import com.sankuai.inf.leaf.common.Utils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 public class SnowflakeIDGenImpl implements IDGen {
 
@@ -19,6 +21,28 @@ public class SnowflakeIDGenImpl implements IDGen {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(SnowflakeIDGenImpl.class);
 
+    /**
+     * Thu Nov 04 2010 09:42:54 GMT+0800 (中国标准时间)
+     */
+    public static final long DEFAULT_TWEPOCH = 1288834974657L;
+
+    /**
+     * 时钟回拨不超过这个时间时,继续使用之前的时间戳,不阻塞也不报错
+     */
+    private static final long MAX_BACKWARD_MILLIS = 5;
+    /**
+     * 序号用完时向后借用的毫秒数上限,超过时让出CPU等待时钟追上
+     */
+    private static final long MAX_BORROW_MILLIS = 5;
+    /**
+     * 失去workerId时的异常码
+     */
+    public static final long EXCEPTION_ID_WORKER_INVALID = -4;
+    /**
+     * 批量获取的数量不是正数时的异常码
+     */
+    public static final long EXCEPTION_ID_INVALID_COUNT = -5;
+
     private final long twepoch;
     private final long workerIdBits = 10L;
     private final long maxWorkerId = ~(-1L << workerIdBits);//最大能够分配的workerid =1023
@@ -27,13 +51,22 @@ public class SnowflakeIDGenImpl implements IDGen {
     private final long timestampLeftShift = sequenceBits + workerIdBits;
     private final long sequenceMask = ~(-1L << sequenceBits);
     private long workerId;
-    private long sequence = 0L;
-    private long lastTimestamp = -1L;
-    private static final Random RANDOM = new Random();
+    /**
+     * workerId的分配方式,直接指定workerId时为null
+     */
+    private final WorkerIdAssigner assigner;
+    /**
+     * (timestamp - twepoch) << sequenceBits | sequence,最近一次发放的时间戳和序号
+     * 序号用完时加1会进位到时间戳,相当于借用下一毫秒
+     */
+    private final AtomicLong state = new AtomicLong(-1L);
+    /**
+     * 时钟回拨超过容忍范围导致的失败次数
+     */
+    private final LongAdder clockBackwardsErrors = new LongAdder();
 
     public SnowflakeIDGenImpl(String zkAddress, int port) {
-        //Thu Nov 04 2010 09:42:54 GMT+0800 (中国标准时间) 
-        this(zkAddress, port, 1288834974657L);
+        this(zkAddress, port, DEFAULT_TWEPOCH);
     }
 
     /**
@@ -42,64 +75,109 @@ public class SnowflakeIDGenImpl implements IDGen {
      * @param twepoch   起始的时间戳
      */
     public SnowflakeIDGenImpl(String zkAddress, int port, long twepoch) {
+        this(new ZookeeperWorkerIdAssigner(zkAddress, port), twepoch);
+        LOGGER.info("zkAddress:{} port:{}", zkAddress, port);
+    }
+
+    /**
+     * @param assigner workerId的分配方式
+     * @param twepoch  起始的时间戳
+     */
+    public SnowflakeIDGenImpl(WorkerIdAssigner assigner, long twepoch) {
         this.twepoch = twepoch;
+        this.assigner = assigner;
+        Preconditions.checkArgument(timeGen() > twepoch, "Snowflake not support twepoch gt currentTime");
+        workerId = assigner.assign();
+        LOGGER.info("START SUCCESS USE {} WORKERID-{}, twepoch:{}", assigner.getClass().getSimpleName(), workerId, twepoch);
+        Preconditions.checkArgument(workerId >= 0 && workerId <= maxWorkerId, "workerID must gte 0 and lte 1023");
+    }
+
+    /**
+     * 直接指定workerId,不通过zk分配
+     * @param workerId 调用者保证不同节点的workerId不重复
+     * @param twepoch  起始的时间戳
+     */
+    public SnowflakeIDGenImpl(long workerId, long twepoch) {
+        this.twepoch = twepoch;
+        this.assigner = null;
         Preconditions.checkArgument(timeGen() > twepoch, "Snowflake not support twepoch gt currentTime");
-        final String ip = Utils.getIp();
-        SnowflakeZookeeperHolder holder = new SnowflakeZookeeperHolder(ip, String.valueOf(port), zkAddress);
-        LOGGER.info("twepoch:{} ,ip:{} ,zkAddress:{} port:{}", twepoch, ip, zkAddress, port);
-        boolean initFlag = holder.init();
-        if (initFlag) {
-            workerId = holder.getWorkerID();
-            LOGGER.info("START SUCCESS USE ZK WORKERID-{}", workerId);
-        } else {
-            Preconditions.checkArgument(initFlag, "Snowflake Id Gen is not init ok");
-        }
         Preconditions.checkArgument(workerId >= 0 && workerId <= maxWorkerId, "workerID must gte 0 and lte 1023");
+        this.workerId = workerId;
+        LOGGER.info("twepoch:{} ,workerId:{}", twepoch, workerId);
     }
 
     @Override
-    public synchronized Result get(String key) {
-        long timestamp = timeGen();
-        if (timestamp < lastTimestamp) {
-            long offset = lastTimestamp - timestamp;
-            if (offset <= 5) {
-                try {
-                    wait(offset << 1);
-                    timestamp = timeGen();
-                    if (timestamp < lastTimestamp) {
-                        return new Result(-1, Status.EXCEPTION);
-                    }
-                } catch (InterruptedException e) {
-                    LOGGER.error("wait interrupted");
-                    return new Result(-2, Status.EXCEPTION);
-                }
+    public Result get(String key) {
+        long next = reserve(1);
+        if (next < 0) {
+            return new Result(next, Status.EXCEPTION);
+        }
+        return new Result(toId(next), Status.SUCCESS);
+    }
+
+    /**
+     * 一次预留count个连续的序号,序号不够时进位到下一毫秒
+     * count不是正数时返回-5,预留0个或负数个序号会让state后退,导致重复的id
+     */
+    @Override
+    public BatchResult get(String key, int count) {
+        if (count <= 0) {
+            return BatchResult.exception(EXCEPTION_ID_INVALID_COUNT);
+        }
+        long last = reserve(count);
+        if (last < 0) {
+            return BatchResult.exception(last);
+        }
+        long[] ids = new long[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = toId(last - count + 1 + i);
+        }
+        return new BatchResult(ids, Status.SUCCESS);
+    }
+
+    /**
+     * 无锁预留count个序号,只有一次CAS
+     * 新的一毫秒从随机序号开始;同一毫秒或者小幅时钟回拨时在上一次的基础上递增
+     * 失去workerId时不发放,返回-4
+     * @return 预留的最后一个state,小于0时为异常码
+     */
+    private long reserve(int count) {
+        if (assigner != null && !assigner.isValid()) {
+            return EXCEPTION_ID_WORKER_INVALID;
+        }
+        while (true) {
+            // 先读state再读时钟,线程在两次读取之间被挂起时,读到的时间只会更新,不会被误判为时钟回拨
+            long prev = state.get();
+            long timestamp = timeGen() - twepoch;
+            long prevTimestamp = prev >> sequenceBits;
+            long next;
+            if (timestamp > prevTimestamp) {
+                //如果是新的ms开始,seq从随机数开始
+                next = (timestamp << sequenceBits) + ThreadLocalRandom.current().nextInt(100) + count - 1;
             } else {
-                return new Result(-3, Status.EXCEPTION);
+                long offset = prevTimestamp - timestamp;
+                if (offset > MAX_BORROW_MILLIS + MAX_BACKWARD_MILLIS) {
+                    LOGGER.error("clock moved backwards {} ms", offset);
+                    clockBackwardsErrors.increment();
+                    return -3;
+                }
+                if (offset > MAX_BORROW_MILLIS) {
+                    // 已经借用了太多毫秒,等待时钟追上
+                    Thread.yield();
+                    continue;
+                }
+                next = prev + count;
             }
-        }
-        if (lastTimestamp == timestamp) {
-            sequence = (sequence + 1) & sequenceMask;
-            if (sequence == 0) {
-                //seq 为0的时候表示是下一毫秒时间开始对seq做随机
-                sequence = RANDOM.nextInt(100);
-                timestamp = tilNextMillis(lastTimestamp);
+            if (state.compareAndSet(prev, next)) {
+                return next;
             }
-        } else {
-            //如果是新的ms开始
-            sequence = RANDOM.nextInt(100);
         }
-        lastTimestamp = timestamp;
-        long id = ((timestamp - twepoch) << timestampLeftShift) | (workerId << workerIdShift) | sequence;
-        return new Result(id, Status.SUCCESS);
-
     }
 
-    protected long tilNextMillis(long lastTimestamp) {
-        long timestamp = timeGen();
-        while (timestamp <= lastTimestamp) {
-            timestamp = timeGen();
-        }
-        return timestamp;
+    private long toId(long value) {
+        long timestamp = value >> sequenceBits;
+        long sequence = value & sequenceMask;
+        return (timestamp << timestampLeftShift) | (workerId << workerIdShift) | sequence;
     }
 
     protected long timeGen() {
@@ -110,4 +188,8 @@ public class SnowflakeIDGenImpl implements IDGen {
         return workerId;
     }
 
+    public long getClockBackwardsErrorCount() {
+        return clockBackwardsErrors.sum();
+    }
+
 }
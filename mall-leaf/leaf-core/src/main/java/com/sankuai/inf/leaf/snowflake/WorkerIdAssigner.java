@@ -0,0 +1,19 @@
+package com.sankuai.inf.leaf.snowflake;
+
+/**
+ * 分配snowflake的workerId
+ * 实现类负责保证同一时刻不同节点的workerId不重复,并定时上报本节点的时间,
+ * 重启时本机时间小于最后一次上报的时间说明时钟回拨,不能启动
+ */
+public interface WorkerIdAssigner {
+    /**
+     * 分配workerId并开始定时上报
+     * @return 0~1023之间的workerId
+     */
+    int assign();
+
+    /**
+     * 当前是否仍然持有workerId,失去workerId后不能再发放id,否则可能和接管它的节点重复
+     */
+    boolean isValid();
+}
@@ -0,0 +1,32 @@
+package com.sankuai.inf.leaf.snowflake;
+
+import com.google.common.base.Preconditions;
+import com.sankuai.inf.leaf.common.Utils;
+
+/**
+ * 通过zk分配workerId,即原来SnowflakeZookeeperHolder的方式
+ */
+public class ZookeeperWorkerIdAssigner implements WorkerIdAssigner {
+    private final String zkAddress;
+    private final int port;
+
+    public ZookeeperWorkerIdAssigner(String zkAddress, int port) {
+        this.zkAddress = zkAddress;
+        this.port = port;
+    }
+
+    @Override
+    public int assign() {
+        SnowflakeZookeeperHolder holder = new SnowflakeZookeeperHolder(Utils.getIp(), String.valueOf(port), zkAddress);
+        Preconditions.checkArgument(holder.init(), "Snowflake Id Gen is not init ok");
+        return holder.getWorkerID();
+    }
+
+    /**
+     * zk的永久节点不会被其它节点接管
+     */
+    @Override
+    public boolean isValid() {
+        return true;
+    }
+}
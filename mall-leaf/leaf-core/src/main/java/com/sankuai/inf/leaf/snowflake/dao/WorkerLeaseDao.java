@@ -0,0 +1,21 @@
+package com.sankuai.inf.leaf.snowflake.dao;
+
+import com.sankuai.inf.leaf.snowflake.model.WorkerLease;
+
+import java.util.List;
+
+public interface WorkerLeaseDao {
+     List<WorkerLease> getAllLeases();
+     /**
+      * 新增一个workerId的租约,workerId已存在时返回false
+      */
+     boolean insertLease(WorkerLease lease);
+     /**
+      * 接管过期的租约,租约在读取之后被其它节点续约或接管时返回false
+      */
+     boolean takeOverLease(WorkerLease lease, long expectedLeaseExpire);
+     /**
+      * 续约并上报时间,租约已经被其它节点接管时返回false
+      */
+     boolean renewLease(WorkerLease lease);
+}
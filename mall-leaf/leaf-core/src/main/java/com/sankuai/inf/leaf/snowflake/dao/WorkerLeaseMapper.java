@@ -0,0 +1,27 @@
+package com.sankuai.inf.leaf.snowflake.dao;
+
+import com.sankuai.inf.leaf.snowflake.model.WorkerLease;
+import org.apache.ibatis.annotations.*;
+
+import java.util.List;
+
+public interface WorkerLeaseMapper {
+
+    @Select("SELECT worker_id, endpoint, last_timestamp, lease_expire FROM leaf_worker")
+    @Results(value = {
+            @Result(column = "worker_id", property = "workerId"),
+            @Result(column = "endpoint", property = "endpoint"),
+            @Result(column = "last_timestamp", property = "lastTimestamp"),
+            @Result(column = "lease_expire", property = "leaseExpire")
+    })
+    List<WorkerLease> getAllLeases();
+
+    @Insert("INSERT IGNORE INTO leaf_worker(worker_id, endpoint, last_timestamp, lease_expire) VALUES(#{workerId}, #{endpoint}, #{lastTimestamp}, #{leaseExpire})")
+    int insertLease(WorkerLease lease);
+
+    @Update("UPDATE leaf_worker SET endpoint = #{lease.endpoint}, last_timestamp = #{lease.lastTimestamp}, lease_expire = #{lease.leaseExpire} WHERE worker_id = #{lease.workerId} AND lease_expire = #{expectedLeaseExpire}")
+    int takeOverLease(@Param("lease") WorkerLease lease, @Param("expectedLeaseExpire") long expectedLeaseExpire);
+
+    @Update("UPDATE leaf_worker SET last_timestamp = #{lastTimestamp}, lease_expire = #{leaseExpire} WHERE worker_id = #{workerId} AND endpoint = #{endpoint}")
+    int renewLease(WorkerLease lease);
+}
@@ -0,0 +1,68 @@
+package com.sankuai.inf.leaf.snowflake.dao.impl;
+
+import com.sankuai.inf.leaf.snowflake.dao.WorkerLeaseDao;
+import com.sankuai.inf.leaf.snowflake.dao.WorkerLeaseMapper;
+import com.sankuai.inf.leaf.snowflake.model.WorkerLease;
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.apache.ibatis.transaction.TransactionFactory;
+import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
+
+import javax.sql.DataSource;
+import java.util.List;
+
+public class WorkerLeaseDaoImpl implements WorkerLeaseDao {
+
+    SqlSessionFactory sqlSessionFactory;
+
+    public WorkerLeaseDaoImpl(DataSource dataSource) {
+        TransactionFactory transactionFactory = new JdbcTransactionFactory();
+        Environment environment = new Environment("development", transactionFactory, dataSource);
+        Configuration configuration = new Configuration(environment);
+        configuration.addMapper(WorkerLeaseMapper.class);
+        sqlSessionFactory = new SqlSessionFactoryBuilder().build(configuration);
+    }
+
+    @Override
+    public List<WorkerLease> getAllLeases() {
+        SqlSession sqlSession = sqlSessionFactory.openSession(false);
+        try {
+            return sqlSession.getMapper(WorkerLeaseMapper.class).getAllLeases();
+        } finally {
+            sqlSession.close();
+        }
+    }
+
+    @Override
+    public boolean insertLease(WorkerLease lease) {
+        SqlSession sqlSession = sqlSessionFactory.openSession(true);
+        try {
+            return sqlSession.getMapper(WorkerLeaseMapper.class).insertLease(lease) > 0;
+        } finally {
+            sqlSession.close();
+        }
+    }
+
+    @Override
+    public boolean takeOverLease(WorkerLease lease, long expectedLeaseExpire) {
+        SqlSession sqlSession = sqlSessionFactory.openSession(true);
+        try {
+            return sqlSession.getMapper(WorkerLeaseMapper.class).takeOverLease(lease, expectedLeaseExpire) > 0;
+        } finally {
+            sqlSession.close();
+        }
+    }
+
+    @Override
+    public boolean renewLease(WorkerLease lease) {
+        SqlSession sqlSession = sqlSessionFactory.openSession(true);
+        try {
+            return sqlSession.getMapper(WorkerLeaseMapper.class).renewLease(lease) > 0;
+        } finally {
+            sqlSession.close();
+        }
+    }
+}
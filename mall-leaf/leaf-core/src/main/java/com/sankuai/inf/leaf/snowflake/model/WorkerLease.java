@@ -0,0 +1,54 @@
+package com.sankuai.inf.leaf.snowflake.model;
+
+/**
+ * leaf_worker表中的一行,一个workerId的租约
+ */
+public class WorkerLease {
+    private int workerId;
+    private String endpoint;
+    private long lastTimestamp;
+    private long leaseExpire;
+
+    public int getWorkerId() {
+        return workerId;
+    }
+
+    public void setWorkerId(int workerId) {
+        this.workerId = workerId;
+    }
+
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    public void setEndpoint(String endpoint) {
+        this.endpoint = endpoint;
+    }
+
+    public long getLastTimestamp() {
+        return lastTimestamp;
+    }
+
+    public void setLastTimestamp(long lastTimestamp) {
+        this.lastTimestamp = lastTimestamp;
+    }
+
+    public long getLeaseExpire() {
+        return leaseExpire;
+    }
+
+    public void setLeaseExpire(long leaseExpire) {
+        this.leaseExpire = leaseExpire;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("WorkerLease{");
+        sb.append("workerId=").append(workerId);
+        sb.append(", endpoint='").append(endpoint).append('\'');
+        sb.append(", lastTimestamp=").append(lastTimestamp);
+        sb.append(", leaseExpire=").append(leaseExpire);
+        sb.append('}');
+        return sb.toString();
+    }
+}
@@ -0,0 +1,100 @@
+package com.sankuai.inf.leaf.segment;
+
+import com.sankuai.inf.leaf.common.Status;
+import com.sankuai.inf.leaf.segment.model.ConsumptionWindow;
+import com.sankuai.inf.leaf.segment.model.Segment;
+import com.sankuai.inf.leaf.segment.model.SegmentBuffer;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+public class AdaptiveStepTest {
+    private static final String KEY = "leaf-segment-test";
+
+    @Test
+    public void testWindowQps() {
+        ConsumptionWindow window = new ConsumptionWindow(3, 500);
+        Assert.assertEquals(0, window.qps(), 0.001);
+        window.record(0, 0);
+        window.record(1000, 500);
+        window.record(2000, 1500);
+        Assert.assertEquals(750, window.qps(), 0.001);
+        Assert.assertEquals(1000, window.recentQps(), 0.001);
+        // 超过容量后最早的采样被覆盖
+        window.record(3000, 4500);
+        Assert.assertEquals(2000, window.qps(), 0.001);
+        Assert.assertEquals(3000, window.recentQps(), 0.001);
+        // 间隔太短的采样被忽略
+        window.record(3100, 9999);
+        Assert.assertEquals(3000, window.recentQps(), 0.001);
+    }
+
+    @Test
+    public void testStepFollowsRate() {
+        // 不调用init,没有后台采样线程,采样时间全部由测试控制
+        ManualClock clock = new ManualClock(System.currentTimeMillis());
+        SegmentIDGenImpl idGen = new SegmentIDGenImpl();
+        idGen.setDao(new MemoryIDAllocDao(KEY, 10000));
+        idGen.setClock(clock);
+        SegmentBuffer buffer = new SegmentBuffer();
+        buffer.setKey(KEY);
+        try {
+            buffer.setCurrent(idGen.updateSegmentFromDb(KEY, buffer));
+            buffer.setInitOk(true);
+            buffer.sample(clock.millis());
+            // 不超过号段的10%,不会触发后台装载
+            for (int i = 0; i < 500; i++) {
+                Assert.assertEquals(Status.SUCCESS, idGen.getIdFromSegmentBuffer(buffer).getStatus());
+            }
+            clock.advance(1000);
+            buffer.sample(clock.millis());
+            buffer.setUpdateTimestamp(clock.millis() - 60000);
+            clock.advance(1000);
+            // 装载时再采样一次,2秒内发放了500个id,250qps,下一个号段应当能维持15分钟
+            Segment segment = idGen.updateSegmentFromDb(KEY, buffer);
+            Assert.assertEquals(SegmentIDGenImpl.STEP_POLICY_RATE, buffer.getStepPolicy());
+            Assert.assertEquals(225000, segment.getStep());
+        } finally {
+            idGen.shutdown();
+        }
+    }
+
+    /**
+     * 只在测试调用advance时前进的时钟
+     */
+    private static class ManualClock extends Clock {
+        private volatile long millis;
+
+        ManualClock(long millis) {
+            this.millis = millis;
+        }
+
+        void advance(long delta) {
+            millis += delta;
+        }
+
+        @Override
+        public long millis() {
+            return millis;
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(millis);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.sankuai.inf.leaf.segment;
+
+import com.sankuai.inf.leaf.IDGen;
+import com.sankuai.inf.leaf.common.Result;
+import com.sankuai.inf.leaf.common.Status;
+import com.sankuai.inf.leaf.segment.dao.IDAllocDao;
+import com.sankuai.inf.leaf.segment.model.LeafAlloc;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 改为无锁之前的号段取id算法(每次取id都加读锁,号段用完时自旋等待),只用于性能对比
+ * 只支持一个key,步长固定
+ */
+public class LockingSegmentIDGen implements IDGen {
+    private final IDAllocDao dao;
+    private final String key;
+    private final ExecutorService service = Executors.newCachedThreadPool();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final AtomicBoolean threadRunning = new AtomicBoolean(false);
+    private final Segment[] segments = {new Segment(), new Segment()};
+    private volatile int currentPos = 0;
+    private volatile boolean nextReady = false;
+
+    public LockingSegmentIDGen(IDAllocDao dao, String key) {
+        this.dao = dao;
+        this.key = key;
+    }
+
+    @Override
+    public boolean init() {
+        load(segments[0]);
+        return true;
+    }
+
+    @Override
+    public Result get(String key) {
+        while (true) {
+            lock.readLock().lock();
+            try {
+                final Segment segment = segments[currentPos];
+                if (!nextReady && segment.max - segment.value.get() < 0.9 * segment.step
+                        && threadRunning.compareAndSet(false, true)) {
+                    service.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            load(segments[(currentPos + 1) % 2]);
+                            lock.writeLock().lock();
+                            nextReady = true;
+                            threadRunning.set(false);
+                            lock.writeLock().unlock();
+                        }
+                    });
+                }
+                long value = segment.value.getAndIncrement();
+                if (value < segment.max) {
+                    return new Result(value, Status.SUCCESS);
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+            waitAndSleep();
+            lock.writeLock().lock();
+            try {
+                final Segment segment = segments[currentPos];
+                long value = segment.value.getAndIncrement();
+                if (value < segment.max) {
+                    return new Result(value, Status.SUCCESS);
+                }
+                if (nextReady) {
+                    currentPos = (currentPos + 1) % 2;
+                    nextReady = false;
+                } else {
+                    return new Result(-3, Status.EXCEPTION);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    public void shutdown() {
+        service.shutdownNow();
+    }
+
+    private void load(Segment segment) {
+        LeafAlloc leafAlloc = dao.updateMaxIdAndGetLeafAlloc(key);
+        segment.value.set(leafAlloc.getMaxId() - leafAlloc.getStep());
+        segment.max = leafAlloc.getMaxId();
+        segment.step = leafAlloc.getStep();
+    }
+
+    private void waitAndSleep() {
+        int roll = 0;
+        while (threadRunning.get()) {
+            roll += 1;
+            if (roll > 10000) {
+                try {
+                    TimeUnit.MILLISECONDS.sleep(10);
+                    break;
+                } catch (InterruptedException e) {
+                    break;
+                }
+            }
+        }
+    }
+
+    private static class Segment {
+        private final AtomicLong value = new AtomicLong(0);
+        private volatile long max;
+        private volatile int step;
+    }
+}
@@ -0,0 +1,65 @@
+package com.sankuai.inf.leaf.segment;
+
+import com.sankuai.inf.leaf.segment.dao.IDAllocDao;
+import com.sankuai.inf.leaf.segment.model.LeafAlloc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 测试用的内存IDAllocDao,不需要连接数据库
+ */
+public class MemoryIDAllocDao implements IDAllocDao {
+    private final Map<String, LeafAlloc> allocs = new ConcurrentHashMap<>();
+
+    public MemoryIDAllocDao(String key, int step) {
+        add(key, step);
+    }
+
+    public MemoryIDAllocDao add(String key, int step) {
+        LeafAlloc alloc = new LeafAlloc();
+        alloc.setKey(key);
+        alloc.setMaxId(1);
+        alloc.setStep(step);
+        allocs.put(key, alloc);
+        return this;
+    }
+
+    @Override
+    public List<LeafAlloc> getAllLeafAllocs() {
+        return new ArrayList<>(allocs.values());
+    }
+
+    @Override
+    public LeafAlloc updateMaxIdAndGetLeafAlloc(String tag) {
+        LeafAlloc alloc = allocs.get(tag);
+        synchronized (alloc) {
+            alloc.setMaxId(alloc.getMaxId() + alloc.getStep());
+            return copy(alloc, alloc.getStep());
+        }
+    }
+
+    @Override
+    public LeafAlloc updateMaxIdByCustomStepAndGetLeafAlloc(LeafAlloc leafAlloc) {
+        LeafAlloc alloc = allocs.get(leafAlloc.getKey());
+        synchronized (alloc) {
+            alloc.setMaxId(alloc.getMaxId() + leafAlloc.getStep());
+            return copy(alloc, alloc.getStep());
+        }
+    }
+
+    @Override
+    public List<String> getAllTags() {
+        return new ArrayList<>(allocs.keySet());
+    }
+
+    private LeafAlloc copy(LeafAlloc alloc, int step) {
+        LeafAlloc result = new LeafAlloc();
+        result.setKey(alloc.getKey());
+        result.setMaxId(alloc.getMaxId());
+        result.setStep(step);
+        return result;
+    }
+}
@@ -0,0 +1,58 @@
+package com.sankuai.inf.leaf.segment;
+
+import com.sankuai.inf.leaf.common.BatchResult;
+import com.sankuai.inf.leaf.common.Result;
+import com.sankuai.inf.leaf.common.Status;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+public class SegmentBatchGetTest {
+    private static final String KEY = "leaf-segment-test";
+    private static final int STEP = 100;
+
+    private SegmentIDGenImpl idGen;
+
+    @Before
+    public void before() {
+        idGen = new SegmentIDGenImpl();
+        idGen.setDao(new MemoryIDAllocDao(KEY, STEP));
+        idGen.init();
+    }
+
+    @Test
+    public void testContiguousInOneSegment() {
+        Result first = idGen.get(KEY);
+        BatchResult result = idGen.get(KEY, 10);
+        Assert.assertEquals(Status.SUCCESS, result.getStatus());
+        long[] ids = result.getIds();
+        Assert.assertEquals(10, ids.length);
+        for (int i = 0; i < ids.length; i++) {
+            Assert.assertEquals(first.getId() + 1 + i, ids[i]);
+        }
+    }
+
+    @Test
+    public void testSpillIntoNextSegment() {
+        Set<Long> seen = new HashSet<>();
+        // 多次批量获取,跨越多个号段,id不重复
+        for (int i = 0; i < 20; i++) {
+            BatchResult result = idGen.get(KEY, 73);
+            Assert.assertEquals(Status.SUCCESS, result.getStatus());
+            Assert.assertEquals(73, result.getIds().length);
+            for (long id : result.getIds()) {
+                Assert.assertTrue(seen.add(id));
+            }
+        }
+    }
+
+    @Test
+    public void testUnknownKey() {
+        BatchResult result = idGen.get("not-exists", 10);
+        Assert.assertEquals(Status.EXCEPTION, result.getStatus());
+        Assert.assertEquals(0, result.getIds().length);
+    }
+}
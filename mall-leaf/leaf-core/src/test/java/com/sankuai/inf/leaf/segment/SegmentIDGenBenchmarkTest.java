@@ -0,0 +1,134 @@
+package com.sankuai.inf.leaf.segment;
+
+import com.sankuai.inf.leaf.IDGen;
+import com.sankuai.inf.leaf.common.Result;
+import com.sankuai.inf.leaf.common.Status;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 比较无锁号段和原来加读写锁的号段在1/8/64个线程下的吞吐量和p99延迟
+ * 使用内存DAO,不需要连接数据库,耗时对比默认跳过,指定benchmark=true时运行:
+ * mvn test -pl mall-leaf/leaf-core -Dtest=SegmentIDGenBenchmarkTest -Dbenchmark=true
+ */
+public class SegmentIDGenBenchmarkTest {
+    private static final Logger logger = LoggerFactory.getLogger(SegmentIDGenBenchmarkTest.class);
+    private static final String KEY = "leaf-segment-test";
+    // 步长较小,测试期间会多次切换号段
+    private static final int STEP = 20000;
+    private static final int WARMUP_OPS = 200000;
+    private static final int TOTAL_OPS = 2000000;
+    // 每隔多少次记录一次耗时
+    private static final int SAMPLE_INTERVAL = 8;
+
+    @Test
+    public void testNoDuplicateUnderContention() throws InterruptedException {
+        SegmentIDGenImpl idGen = lockFree(100);
+        final Set<Long> ids = ConcurrentHashMap.newKeySet();
+        final AtomicInteger duplicates = new AtomicInteger();
+        int failures = run(idGen, 64, 200000, new long[64][0], new IdConsumer() {
+            @Override
+            public void accept(long id) {
+                if (!ids.add(id)) {
+                    duplicates.incrementAndGet();
+                }
+            }
+        });
+        Assert.assertEquals(0, failures);
+        Assert.assertEquals(0, duplicates.get());
+        Assert.assertEquals(200000, ids.size());
+    }
+
+    @Test
+    public void benchmark() throws InterruptedException {
+        Assume.assumeTrue("没有指定benchmark=true,跳过", Boolean.getBoolean("benchmark"));
+        for (int threads : new int[]{1, 8, 64}) {
+            LockingSegmentIDGen locking = new LockingSegmentIDGen(new MemoryIDAllocDao(KEY, STEP), KEY);
+            locking.init();
+            measure("locking", locking, threads);
+            locking.shutdown();
+            // 无锁实现在等待下一个号段时挂起,不应出现取id失败
+            Assert.assertEquals(0, measure("lock-free", lockFree(STEP), threads));
+        }
+    }
+
+    private SegmentIDGenImpl lockFree(int step) {
+        SegmentIDGenImpl idGen = new SegmentIDGenImpl();
+        idGen.setDao(new MemoryIDAllocDao(KEY, step));
+        idGen.init();
+        return idGen;
+    }
+
+    /**
+     * @return 取id失败的次数,原来的实现自旋等待超时后会返回异常
+     */
+    private int measure(String name, IDGen idGen, int threads) throws InterruptedException {
+        int failures = run(idGen, threads, WARMUP_OPS, new long[threads][0], null);
+        long[][] samples = new long[threads][TOTAL_OPS / threads / SAMPLE_INTERVAL];
+        long start = System.nanoTime();
+        failures += run(idGen, threads, TOTAL_OPS, samples, null);
+        long elapsed = System.nanoTime() - start;
+        long[] all = new long[threads * samples[0].length];
+        for (int i = 0; i < threads; i++) {
+            System.arraycopy(samples[i], 0, all, i * samples[0].length, samples[i].length);
+        }
+        Arrays.sort(all);
+        logger.info(String.format("%-10s threads:%3d  throughput:%12.0f ops/s  p50:%6d ns  p99:%8d ns  failures:%d",
+                name, threads, TOTAL_OPS * 1e9 / elapsed,
+                all[all.length / 2], all[(int) (all.length * 0.99)], failures));
+        return failures;
+    }
+
+    private int run(final IDGen idGen, int threads, int totalOps, final long[][] samples,
+                     final IdConsumer consumer) throws InterruptedException {
+        final int opsPerThread = totalOps / threads;
+        final CountDownLatch ready = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threads);
+        final AtomicInteger failures = new AtomicInteger();
+        for (int t = 0; t < threads; t++) {
+            final long[] sample = samples[t];
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        ready.await();
+                        int sampled = 0;
+                        for (int i = 0; i < opsPerThread; i++) {
+                            boolean record = i % SAMPLE_INTERVAL == 0 && sampled < sample.length;
+                            long begin = record ? System.nanoTime() : 0;
+                            Result result = idGen.get(KEY);
+                            if (record) {
+                                sample[sampled++] = System.nanoTime() - begin;
+                            }
+                            if (result.getStatus() != Status.SUCCESS) {
+                                failures.incrementAndGet();
+                            } else if (consumer != null) {
+                                consumer.accept(result.getId());
+                            }
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }).start();
+        }
+        ready.countDown();
+        done.await();
+        return failures.get();
+    }
+
+    private interface IdConsumer {
+        void accept(long id);
+    }
+}
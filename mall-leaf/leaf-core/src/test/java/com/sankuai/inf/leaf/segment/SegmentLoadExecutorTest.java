@@ -0,0 +1,97 @@
+package com.sankuai.inf.leaf.segment;
+
+import com.sankuai.inf.leaf.segment.model.LeafAlloc;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class SegmentLoadExecutorTest {
+
+    @Test
+    public void testDeduplicateAndReject() throws InterruptedException {
+        SegmentLoadExecutor loader = new SegmentLoadExecutor(1, 1, new SegmentIDGenImpl.UpdateThreadFactory());
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(2);
+        Runnable blocking = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                done.countDown();
+            }
+        };
+        Assert.assertTrue(loader.submit("a", blocking));
+        while (loader.getActiveCount() == 0) {
+            Thread.sleep(1);
+        }
+        Assert.assertTrue(loader.submit("b", blocking));
+        // 同一个key已经在排队
+        Assert.assertFalse(loader.submit("b", blocking));
+        // 一个线程在执行,队列也已满
+        Assert.assertFalse(loader.submit("c", blocking));
+        Assert.assertEquals(1, loader.getRejectedCount());
+        Assert.assertEquals(1, loader.getQueueDepth());
+        release.countDown();
+        Assert.assertTrue(done.await(5, TimeUnit.SECONDS));
+        loader.shutdown();
+    }
+
+    @Test
+    public void testFailureCounted() throws InterruptedException {
+        SegmentLoadExecutor loader = new SegmentLoadExecutor(1, 1, new SegmentIDGenImpl.UpdateThreadFactory());
+        Assert.assertTrue(loader.submit("a", new Runnable() {
+            @Override
+            public void run() {
+                throw new IllegalStateException("db is down");
+            }
+        }));
+        long deadline = System.currentTimeMillis() + 5000;
+        while (loader.getFailedCount() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(1, loader.getFailedCount());
+        loader.shutdown();
+    }
+
+    @Test
+    public void testPrewarmOnInit() {
+        SegmentIDGenImpl idGen = new SegmentIDGenImpl();
+        idGen.setDao(new MemoryIDAllocDao("leaf-segment-test", 100));
+        idGen.init();
+        Assert.assertTrue(idGen.getCache().get("leaf-segment-test").isInitOk());
+    }
+
+    @Test
+    public void testPrewarmFailureCounted() throws InterruptedException {
+        MemoryIDAllocDao dao = new MemoryIDAllocDao("leaf-segment-test", 100) {
+            @Override
+            public LeafAlloc updateMaxIdAndGetLeafAlloc(String tag) {
+                if ("leaf-segment-broken".equals(tag)) {
+                    throw new IllegalStateException("db is down");
+                }
+                return super.updateMaxIdAndGetLeafAlloc(tag);
+            }
+        };
+        dao.add("leaf-segment-broken", 100);
+        SegmentIDGenImpl idGen = new SegmentIDGenImpl();
+        idGen.setDao(dao);
+        try {
+            idGen.init();
+            Assert.assertTrue(idGen.getCache().get("leaf-segment-test").isInitOk());
+            Assert.assertFalse(idGen.getCache().get("leaf-segment-broken").isInitOk());
+            // 预热任务结束后装载线程池才记录失败
+            long deadline = System.currentTimeMillis() + 5000;
+            while (idGen.getLoader().getFailedCount() == 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            Assert.assertEquals(1, idGen.getLoader().getFailedCount());
+        } finally {
+            idGen.shutdown();
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.sankuai.inf.leaf.segment;
+
+import com.sankuai.inf.leaf.common.LatencyStats;
+import com.sankuai.inf.leaf.common.Status;
+import com.sankuai.inf.leaf.segment.model.SegmentBuffer;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+public class SegmentMetricsTest {
+    private static final String KEY = "leaf-segment-test";
+    private static final int STEP = 100;
+
+    private SegmentIDGenImpl idGen;
+
+    @Before
+    public void before() {
+        idGen = new SegmentIDGenImpl();
+        idGen.setDao(new MemoryIDAllocDao(KEY, STEP));
+        idGen.init();
+    }
+
+    @Test
+    public void testConsumedAndSwitches() {
+        for (int i = 0; i < 1000; i++) {
+            Assert.assertEquals(Status.SUCCESS, idGen.get(KEY).getStatus());
+        }
+        SegmentBuffer buffer = idGen.getCache().get(KEY);
+        Assert.assertEquals(1000, buffer.getConsumed());
+        Assert.assertEquals(1000, buffer.getIssued());
+        Assert.assertEquals(Status.SUCCESS, idGen.get(KEY, 50).getStatus());
+        Assert.assertEquals(1050, buffer.getIssued());
+        // 号段大小会随速度增大,至少切换过一次
+        Assert.assertTrue(buffer.getSwitchCount() >= 1);
+        Assert.assertTrue(buffer.getWaits().getCount() <= buffer.getSwitchCount());
+    }
+
+    @Test
+    public void testErrorsByCode() {
+        idGen.get("not-exists");
+        idGen.get("not-exists", 10);
+        Assert.assertEquals(2, idGen.getErrors().get(-2L).sum());
+        Assert.assertNull(idGen.getErrors().get(-3L));
+    }
+
+    @Test
+    public void testLatencyStats() {
+        LatencyStats stats = new LatencyStats();
+        stats.record(TimeUnit.MILLISECONDS.toNanos(3));
+        stats.record(TimeUnit.MILLISECONDS.toNanos(5));
+        Assert.assertEquals(2, stats.getCount());
+        Assert.assertEquals(8, stats.getTotal(TimeUnit.MILLISECONDS), 0.001);
+        Assert.assertEquals(5, stats.getMax(TimeUnit.MILLISECONDS), 0.001);
+    }
+}
@@ -0,0 +1,29 @@
+package com.sankuai.inf.leaf.segment;
+
+import com.sankuai.inf.leaf.common.Result;
+import com.sankuai.inf.leaf.common.Status;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+public class SegmentTagsTest {
+
+    @Test
+    public void testOnlyConfiguredTagsLoaded() {
+        MemoryIDAllocDao dao = new MemoryIDAllocDao("order", 100).add("order_item", 100).add("spu", 100);
+        SegmentIDGenImpl idGen = new SegmentIDGenImpl();
+        idGen.setDao(dao);
+        idGen.setTags(Arrays.asList("order", "order_item"));
+        try {
+            Assert.assertTrue(idGen.init());
+            Assert.assertEquals(2, idGen.getCache().size());
+            Assert.assertFalse(idGen.getCache().containsKey("spu"));
+            Assert.assertEquals(Status.SUCCESS, idGen.get("order").getStatus());
+            Result result = idGen.get("spu");
+            Assert.assertEquals(Status.EXCEPTION, result.getStatus());
+        } finally {
+            idGen.shutdown();
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.sankuai.inf.leaf.snowflake;
+
+import com.sankuai.inf.leaf.IDGen;
+import com.sankuai.inf.leaf.common.Status;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 比较无锁snowflake和原来synchronized实现在1/8/64个线程下的吞吐量和p99延迟
+ * 不需要zk,耗时对比默认跳过,指定benchmark=true时运行:
+ * mvn test -pl mall-leaf/leaf-core -Dtest=SnowflakeBenchmarkTest -Dbenchmark=true
+ */
+public class SnowflakeBenchmarkTest {
+    private static final Logger logger = LoggerFactory.getLogger(SnowflakeBenchmarkTest.class);
+    private static final long TWEPOCH = 1288834974657L;
+    private static final int WARMUP_OPS = 200000;
+    private static final int TOTAL_OPS = 2000000;
+    private static final int SAMPLE_INTERVAL = 8;
+
+    @Test
+    public void benchmark() throws InterruptedException {
+        Assume.assumeTrue("没有指定benchmark=true,跳过", Boolean.getBoolean("benchmark"));
+        for (int threads : new int[]{1, 8, 64}) {
+            measure("synchronized", new SynchronizedSnowflakeIDGen(1, TWEPOCH), threads);
+            Assert.assertEquals(0, measure("lock-free", new SnowflakeIDGenImpl(1, TWEPOCH), threads));
+        }
+    }
+
+    private int measure(String name, IDGen idGen, int threads) throws InterruptedException {
+        int failures = run(idGen, threads, WARMUP_OPS, new long[threads][0]);
+        long[][] samples = new long[threads][TOTAL_OPS / threads / SAMPLE_INTERVAL];
+        long start = System.nanoTime();
+        failures += run(idGen, threads, TOTAL_OPS, samples);
+        long elapsed = System.nanoTime() - start;
+        long[] all = new long[threads * samples[0].length];
+        for (int i = 0; i < threads; i++) {
+            System.arraycopy(samples[i], 0, all, i * samples[0].length, samples[i].length);
+        }
+        Arrays.sort(all);
+        logger.info(String.format("%-12s threads:%3d  throughput:%12.0f ops/s  p50:%6d ns  p99:%8d ns  failures:%d",
+                name, threads, TOTAL_OPS * 1e9 / elapsed,
+                all[all.length / 2], all[(int) (all.length * 0.99)], failures));
+        return failures;
+    }
+
+    private int run(final IDGen idGen, int threads, int totalOps, final long[][] samples) throws InterruptedException {
+        final int opsPerThread = totalOps / threads;
+        final CountDownLatch ready = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threads);
+        final AtomicInteger failures = new AtomicInteger();
+        for (int t = 0; t < threads; t++) {
+            final long[] sample = samples[t];
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        ready.await();
+                        int sampled = 0;
+                        for (int i = 0; i < opsPerThread; i++) {
+                            boolean record = i % SAMPLE_INTERVAL == 0 && sampled < sample.length;
+                            long begin = record ? System.nanoTime() : 0;
+                            Status status = idGen.get("a").getStatus();
+                            if (record) {
+                                sample[sampled++] = System.nanoTime() - begin;
+                            }
+                            if (status != Status.SUCCESS) {
+                                failures.incrementAndGet();
+                            }
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }).start();
+        }
+        ready.countDown();
+        done.await();
+        return failures.get();
+    }
+}
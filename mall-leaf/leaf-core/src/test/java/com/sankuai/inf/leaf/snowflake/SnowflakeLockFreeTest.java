@@ -0,0 +1,100 @@
+package com.sankuai.inf.leaf.snowflake;
+
+import com.sankuai.inf.leaf.common.BatchResult;
+import com.sankuai.inf.leaf.common.Result;
+import com.sankuai.inf.leaf.common.Status;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SnowflakeLockFreeTest {
+    private static final long TWEPOCH = 1288834974657L;
+
+    @Test
+    public void testUniqueAndIncreasingPerThread() throws InterruptedException {
+        final SnowflakeIDGenImpl idGen = new SnowflakeIDGenImpl(7, TWEPOCH);
+        final Set<Long> ids = ConcurrentHashMap.newKeySet();
+        final AtomicInteger errors = new AtomicInteger();
+        int threads = 16;
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    long last = -1;
+                    try {
+                        for (int i = 0; i < 20000; i++) {
+                            Result result = idGen.get("a");
+                            if (result.getStatus() != Status.SUCCESS || result.getId() <= last || !ids.add(result.getId())
+                                    || ((result.getId() >> 12) & 1023) != 7) {
+                                errors.incrementAndGet();
+                            }
+                            last = result.getId();
+                        }
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }).start();
+        }
+        done.await();
+        Assert.assertEquals(0, errors.get());
+        Assert.assertEquals(16 * 20000, ids.size());
+    }
+
+    @Test
+    public void testSmallClockBackwardsDoesNotBlock() {
+        final long[] now = {System.currentTimeMillis()};
+        SnowflakeIDGenImpl idGen = new SnowflakeIDGenImpl(1, TWEPOCH) {
+            @Override
+            protected long timeGen() {
+                return now[0];
+            }
+        };
+        long before = idGen.get("a").getId();
+        // 回拨3毫秒,继续使用原来的时间戳
+        now[0] -= 3;
+        Result result = idGen.get("a");
+        Assert.assertEquals(Status.SUCCESS, result.getStatus());
+        Assert.assertTrue(result.getId() > before);
+        // 回拨太多时报错
+        now[0] -= 100;
+        Assert.assertEquals(Status.EXCEPTION, idGen.get("a").getStatus());
+    }
+
+    @Test
+    public void testBorrowNextMillisWhenSequenceExhausted() {
+        final long[] now = {System.currentTimeMillis()};
+        SnowflakeIDGenImpl idGen = new SnowflakeIDGenImpl(1, TWEPOCH) {
+            @Override
+            protected long timeGen() {
+                return now[0];
+            }
+        };
+        long first = idGen.get("a").getId();
+        BatchResult result = idGen.get("a", 4096);
+        Assert.assertEquals(Status.SUCCESS, result.getStatus());
+        long last = result.getIds()[4095];
+        // 同一毫秒内序号不够,进位到下一毫秒
+        Assert.assertEquals((first >> 22) + 1, last >> 22);
+        for (int i = 1; i < result.getIds().length; i++) {
+            Assert.assertTrue(result.getIds()[i] > result.getIds()[i - 1]);
+        }
+    }
+
+    @Test
+    public void testRejectNonPositiveCount() {
+        SnowflakeIDGenImpl idGen = new SnowflakeIDGenImpl(7, TWEPOCH);
+        long before = idGen.get("a").getId();
+        for (int count : new int[]{0, -1}) {
+            BatchResult result = idGen.get("a", count);
+            Assert.assertEquals(Status.EXCEPTION, result.getStatus());
+            Assert.assertEquals(SnowflakeIDGenImpl.EXCEPTION_ID_INVALID_COUNT, result.getCode());
+        }
+        Assert.assertTrue(idGen.get("a").getId() > before);
+    }
+}
@@ -0,0 +1,79 @@
+package com.sankuai.inf.leaf.snowflake;
+
+import com.sankuai.inf.leaf.IDGen;
+import com.sankuai.inf.leaf.common.Result;
+import com.sankuai.inf.leaf.common.Status;
+
+import java.util.Random;
+
+/**
+ * 改为无锁之前的snowflake算法(synchronized get,时钟回拨时wait),只用于性能对比
+ */
+public class SynchronizedSnowflakeIDGen implements IDGen {
+    private static final Random RANDOM = new Random();
+
+    private final long twepoch;
+    private final long workerIdBits = 10L;
+    private final long sequenceBits = 12L;
+    private final long workerIdShift = sequenceBits;
+    private final long timestampLeftShift = sequenceBits + workerIdBits;
+    private final long sequenceMask = ~(-1L << sequenceBits);
+    private final long workerId;
+    private long sequence = 0L;
+    private long lastTimestamp = -1L;
+
+    public SynchronizedSnowflakeIDGen(long workerId, long twepoch) {
+        this.workerId = workerId;
+        this.twepoch = twepoch;
+    }
+
+    @Override
+    public boolean init() {
+        return true;
+    }
+
+    @Override
+    public synchronized Result get(String key) {
+        long timestamp = timeGen();
+        if (timestamp < lastTimestamp) {
+            long offset = lastTimestamp - timestamp;
+            if (offset <= 5) {
+                try {
+                    wait(offset << 1);
+                    timestamp = timeGen();
+                    if (timestamp < lastTimestamp) {
+                        return new Result(-1, Status.EXCEPTION);
+                    }
+                } catch (InterruptedException e) {
+                    return new Result(-2, Status.EXCEPTION);
+                }
+            } else {
+                return new Result(-3, Status.EXCEPTION);
+            }
+        }
+        if (lastTimestamp == timestamp) {
+            sequence = (sequence + 1) & sequenceMask;
+            if (sequence == 0) {
+                sequence = RANDOM.nextInt(100);
+                timestamp = tilNextMillis(lastTimestamp);
+            }
+        } else {
+            sequence = RANDOM.nextInt(100);
+        }
+        lastTimestamp = timestamp;
+        long id = ((timestamp - twepoch) << timestampLeftShift) | (workerId << workerIdShift) | sequence;
+        return new Result(id, Status.SUCCESS);
+    }
+
+    private long tilNextMillis(long lastTimestamp) {
+        long timestamp = timeGen();
+        while (timestamp <= lastTimestamp) {
+            timestamp = timeGen();
+        }
+        return timestamp;
+    }
+
+    private long timeGen() {
+        return System.currentTimeMillis();
+    }
+}
@@ -0,0 +1,185 @@
+package com.sankuai.inf.leaf.snowflake;
+
+import com.sankuai.inf.leaf.common.Result;
+import com.sankuai.inf.leaf.common.Status;
+import com.sankuai.inf.leaf.snowflake.dao.WorkerLeaseDao;
+import com.sankuai.inf.leaf.snowflake.exception.CheckLastTimeException;
+import com.sankuai.inf.leaf.snowflake.model.WorkerLease;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 不依赖zk和数据库,验证数据库租约和文件锁两种workerId分配方式
+ */
+public class WorkerIdAssignerTest {
+
+    @Test
+    public void dbAssignNewWorkerId() {
+        MemoryWorkerLeaseDao dao = new MemoryWorkerLeaseDao();
+        Assert.assertEquals(0, new DbWorkerIdAssigner(dao, "10.0.0.1:8080").assign());
+        Assert.assertEquals(1, new DbWorkerIdAssigner(dao, "10.0.0.2:8080").assign());
+        Assert.assertEquals(2, dao.getAllLeases().size());
+    }
+
+    @Test
+    public void dbReuseOwnLease() {
+        MemoryWorkerLeaseDao dao = new MemoryWorkerLeaseDao();
+        dao.put(lease(5, "10.0.0.1:8080", System.currentTimeMillis() - 1000, System.currentTimeMillis() + 60000));
+        Assert.assertEquals(5, new DbWorkerIdAssigner(dao, "10.0.0.1:8080").assign());
+    }
+
+    @Test
+    public void dbTakeOverExpiredLease() {
+        MemoryWorkerLeaseDao dao = new MemoryWorkerLeaseDao();
+        long now = System.currentTimeMillis();
+        dao.put(lease(0, "10.0.0.1:8080", now - 60000, now + 60000));
+        dao.put(lease(1, "10.0.0.2:8080", now - 60000, now - 1000));
+        Assert.assertEquals(1, new DbWorkerIdAssigner(dao, "10.0.0.3:8080").assign());
+        Assert.assertEquals("10.0.0.3:8080", dao.get(1).getEndpoint());
+        Assert.assertTrue(dao.get(1).getLeaseExpire() > now);
+    }
+
+    @Test(expected = CheckLastTimeException.class)
+    public void dbRejectClockBehindLastTimestamp() {
+        MemoryWorkerLeaseDao dao = new MemoryWorkerLeaseDao();
+        long future = System.currentTimeMillis() + 60000;
+        dao.put(lease(0, "10.0.0.1:8080", future, future + 60000));
+        new DbWorkerIdAssigner(dao, "10.0.0.1:8080").assign();
+    }
+
+    @Test
+    public void dbStopAfterLeaseTakenOver() {
+        MemoryWorkerLeaseDao dao = new MemoryWorkerLeaseDao();
+        DbWorkerIdAssigner assigner = new DbWorkerIdAssigner(dao, "10.0.0.1:8080");
+        SnowflakeIDGenImpl idGen = new SnowflakeIDGenImpl(assigner, SnowflakeIDGenImpl.DEFAULT_TWEPOCH);
+        Assert.assertEquals(Status.SUCCESS, idGen.get("a").getStatus());
+        long now = System.currentTimeMillis();
+        // 其它节点接管了这个workerId,续约失败后停止发放
+        dao.put(lease(0, "10.0.0.2:8080", now, now + 60000));
+        assigner.heartbeat(0, now);
+        Assert.assertFalse(assigner.isValid());
+        Result result = idGen.get("a");
+        Assert.assertEquals(Status.EXCEPTION, result.getStatus());
+        Assert.assertEquals(SnowflakeIDGenImpl.EXCEPTION_ID_WORKER_INVALID, result.getId());
+        // 其它节点的租约还没有过期,不能重新取得
+        assigner.heartbeat(0, now + 1);
+        Assert.assertFalse(assigner.isValid());
+        // 租约过期后重新取得同一个workerId,恢复发放
+        dao.put(lease(0, "10.0.0.2:8080", now - 60000, now - 1000));
+        assigner.heartbeat(0, now + 2);
+        Assert.assertTrue(assigner.isValid());
+        Assert.assertEquals("10.0.0.1:8080", dao.get(0).getEndpoint());
+        Assert.assertEquals(Status.SUCCESS, idGen.get("a").getStatus());
+    }
+
+    @Test
+    public void dbStopAfterLocalLeaseExpire() {
+        final long[] now = {System.currentTimeMillis()};
+        MemoryWorkerLeaseDao dao = new MemoryWorkerLeaseDao();
+        DbWorkerIdAssigner assigner = new DbWorkerIdAssigner(dao, "10.0.0.1:8080") {
+            @Override
+            protected long currentTime() {
+                return now[0];
+            }
+        };
+        assigner.assign();
+        Assert.assertTrue(assigner.isValid());
+        // 一直无法续约(例如数据库不可用),超过租约时间后停止发放
+        now[0] += 11 * 60 * 1000L;
+        Assert.assertFalse(assigner.isValid());
+        // 数据库恢复后续约成功,恢复发放
+        assigner.heartbeat(0, now[0]);
+        Assert.assertTrue(assigner.isValid());
+    }
+
+    @Test
+    public void fileLockAssignDistinctWorkerIds() throws Exception {
+        File dir = Files.createTempDirectory("leaf-worker").toFile();
+        FileWorkerIdAssigner first = new FileWorkerIdAssigner(dir);
+        FileWorkerIdAssigner second = new FileWorkerIdAssigner(dir);
+        try {
+            Assert.assertEquals(0, first.assign());
+            Assert.assertEquals(1, second.assign());
+            // 释放之后workerId可以被再次分配
+            first.release();
+            Assert.assertFalse(first.isValid());
+            Assert.assertTrue(second.isValid());
+            FileWorkerIdAssigner third = new FileWorkerIdAssigner(dir);
+            Assert.assertEquals(0, third.assign());
+            third.release();
+        } finally {
+            first.release();
+            second.release();
+        }
+    }
+
+    private static WorkerLease lease(int workerId, String endpoint, long lastTimestamp, long leaseExpire) {
+        WorkerLease lease = new WorkerLease();
+        lease.setWorkerId(workerId);
+        lease.setEndpoint(endpoint);
+        lease.setLastTimestamp(lastTimestamp);
+        lease.setLeaseExpire(leaseExpire);
+        return lease;
+    }
+
+    private static class MemoryWorkerLeaseDao implements WorkerLeaseDao {
+        private final Map<Integer, WorkerLease> leases = new TreeMap<>();
+
+        synchronized void put(WorkerLease lease) {
+            leases.put(lease.getWorkerId(), copy(lease));
+        }
+
+        synchronized WorkerLease get(int workerId) {
+            return copy(leases.get(workerId));
+        }
+
+        @Override
+        public synchronized List<WorkerLease> getAllLeases() {
+            List<WorkerLease> result = new ArrayList<>();
+            for (WorkerLease lease : leases.values()) {
+                result.add(copy(lease));
+            }
+            return result;
+        }
+
+        @Override
+        public synchronized boolean insertLease(WorkerLease lease) {
+            if (leases.containsKey(lease.getWorkerId())) {
+                return false;
+            }
+            put(lease);
+            return true;
+        }
+
+        @Override
+        public synchronized boolean takeOverLease(WorkerLease lease, long expectedLeaseExpire) {
+            WorkerLease current = leases.get(lease.getWorkerId());
+            if (current == null || current.getLeaseExpire() != expectedLeaseExpire) {
+                return false;
+            }
+            put(lease);
+            return true;
+        }
+
+        @Override
+        public synchronized boolean renewLease(WorkerLease lease) {
+            WorkerLease current = leases.get(lease.getWorkerId());
+            if (current == null || !current.getEndpoint().equals(lease.getEndpoint())) {
+                return false;
+            }
+            put(lease);
+            return true;
+        }
+
+        private static WorkerLease copy(WorkerLease lease) {
+            return lease(lease.getWorkerId(), lease.getEndpoint(), lease.getLastTimestamp(), lease.getLeaseExpire());
+        }
+    }
+}
@@ -10,5 +10,11 @@ public class Constants {
     public static final String LEAF_SNOWFLAKE_ENABLE = "leaf.snowflake.enable";
     public static final String LEAF_SNOWFLAKE_PORT = "leaf.snowflake.port";
     public static final String LEAF_SNOWFLAKE_ZK_ADDRESS = "leaf.snowflake.zk.address";
+    public static final String LEAF_SNOWFLAKE_WORKER_ASSIGNER = "leaf.snowflake.worker.assigner";
+    public static final String LEAF_SNOWFLAKE_WORKER_DIR = "leaf.snowflake.worker.dir";
+
+    public static final String LEAF_BINARY_ENABLE = "leaf.binary.enable";
+    public static final String LEAF_BINARY_PORT = "leaf.binary.port";
+    public static final String LEAF_BINARY_THREADS = "leaf.binary.threads";
 
 }
@@ -0,0 +1,80 @@
+package com.sankuai.inf.leaf.server.binary;
+
+import com.sankuai.inf.leaf.IDGen;
+import com.sankuai.inf.leaf.common.BatchResult;
+import com.sankuai.inf.leaf.common.Status;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.SimpleChannelInboundHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 处理一帧请求,运行在LeafBinaryServer的业务线程池中(IDGen.get可能阻塞),结果写回但不立即flush
+ * 同一个连接的事件固定由一个业务线程按顺序执行,同一次读取到的多个请求处理完之后在channelReadComplete中一起flush
+ */
+@ChannelHandler.Sharable
+public class LeafBinaryHandler extends SimpleChannelInboundHandler<ByteBuf> {
+    private static final Logger LOGGER = LoggerFactory.getLogger(LeafBinaryHandler.class);
+
+    private final IDGen segmentIdGen;
+    private final IDGen snowflakeIdGen;
+
+    public LeafBinaryHandler(IDGen segmentIdGen, IDGen snowflakeIdGen) {
+        this.segmentIdGen = segmentIdGen;
+        this.snowflakeIdGen = snowflakeIdGen;
+    }
+
+    @Override
+    protected void channelRead0(ChannelHandlerContext ctx, ByteBuf request) {
+        int requestId = request.readInt();
+        byte type = request.readByte();
+        int count = request.readInt();
+        int keyLength = request.readUnsignedShort();
+        String key = request.readCharSequence(keyLength, StandardCharsets.UTF_8).toString();
+
+        IDGen idGen = type == LeafBinaryProtocol.TYPE_SEGMENT ? segmentIdGen
+                : type == LeafBinaryProtocol.TYPE_SNOWFLAKE ? snowflakeIdGen : null;
+        if (idGen == null || key.isEmpty() || count <= 0 || count > LeafBinaryProtocol.MAX_COUNT) {
+            ctx.write(exception(ctx, requestId, LeafBinaryProtocol.CODE_BAD_REQUEST));
+            return;
+        }
+        BatchResult result = idGen.get(key, count);
+        if (result.getStatus() == Status.EXCEPTION) {
+            ctx.write(exception(ctx, requestId, result.getCode()));
+            return;
+        }
+        long[] ids = result.getIds();
+        ByteBuf response = ctx.alloc().buffer(4 + 1 + 4 + ids.length * 8);
+        response.writeInt(requestId);
+        response.writeByte(LeafBinaryProtocol.STATUS_SUCCESS);
+        response.writeInt(ids.length);
+        for (long id : ids) {
+            response.writeLong(id);
+        }
+        ctx.write(response);
+    }
+
+    private ByteBuf exception(ChannelHandlerContext ctx, int requestId, long code) {
+        ByteBuf response = ctx.alloc().buffer(4 + 1 + 8);
+        response.writeInt(requestId);
+        response.writeByte(LeafBinaryProtocol.STATUS_EXCEPTION);
+        response.writeLong(code);
+        return response;
+    }
+
+    @Override
+    public void channelReadComplete(ChannelHandlerContext ctx) {
+        ctx.flush();
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+        // 帧格式错误等无法恢复的情况,直接关闭连接
+        LOGGER.warn("leaf binary connection {} error, close it", ctx.channel().remoteAddress(), cause);
+        ctx.close();
+    }
+}
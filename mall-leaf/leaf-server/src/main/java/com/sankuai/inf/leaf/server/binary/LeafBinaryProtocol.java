@@ -0,0 +1,35 @@
+package com.sankuai.inf.leaf.server.binary;
+
+/**
+ * leaf二进制发号协议,TCP长连接,每帧前面是4字节的帧长度(不含长度本身),整数都是大端
+ * 请求:requestId(int) | type(byte) | count(int) | keyLength(short) | key(UTF-8)
+ * 响应:requestId(int) | status(byte) | 成功时 count(int) + count个id(long),失败时 code(long)
+ * 一个连接上可以连续发送多个请求,不需要等待响应,响应按请求的顺序返回并带回requestId
+ * mall-common中的LeafBinaryIdFetcher是对应的客户端,修改协议时需要同时修改
+ */
+public final class LeafBinaryProtocol {
+
+    public static final byte TYPE_SEGMENT = 1;
+    public static final byte TYPE_SNOWFLAKE = 2;
+
+    public static final byte STATUS_SUCCESS = 0;
+    public static final byte STATUS_EXCEPTION = 1;
+
+    /**
+     * 请求参数错误(类型未知、count越界、key为空)时返回的code
+     */
+    public static final long CODE_BAD_REQUEST = -100;
+
+    public static final int LENGTH_FIELD_LENGTH = 4;
+    /**
+     * 单次请求最多获取的id数量,与http接口一致
+     */
+    public static final int MAX_COUNT = 10000;
+    /**
+     * 请求帧的最大长度,key最长256字节
+     */
+    public static final int MAX_REQUEST_FRAME_LENGTH = 4 + 1 + 4 + 2 + 256;
+
+    private LeafBinaryProtocol() {
+    }
+}
@@ -0,0 +1,103 @@
+package com.sankuai.inf.leaf.server.binary;
+
+import com.sankuai.inf.leaf.IDGen;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import io.netty.handler.codec.LengthFieldPrepender;
+import io.netty.util.concurrent.DefaultEventExecutorGroup;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.concurrent.EventExecutorGroup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.InetSocketAddress;
+
+/**
+ * 基于netty的二进制发号服务,和http接口使用同一个号段/snowflake的IDGen
+ * 协议见LeafBinaryProtocol
+ * IDGen.get可能阻塞(号段未加载时同步查库、snowflake等待下一毫秒),所以在业务线程池中执行,不占用IO线程
+ */
+public class LeafBinaryServer {
+    private static final Logger LOGGER = LoggerFactory.getLogger(LeafBinaryServer.class);
+    public static final int DEFAULT_BUSINESS_THREADS = 16;
+
+    private final IDGen segmentIdGen;
+    private final IDGen snowflakeIdGen;
+    private final int businessThreads;
+    private EventLoopGroup bossGroup;
+    private EventLoopGroup workerGroup;
+    private EventExecutorGroup businessGroup;
+    private Channel serverChannel;
+
+    public LeafBinaryServer(IDGen segmentIdGen, IDGen snowflakeIdGen) {
+        this(segmentIdGen, snowflakeIdGen, DEFAULT_BUSINESS_THREADS);
+    }
+
+    /**
+     * @param businessThreads 执行IDGen.get的业务线程数,同一个连接的请求固定在一个线程中按顺序处理
+     */
+    public LeafBinaryServer(IDGen segmentIdGen, IDGen snowflakeIdGen, int businessThreads) {
+        this.segmentIdGen = segmentIdGen;
+        this.snowflakeIdGen = snowflakeIdGen;
+        this.businessThreads = businessThreads;
+    }
+
+    /**
+     * @param port 监听的端口,0表示随机端口
+     * @return 实际监听的端口
+     */
+    public synchronized int start(int port) throws InterruptedException {
+        bossGroup = new NioEventLoopGroup(1, new DefaultThreadFactory("leaf-binary-boss", true));
+        workerGroup = new NioEventLoopGroup(0, new DefaultThreadFactory("leaf-binary-worker", true));
+        businessGroup = new DefaultEventExecutorGroup(businessThreads, new DefaultThreadFactory("leaf-binary-business", true));
+        final LeafBinaryHandler handler = new LeafBinaryHandler(segmentIdGen, snowflakeIdGen);
+        final LengthFieldPrepender prepender = new LengthFieldPrepender(LeafBinaryProtocol.LENGTH_FIELD_LENGTH);
+        ServerBootstrap bootstrap = new ServerBootstrap()
+                .group(bossGroup, workerGroup)
+                .channel(NioServerSocketChannel.class)
+                .childOption(ChannelOption.TCP_NODELAY, true)
+                .childHandler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    protected void initChannel(SocketChannel ch) {
+                        ch.pipeline()
+                                .addLast(new LengthFieldBasedFrameDecoder(LeafBinaryProtocol.MAX_REQUEST_FRAME_LENGTH,
+                                        0, LeafBinaryProtocol.LENGTH_FIELD_LENGTH, 0, LeafBinaryProtocol.LENGTH_FIELD_LENGTH))
+                                .addLast(prepender)
+                                .addLast(businessGroup, handler);
+                    }
+                });
+        try {
+            serverChannel = bootstrap.bind(port).sync().channel();
+        } catch (InterruptedException | RuntimeException e) {
+            stop();
+            throw e;
+        }
+        int boundPort = ((InetSocketAddress) serverChannel.localAddress()).getPort();
+        LOGGER.info("leaf binary server listen on port {}", boundPort);
+        return boundPort;
+    }
+
+    public synchronized void stop() {
+        if (serverChannel != null) {
+            serverChannel.close().syncUninterruptibly();
+            serverChannel = null;
+        }
+        if (bossGroup != null) {
+            bossGroup.shutdownGracefully();
+            workerGroup.shutdownGracefully();
+            bossGroup = null;
+            workerGroup = null;
+        }
+        if (businessGroup != null) {
+            businessGroup.shutdownGracefully();
+            businessGroup = null;
+        }
+    }
+}
@@ -1,7 +1,9 @@
 package com.sankuai.inf.leaf.server.controller;
 
+import com.sankuai.inf.leaf.common.BatchResult;
 import com.sankuai.inf.leaf.common.Result;
 import com.sankuai.inf.leaf.common.Status;
+import com.sankuai.inf.leaf.server.exception.InvalidCountException;
 import com.sankuai.inf.leaf.server.exception.LeafServerException;
 import com.sankuai.inf.leaf.server.exception.NoKeyException;
 import com.sankuai.inf.leaf.server.service.SegmentService;
@@ -11,21 +13,36 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 @RestController
 public class LeafController {
     private Logger logger = LoggerFactory.getLogger(LeafController.class);
 
+    /**
+     * 单次请求最多获取的id数量
+     */
+    private static final int MAX_BATCH_COUNT = 10000;
+
     @Autowired
     private SegmentService segmentService;
     @Autowired
     private SnowflakeService snowflakeService;
 
+    /**
+     * 不带count参数时返回一个id,带count参数时返回count个id,以逗号分隔
+     */
     @RequestMapping(value = "/api/segment/get/{key}")
-    public String getSegmentId(@PathVariable("key") String key) {
-
-        return get(key, segmentService.getId(key));
+    public String getSegmentId(@PathVariable("key") String key,
+                               @RequestParam(value = "count", required = false) Integer count) {
+        if (count == null) {
+            return get(key, segmentService.getId(key));
+        }
+        if (count <= 0 || count > MAX_BATCH_COUNT) {
+            throw new InvalidCountException();
+        }
+        return get(key, segmentService.getIds(key, count));
     }
 
     @RequestMapping(value = "/api/snowflake/get/{key}")
@@ -44,4 +61,22 @@ public class LeafController {
         }
         return String.valueOf(result.getId());
     }
+
+    private String get(String key, BatchResult result) {
+        if (key == null || key.isEmpty()) {
+            throw new NoKeyException();
+        }
+        if (result.getStatus().equals(Status.EXCEPTION)) {
+            throw new LeafServerException(result.toString());
+        }
+        long[] ids = result.getIds();
+        StringBuilder sb = new StringBuilder(ids.length * 8);
+        for (int i = 0; i < ids.length; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(ids[i]);
+        }
+        return sb.toString();
+    }
 }
@@ -51,6 +51,12 @@ public class LeafMonitorController {
             sv.setValue1(buffer.getSegments()[1].getValue().get());
             sv.setStep1(buffer.getSegments()[1].getStep());
 
+            sv.setStep(buffer.getStep());
+            sv.setStepPolicy(buffer.getStepPolicy());
+            sv.setQps(buffer.getQps());
+            sv.setRecentQps(buffer.getRecentQps());
+            sv.setLoadMillis(buffer.getLoadMillis());
+
             data.put(entry.getKey(), sv);
 
         }
@@ -59,6 +65,19 @@ public class LeafMonitorController {
         return "segment";
     }
 
+    /**
+     * 后台装载号段的线程池状态:排队数、装载耗时、失败和拒绝次数
+     */
+    @RequestMapping(value = "loader")
+    @ResponseBody
+    public Map<String, Number> getLoader() {
+        SegmentIDGenImpl segmentIDGen = segmentService.getIdGen();
+        if (segmentIDGen == null) {
+            throw new IllegalArgumentException("You should config leaf.segment.enable=true first");
+        }
+        return segmentIDGen.getLoader().stats();
+    }
+
     @RequestMapping(value = "db")
     public String getDb(Model model) {
         SegmentIDGenImpl segmentIDGen = segmentService.getIdGen();
@@ -0,0 +1,187 @@
+package com.sankuai.inf.leaf.server.metrics;
+
+import com.sankuai.inf.leaf.IDGen;
+import com.sankuai.inf.leaf.common.LatencyStats;
+import com.sankuai.inf.leaf.segment.SegmentIDGenImpl;
+import com.sankuai.inf.leaf.segment.SegmentLoadExecutor;
+import com.sankuai.inf.leaf.segment.dao.impl.IDAllocDaoImpl;
+import com.sankuai.inf.leaf.segment.model.SegmentBuffer;
+import com.sankuai.inf.leaf.server.service.SegmentService;
+import com.sankuai.inf.leaf.server.service.SnowflakeService;
+import com.sankuai.inf.leaf.snowflake.SnowflakeIDGenImpl;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 把leaf-core中的统计数据导出到Micrometer,通过 /actuator/prometheus 采集
+ * 号段模式的key和异常码是运行中才出现的,每隔REFRESH_SECONDS秒检查一次,注册新的指标、删除已下线key的指标
+ */
+@Component
+public class LeafMetrics implements MeterBinder {
+    private Logger logger = LoggerFactory.getLogger(LeafMetrics.class);
+
+    private static final long REFRESH_SECONDS = 10;
+    private static final String TAG_BIZ_TAG = "biz_tag";
+
+    private final SegmentService segmentService;
+    private final SnowflakeService snowflakeService;
+    private final Map<String, List<Meter>> segmentMeters = new ConcurrentHashMap<>();
+    private final Set<Long> segmentErrorCodes = ConcurrentHashMap.newKeySet();
+    private volatile MeterRegistry registry;
+    private ScheduledExecutorService scheduler;
+
+    public LeafMetrics(SegmentService segmentService, SnowflakeService snowflakeService) {
+        this.segmentService = segmentService;
+        this.snowflakeService = snowflakeService;
+    }
+
+    @Override
+    public synchronized void bindTo(MeterRegistry registry) {
+        this.registry = registry;
+        SegmentIDGenImpl segmentIDGen = segmentService.getIdGen();
+        if (segmentIDGen != null) {
+            bindLoader(registry, segmentIDGen.getLoader());
+            if (segmentIDGen.getDao() instanceof IDAllocDaoImpl) {
+                for (Map.Entry<String, LatencyStats> entry : ((IDAllocDaoImpl) segmentIDGen.getDao()).getLatencies().entrySet()) {
+                    FunctionTimer.builder("leaf.segment.db", entry.getValue(),
+                            LatencyStats::getCount, stats -> stats.getTotal(TimeUnit.SECONDS), TimeUnit.SECONDS)
+                            .tag("method", entry.getKey())
+                            .description("leaf_alloc表的访问耗时")
+                            .register(registry);
+                }
+            }
+        }
+        IDGen snowflakeIDGen = snowflakeService.getIdGen();
+        if (snowflakeIDGen instanceof SnowflakeIDGenImpl) {
+            FunctionCounter.builder("leaf.errors", (SnowflakeIDGenImpl) snowflakeIDGen,
+                    SnowflakeIDGenImpl::getClockBackwardsErrorCount)
+                    .tags("mode", "snowflake", "code", "-3")
+                    .description("按异常码统计的取id失败次数")
+                    .register(registry);
+        }
+        refresh();
+        if (scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "leaf-metrics-refresh");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.scheduleWithFixedDelay(this::refresh, REFRESH_SECONDS, REFRESH_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+
+    private void bindLoader(MeterRegistry registry, SegmentLoadExecutor loader) {
+        Gauge.builder("leaf.segment.loader.queue", loader, SegmentLoadExecutor::getQueueDepth)
+                .description("排队等待装载的号段数")
+                .register(registry);
+        Gauge.builder("leaf.segment.loader.active", loader, SegmentLoadExecutor::getActiveCount)
+                .description("正在装载号段的线程数")
+                .register(registry);
+        FunctionCounter.builder("leaf.segment.loader.failed", loader, SegmentLoadExecutor::getFailedCount)
+                .description("装载号段失败的次数")
+                .register(registry);
+        FunctionCounter.builder("leaf.segment.loader.rejected", loader, SegmentLoadExecutor::getRejectedCount)
+                .description("排队已满被拒绝的装载次数")
+                .register(registry);
+    }
+
+    /**
+     * 为新出现的key和异常码注册指标,删除已经不存在的key的指标
+     */
+    public synchronized void refresh() {
+        MeterRegistry registry = this.registry;
+        SegmentIDGenImpl segmentIDGen = segmentService.getIdGen();
+        if (registry == null || segmentIDGen == null) {
+            return;
+        }
+        try {
+            Map<String, SegmentBuffer> cache = segmentIDGen.getCache();
+            for (SegmentBuffer buffer : cache.values()) {
+                if (!segmentMeters.containsKey(buffer.getKey())) {
+                    segmentMeters.put(buffer.getKey(), bindBuffer(registry, buffer));
+                }
+            }
+            for (String key : new HashSet<>(segmentMeters.keySet())) {
+                if (!cache.containsKey(key)) {
+                    for (Meter meter : segmentMeters.remove(key)) {
+                        registry.remove(meter);
+                    }
+                }
+            }
+            for (Map.Entry<Long, LongAdder> entry : segmentIDGen.getErrors().entrySet()) {
+                if (segmentErrorCodes.add(entry.getKey())) {
+                    FunctionCounter.builder("leaf.errors", entry.getValue(), LongAdder::sum)
+                            .tags("mode", "segment", "code", String.valueOf(entry.getKey()))
+                            .description("按异常码统计的取id失败次数")
+                            .register(registry);
+                }
+            }
+        } catch (RuntimeException e) {
+            logger.warn("refresh leaf metrics exception", e);
+        }
+    }
+
+    private List<Meter> bindBuffer(MeterRegistry registry, SegmentBuffer buffer) {
+        String key = buffer.getKey();
+        List<Meter> meters = new ArrayList<>();
+        meters.add(FunctionCounter.builder("leaf.segment.ids", buffer, SegmentBuffer::getIssued)
+                .tag(TAG_BIZ_TAG, key)
+                .description("本节点已发放的id数量")
+                .register(registry));
+        meters.add(Gauge.builder("leaf.segment.qps", buffer, SegmentBuffer::getQps)
+                .tag(TAG_BIZ_TAG, key)
+                .description("最近10秒的平均发放速度")
+                .register(registry));
+        meters.add(Gauge.builder("leaf.segment.idle", buffer, b -> Math.max(0, b.getCurrent().getIdle()))
+                .tag(TAG_BIZ_TAG, key)
+                .description("当前号段剩余的id数量")
+                .register(registry));
+        meters.add(Gauge.builder("leaf.segment.next.ready", buffer, b -> b.isNextReady() ? 1 : 0)
+                .tag(TAG_BIZ_TAG, key)
+                .description("下一个号段是否已经装载好")
+                .register(registry));
+        meters.add(Gauge.builder("leaf.segment.step", buffer, SegmentBuffer::getStep)
+                .tag(TAG_BIZ_TAG, key)
+                .register(registry));
+        meters.add(FunctionCounter.builder("leaf.segment.switches", buffer, SegmentBuffer::getSwitchCount)
+                .tag(TAG_BIZ_TAG, key)
+                .description("切换号段的次数")
+                .register(registry));
+        meters.add(FunctionTimer.builder("leaf.segment.wait", buffer.getWaits(),
+                LatencyStats::getCount, stats -> stats.getTotal(TimeUnit.SECONDS), TimeUnit.SECONDS)
+                .tag(TAG_BIZ_TAG, key)
+                .description("号段用完时等待下一个号段的耗时")
+                .register(registry));
+        meters.add(Gauge.builder("leaf.segment.wait.max", buffer.getWaits(), stats -> stats.getMax(TimeUnit.SECONDS))
+                .tag(TAG_BIZ_TAG, key)
+                .baseUnit("seconds")
+                .register(registry));
+        return meters;
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+}
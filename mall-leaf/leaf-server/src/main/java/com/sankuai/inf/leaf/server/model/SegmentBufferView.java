@@ -13,6 +13,11 @@ public class SegmentBufferView {
     private int pos;
     private boolean nextReady;
     private boolean initOk;
+    private int step;
+    private String stepPolicy;
+    private double qps;
+    private double recentQps;
+    private long loadMillis;
 
     public String getKey() {
         return key;
@@ -93,4 +98,44 @@ public class SegmentBufferView {
     public void setInitOk(boolean initOk) {
         this.initOk = initOk;
     }
+
+    public int getStep() {
+        return step;
+    }
+
+    public void setStep(int step) {
+        this.step = step;
+    }
+
+    public String getStepPolicy() {
+        return stepPolicy;
+    }
+
+    public void setStepPolicy(String stepPolicy) {
+        this.stepPolicy = stepPolicy;
+    }
+
+    public double getQps() {
+        return qps;
+    }
+
+    public void setQps(double qps) {
+        this.qps = qps;
+    }
+
+    public double getRecentQps() {
+        return recentQps;
+    }
+
+    public void setRecentQps(double recentQps) {
+        this.recentQps = recentQps;
+    }
+
+    public long getLoadMillis() {
+        return loadMillis;
+    }
+
+    public void setLoadMillis(long loadMillis) {
+        this.loadMillis = loadMillis;
+    }
 }
@@ -0,0 +1,41 @@
+package com.sankuai.inf.leaf.server.service;
+
+import com.sankuai.inf.leaf.IDGen;
+import com.sankuai.inf.leaf.common.PropertyFactory;
+import com.sankuai.inf.leaf.common.ZeroIDGen;
+import com.sankuai.inf.leaf.server.Constants;
+import com.sankuai.inf.leaf.server.binary.LeafBinaryServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.util.Properties;
+
+@Service("BinaryService")
+public class BinaryService {
+    private Logger logger = LoggerFactory.getLogger(BinaryService.class);
+
+    private LeafBinaryServer server;
+
+    public BinaryService(SegmentService segmentService, SnowflakeService snowflakeService) throws InterruptedException {
+        Properties properties = PropertyFactory.getProperties();
+        boolean flag = Boolean.parseBoolean(properties.getProperty(Constants.LEAF_BINARY_ENABLE, "false"));
+        if (flag) {
+            IDGen segmentIdGen = segmentService.getIdGen();
+            int threads = Integer.parseInt(properties.getProperty(Constants.LEAF_BINARY_THREADS,
+                    String.valueOf(LeafBinaryServer.DEFAULT_BUSINESS_THREADS)));
+            server = new LeafBinaryServer(segmentIdGen != null ? segmentIdGen : new ZeroIDGen(), snowflakeService.getIdGen(), threads);
+            int port = Integer.parseInt(properties.getProperty(Constants.LEAF_BINARY_PORT, "9091"));
+            server.start(port);
+            logger.info("Binary Service Init Successfully");
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (server != null) {
+            server.stop();
+        }
+    }
+}
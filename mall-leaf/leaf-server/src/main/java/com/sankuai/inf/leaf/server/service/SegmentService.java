@@ -2,6 +2,7 @@ package com.sankuai.inf.leaf.server.service;
 
 import com.alibaba.druid.pool.DruidDataSource;
 import com.sankuai.inf.leaf.IDGen;
+import com.sankuai.inf.leaf.common.BatchResult;
 import com.sankuai.inf.leaf.common.PropertyFactory;
 import com.sankuai.inf.leaf.common.Result;
 import com.sankuai.inf.leaf.common.ZeroIDGen;
@@ -56,6 +57,17 @@ public class SegmentService {
         return idGen.get(key);
     }
 
+    public BatchResult getIds(String key, int count) {
+        return idGen.get(key, count);
+    }
+
+    /**
+     * 号段模式的数据源,号段模式未启用时为null
+     */
+    public DruidDataSource getDataSource() {
+        return dataSource;
+    }
+
     public SegmentIDGenImpl getIdGen() {
         if (idGen instanceof SegmentIDGenImpl) {
             return (SegmentIDGenImpl) idGen;
@@ -1,16 +1,27 @@
 package com.sankuai.inf.leaf.server.service;
 
+import com.alibaba.druid.pool.DruidDataSource;
 import com.sankuai.inf.leaf.IDGen;
 import com.sankuai.inf.leaf.common.PropertyFactory;
 import com.sankuai.inf.leaf.common.Result;
+import com.sankuai.inf.leaf.common.Utils;
 import com.sankuai.inf.leaf.common.ZeroIDGen;
 import com.sankuai.inf.leaf.server.Constants;
 import com.sankuai.inf.leaf.server.exception.InitException;
+import com.sankuai.inf.leaf.snowflake.DbWorkerIdAssigner;
+import com.sankuai.inf.leaf.snowflake.FileWorkerIdAssigner;
 import com.sankuai.inf.leaf.snowflake.SnowflakeIDGenImpl;
+import com.sankuai.inf.leaf.snowflake.WorkerIdAssigner;
+import com.sankuai.inf.leaf.snowflake.ZookeeperWorkerIdAssigner;
+import com.sankuai.inf.leaf.snowflake.dao.impl.WorkerLeaseDaoImpl;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
+import javax.sql.DataSource;
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.sql.SQLException;
 import java.util.Properties;
 
 @Service("SnowflakeService")
@@ -19,13 +30,12 @@ public class SnowflakeService {
 
     private IDGen idGen;
 
-    public SnowflakeService() throws InitException {
+    public SnowflakeService(SegmentService segmentService) throws InitException, SQLException {
         Properties properties = PropertyFactory.getProperties();
         boolean flag = Boolean.parseBoolean(properties.getProperty(Constants.LEAF_SNOWFLAKE_ENABLE, "true"));
         if (flag) {
-            String zkAddress = properties.getProperty(Constants.LEAF_SNOWFLAKE_ZK_ADDRESS);
-            int port = Integer.parseInt(properties.getProperty(Constants.LEAF_SNOWFLAKE_PORT));
-            idGen = new SnowflakeIDGenImpl(zkAddress, port);
+            idGen = new SnowflakeIDGenImpl(createWorkerIdAssigner(properties, segmentService),
+                    SnowflakeIDGenImpl.DEFAULT_TWEPOCH);
             if(idGen.init()) {
                 logger.info("Snowflake Service Init Successfully");
             } else {
@@ -37,7 +47,51 @@ public class SnowflakeService {
         }
     }
 
+    /**
+     * leaf.snowflake.worker.assigner:zk(默认)、db(使用号段模式的数据库)、file(本机文件锁)
+     */
+    private WorkerIdAssigner createWorkerIdAssigner(Properties properties, SegmentService segmentService) throws SQLException {
+        String assigner = properties.getProperty(Constants.LEAF_SNOWFLAKE_WORKER_ASSIGNER, "zk");
+        int port = Integer.parseInt(properties.getProperty(Constants.LEAF_SNOWFLAKE_PORT, "0"));
+        if ("db".equals(assigner)) {
+            DataSource dataSource = segmentService.getDataSource();
+            if (dataSource == null) {
+                DruidDataSource druidDataSource = new DruidDataSource();
+                druidDataSource.setUrl(properties.getProperty(Constants.LEAF_JDBC_URL));
+                druidDataSource.setUsername(properties.getProperty(Constants.LEAF_JDBC_USERNAME));
+                druidDataSource.setPassword(properties.getProperty(Constants.LEAF_JDBC_PASSWORD));
+                druidDataSource.init();
+                dataSource = druidDataSource;
+            }
+            return new DbWorkerIdAssigner(new WorkerLeaseDaoImpl(dataSource), endpoint(port));
+        }
+        if ("file".equals(assigner)) {
+            String dir = properties.getProperty(Constants.LEAF_SNOWFLAKE_WORKER_DIR,
+                    System.getProperty("java.io.tmpdir") + File.separator + "leaf-worker");
+            return new FileWorkerIdAssigner(new File(dir));
+        }
+        return new ZookeeperWorkerIdAssigner(properties.getProperty(Constants.LEAF_SNOWFLAKE_ZK_ADDRESS), port);
+    }
+
+    /**
+     * db方式下本节点的标识,同一台机器上的多个进程不能相同,否则会共用同一个租约和workerId
+     * 配置了leaf.snowflake.port(本进程监听的端口)时为ip:port,重启后可以继续使用原来的租约;
+     * 没有配置时使用进程号,重启后取得新的租约
+     */
+    private String endpoint(int port) {
+        if (port > 0) {
+            return Utils.getIp() + ":" + port;
+        }
+        // RuntimeMXBean的名称为 pid@hostname
+        String pid = ManagementFactory.getRuntimeMXBean().getName().split("@")[0];
+        return Utils.getIp() + ":pid-" + pid;
+    }
+
     public Result getId(String key) {
         return idGen.get(key);
     }
+
+    public IDGen getIdGen() {
+        return idGen;
+    }
 }
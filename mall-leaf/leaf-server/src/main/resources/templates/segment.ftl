@@ -19,6 +19,11 @@
         <th>value1</th>
         <th>max1</th>
         <th>step1</th>
+        <th>step</th>
+        <th>policy</th>
+        <th>qps</th>
+        <th>recentQps</th>
+        <th>loadMillis</th>
 
     </tr>
     </thead>
@@ -36,6 +41,11 @@
             <td>${data[key].value1}</td>
             <td>${data[key].max1}</td>
             <td>${data[key].step1}</td>
+            <td>${data[key].step}</td>
+            <td>${data[key].stepPolicy!'-'}</td>
+            <td>${data[key].qps?string('0.0')}</td>
+            <td>${data[key].recentQps?string('0.0')}</td>
+            <td>${data[key].loadMillis}</td>
         </tr>
         <tr>
         </tr>
@@ -0,0 +1,316 @@
+package com.sankuai.inf.leaf.server.binary;
+
+import com.sankuai.inf.leaf.IDGen;
+import com.sankuai.inf.leaf.common.Result;
+import com.sankuai.inf.leaf.common.Status;
+import com.sankuai.inf.leaf.server.controller.LeafController;
+import com.sankuai.inf.leaf.server.service.SegmentService;
+import com.sankuai.inf.leaf.server.service.SnowflakeService;
+import com.sankuai.inf.leaf.snowflake.SnowflakeIDGenImpl;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 二进制协议的正确性,以及和http接口的吞吐量对比
+ * 不需要数据库和zk,号段模式使用内存中的计数器代替,吞吐量对比默认跳过,指定benchmark=true时运行:
+ * mvn test -pl mall-leaf/leaf-server -Dtest=LeafBinaryServerTest -Dbenchmark=true
+ */
+public class LeafBinaryServerTest {
+    private static final Logger logger = LoggerFactory.getLogger(LeafBinaryServerTest.class);
+
+    private static final int WARMUP = 2000;
+    private static final int ITERATIONS = 10000;
+
+    private static final IDGen SEGMENT = new CounterIDGen();
+    private static final IDGen SNOWFLAKE = new SnowflakeIDGenImpl(1, SnowflakeIDGenImpl.DEFAULT_TWEPOCH);
+
+    private LeafBinaryServer server;
+    private int port;
+
+    @BeforeEach
+    public void start() throws InterruptedException {
+        server = new LeafBinaryServer(SEGMENT, SNOWFLAKE);
+        port = server.start(0);
+    }
+
+    @AfterEach
+    public void stop() {
+        server.stop();
+    }
+
+    @Test
+    public void segmentAndSnowflake() throws IOException {
+        try (BinaryClient client = new BinaryClient(port)) {
+            long[] segmentIds = client.request(LeafBinaryProtocol.TYPE_SEGMENT, "order", 5);
+            Assertions.assertEquals(5, segmentIds.length);
+            for (int i = 1; i < segmentIds.length; i++) {
+                Assertions.assertEquals(segmentIds[i - 1] + 1, segmentIds[i]);
+            }
+            long[] snowflakeIds = client.request(LeafBinaryProtocol.TYPE_SNOWFLAKE, "order", 3);
+            Assertions.assertEquals(3, snowflakeIds.length);
+            Assertions.assertTrue(snowflakeIds[0] < snowflakeIds[1] && snowflakeIds[1] < snowflakeIds[2]);
+        }
+    }
+
+    @Test
+    public void badRequestKeepsConnection() throws IOException {
+        try (BinaryClient client = new BinaryClient(port)) {
+            client.send(1, LeafBinaryProtocol.TYPE_SEGMENT, "order", LeafBinaryProtocol.MAX_COUNT + 1);
+            client.send(2, (byte) 9, "order", 1);
+            client.send(3, LeafBinaryProtocol.TYPE_SEGMENT, "", 1);
+            client.send(4, LeafBinaryProtocol.TYPE_SEGMENT, "order", 1);
+            client.flush();
+            for (int requestId = 1; requestId <= 3; requestId++) {
+                Response response = client.read();
+                Assertions.assertEquals(requestId, response.requestId);
+                Assertions.assertEquals(LeafBinaryProtocol.STATUS_EXCEPTION, response.status);
+                Assertions.assertEquals(LeafBinaryProtocol.CODE_BAD_REQUEST, response.code);
+            }
+            Response response = client.read();
+            Assertions.assertEquals(4, response.requestId);
+            Assertions.assertEquals(LeafBinaryProtocol.STATUS_SUCCESS, response.status);
+        }
+    }
+
+    @Test
+    public void pipelinedResponsesKeepRequestOrder() throws IOException {
+        try (BinaryClient client = new BinaryClient(port)) {
+            for (int requestId = 1; requestId <= 1000; requestId++) {
+                client.send(requestId, LeafBinaryProtocol.TYPE_SNOWFLAKE, "order", 1);
+            }
+            client.flush();
+            Set<Long> ids = new HashSet<>();
+            for (int requestId = 1; requestId <= 1000; requestId++) {
+                Response response = client.read();
+                Assertions.assertEquals(requestId, response.requestId);
+                Assertions.assertTrue(ids.add(response.ids[0]));
+            }
+        }
+    }
+
+    @Test
+    public void idGenNotCalledOnIoThread() throws Exception {
+        Set<String> threads = ConcurrentHashMap.newKeySet();
+        IDGen recording = new IDGen() {
+            @Override
+            public Result get(String key) {
+                threads.add(Thread.currentThread().getName());
+                return SEGMENT.get(key);
+            }
+
+            @Override
+            public boolean init() {
+                return true;
+            }
+        };
+        LeafBinaryServer recordingServer = new LeafBinaryServer(recording, SNOWFLAKE, 2);
+        try (BinaryClient client = new BinaryClient(recordingServer.start(0))) {
+            Assertions.assertEquals(3, client.request(LeafBinaryProtocol.TYPE_SEGMENT, "order", 3).length);
+        } finally {
+            recordingServer.stop();
+        }
+        Assertions.assertFalse(threads.isEmpty());
+        for (String thread : threads) {
+            Assertions.assertTrue(thread.startsWith("leaf-binary-business"), thread);
+        }
+    }
+
+    @Test
+    public void throughputComparedWithRest() throws Exception {
+        Assumptions.assumeTrue(Boolean.getBoolean("benchmark"), "没有指定benchmark=true,跳过");
+        SegmentService segmentService = Mockito.mock(SegmentService.class);
+        Mockito.when(segmentService.getId(Mockito.anyString()))
+                .thenAnswer(invocation -> SEGMENT.get(invocation.getArgument(0)));
+        SnowflakeService snowflakeService = Mockito.mock(SnowflakeService.class);
+        RestConfiguration.segmentService = segmentService;
+        RestConfiguration.snowflakeService = snowflakeService;
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(RestConfiguration.class)
+                .properties("server.port=0", "spring.main.banner-mode=off")
+                .run();
+        try {
+            int restPort = ((ServletWebServerApplicationContext) context).getWebServer().getPort();
+            URL url = new URL("http://127.0.0.1:" + restPort + "/api/segment/get/order");
+            for (int i = 0; i < WARMUP; i++) {
+                restGet(url);
+            }
+            long start = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                restGet(url);
+            }
+            long restNanos = System.nanoTime() - start;
+
+            long binaryNanos;
+            long pipelinedNanos;
+            try (BinaryClient client = new BinaryClient(port)) {
+                for (int i = 0; i < WARMUP; i++) {
+                    client.request(LeafBinaryProtocol.TYPE_SEGMENT, "order", 1);
+                }
+                start = System.nanoTime();
+                for (int i = 0; i < ITERATIONS; i++) {
+                    client.request(LeafBinaryProtocol.TYPE_SEGMENT, "order", 1);
+                }
+                binaryNanos = System.nanoTime() - start;
+
+                // 每次连续发送100个请求再读取响应
+                start = System.nanoTime();
+                for (int i = 0; i < ITERATIONS; i += 100) {
+                    for (int j = 0; j < 100; j++) {
+                        client.send(i + j, LeafBinaryProtocol.TYPE_SEGMENT, "order", 1);
+                    }
+                    client.flush();
+                    for (int j = 0; j < 100; j++) {
+                        client.read();
+                    }
+                }
+                pipelinedNanos = System.nanoTime() - start;
+            }
+            logger.info("rest      : {} ns/id  {} ids/s", restNanos / ITERATIONS, ITERATIONS * 1000_000_000L / restNanos);
+            logger.info("binary    : {} ns/id  {} ids/s", binaryNanos / ITERATIONS, ITERATIONS * 1000_000_000L / binaryNanos);
+            logger.info("pipelined : {} ns/id  {} ids/s", pipelinedNanos / ITERATIONS, ITERATIONS * 1000_000_000L / pipelinedNanos);
+        } finally {
+            context.close();
+        }
+    }
+
+    private static String restGet(URL url) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        // 读完响应后连接由HttpURLConnection复用(keep-alive)
+        try (InputStream in = connection.getInputStream()) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[64];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                out.write(buffer, 0, n);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * 不加@Configuration,避免被LeafServerApplication的组件扫描加载
+     */
+    @EnableAutoConfiguration
+    @Import(LeafController.class)
+    static class RestConfiguration {
+        static SegmentService segmentService;
+        static SnowflakeService snowflakeService;
+
+        @Bean
+        public SegmentService segmentService() {
+            return segmentService;
+        }
+
+        @Bean
+        public SnowflakeService snowflakeService() {
+            return snowflakeService;
+        }
+    }
+
+    private static class CounterIDGen implements IDGen {
+        private final AtomicLong value = new AtomicLong();
+
+        @Override
+        public Result get(String key) {
+            return new Result(value.incrementAndGet(), Status.SUCCESS);
+        }
+
+        @Override
+        public boolean init() {
+            return true;
+        }
+    }
+
+    private static class Response {
+        int requestId;
+        byte status;
+        long code;
+        long[] ids;
+    }
+
+    private static class BinaryClient implements AutoCloseable {
+        private final Socket socket;
+        private final DataInputStream in;
+        private final DataOutputStream out;
+        private int requestId;
+
+        BinaryClient(int port) throws IOException {
+            socket = new Socket("127.0.0.1", port);
+            socket.setTcpNoDelay(true);
+            in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        }
+
+        long[] request(byte type, String key, int count) throws IOException {
+            int id = ++requestId;
+            send(id, type, key, count);
+            flush();
+            Response response = read();
+            Assertions.assertEquals(id, response.requestId);
+            Assertions.assertEquals(LeafBinaryProtocol.STATUS_SUCCESS, response.status);
+            return response.ids;
+        }
+
+        void send(int requestId, byte type, String key, int count) throws IOException {
+            byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(4 + 1 + 4 + 2 + keyBytes.length);
+            out.writeInt(requestId);
+            out.writeByte(type);
+            out.writeInt(count);
+            out.writeShort(keyBytes.length);
+            out.write(keyBytes);
+        }
+
+        void flush() throws IOException {
+            out.flush();
+        }
+
+        Response read() throws IOException {
+            in.readInt();
+            Response response = new Response();
+            response.requestId = in.readInt();
+            response.status = in.readByte();
+            if (response.status == LeafBinaryProtocol.STATUS_SUCCESS) {
+                response.ids = new long[in.readInt()];
+                for (int i = 0; i < response.ids.length; i++) {
+                    response.ids[i] = in.readLong();
+                }
+            } else {
+                response.code = in.readLong();
+            }
+            return response;
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+}
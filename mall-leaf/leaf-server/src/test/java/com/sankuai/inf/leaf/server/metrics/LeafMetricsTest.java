@@ -0,0 +1,116 @@
+package com.sankuai.inf.leaf.server.metrics;
+
+import com.sankuai.inf.leaf.common.ZeroIDGen;
+import com.sankuai.inf.leaf.segment.SegmentIDGenImpl;
+import com.sankuai.inf.leaf.segment.dao.IDAllocDao;
+import com.sankuai.inf.leaf.segment.model.LeafAlloc;
+import com.sankuai.inf.leaf.server.service.SegmentService;
+import com.sankuai.inf.leaf.server.service.SnowflakeService;
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 不需要数据库,号段模式使用内存中的leaf_alloc
+ */
+public class LeafMetricsTest {
+    private static final String KEY = "order";
+
+    private SegmentIDGenImpl idGen;
+    private LeafMetrics metrics;
+    private PrometheusMeterRegistry registry;
+
+    @BeforeEach
+    public void before() {
+        idGen = new SegmentIDGenImpl();
+        idGen.setDao(new MemoryDao());
+        idGen.init();
+        SegmentService segmentService = Mockito.mock(SegmentService.class);
+        Mockito.when(segmentService.getIdGen()).thenReturn(idGen);
+        SnowflakeService snowflakeService = Mockito.mock(SnowflakeService.class);
+        Mockito.when(snowflakeService.getIdGen()).thenReturn(new ZeroIDGen());
+        metrics = new LeafMetrics(segmentService, snowflakeService);
+        registry = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+        metrics.bindTo(registry);
+    }
+
+    @AfterEach
+    public void after() {
+        metrics.destroy();
+    }
+
+    @Test
+    public void segmentMetrics() {
+        for (int i = 0; i < 250; i++) {
+            idGen.get(KEY);
+        }
+        String scrape = registry.scrape();
+        Assertions.assertTrue(scrape.contains("leaf_segment_ids_total{biz_tag=\"order\",} 250.0"), scrape);
+        Assertions.assertTrue(scrape.contains("leaf_segment_switches_total{biz_tag=\"order\",}"), scrape);
+        Assertions.assertTrue(scrape.contains("leaf_segment_wait_seconds_count{biz_tag=\"order\",}"), scrape);
+        Assertions.assertTrue(scrape.contains("leaf_segment_loader_queue"), scrape);
+    }
+
+    @Test
+    public void errorsAppearAfterRefresh() {
+        idGen.get("not-exists");
+        Assertions.assertFalse(registry.scrape().contains("leaf_errors_total"));
+        metrics.refresh();
+        idGen.get("not-exists");
+        Assertions.assertTrue(registry.scrape().contains("leaf_errors_total{code=\"-2\",mode=\"segment\",} 2.0"));
+    }
+
+    @Test
+    public void removedTagIsUnregistered() {
+        idGen.getCache().remove(KEY);
+        metrics.refresh();
+        Assertions.assertFalse(registry.scrape().contains("biz_tag=\"order\""));
+    }
+
+    private static class MemoryDao implements IDAllocDao {
+        private final LeafAlloc alloc = new LeafAlloc();
+
+        MemoryDao() {
+            alloc.setKey(KEY);
+            alloc.setMaxId(1);
+            alloc.setStep(100);
+        }
+
+        @Override
+        public List<LeafAlloc> getAllLeafAllocs() {
+            return new ArrayList<>(Collections.singletonList(alloc));
+        }
+
+        @Override
+        public synchronized LeafAlloc updateMaxIdAndGetLeafAlloc(String tag) {
+            return update(alloc.getStep());
+        }
+
+        @Override
+        public synchronized LeafAlloc updateMaxIdByCustomStepAndGetLeafAlloc(LeafAlloc leafAlloc) {
+            return update(leafAlloc.getStep());
+        }
+
+        private LeafAlloc update(int step) {
+            alloc.setMaxId(alloc.getMaxId() + step);
+            LeafAlloc result = new LeafAlloc();
+            result.setKey(KEY);
+            result.setMaxId(alloc.getMaxId());
+            result.setStep(alloc.getStep());
+            return result;
+        }
+
+        @Override
+        public List<String> getAllTags() {
+            return new ArrayList<>(Collections.singletonList(KEY));
+        }
+    }
+}
@@ -0,0 +1,10 @@
+DROP TABLE IF EXISTS `leaf_worker`;
+
+CREATE TABLE `leaf_worker` (
+  `worker_id` int(11) NOT NULL,
+  `endpoint` varchar(128) NOT NULL DEFAULT '',
+  `last_timestamp` bigint(20) NOT NULL DEFAULT '0',
+  `lease_expire` bigint(20) NOT NULL DEFAULT '0',
+  `update_time` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+  PRIMARY KEY (`worker_id`)
+) ENGINE=InnoDB;
@@ -6,6 +6,8 @@ import cn.tedu.mall.pojo.order.dto.CartUpdateDTO;
 import cn.tedu.mall.pojo.order.model.OmsCart;
 import cn.tedu.mall.pojo.order.vo.CartStandardVO;
 
+import java.util.List;
+
 /**
  * <p>
  * 购物车数据表 服务类
@@ -45,6 +47,13 @@ public interface IOmsCartService{
      * @param omsCart
      */
     void removeUserCarts(OmsCart omsCart);
+
+    /**
+     * 下单后一次删除用户购物车中已购买的商品
+     * @param userId 用户id
+     * @param skuIds 订单中的skuId
+     */
+    void removeUserCarts(Long userId, List<Long> skuIds);
     /**
      * 更新购物车商品数量
      * @param cartUpdateDTO
@@ -6,6 +6,7 @@ import cn.tedu.mall.pojo.order.dto.OrderListTimeDTO;
 import cn.tedu.mall.pojo.order.dto.OrderStateUpdateDTO;
 import cn.tedu.mall.pojo.order.vo.OrderAddVO;
 import cn.tedu.mall.pojo.order.vo.OrderDetailVO;
+import cn.tedu.mall.pojo.order.vo.OrderListCursorVO;
 import cn.tedu.mall.pojo.order.vo.OrderListVO;
 
 /**
@@ -36,6 +37,13 @@ public interface IOmsOrderService{
      */
     JsonPage<OrderListVO> listOrdersBetweenTimes(OrderListTimeDTO orderListTimeDTO);
 
+    /**
+     * 根据起始结束时间按游标查询订单列表
+     * 第一页不传游标,下一页传入上一页返回的游标;withTotal为true时才查询总记录数
+     * @param orderListTimeDTO
+     */
+    OrderListCursorVO listOrdersByCursor(OrderListTimeDTO orderListTimeDTO);
+
     /**
      * 根据sn查询订单详细信息
      * @param id
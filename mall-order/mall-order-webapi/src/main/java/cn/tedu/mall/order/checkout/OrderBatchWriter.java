@@ -0,0 +1,215 @@
+package cn.tedu.mall.order.checkout;
+
+import cn.tedu.mall.order.mapper.OmsOrderItemMapper;
+import cn.tedu.mall.order.mapper.OmsOrderMapper;
+import cn.tedu.mall.order.mapper.OmsOrderOutboxMapper;
+import cn.tedu.mall.pojo.order.model.OmsOrder;
+import cn.tedu.mall.pojo.order.model.OmsOrderItem;
+import cn.tedu.mall.pojo.order.model.OmsOrderOutbox;
+import lombok.extern.slf4j.Slf4j;
+import org.mybatis.spring.SqlSessionTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 订单批量写入
+ * 多个线程同时下单时,订单先进入队列,由一个写入线程把队列中的多个订单在一个事务中写入:
+ * 所有订单、所有订单项、所有发件箱记录各自是一个JDBC批量(ExecutorType.BATCH),
+ * 连接参数rewriteBatchedStatements=true时MySQL驱动再把每个批量改写为多行INSERT
+ * 批量写入失败时逐个订单重新写入,一个订单的错误不影响同一批的其它订单
+ * 等待写入最多writeTimeoutMillis,超时时还没有开始写入的订单从队列中移除,不会再写入
+ * 本工具不是Spring组件,由OrderBatchWriteConfiguration在配置开启时声明为Bean
+ */
+@Slf4j
+public class OrderBatchWriter {
+
+    private static final long POLL_MILLIS = 100;
+
+    private final TransactionTemplate transactionTemplate;
+    // BATCH执行器的SqlSessionTemplate,事务中的INSERT在flushStatements时一次发送
+    private final SqlSessionTemplate batchSqlSession;
+    private final int maxBatchSize;
+    // 取出第一个订单后等待更多订单的时间,0表示只写入已经在队列中的订单
+    private final long lingerMillis;
+    // 调用者等待写入完成的最长时间
+    private final long writeTimeoutMillis;
+    private final BlockingQueue<PendingOrder> queue = new LinkedBlockingQueue<>();
+    private final Thread writerThread;
+    private volatile boolean running = true;
+
+    public OrderBatchWriter(TransactionTemplate transactionTemplate, SqlSessionTemplate batchSqlSession,
+                            int maxBatchSize, long lingerMillis, long writeTimeoutMillis) {
+        this.transactionTemplate = transactionTemplate;
+        this.batchSqlSession = batchSqlSession;
+        this.maxBatchSize = maxBatchSize;
+        this.lingerMillis = lingerMillis;
+        this.writeTimeoutMillis = writeTimeoutMillis;
+        this.writerThread = new Thread(this::writeLoop, "order-batch-writer");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+    /**
+     * 写入订单、订单项和发件箱记录,写入完成(事务已提交)后返回
+     * @param outbox 发件箱记录,没有时为null
+     * @throws RuntimeException 写入失败或等待超时时抛出
+     */
+    public void write(OmsOrder order, List<OmsOrderItem> orderItems, OmsOrderOutbox outbox) {
+        if (!isAlive()) {
+            throw new IllegalStateException("订单批量写入已经关闭");
+        }
+        PendingOrder pending = new PendingOrder(order, orderItems, outbox);
+        queue.add(pending);
+        try {
+            pending.future.get(writeTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            // 已经开始写入的订单无法撤回,调用者释放库存预留后由发件箱确认时取消订单
+            boolean removed = queue.remove(pending);
+            throw new IllegalStateException("等待订单写入超时,订单" + (removed ? "没有写入" : "可能已经写入"), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("等待订单写入时被中断", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * 写入线程是否在运行,没有运行时调用者应该改为直接写入
+     */
+    public boolean isAlive() {
+        return running && writerThread.isAlive();
+    }
+
+    /**
+     * 停止写入线程,队列中剩余的订单写入后返回
+     */
+    public void close() throws InterruptedException {
+        running = false;
+        writerThread.join(TimeUnit.SECONDS.toMillis(30));
+        // 关闭的同时加入队列的订单不再写入
+        PendingOrder pending;
+        while ((pending = queue.poll()) != null) {
+            pending.future.completeExceptionally(new IllegalStateException("订单批量写入已经关闭"));
+        }
+    }
+
+    private void writeLoop() {
+        while (running || !queue.isEmpty()) {
+            List<PendingOrder> batch = new ArrayList<>();
+            try {
+                // 定时醒来检查是否已经关闭,不中断写入线程,避免中断正在获取的数据库连接
+                PendingOrder first = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                if (lingerMillis > 0) {
+                    long deadline = System.currentTimeMillis() + lingerMillis;
+                    long remaining;
+                    while (batch.size() < maxBatchSize
+                            && (remaining = deadline - System.currentTimeMillis()) > 0) {
+                        PendingOrder next = queue.poll(remaining, TimeUnit.MILLISECONDS);
+                        if (next == null) {
+                            break;
+                        }
+                        batch.add(next);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            queue.drainTo(batch, maxBatchSize - batch.size());
+            if (!batch.isEmpty()) {
+                flush(batch);
+            }
+        }
+    }
+
+    private void flush(List<PendingOrder> batch) {
+        try {
+            flushOrRetry(batch);
+        } catch (Throwable e) {
+            // Error等异常不逐个重试,还没有完成的订单都失败,写入线程继续运行,等待的调用者不会一直阻塞
+            log.error("批量写入{}个订单出错", batch.size(), e);
+            for (PendingOrder pending : batch) {
+                pending.future.completeExceptionally(e);
+            }
+        }
+    }
+
+    private void flushOrRetry(List<PendingOrder> batch) {
+        try {
+            persist(batch);
+            for (PendingOrder pending : batch) {
+                pending.future.complete(null);
+            }
+            log.debug("批量写入{}个订单", batch.size());
+        } catch (RuntimeException e) {
+            if (batch.size() == 1) {
+                batch.get(0).future.completeExceptionally(e);
+                return;
+            }
+            // 逐个重新写入,找出出错的订单
+            log.warn("批量写入{}个订单失败,逐个重新写入", batch.size(), e);
+            for (PendingOrder pending : batch) {
+                try {
+                    persist(Collections.singletonList(pending));
+                    pending.future.complete(null);
+                } catch (RuntimeException single) {
+                    pending.future.completeExceptionally(single);
+                }
+            }
+        }
+    }
+
+    // 同一条SQL连续执行才能放在一个JDBC批量中,所以先写所有订单,再写所有订单项,最后写所有发件箱记录
+    private void persist(List<PendingOrder> batch) {
+        transactionTemplate.executeWithoutResult(status -> {
+            OmsOrderMapper orderMapper = batchSqlSession.getMapper(OmsOrderMapper.class);
+            OmsOrderItemMapper itemMapper = batchSqlSession.getMapper(OmsOrderItemMapper.class);
+            OmsOrderOutboxMapper outboxMapper = batchSqlSession.getMapper(OmsOrderOutboxMapper.class);
+            for (PendingOrder pending : batch) {
+                orderMapper.insertOrder(pending.order);
+            }
+            for (PendingOrder pending : batch) {
+                for (OmsOrderItem item : pending.orderItems) {
+                    itemMapper.insertOrderItem(item);
+                }
+            }
+            for (PendingOrder pending : batch) {
+                if (pending.outbox != null) {
+                    outboxMapper.insertOutbox(pending.outbox);
+                }
+            }
+            // 在事务提交前发送,出错时整个事务回滚
+            batchSqlSession.flushStatements();
+        });
+    }
+
+    private static class PendingOrder {
+        private final OmsOrder order;
+        private final List<OmsOrderItem> orderItems;
+        private final OmsOrderOutbox outbox;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        PendingOrder(OmsOrder order, List<OmsOrderItem> orderItems, OmsOrderOutbox outbox) {
+            this.order = order;
+            this.orderItems = orderItems;
+            this.outbox = outbox;
+        }
+    }
+}
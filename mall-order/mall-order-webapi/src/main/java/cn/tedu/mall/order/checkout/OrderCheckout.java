@@ -0,0 +1,28 @@
+package cn.tedu.mall.order.checkout;
+
+import cn.tedu.mall.pojo.order.model.OmsOrder;
+import cn.tedu.mall.pojo.order.model.OmsOrderItem;
+import cn.tedu.mall.pojo.product.dto.SkuQuantity;
+
+import java.util.List;
+
+/**
+ * 下单时减少库存并保存订单的方式
+ * 由mall.order.checkout-mode配置选择:
+ * seata(默认) Seata全局事务中减少库存并新增订单
+ * reservation 先预留库存,本地事务新增订单和发件箱,再异步确认预留
+ */
+public interface OrderCheckout {
+
+    String MODE_SEATA = "seata";
+    String MODE_RESERVATION = "reservation";
+
+    /**
+     * 减少订单中商品的库存,并保存订单和订单项
+     * 库存不足时抛出异常,订单不会保存
+     * @param order 补齐了所有属性的订单
+     * @param orderItems 订单项
+     * @param skuQuantities 订单中的SKU和购买数量
+     */
+    void checkout(OmsOrder order, List<OmsOrderItem> orderItems, List<SkuQuantity> skuQuantities);
+}
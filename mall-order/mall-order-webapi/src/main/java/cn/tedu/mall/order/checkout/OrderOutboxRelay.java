@@ -0,0 +1,135 @@
+package cn.tedu.mall.order.checkout;
+
+import cn.tedu.mall.order.mapper.OmsOrderMapper;
+import cn.tedu.mall.order.mapper.OmsOrderOutboxMapper;
+import cn.tedu.mall.pojo.order.model.OmsOrder;
+import cn.tedu.mall.pojo.order.model.OmsOrderOutbox;
+import cn.tedu.mall.product.service.order.IForOrderSkuService;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.dubbo.config.annotation.DubboReference;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 发件箱中继
+ * 定时读取已经保存的订单,确认它们在product模块的库存预留
+ * 预留已经过期释放时,库存可能已经卖给了其它订单,这时取消订单
+ * 确认是幂等的,多个order节点同时处理同一条记录没有影响
+ * 确认失败的记录按失败次数退避重试,达到上限后标记为失败不再重试,不会阻塞之后的记录
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "mall.order.checkout-mode", havingValue = OrderCheckout.MODE_RESERVATION)
+public class OrderOutboxRelay {
+
+    // 取消订单的状态:2=已取消
+    private static final int STATE_CANCELED = 2;
+    // 重试间隔的上限
+    private static final long MAX_BACKOFF_MILLIS = 60 * 1000L;
+
+    @Value("${mall.order.outbox-interval-millis:1000}")
+    private long outboxIntervalMillis;
+    @Value("${mall.order.outbox-batch-size:100}")
+    private int outboxBatchSize;
+    // 确认失败的次数达到上限后不再重试
+    @Value("${mall.order.outbox-max-retries:10}")
+    private int outboxMaxRetries;
+
+    @DubboReference
+    private IForOrderSkuService dubboSkuService;
+    @Autowired
+    private OmsOrderOutboxMapper omsOrderOutboxMapper;
+    @Autowired
+    private OmsOrderMapper omsOrderMapper;
+
+    private ScheduledExecutorService scheduler;
+
+    @PostConstruct
+    public void start() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "order-outbox-relay");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::relay,
+                outboxIntervalMillis, outboxIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * 确认发件箱中所有待确认的订单
+     * @return 处理的记录数
+     */
+    public int relay() {
+        int count = 0;
+        // 按id向后翻页,每条记录每次最多处理一次,失败的记录不影响之后的记录
+        long afterId = 0;
+        LocalDateTime now = LocalDateTime.now();
+        try {
+            List<OmsOrderOutbox> outboxes;
+            do {
+                outboxes = omsOrderOutboxMapper.selectPending(afterId, outboxBatchSize);
+                for (OmsOrderOutbox outbox : outboxes) {
+                    afterId = outbox.getId();
+                    if (!backingOff(outbox, now) && confirm(outbox)) {
+                        count++;
+                    }
+                }
+            } while (outboxes.size() == outboxBatchSize);
+        } catch (RuntimeException e) {
+            log.error("读取订单发件箱失败", e);
+        }
+        return count;
+    }
+
+    // 失败n次的记录,距离上一次失败不到 间隔*2^n(最多1分钟)时跳过
+    private boolean backingOff(OmsOrderOutbox outbox, LocalDateTime now) {
+        int retries = outbox.getRetries() == null ? 0 : outbox.getRetries();
+        if (retries == 0 || outbox.getGmtModified() == null) {
+            return false;
+        }
+        long backoff = Math.min(outboxIntervalMillis << Math.min(retries, 16), MAX_BACKOFF_MILLIS);
+        return outbox.getGmtModified().plus(backoff, ChronoUnit.MILLIS).isAfter(now);
+    }
+
+    private boolean confirm(OmsOrderOutbox outbox) {
+        Long orderId = outbox.getOrderId();
+        try {
+            if (!dubboSkuService.confirmReservation(orderId)) {
+                // 预留已经过期释放,取消订单
+                log.warn("{}号订单的库存预留已经失效,取消订单", orderId);
+                OmsOrder order = new OmsOrder();
+                order.setId(orderId);
+                order.setState(STATE_CANCELED);
+                omsOrderMapper.updateOrderById(order);
+            }
+            omsOrderOutboxMapper.updateStateDone(outbox.getId());
+            return true;
+        } catch (RuntimeException e) {
+            int retries = outbox.getRetries() + 1;
+            if (retries >= outboxMaxRetries) {
+                log.error("{}号订单确认库存预留失败{}次,不再重试,需要人工处理", orderId, retries, e);
+                omsOrderOutboxMapper.updateStateFailed(outbox.getId());
+            } else {
+                log.warn("{}号订单确认库存预留失败,已失败{}次", orderId, retries, e);
+                omsOrderOutboxMapper.increaseRetries(outbox.getId());
+            }
+            return false;
+        }
+    }
+}
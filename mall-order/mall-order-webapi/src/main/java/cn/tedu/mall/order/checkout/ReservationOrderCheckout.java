@@ -0,0 +1,89 @@
+package cn.tedu.mall.order.checkout;
+
+import cn.tedu.mall.order.mapper.OmsOrderItemMapper;
+import cn.tedu.mall.order.mapper.OmsOrderMapper;
+import cn.tedu.mall.order.mapper.OmsOrderOutboxMapper;
+import cn.tedu.mall.pojo.order.model.OmsOrder;
+import cn.tedu.mall.pojo.order.model.OmsOrderItem;
+import cn.tedu.mall.pojo.order.model.OmsOrderOutbox;
+import cn.tedu.mall.pojo.product.dto.SkuQuantity;
+import cn.tedu.mall.product.service.order.IForOrderSkuService;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.dubbo.config.annotation.DubboReference;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+/**
+ * 库存预留下单,不使用Seata全局事务
+ * 1.product模块在本地事务中减少库存并记录带过期时间的预留
+ * 2.本地事务中新增订单、订单项和发件箱记录
+ * 3.OrderOutboxRelay读取发件箱,异步确认预留
+ * 第2步失败时立即释放预留;进程在第1步和第2步之间退出时,预留过期后由product模块归还库存
+ * 开启mall.order.batch-write时,第2步由OrderBatchWriter和其它订单合并为JDBC批量写入
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "mall.order.checkout-mode", havingValue = OrderCheckout.MODE_RESERVATION)
+public class ReservationOrderCheckout implements OrderCheckout {
+
+    // 预留的有效时间,必须远大于发件箱确认的间隔
+    @Value("${mall.order.reservation-ttl-millis:300000}")
+    private long reservationTtlMillis;
+
+    @DubboReference
+    private IForOrderSkuService dubboSkuService;
+    @Autowired
+    private OmsOrderMapper omsOrderMapper;
+    @Autowired
+    private OmsOrderItemMapper omsOrderItemMapper;
+    @Autowired
+    private OmsOrderOutboxMapper omsOrderOutboxMapper;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    // mall.order.batch-write.enabled=true时才有
+    @Autowired(required = false)
+    private OrderBatchWriter orderBatchWriter;
+
+    @Override
+    public void checkout(OmsOrder order, List<OmsOrderItem> orderItems, List<SkuQuantity> skuQuantities) {
+        // 1.预留库存,库存不足时抛出异常,订单不会保存
+        dubboSkuService.reserveStock(order.getId(), skuQuantities, reservationTtlMillis);
+        OmsOrderOutbox outbox = new OmsOrderOutbox();
+        outbox.setOrderId(order.getId());
+        outbox.setState(OmsOrderOutbox.STATE_PENDING);
+        outbox.setRetries(0);
+        // 批量写入的语句显式写入时间字段,和订单时间一致
+        outbox.setGmtCreate(order.getGmtCreate());
+        outbox.setGmtModified(order.getGmtCreate());
+        for (OmsOrderItem orderItem : orderItems) {
+            orderItem.setGmtCreate(order.getGmtCreate());
+            orderItem.setGmtModified(order.getGmtCreate());
+        }
+        try {
+            // 2.订单、订单项和发件箱在同一个本地事务中保存
+            if (orderBatchWriter != null && orderBatchWriter.isAlive()) {
+                // 开启批量写入时,和同时提交的其它订单合并写入;写入线程不在运行时直接写入
+                orderBatchWriter.write(order, orderItems, outbox);
+            } else {
+                transactionTemplate.executeWithoutResult(status -> {
+                    omsOrderMapper.insertOrder(order);
+                    omsOrderItemMapper.insertOrderItemList(orderItems);
+                    omsOrderOutboxMapper.insertOutbox(outbox);
+                });
+            }
+        } catch (RuntimeException e) {
+            // 订单没有保存,立即释放预留;释放失败时等待预留过期
+            try {
+                dubboSkuService.releaseReservation(order.getId());
+            } catch (RuntimeException releaseException) {
+                log.warn("{}号订单释放库存预留失败,等待预留过期后归还", order.getId(), releaseException);
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package cn.tedu.mall.order.checkout;
+
+import cn.tedu.mall.order.mapper.OmsOrderItemMapper;
+import cn.tedu.mall.order.mapper.OmsOrderMapper;
+import cn.tedu.mall.pojo.order.model.OmsOrder;
+import cn.tedu.mall.pojo.order.model.OmsOrderItem;
+import cn.tedu.mall.pojo.product.dto.SkuQuantity;
+import cn.tedu.mall.product.service.order.IForOrderSkuService;
+import io.seata.spring.annotation.GlobalTransactional;
+import org.apache.dubbo.config.annotation.DubboReference;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Seata全局事务下单
+ * Dubbo调用product模块减少库存和新增订单在同一个全局事务中,任何一步失败都会全部回滚
+ */
+@Component
+@ConditionalOnProperty(name = "mall.order.checkout-mode",
+        havingValue = OrderCheckout.MODE_SEATA, matchIfMissing = true)
+public class SeataOrderCheckout implements OrderCheckout {
+
+    @DubboReference
+    private IForOrderSkuService dubboSkuService;
+    @Autowired
+    private OmsOrderMapper omsOrderMapper;
+    @Autowired
+    private OmsOrderItemMapper omsOrderItemMapper;
+
+    // 这个方法中利用Dubbo远程调用了product模块的数据库操作,有分布式事务需求
+    // 所以使用注解激活Seata分布式事务的功能
+    @GlobalTransactional
+    @Override
+    public void checkout(OmsOrder order, List<OmsOrderItem> orderItems, List<SkuQuantity> skuQuantities) {
+        // 1.减少库存
+        // 一次dubbo调用减少所有商品的库存,任何商品库存不足时会抛出异常
+        // 异常会终止程序,并触发seata分布式事务的回滚
+        dubboSkuService.reduceStockBatch(skuQuantities);
+        // 2.执行新增订单
+        omsOrderMapper.insertOrder(order);
+        // 3.新增订单项(批量新增集合中的所有订单项数据)
+        omsOrderItemMapper.insertOrderItemList(orderItems);
+    }
+}
@@ -0,0 +1,38 @@
+package cn.tedu.mall.order.config;
+
+import cn.tedu.mall.order.checkout.OrderBatchWriter;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.mybatis.spring.SqlSessionTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * 订单批量写入配置类
+ * mall.order.batch-write.enabled=true时,库存预留下单把同时提交的多个订单合并为JDBC批量写入
+ * 数据库连接需要加上rewriteBatchedStatements=true,MySQL驱动才会把批量改写为多行INSERT
+ */
+@Configuration
+@ConditionalOnProperty(name = "mall.order.batch-write.enabled", havingValue = "true")
+public class OrderBatchWriteConfiguration {
+
+    // 一次批量写入的最多订单数
+    @Value("${mall.order.batch-write.max-batch-size:200}")
+    private int maxBatchSize;
+    // 等待更多订单加入批量的时间,0表示只合并已经在排队的订单,不增加单个订单的延迟
+    @Value("${mall.order.batch-write.linger-millis:0}")
+    private long lingerMillis;
+    // 下单线程等待写入完成的最长时间
+    @Value("${mall.order.batch-write.write-timeout-millis:5000}")
+    private long writeTimeoutMillis;
+
+    @Bean(destroyMethod = "close")
+    public OrderBatchWriter orderBatchWriter(TransactionTemplate transactionTemplate,
+                                             SqlSessionFactory sqlSessionFactory) {
+        SqlSessionTemplate batchSqlSession = new SqlSessionTemplate(sqlSessionFactory, ExecutorType.BATCH);
+        return new OrderBatchWriter(transactionTemplate, batchSqlSession, maxBatchSize, lingerMillis, writeTimeoutMillis);
+    }
+}
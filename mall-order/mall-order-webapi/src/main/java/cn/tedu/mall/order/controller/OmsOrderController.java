@@ -7,6 +7,7 @@ import cn.tedu.mall.pojo.order.dto.OrderAddDTO;
 import cn.tedu.mall.pojo.order.dto.OrderListTimeDTO;
 import cn.tedu.mall.pojo.order.dto.OrderStateUpdateDTO;
 import cn.tedu.mall.pojo.order.vo.OrderAddVO;
+import cn.tedu.mall.pojo.order.vo.OrderListCursorVO;
 import cn.tedu.mall.pojo.order.vo.OrderListVO;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
@@ -46,6 +47,16 @@ public class OmsOrderController {
 
     }
 
+    @GetMapping("/list/cursor")
+    @ApiOperation("按游标分页查询当前登录用户指定时间内订单")
+    @PreAuthorize("hasRole('user')")
+    public JsonResult<OrderListCursorVO> listUserOrdersByCursor(
+                                OrderListTimeDTO orderListTimeDTO){
+        OrderListCursorVO cursorVO=
+                omsOrderService.listOrdersByCursor(orderListTimeDTO);
+        return JsonResult.ok(cursorVO);
+    }
+
     @PostMapping("/update/state")
     @ApiOperation("修改订单状态的方法")
     @PreAuthorize("hasRole('user')")
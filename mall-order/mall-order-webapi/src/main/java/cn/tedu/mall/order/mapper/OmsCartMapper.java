@@ -32,4 +32,14 @@ public interface OmsCartMapper {
     // 根据用户id和skuId删除购物车中商品
     int deleteCartByUserIdAndSkuId(OmsCart omsCart);
 
+    // 根据用户id和多个skuId删除购物车中商品(下单后删除已购买的商品)
+    int deleteCartsByUserIdAndSkuIds(@Param("userId") Long userId,
+                                     @Param("skuIds") List<Long> skuIds);
+
+    // 删除多个用户购物车中的所有商品,Redis购物车写回数据库时使用
+    int deleteCartsByUserIds(List<Long> userIds);
+
+    // 批量新增购物车商品,Redis购物车写回数据库时使用
+    int insertCarts(List<OmsCart> omsCarts);
+
 }
@@ -1,6 +1,8 @@
 package cn.tedu.mall.order.mapper;
 
 import cn.tedu.mall.pojo.order.model.OmsOrderItem;
+import cn.tedu.mall.pojo.order.vo.OrderItemListVO;
+import org.apache.ibatis.annotations.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
@@ -14,5 +16,12 @@ public interface OmsOrderItemMapper {
     // 所以我们当前方法的参数就设置为了List<OmsOrderItem>类型
     int insertOrderItemList(List<OmsOrderItem> omsOrderItems);
 
+    // 新增一个订单项,批量写入订单时使用
+    // 在ExecutorType.BATCH下多次执行同一条语句,由JDBC批量一次发送
+    int insertOrderItem(OmsOrderItem omsOrderItem);
+
+    // 一次查询多个订单的订单项,按游标查询订单列表时使用
+    List<OrderItemListVO> selectOrderItemsByOrderIds(@Param("orderIds") List<Long> orderIds);
+
 
 }
@@ -3,6 +3,7 @@ package cn.tedu.mall.order.mapper;
 import cn.tedu.mall.pojo.order.dto.OrderListTimeDTO;
 import cn.tedu.mall.pojo.order.model.OmsOrder;
 import cn.tedu.mall.pojo.order.vo.OrderListVO;
+import org.apache.ibatis.annotations.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
@@ -14,6 +15,11 @@ public interface OmsOrderMapper {
     int  insertOrder(OmsOrder omsOrder);
     // 查询当前登录用户指定时间范围内的所有订单(是关联订单项表的查询)
     List<OrderListVO> selectOrdersBetweenTimes(OrderListTimeDTO orderListTimeDTO);
+    // 按(gmt_create,id)游标查询当前登录用户指定时间范围内的订单,只查询订单表,不包含订单项
+    List<OrderListVO> selectOrdersByCursor(@Param("query") OrderListTimeDTO orderListTimeDTO,
+                                           @Param("limit") int limit);
+    // 查询当前登录用户指定时间范围内的订单数,只查询订单表
+    long countOrdersBetweenTimes(OrderListTimeDTO orderListTimeDTO);
 
     // 利用动态sql语句,实现对订单字段的修改
     // 参数是OmsOrder类型,必须包含id属性值,id属性值不能修改
@@ -0,0 +1,27 @@
+package cn.tedu.mall.order.mapper;
+
+import cn.tedu.mall.pojo.order.model.OmsOrderOutbox;
+import org.apache.ibatis.annotations.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface OmsOrderOutboxMapper {
+
+    // 新增待确认库存的订单,和订单在同一个事务中执行
+    int insertOutbox(OmsOrderOutbox outbox);
+
+    // 查询id大于afterId的待确认库存的订单,先生成的在前
+    List<OmsOrderOutbox> selectPending(@Param("afterId") Long afterId, @Param("limit") Integer limit);
+
+    // 标记为已处理
+    int updateStateDone(Long id);
+
+    // 确认失败,增加失败次数,下一次继续确认
+    int increaseRetries(Long id);
+
+    // 确认失败的次数达到上限,不再自动重试
+    int updateStateFailed(Long id);
+
+}
@@ -4,59 +4,39 @@ import cn.tedu.mall.common.exception.CoolSharkServiceException;
 import cn.tedu.mall.common.pojo.domain.CsmallAuthenticationInfo;
 import cn.tedu.mall.common.restful.JsonPage;
 import cn.tedu.mall.common.restful.ResponseCode;
-import cn.tedu.mall.order.mapper.OmsCartMapper;
 import cn.tedu.mall.order.service.IOmsCartService;
+import cn.tedu.mall.order.utils.CartRedisStore;
 import cn.tedu.mall.pojo.order.dto.CartAddDTO;
 import cn.tedu.mall.pojo.order.dto.CartUpdateDTO;
 import cn.tedu.mall.pojo.order.model.OmsCart;
 import cn.tedu.mall.pojo.order.vo.CartStandardVO;
-import com.github.pagehelper.PageHelper;
-import com.github.pagehelper.PageInfo;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 @Service
 @Slf4j
 public class OmsCartServiceImpl implements IOmsCartService {
 
+    // 购物车保存在Redis中,由CartWriteBehind批量写回oms_cart表
     @Autowired
-    private OmsCartMapper omsCartMapper;
+    private CartRedisStore cartRedisStore;
 
     @Override
     public void addCart(CartAddDTO cartDTO) {
         // 要查询当前登录用户的购物车中是否已经包含指定商品,要先获取当前登录用id
         // 单独编写一个方法,从SpringSecurity上下文中获取用户id
         Long userId=getUserId();
-        // 先按照参数中用户id和skuId进行查询
-        OmsCart omsCart=omsCartMapper
-                .selectExistsCart(userId,cartDTO.getSkuId());
-        // 判断当前用户购物车中是否已经有这个商品
-        if(omsCart == null){
-            // 如果不存在这个商品进行新增操作
-            // 新增购物车需要的参数类型是OmsCart,所以要先实例化一个OmsCart对象
-            OmsCart newCart=new OmsCart();
-            // 将参数cartDTO中的同名属性赋值到newCart对象中
-            BeanUtils.copyProperties(cartDTO,newCart);
-            // cartDTO对象中没有userId属性,需要单独为newCart赋值
-            newCart.setUserId(userId);
-            // 执行新增操作,新增sku信息到购物车表
-            omsCartMapper.saveCart(newCart);
-        }else{
-            // 如果已经存在执行数量的修改
-            // 运行到这里omsCart一定不是null
-            // 我们需要做的就是将购物车中原有的数量和本次新增的商品数量相加
-            // 再赋值到当前的omsCart属性中去执行修改
-            // 我们需要将omsCart对象的getQuantity()和cartDTO对象的getQuantity()相加
-            omsCart.setQuantity(omsCart.getQuantity()+cartDTO.getQuantity());
-            // 确定了数量之后,执行持久层方法进行修改
-            omsCartMapper.updateQuantityById(omsCart);
-        }
+        // 购物车中不存在这个商品时新增,已经存在时在Redis中原子累加数量
+        // 不需要先查询再新增或修改
+        cartRedisStore.add(userId,cartDTO);
     }
 
     // 根据用户id分页查询该用户购物车中商品
@@ -64,19 +44,25 @@ public class OmsCartServiceImpl implements IOmsCartService {
     public JsonPage<CartStandardVO> listCarts(Integer page, Integer pageSize) {
         // 首先要确定当前登录用的id,调用写好的方法从SpringSecurity上下文中获取
         Long userId=getUserId();
-        // 执行查询之前,先设置分页条件
-        PageHelper.startPage(page, pageSize);
-        // 执行查询,在PageHelper的设置下,会自动在sql语句后添加limit关键字,实现分页查询
-        List<CartStandardVO> list=omsCartMapper.selectCartsByUserId(userId);
-        // list是分页数据,要将它保存到PageInfo对象中,再将PageInfo对象转换为JsonPage返回
-        return JsonPage.restPage(new PageInfo<>(list));
+        // 从Redis中查询购物车中的全部商品,再按分页条件截取
+        List<CartStandardVO> list=cartRedisStore.list(userId);
+        int total=list.size();
+        int from=Math.min(Math.max(page-1,0)*pageSize,total);
+        int to=Math.min(from+pageSize,total);
+        JsonPage<CartStandardVO> jsonPage=new JsonPage<>();
+        jsonPage.setPage(page);
+        jsonPage.setPageSize(pageSize);
+        jsonPage.setTotal((long) total);
+        jsonPage.setTotalPage((total+pageSize-1)/pageSize);
+        jsonPage.setList(new ArrayList<>(list.subList(from,to)));
+        return jsonPage;
     }
 
     // 支持批量删除的删除购物车信息的方法
+    // ids是购物车id,Redis中保存了购物车id和skuId的对应关系
     @Override
     public void removeCart(Long[] ids) {
-        // 调用mapper中编写的按数组参数删除购物车信息的方法
-        int row=omsCartMapper.deleteCartsByIds(ids);
+        long row=cartRedisStore.removeByIds(getUserId(),Arrays.asList(ids));
         if(row==0){
             throw new CoolSharkServiceException(
                     ResponseCode.NOT_FOUND,"您要删除的商品已经删除了");
@@ -86,7 +72,7 @@ public class OmsCartServiceImpl implements IOmsCartService {
     @Override
     public void removeAllCarts() {
         Long userId=getUserId();
-        int rows=omsCartMapper.deleteCartsByUserId(userId);
+        long rows=cartRedisStore.clear(userId);
         if(rows==0){
             throw new CoolSharkServiceException(
                     ResponseCode.NOT_FOUND,"您的购物车已经是空的了!");
@@ -98,19 +84,24 @@ public class OmsCartServiceImpl implements IOmsCartService {
         // 直接调用删除购物车中商品方法即可
         // 我们电商网站不会因为购物车中商品不存在,就不让用户购买
         // 所以这个删除不判断是否成功,也不抛出异常
-        omsCartMapper.deleteCartByUserIdAndSkuId(omsCart);
+        cartRedisStore.remove(omsCart.getUserId(),
+                Collections.singletonList(omsCart.getSkuId()));
     }
 
     @Override
-    public void updateQuantity(CartUpdateDTO cartUpdateDTO) {
-        // 当前方法参数是CartUpdateDTO,执行修改需要的是OmsCart
-        // 所以要先实例化OmsCart对象,并给它赋值
-        OmsCart omsCart=new OmsCart();
-        // cartUpdateDTO只有id和quantity属性,赋值给omsCart,执行修改的参数齐全了
-        BeanUtils.copyProperties(cartUpdateDTO,omsCart);
-        // 执行修改
-        omsCartMapper.updateQuantityById(omsCart);
+    public void removeUserCarts(Long userId, List<Long> skuIds) {
+        // 和上面的方法一样不判断是否删除成功,一个订单只执行一次删除
+        if (skuIds == null || skuIds.isEmpty()) {
+            return;
+        }
+        cartRedisStore.remove(userId, skuIds);
+    }
 
+    @Override
+    public void updateQuantity(CartUpdateDTO cartUpdateDTO) {
+        // cartUpdateDTO的id是购物车id,只能修改当前登录用户购物车中的商品
+        cartRedisStore.updateQuantity(getUserId(),
+                cartUpdateDTO.getId(),cartUpdateDTO.getQuantity());
     }
 
     // 业务逻辑层方法中需要获得用户id
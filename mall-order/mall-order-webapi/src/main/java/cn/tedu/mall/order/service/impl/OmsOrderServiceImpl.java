@@ -4,27 +4,27 @@ import cn.tedu.mall.common.exception.CoolSharkServiceException;
 import cn.tedu.mall.common.pojo.domain.CsmallAuthenticationInfo;
 import cn.tedu.mall.common.restful.JsonPage;
 import cn.tedu.mall.common.restful.ResponseCode;
+import cn.tedu.mall.order.checkout.OrderCheckout;
 import cn.tedu.mall.order.mapper.OmsOrderItemMapper;
 import cn.tedu.mall.order.mapper.OmsOrderMapper;
 import cn.tedu.mall.order.service.IOmsCartService;
 import cn.tedu.mall.order.service.IOmsOrderService;
-import cn.tedu.mall.order.utils.IdGeneratorUtils;
+import cn.tedu.mall.common.utils.IdGeneratorUtils;
 import cn.tedu.mall.pojo.order.dto.OrderAddDTO;
 import cn.tedu.mall.pojo.order.dto.OrderItemAddDTO;
 import cn.tedu.mall.pojo.order.dto.OrderListTimeDTO;
 import cn.tedu.mall.pojo.order.dto.OrderStateUpdateDTO;
-import cn.tedu.mall.pojo.order.model.OmsCart;
 import cn.tedu.mall.pojo.order.model.OmsOrder;
 import cn.tedu.mall.pojo.order.model.OmsOrderItem;
 import cn.tedu.mall.pojo.order.vo.OrderAddVO;
 import cn.tedu.mall.pojo.order.vo.OrderDetailVO;
+import cn.tedu.mall.pojo.order.vo.OrderItemListVO;
+import cn.tedu.mall.pojo.order.vo.OrderListCursorVO;
 import cn.tedu.mall.pojo.order.vo.OrderListVO;
-import cn.tedu.mall.product.service.order.IForOrderSkuService;
+import cn.tedu.mall.pojo.product.dto.SkuQuantity;
 import com.github.pagehelper.PageHelper;
 import com.github.pagehelper.PageInfo;
-import io.seata.spring.annotation.GlobalTransactional;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.dubbo.config.annotation.DubboReference;
 import org.apache.dubbo.config.annotation.DubboService;
 import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -36,7 +36,9 @@ import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 // 订单管理模块的业务逻辑层实现类,因为后期秒杀模块也是要生成订单的,需要dubbo调用这个方法
@@ -45,9 +47,9 @@ import java.util.UUID;
 @Slf4j
 public class OmsOrderServiceImpl implements IOmsOrderService {
 
-    // dubbo调用减少库存的方法
-    @DubboReference
-    private IForOrderSkuService dubboSkuService;
+    // 减少库存并保存订单
+    @Autowired
+    private OrderCheckout orderCheckout;
     @Autowired
     private IOmsCartService omsCartService;
     @Autowired
@@ -55,10 +57,12 @@ public class OmsOrderServiceImpl implements IOmsOrderService {
     @Autowired
     private OmsOrderItemMapper omsOrderItemMapper;
 
+    // 按游标查询订单时的默认和最大每页条数
+    private static final int DEFAULT_CURSOR_PAGE_SIZE=10;
+    private static final int MAX_CURSOR_PAGE_SIZE=100;
+
     // 新增订单的方法
-    // 这个方法中利用Dubbo远程调用了product模块的数据库操作,有分布式事务需求
-    // 所以使用注解激活Seata分布式事务的功能
-    @GlobalTransactional
+    // 减少库存和保存订单由orderCheckout完成,根据配置使用Seata全局事务或库存预留
     @Override
     public OrderAddVO addOrder(OrderAddDTO orderAddDTO) {
         // 第一部分:收集信息,准备数据
@@ -81,47 +85,35 @@ public class OmsOrderServiceImpl implements IOmsOrderService {
         // 我们需要完成订单项信息新增到数据库的功能,而操作数据库方法的参数是List<OmsOrderItem>
         // 但是现在集合的类型是List<OrderItemAddDTO>,先需要将这个集合中的元素转换,保存到新集合
         List<OmsOrderItem> omsOrderItems=new ArrayList<>();
+        List<SkuQuantity> skuQuantities=new ArrayList<>();
+        List<Long> skuIds=new ArrayList<>();
+        // 订单项的id仍然从leaf中获取,所有订单项的id一次获取
+        List<Long> itemIds=IdGeneratorUtils.getDistributeIds("order_item",itemAddDTOs.size());
         // 编写从参数中获取的集合
-        for(OrderItemAddDTO addDTO : itemAddDTOs){
+        for(int i=0;i<itemAddDTOs.size();i++){
+            OrderItemAddDTO addDTO=itemAddDTOs.get(i);
             // 先实例化最终需要的类型对象OmsOrderItem
             OmsOrderItem orderItem=new OmsOrderItem();
             // 将正在遍历的addDTO对象的同名属性赋值到orderItem
             BeanUtils.copyProperties(addDTO,orderItem);
             // addDTO对象中没有id属性和orderId属性,需要单独赋值
-            // 当前对象的id属性仍然从leaf中获取
-            Long itemId=IdGeneratorUtils.getDistributeId("order_item");
-            orderItem.setId(itemId);
+            orderItem.setId(itemIds.get(i));
             // 赋值当前正要新增的订单id
             orderItem.setOrderId(order.getId());
             // orderItem所有值都赋值完成了,将它保存到集合中
             omsOrderItems.add(orderItem);
-            // 第二部分:执行数据库操作指令
-            // 1.减少库存
-            // 当前正在标记的对象就是一个包含SkuId和减少库存数的对象
-            // 获取skuId
-            Long skuId=orderItem.getSkuId();
-            // dubbo调用减少库存的方法
-            int row=dubboSkuService.reduceStockNum(
-                                    skuId,orderItem.getQuantity());
-            // 判断row的值
-            if(row==0){
-                // 如果row的值为0,表示库存没有变化,库存不足导致的
-                log.error("商品库存不足,skuId:{}",skuId);
-                // 抛出异常,终止程序,会触发seata分布式事务的回滚
-                throw new CoolSharkServiceException(
-                        ResponseCode.BAD_REQUEST,"您要购买的商品库存不足!");
-            }
-            // 2.删除勾选的购物车商品信息
-            OmsCart omsCart=new OmsCart();
-            omsCart.setUserId(order.getUserId());
-            omsCart.setSkuId(skuId);
-            // 执行删除
-            omsCartService.removeUserCarts(omsCart);
+            // 收集减少库存和删除购物车需要的参数,循环结束后一次执行
+            SkuQuantity skuQuantity=new SkuQuantity();
+            skuQuantity.setSkuId(orderItem.getSkuId());
+            skuQuantity.setQuantity(orderItem.getQuantity());
+            skuQuantities.add(skuQuantity);
+            skuIds.add(orderItem.getSkuId());
         }
-        // 3.执行新增订单
-        omsOrderMapper.insertOrder(order);
-        // 4.新增订单项(批量新增集合中的所有订单项数据)
-        omsOrderItemMapper.insertOrderItemList(omsOrderItems);
+        // 第二部分:执行数据库操作指令
+        // 1.减少库存并保存订单和订单项,任何商品库存不足时会抛出异常,订单不会保存
+        orderCheckout.checkout(order,omsOrderItems,skuQuantities);
+        // 2.订单保存成功后,删除勾选的购物车商品信息
+        omsCartService.removeUserCarts(order.getUserId(),skuIds);
         // 第三部分:准备返回值,返回给前端
         // 实例化返回值类型对象
         OrderAddVO addVO=new OrderAddVO();
@@ -206,6 +198,50 @@ public class OmsOrderServiceImpl implements IOmsOrderService {
         return JsonPage.restPage(new PageInfo<>(list));
     }
 
+    // 按游标分页查询当前登录用户,在指定时间范围内的订单
+    // 第一步只查询订单表,按(gmt_create,id)从游标之后取一页订单;第二步用这一页的订单id一次查询所有订单项
+    // 翻页越深也不需要跳过前面的行,订单项也不会被分到两页;总记录数只在withTotal为true时查询
+    @Override
+    public OrderListCursorVO listOrdersByCursor(OrderListTimeDTO orderListTimeDTO) {
+        validateTimeAndLoadTime(orderListTimeDTO);
+        orderListTimeDTO.setUserId(getUserId());
+        Integer pageSize=orderListTimeDTO.getPageSize();
+        if(pageSize==null || pageSize<=0){
+            pageSize=DEFAULT_CURSOR_PAGE_SIZE;
+        }
+        pageSize=Math.min(pageSize,MAX_CURSOR_PAGE_SIZE);
+        // 多查询一个订单,判断是否还有下一页
+        List<OrderListVO> orders=omsOrderMapper.selectOrdersByCursor(orderListTimeDTO,pageSize+1);
+        boolean hasMore=orders.size()>pageSize;
+        if(hasMore){
+            orders=new ArrayList<>(orders.subList(0,pageSize));
+        }
+        if(!orders.isEmpty()){
+            List<Long> orderIds=new ArrayList<>();
+            Map<Long,OrderListVO> orderMap=new HashMap<>();
+            for(OrderListVO order : orders){
+                order.setOrderItems(new ArrayList<>());
+                orderIds.add(order.getId());
+                orderMap.put(order.getId(),order);
+            }
+            for(OrderItemListVO item : omsOrderItemMapper.selectOrderItemsByOrderIds(orderIds)){
+                orderMap.get(item.getOrderId()).getOrderItems().add(item);
+            }
+        }
+        OrderListCursorVO cursorVO=new OrderListCursorVO();
+        cursorVO.setList(orders);
+        cursorVO.setHasMore(hasMore);
+        if(hasMore){
+            OrderListVO last=orders.get(orders.size()-1);
+            cursorVO.setNextCursorGmtCreate(last.getGmtCreate());
+            cursorVO.setNextCursorId(last.getId());
+        }
+        if(Boolean.TRUE.equals(orderListTimeDTO.getWithTotal())){
+            cursorVO.setTotal(omsOrderMapper.countOrdersBetweenTimes(orderListTimeDTO));
+        }
+        return cursorVO;
+    }
+
     private void validateTimeAndLoadTime(OrderListTimeDTO orderListTimeDTO) {
         // 获取参数中开始时间和结束时间
         LocalDateTime start=orderListTimeDTO.getStartTime();
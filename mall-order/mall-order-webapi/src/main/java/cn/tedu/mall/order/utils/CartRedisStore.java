@@ -0,0 +1,444 @@
+package cn.tedu.mall.order.utils;
+
+import cn.tedu.mall.common.utils.IdGeneratorUtils;
+import cn.tedu.mall.order.mapper.OmsCartMapper;
+import cn.tedu.mall.pojo.order.dto.CartAddDTO;
+import cn.tedu.mall.pojo.order.vo.CartStandardVO;
+import cn.tedu.mall.pojo.product.vo.SkuStandardVO;
+import cn.tedu.mall.product.service.order.IForOrderSkuService;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.dubbo.config.annotation.DubboReference;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.scripting.support.ResourceScriptSource;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 购物车的Redis存储
+ * 每个用户一个hash,field为skuId,value为数量,新增时用HINCRBY原子累加;"c:skuId"字段保存加入时间
+ * "d:skuId"字段保存第一次加入时的标题、图片、价格等显示信息,和oms_cart中每行记录保存的一致,不同用户之间互不影响
+ * 修改过购物车的用户id保存到待写回集合,由CartWriteBehind批量写回oms_cart表,写回成功之前保存在写回中集合
+ * Redis中没有用户的购物车时从oms_cart表加载,hash中的loaded字段用来区分"购物车为空"和"还没有加载"
+ * 每个sku第一次加入时从leaf获取购物车id(从数据库加载时使用oms_cart的id),"i:skuId"和"k:购物车id"字段保存两者的对应关系
+ * 返回给前端的购物车id、删除和修改数量时传入的id都是购物车id,写回数据库时保持不变
+ * 购物车记录中没有显示信息的sku从product模块批量查询,查询结果在Redis中缓存一小段时间,所有用户共用
+ */
+@Slf4j
+@Component
+public class CartRedisStore {
+
+    private static final String CART_PREFIX = "mall:cart:user:";
+    // 修改过购物车,需要写回数据库的用户id
+    private static final String DIRTY_KEY = "mall:cart:dirty";
+    // 已经取出正在写回,还没有提交到数据库的用户id
+    private static final String PROCESSING_KEY = "mall:cart:dirty:processing";
+    private static final String LOADED_FIELD = "loaded";
+    private static final String CREATE_PREFIX = "c:";
+    private static final String DISPLAY_PREFIX = "d:";
+    private static final String ID_PREFIX = "i:";
+    // 从product模块查询到的sku显示信息,不存在的sku保存空字符串
+    private static final String SKU_DISPLAY_PREFIX = "mall:cart:sku:";
+    private static final long SKU_DISPLAY_TTL_SECONDS = 60;
+    // leaf中购物车id的业务标识
+    private static final String CART_ID_KEY = "cart";
+    // 购物车长时间不访问时从Redis中过期,再次访问时从数据库加载
+    private static final long CART_TTL_MILLIS = 1000L * 60 * 60 * 24 * 7;
+    // 脚本返回-1表示购物车还没有从数据库加载
+    private static final long NOT_LOADED = -1;
+
+    private static final DefaultRedisScript<Long> loadScript = script("lua/cart_load.lua");
+    private static final DefaultRedisScript<Long> addScript = script("lua/cart_add.lua");
+    private static final DefaultRedisScript<Long> updateScript = script("lua/cart_update.lua");
+    private static final DefaultRedisScript<Long> removeScript = script("lua/cart_remove.lua");
+    private static final DefaultRedisScript<Long> clearScript = script("lua/cart_clear.lua");
+    private static final DefaultRedisScript<Long> dirtyRestoreScript = script("lua/cart_dirty_restore.lua");
+    private static final DefaultRedisScript<Long> dirtyRecoverScript = script("lua/cart_dirty_recover.lua");
+    @SuppressWarnings("rawtypes")
+    private static final DefaultRedisScript<List> dirtyPopScript = new DefaultRedisScript<>();
+
+    static {
+        dirtyPopScript.setScriptSource(new ResourceScriptSource(new ClassPathResource("lua/cart_dirty_pop.lua")));
+        dirtyPopScript.setResultType(List.class);
+    }
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private OmsCartMapper omsCartMapper;
+    @Autowired
+    private ObjectMapper objectMapper;
+    // 购物车记录中没有显示信息的sku,从product模块查询
+    @DubboReference
+    private IForOrderSkuService dubboSkuService;
+
+    /**
+     * 新增商品到购物车,购物车中已有这个商品时累加数量
+     * @return 累加后的数量
+     */
+    public long add(Long userId, CartAddDTO cartAddDTO) {
+        CartStandardVO display = display(cartAddDTO.getSkuId(), cartAddDTO.getTitle(),
+                cartAddDTO.getMainPicture(), cartAddDTO.getPrice(), null, null);
+        return execute(userId, addScript,
+                String.valueOf(cartAddDTO.getSkuId()),
+                String.valueOf(cartAddDTO.getQuantity()),
+                String.valueOf(System.currentTimeMillis()),
+                String.valueOf(CART_TTL_MILLIS),
+                String.valueOf(userId),
+                toJson(display),
+                String.valueOf(IdGeneratorUtils.getDistributeId(CART_ID_KEY)));
+    }
+
+    /**
+     * 修改购物车中商品的数量
+     * @return 购物车中没有这个购物车id时返回false
+     */
+    public boolean updateQuantity(Long userId, Long cartId, Integer quantity) {
+        return execute(userId, updateScript,
+                String.valueOf(cartId),
+                String.valueOf(quantity),
+                String.valueOf(CART_TTL_MILLIS),
+                String.valueOf(userId)) > 0;
+    }
+
+    /**
+     * 按skuId删除购物车中的商品,下单后使用
+     * @return 删除的商品数量
+     */
+    public long remove(Long userId, Collection<Long> skuIds) {
+        return remove(userId, false, skuIds);
+    }
+
+    /**
+     * 按购物车id删除购物车中的商品
+     * @return 删除的商品数量
+     */
+    public long removeByIds(Long userId, Collection<Long> cartIds) {
+        return remove(userId, true, cartIds);
+    }
+
+    private long remove(Long userId, boolean byCartId, Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        List<String> args = new ArrayList<>(ids.size() + 3);
+        args.add(String.valueOf(CART_TTL_MILLIS));
+        args.add(String.valueOf(userId));
+        args.add(byCartId ? "1" : "0");
+        for (Long id : ids) {
+            args.add(String.valueOf(id));
+        }
+        return execute(userId, removeScript, args.toArray());
+    }
+
+    /**
+     * 清空购物车
+     * @return 删除的商品数量
+     */
+    public long clear(Long userId) {
+        return execute(userId, clearScript,
+                String.valueOf(CART_TTL_MILLIS), String.valueOf(userId));
+    }
+
+    /**
+     * 查询用户购物车中的所有商品,最近加入的在前
+     */
+    public List<CartStandardVO> list(Long userId) {
+        Map<Object, Object> entries = stringRedisTemplate.opsForHash().entries(cartKey(userId));
+        if (entries.isEmpty()) {
+            load(userId);
+            entries = stringRedisTemplate.opsForHash().entries(cartKey(userId));
+        }
+        List<CartStandardVO> items = toItems(userId, entries);
+        joinSkuDisplays(items);
+        return items;
+    }
+
+    /**
+     * 批量查询多个用户的购物车,写回数据库时使用
+     * Redis中已经没有的购物车(过期了)不包含在返回值中
+     */
+    public Map<Long, List<CartStandardVO>> listAll(List<Long> userIds) {
+        RedisSerializer<String> serializer = stringRedisTemplate.getStringSerializer();
+        // 一次管道查询所有用户的购物车
+        List<Object> results = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (Long userId : userIds) {
+                connection.hashCommands().hGetAll(serializer.serialize(cartKey(userId)));
+            }
+            return null;
+        });
+        Map<Long, List<CartStandardVO>> carts = new LinkedHashMap<>();
+        List<CartStandardVO> all = new ArrayList<>();
+        for (int i = 0; i < userIds.size(); i++) {
+            @SuppressWarnings("unchecked")
+            Map<Object, Object> entries = (Map<Object, Object>) results.get(i);
+            if (entries == null || entries.isEmpty()) {
+                continue;
+            }
+            List<CartStandardVO> items = toItems(userIds.get(i), entries);
+            carts.put(userIds.get(i), items);
+            all.addAll(items);
+        }
+        joinSkuDisplays(all);
+        return carts;
+    }
+
+    /**
+     * 取出最多count个需要写回数据库的用户id,取出的用户移到写回中集合
+     * 写回提交后调用ackDirty,失败时调用restoreDirty
+     */
+    public List<Long> popDirty(int count) {
+        List<?> members = stringRedisTemplate.execute(dirtyPopScript,
+                Arrays.asList(DIRTY_KEY, PROCESSING_KEY), String.valueOf(count));
+        List<Long> userIds = new ArrayList<>();
+        if (members != null) {
+            for (Object member : members) {
+                userIds.add(Long.valueOf(member.toString()));
+            }
+        }
+        return userIds;
+    }
+
+    /**
+     * 这些用户的购物车已经提交到数据库,从写回中集合删除
+     * 写回期间再次修改的用户已经重新加入待写回集合,不受影响
+     */
+    public void ackDirty(Collection<Long> userIds) {
+        if (userIds.isEmpty()) {
+            return;
+        }
+        stringRedisTemplate.opsForSet().remove(PROCESSING_KEY, members(userIds));
+    }
+
+    /**
+     * 写回数据库失败时,把这些用户放回待写回集合
+     */
+    public void restoreDirty(Collection<Long> userIds) {
+        if (userIds.isEmpty()) {
+            return;
+        }
+        stringRedisTemplate.execute(dirtyRestoreScript,
+                Arrays.asList(DIRTY_KEY, PROCESSING_KEY), members(userIds));
+    }
+
+    /**
+     * 把上一个写回节点没有完成的用户放回待写回集合,获得写回锁后调用
+     * @return 放回的用户数
+     */
+    public long recoverDirty() {
+        Long count = stringRedisTemplate.execute(dirtyRecoverScript,
+                Arrays.asList(DIRTY_KEY, PROCESSING_KEY));
+        return count == null ? 0 : count;
+    }
+
+    private static Object[] members(Collection<Long> userIds) {
+        Object[] members = new Object[userIds.size()];
+        int i = 0;
+        for (Long userId : userIds) {
+            members[i++] = String.valueOf(userId);
+        }
+        return members;
+    }
+
+    // 执行购物车脚本,购物车还没有加载时从数据库加载后再执行一次
+    private long execute(Long userId, DefaultRedisScript<Long> script, Object... args) {
+        List<String> keys = Arrays.asList(cartKey(userId), DIRTY_KEY);
+        Long result = stringRedisTemplate.execute(script, keys, args);
+        if (result != null && result == NOT_LOADED) {
+            load(userId);
+            result = stringRedisTemplate.execute(script, keys, args);
+        }
+        return result == null ? 0 : result;
+    }
+
+    // 从oms_cart表加载用户的购物车,其它线程已经加载过时不覆盖
+    private void load(Long userId) {
+        List<CartStandardVO> rows = omsCartMapper.selectCartsByUserId(userId);
+        List<String> args = new ArrayList<>(rows.size() * 5 + 1);
+        args.add(String.valueOf(CART_TTL_MILLIS));
+        long now = System.currentTimeMillis();
+        for (CartStandardVO row : rows) {
+            args.add(String.valueOf(row.getSkuId()));
+            args.add(String.valueOf(row.getQuantity()));
+            args.add(String.valueOf(row.getGmtCreate() == null ? now
+                    : row.getGmtCreate().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli()));
+            // 显示信息和每行记录一起加载,没有标题时查询购物车再从product模块获取
+            args.add(row.getTitle() == null ? "" : toJson(display(row.getSkuId(), row.getTitle(),
+                    row.getMainPicture(), row.getPrice(), row.getBarCode(), row.getData())));
+            args.add(String.valueOf(row.getId()));
+        }
+        stringRedisTemplate.execute(loadScript,
+                Arrays.asList(cartKey(userId)), args.toArray());
+        log.debug("从数据库加载{}号用户的购物车,共{}件商品", userId, rows.size());
+    }
+
+    private List<CartStandardVO> toItems(Long userId, Map<Object, Object> entries) {
+        List<CartStandardVO> items = new ArrayList<>();
+        for (Map.Entry<Object, Object> entry : entries.entrySet()) {
+            String field = entry.getKey().toString();
+            // 除数量外的字段都带有前缀
+            if (LOADED_FIELD.equals(field) || field.indexOf(':') >= 0) {
+                continue;
+            }
+            Long skuId = Long.valueOf(field);
+            CartStandardVO item = new CartStandardVO();
+            Object cartId = entries.get(ID_PREFIX + field);
+            if (cartId != null) {
+                item.setId(Long.valueOf(cartId.toString()));
+            }
+            item.setUserId(userId);
+            item.setSkuId(skuId);
+            item.setQuantity(Integer.valueOf(entry.getValue().toString()));
+            Object createMillis = entries.get(CREATE_PREFIX + field);
+            if (createMillis != null) {
+                item.setGmtCreate(LocalDateTime.ofInstant(
+                        Instant.ofEpochMilli(Long.parseLong(createMillis.toString())), ZoneId.systemDefault()));
+            }
+            Object display = entries.get(DISPLAY_PREFIX + field);
+            if (display != null) {
+                setDisplay(item, fromJson(display.toString()));
+            }
+            items.add(item);
+        }
+        items.sort(Comparator.comparing(CartStandardVO::getGmtCreate,
+                Comparator.nullsLast(Comparator.reverseOrder()))
+                .thenComparing(CartStandardVO::getSkuId));
+        return items;
+    }
+
+    // 购物车记录中没有显示信息时(例如数据库中没有标题的记录),查询当前的商品信息
+    private void joinSkuDisplays(List<CartStandardVO> items) {
+        Set<Long> skuIds = new LinkedHashSet<>();
+        for (CartStandardVO item : items) {
+            if (item.getTitle() == null) {
+                skuIds.add(item.getSkuId());
+            }
+        }
+        if (skuIds.isEmpty()) {
+            return;
+        }
+        Map<Long, CartStandardVO> displays = loadSkuDisplays(new ArrayList<>(skuIds));
+        for (CartStandardVO item : items) {
+            if (item.getTitle() == null) {
+                setDisplay(item, displays.get(item.getSkuId()));
+            }
+        }
+    }
+
+    // 先从Redis中的共用缓存获取,没有缓存的sku一次Dubbo调用批量查询后写入缓存
+    private Map<Long, CartStandardVO> loadSkuDisplays(List<Long> skuIds) {
+        List<String> keys = new ArrayList<>(skuIds.size());
+        for (Long skuId : skuIds) {
+            keys.add(SKU_DISPLAY_PREFIX + skuId);
+        }
+        List<String> cached = stringRedisTemplate.opsForValue().multiGet(keys);
+        Map<Long, CartStandardVO> displays = new HashMap<>();
+        List<Long> missing = new ArrayList<>();
+        for (int i = 0; i < skuIds.size(); i++) {
+            String value = cached == null ? null : cached.get(i);
+            if (value == null) {
+                missing.add(skuIds.get(i));
+            } else if (!value.isEmpty()) {
+                displays.put(skuIds.get(i), fromJson(value));
+            }
+        }
+        if (missing.isEmpty()) {
+            return displays;
+        }
+        Map<String, String> values = new HashMap<>();
+        for (SkuStandardVO sku : dubboSkuService.getSkusByIds(missing)) {
+            String pictures = sku.getPictures();
+            String mainPicture = pictures == null ? null : pictures.split(",")[0];
+            CartStandardVO display = display(sku.getId(), sku.getTitle(), mainPicture, sku.getPrice(),
+                    sku.getBarCode(), sku.getSpecifications());
+            displays.put(sku.getId(), display);
+            values.put(SKU_DISPLAY_PREFIX + sku.getId(), toJson(display));
+        }
+        for (Long skuId : missing) {
+            if (!displays.containsKey(skuId)) {
+                log.warn("购物车中的{}号sku不存在", skuId);
+                values.put(SKU_DISPLAY_PREFIX + skuId, "");
+            }
+        }
+        RedisSerializer<String> serializer = stringRedisTemplate.getStringSerializer();
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (Map.Entry<String, String> entry : values.entrySet()) {
+                connection.stringCommands().setEx(serializer.serialize(entry.getKey()),
+                        SKU_DISPLAY_TTL_SECONDS, serializer.serialize(entry.getValue()));
+            }
+            return null;
+        });
+        return displays;
+    }
+
+    private static void setDisplay(CartStandardVO item, CartStandardVO display) {
+        if (display == null) {
+            return;
+        }
+        item.setTitle(display.getTitle());
+        item.setMainPicture(display.getMainPicture());
+        item.setPrice(display.getPrice());
+        item.setBarCode(display.getBarCode());
+        item.setData(display.getData());
+    }
+
+    private CartStandardVO display(Long skuId, String title, String mainPicture,
+                                   BigDecimal price, String barCode, String data) {
+        CartStandardVO display = new CartStandardVO();
+        display.setSkuId(skuId);
+        display.setTitle(title);
+        display.setMainPicture(mainPicture);
+        display.setPrice(price);
+        display.setBarCode(barCode);
+        display.setData(data);
+        return display;
+    }
+
+    private String toJson(CartStandardVO display) {
+        try {
+            return objectMapper.writeValueAsString(display);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private CartStandardVO fromJson(String value) {
+        try {
+            return objectMapper.readValue(value, CartStandardVO.class);
+        } catch (JsonProcessingException e) {
+            log.warn("无法解析的购物车商品缓存:{}", value);
+            return null;
+        }
+    }
+
+    private static String cartKey(Long userId) {
+        return CART_PREFIX + userId;
+    }
+
+    private static DefaultRedisScript<Long> script(String path) {
+        DefaultRedisScript<Long> script = new DefaultRedisScript<>();
+        script.setScriptSource(new ResourceScriptSource(new ClassPathResource(path)));
+        script.setResultType(Long.class);
+        return script;
+    }
+}
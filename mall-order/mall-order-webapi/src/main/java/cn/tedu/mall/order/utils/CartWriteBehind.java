@@ -0,0 +1,183 @@
+package cn.tedu.mall.order.utils;
+
+import cn.tedu.mall.order.mapper.OmsCartMapper;
+import cn.tedu.mall.pojo.order.model.OmsCart;
+import cn.tedu.mall.pojo.order.vo.CartStandardVO;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Redis购物车写回数据库
+ * 定时取出修改过购物车的用户,每批用户的购物车在一个事务中先删除再批量新增到oms_cart表
+ * 多个order节点之间用Redis锁保证同一时间只有一个节点在写回,避免旧数据覆盖新数据
+ * 每批写回前确认仍然持有锁并续期,写回事务的超时时间小于锁的时长,锁过期后不会再提交
+ * 取出的用户在提交后才从写回中集合删除,节点中途退出时由下一个获得锁的节点放回待写回集合
+ */
+@Slf4j
+@Component
+public class CartWriteBehind {
+
+    private static final String LOCK_KEY = "mall:cart:flush:lock";
+    // 只有锁的持有者才能释放锁
+    private static final DefaultRedisScript<Long> UNLOCK_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end",
+            Long.class);
+    // 仍然持有锁时续期,返回0表示锁已经过期或被其它节点获得
+    private static final DefaultRedisScript<Long> RENEW_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('pexpire', KEYS[1], ARGV[2]) else return 0 end",
+            Long.class);
+
+    // 写回间隔
+    @Value("${mall.cart.flush-interval-millis:1000}")
+    private long flushIntervalMillis;
+    // 每批写回的用户数
+    @Value("${mall.cart.flush-batch-size:200}")
+    private int flushBatchSize;
+    // 写回锁的时长,节点异常退出时锁自动释放
+    @Value("${mall.cart.flush-lock-millis:30000}")
+    private long flushLockMillis;
+
+    @Autowired
+    private CartRedisStore cartRedisStore;
+    @Autowired
+    private OmsCartMapper omsCartMapper;
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private ScheduledExecutorService scheduler;
+    // 写回使用的事务,超时时间为锁时长的一半
+    private TransactionTemplate flushTransaction;
+
+    @PostConstruct
+    public void start() {
+        flushTransaction = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        flushTransaction.setTimeout((int) Math.max(1, flushLockMillis / 2 / 1000));
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "cart-write-behind");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                flush();
+            } catch (RuntimeException e) {
+                log.error("购物车写回数据库失败", e);
+            }
+        }, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // 停止前把剩余的修改写回数据库
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        scheduler.shutdown();
+        scheduler.awaitTermination(flushLockMillis, TimeUnit.MILLISECONDS);
+        flush();
+    }
+
+    /**
+     * 写回所有修改过的购物车
+     * @return 写回的用户数,其它节点正在写回时返回0
+     */
+    public int flush() {
+        String token = UUID.randomUUID().toString();
+        if (!Boolean.TRUE.equals(stringRedisTemplate.opsForValue()
+                .setIfAbsent(LOCK_KEY, token, flushLockMillis, TimeUnit.MILLISECONDS))) {
+            return 0;
+        }
+        try {
+            long recovered = cartRedisStore.recoverDirty();
+            if (recovered > 0) {
+                log.warn("上一次写回没有完成,{}个用户的购物车重新写回", recovered);
+            }
+            int count = 0;
+            // 修改一直很多时,本次写回最多持续锁时长的一半,剩下的下一次再写回
+            long deadline = System.currentTimeMillis() + flushLockMillis / 2;
+            List<Long> userIds;
+            while (System.currentTimeMillis() < deadline && renew(token)
+                    && !(userIds = cartRedisStore.popDirty(flushBatchSize)).isEmpty()) {
+                count += flushBatch(userIds);
+            }
+            return count;
+        } finally {
+            stringRedisTemplate.execute(UNLOCK_SCRIPT, Collections.singletonList(LOCK_KEY), token);
+        }
+    }
+
+    private boolean renew(String token) {
+        Long renewed = stringRedisTemplate.execute(RENEW_SCRIPT, Collections.singletonList(LOCK_KEY),
+                token, String.valueOf(flushLockMillis));
+        if (renewed == null || renewed == 0) {
+            log.warn("购物车写回锁已经过期,停止本次写回");
+            return false;
+        }
+        return true;
+    }
+
+    private int flushBatch(List<Long> userIds) {
+        try {
+            // 先取出用户再读取购物车,读取之后的修改会重新标记用户,下一次写回
+            Map<Long, List<CartStandardVO>> carts = cartRedisStore.listAll(userIds);
+            if (carts.isEmpty()) {
+                cartRedisStore.ackDirty(userIds);
+                return 0;
+            }
+            LocalDateTime now = LocalDateTime.now();
+            List<OmsCart> omsCarts = new ArrayList<>();
+            for (List<CartStandardVO> items : carts.values()) {
+                for (CartStandardVO item : items) {
+                    if (item.getTitle() == null) {
+                        // 商品已经不存在,只保留在Redis中
+                        continue;
+                    }
+                    OmsCart omsCart = new OmsCart();
+                    // 保留Redis中的购物车id,写回后前端持有的id不变
+                    omsCart.setId(item.getId());
+                    omsCart.setUserId(item.getUserId());
+                    omsCart.setSkuId(item.getSkuId());
+                    omsCart.setTitle(item.getTitle());
+                    omsCart.setMainPicture(item.getMainPicture());
+                    omsCart.setPrice(item.getPrice());
+                    omsCart.setQuantity(item.getQuantity());
+                    omsCart.setBarCode(item.getBarCode());
+                    omsCart.setData(item.getData());
+                    omsCart.setGmtCreate(item.getGmtCreate() == null ? now : item.getGmtCreate());
+                    omsCart.setGmtModified(now);
+                    omsCarts.add(omsCart);
+                }
+            }
+            List<Long> flushed = new ArrayList<>(carts.keySet());
+            flushTransaction.executeWithoutResult(status -> {
+                omsCartMapper.deleteCartsByUserIds(flushed);
+                if (!omsCarts.isEmpty()) {
+                    omsCartMapper.insertCarts(omsCarts);
+                }
+            });
+            cartRedisStore.ackDirty(userIds);
+            log.debug("{}个用户的购物车写回数据库,共{}件商品", flushed.size(), omsCarts.size());
+            return flushed.size();
+        } catch (RuntimeException e) {
+            // 写回失败,把这些用户放回待写回集合,下一次再写回
+            cartRedisStore.restoreDirty(userIds);
+            throw e;
+        }
+    }
+}
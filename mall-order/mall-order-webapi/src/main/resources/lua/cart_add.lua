@@ -0,0 +1,19 @@
+-- 购物车新增脚本: 累加sku数量,并记录需要写回数据库的用户
+-- KEYS[1] 用户购物车hash的key
+-- KEYS[2] 待写回数据库的用户id集合
+-- ARGV[1] skuId  ARGV[2] 增加的数量  ARGV[3] 加入时间(毫秒)  ARGV[4] 过期时间(毫秒)  ARGV[5] 用户id
+-- ARGV[6] 商品显示信息(json),只在第一次加入时保存,和数据库中每行购物车记录加入时的价格一致
+-- ARGV[7] 购物车id,只在第一次加入时使用,"i:skuId"和"k:购物车id"字段保存两者的对应关系
+-- 返回 累加后的数量,购物车还没有加载时返回-1
+if redis.call('exists', KEYS[1]) == 0 then
+    return -1
+end
+local quantity = redis.call('hincrby', KEYS[1], ARGV[1], ARGV[2])
+redis.call('hsetnx', KEYS[1], 'c:' .. ARGV[1], ARGV[3])
+redis.call('hsetnx', KEYS[1], 'd:' .. ARGV[1], ARGV[6])
+if redis.call('hsetnx', KEYS[1], 'i:' .. ARGV[1], ARGV[7]) == 1 then
+    redis.call('hset', KEYS[1], 'k:' .. ARGV[7], ARGV[1])
+end
+redis.call('pexpire', KEYS[1], ARGV[4])
+redis.call('sadd', KEYS[2], ARGV[5])
+return quantity
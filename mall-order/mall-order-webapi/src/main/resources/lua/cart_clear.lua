@@ -0,0 +1,22 @@
+-- 购物车清空脚本: 删除所有sku,保留loaded字段
+-- KEYS[1] 用户购物车hash的key
+-- KEYS[2] 待写回数据库的用户id集合
+-- ARGV[1] 过期时间(毫秒)  ARGV[2] 用户id
+-- 返回 删除的sku数量,购物车还没有加载时返回-1
+if redis.call('exists', KEYS[1]) == 0 then
+    return -1
+end
+-- 除loaded字段外,每个sku有数量、加入时间(c:)、显示信息(d:)和购物车id(i:、k:)字段,只统计数量字段
+local removed = 0
+for _, field in ipairs(redis.call('hkeys', KEYS[1])) do
+    if field ~= 'loaded' and not string.find(field, ':', 1, true) then
+        removed = removed + 1
+    end
+end
+if removed > 0 then
+    redis.call('del', KEYS[1])
+    redis.call('hset', KEYS[1], 'loaded', '1')
+    redis.call('pexpire', KEYS[1], ARGV[1])
+    redis.call('sadd', KEYS[2], ARGV[2])
+end
+return removed
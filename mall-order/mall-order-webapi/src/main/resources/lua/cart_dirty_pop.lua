@@ -0,0 +1,12 @@
+-- 取出待写回的用户脚本: 从待写回集合移到写回中集合,写回成功后才从写回中集合删除
+-- 节点在写回过程中退出时,下一次写回由cart_dirty_recover.lua把写回中的用户放回待写回集合
+-- KEYS[1] 待写回数据库的用户id集合
+-- KEYS[2] 写回中的用户id集合
+-- ARGV[1] 最多取出的用户数
+-- 返回 取出的用户id
+redis.replicate_commands()
+local members = redis.call('spop', KEYS[1], ARGV[1])
+if #members > 0 then
+    redis.call('sadd', KEYS[2], unpack(members))
+end
+return members
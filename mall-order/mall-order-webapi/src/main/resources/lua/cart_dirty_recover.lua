@@ -0,0 +1,10 @@
+-- 恢复写回中用户脚本: 获得写回锁后调用,此时写回中集合里只有上一个持有锁的节点没有写完的用户
+-- KEYS[1] 待写回数据库的用户id集合
+-- KEYS[2] 写回中的用户id集合
+-- 返回 放回待写回集合的用户数
+local count = redis.call('scard', KEYS[2])
+if count > 0 then
+    redis.call('sunionstore', KEYS[1], KEYS[1], KEYS[2])
+    redis.call('del', KEYS[2])
+end
+return count
@@ -0,0 +1,7 @@
+-- 写回失败的用户脚本: 从写回中集合放回待写回集合,下一次再写回
+-- KEYS[1] 待写回数据库的用户id集合
+-- KEYS[2] 写回中的用户id集合
+-- ARGV 用户id
+-- 返回 放回的用户数
+redis.call('srem', KEYS[2], unpack(ARGV))
+return redis.call('sadd', KEYS[1], unpack(ARGV))
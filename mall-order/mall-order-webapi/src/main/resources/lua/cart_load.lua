@@ -0,0 +1,21 @@
+-- 购物车加载脚本: 把数据库中的购物车写入Redis,已经加载过时不覆盖
+-- KEYS[1] 用户购物车hash的key
+-- ARGV[1] 过期时间(毫秒),之后每5个参数为 skuId,数量,加入时间(毫秒),商品显示信息(json,没有时为空字符串),购物车id
+-- 返回 1加载成功,0已经加载过
+if redis.call('exists', KEYS[1]) == 1 then
+    return 0
+end
+-- loaded字段表示已经加载过,购物车为空时hash也不会被删除
+redis.call('hset', KEYS[1], 'loaded', '1')
+for i = 2, #ARGV, 5 do
+    redis.call('hincrby', KEYS[1], ARGV[i], ARGV[i + 1])
+    redis.call('hsetnx', KEYS[1], 'c:' .. ARGV[i], ARGV[i + 2])
+    if ARGV[i + 3] ~= '' then
+        redis.call('hsetnx', KEYS[1], 'd:' .. ARGV[i], ARGV[i + 3])
+    end
+    if redis.call('hsetnx', KEYS[1], 'i:' .. ARGV[i], ARGV[i + 4]) == 1 then
+        redis.call('hset', KEYS[1], 'k:' .. ARGV[i + 4], ARGV[i])
+    end
+end
+redis.call('pexpire', KEYS[1], ARGV[1])
+return 1
@@ -0,0 +1,29 @@
+-- 购物车删除脚本: 删除一个或多个sku
+-- KEYS[1] 用户购物车hash的key
+-- KEYS[2] 待写回数据库的用户id集合
+-- ARGV[1] 过期时间(毫秒)  ARGV[2] 用户id  ARGV[3] 为1时之后的参数是购物车id,为0时是skuId
+-- 之后的参数为要删除的购物车id或skuId
+-- 返回 删除的sku数量,购物车还没有加载时返回-1
+if redis.call('exists', KEYS[1]) == 0 then
+    return -1
+end
+local removed = 0
+for i = 4, #ARGV do
+    local skuId = ARGV[i]
+    if ARGV[3] == '1' then
+        skuId = redis.call('hget', KEYS[1], 'k:' .. ARGV[i])
+    end
+    if skuId then
+        removed = removed + redis.call('hdel', KEYS[1], skuId)
+        local cartId = redis.call('hget', KEYS[1], 'i:' .. skuId)
+        if cartId then
+            redis.call('hdel', KEYS[1], 'k:' .. cartId)
+        end
+        redis.call('hdel', KEYS[1], 'c:' .. skuId, 'd:' .. skuId, 'i:' .. skuId)
+    end
+end
+if removed > 0 then
+    redis.call('pexpire', KEYS[1], ARGV[1])
+    redis.call('sadd', KEYS[2], ARGV[2])
+end
+return removed
@@ -0,0 +1,16 @@
+-- 购物车修改数量脚本: 只修改购物车中已有的sku
+-- KEYS[1] 用户购物车hash的key
+-- KEYS[2] 待写回数据库的用户id集合
+-- ARGV[1] 购物车id  ARGV[2] 新的数量  ARGV[3] 过期时间(毫秒)  ARGV[4] 用户id
+-- 返回 1修改成功,0购物车中没有这个购物车id,购物车还没有加载时返回-1
+if redis.call('exists', KEYS[1]) == 0 then
+    return -1
+end
+local skuId = redis.call('hget', KEYS[1], 'k:' .. ARGV[1])
+if not skuId or redis.call('hexists', KEYS[1], skuId) == 0 then
+    return 0
+end
+redis.call('hset', KEYS[1], skuId, ARGV[2])
+redis.call('pexpire', KEYS[1], ARGV[3])
+redis.call('sadd', KEYS[2], ARGV[4])
+return 1
@@ -0,0 +1,243 @@
+package cn.tedu.mall.order.checkout;
+
+import cn.tedu.mall.order.interceptor.AutoUpdateTimeInterceptor;
+import cn.tedu.mall.order.mapper.OmsOrderItemMapper;
+import cn.tedu.mall.order.mapper.OmsOrderMapper;
+import cn.tedu.mall.order.mapper.OmsOrderOutboxMapper;
+import cn.tedu.mall.pojo.order.model.OmsOrder;
+import cn.tedu.mall.pojo.order.model.OmsOrderItem;
+import cn.tedu.mall.pojo.order.model.OmsOrderOutbox;
+import com.alibaba.druid.pool.DruidDataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+import org.mybatis.spring.SqlSessionFactoryBean;
+import org.mybatis.spring.SqlSessionTemplate;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 下单写入的吞吐量对比,多个线程同时下单:
+ * 逐个订单在本地事务中写入(没有开启批量写入时ReservationOrderCheckout的写法)、
+ * OrderBatchWriter合并写入、OrderBatchWriter合并写入+rewriteBatchedStatements
+ * 前两种情况从连接参数中去掉rewriteBatchedStatements,只有第三种情况开启
+ * 需要MySQL,没有指定连接时跳过,例如:
+ * mvn test -Dtest=OrderBatchInsertBenchmarkTests
+ *     -Dorder.benchmark.url="jdbc:mysql://localhost:3306/mall_oms?useSSL=false&serverTimezone=Asia/Shanghai"
+ *     -Dorder.benchmark.username=root -Dorder.benchmark.password=root
+ * 写入oms_order、oms_order_item和oms_order_outbox表,id从BASE_ID开始,每种情况结束后删除,请使用测试库
+ */
+@Slf4j
+public class OrderBatchInsertBenchmarkTests {
+
+    private static final String REWRITE_PARAM = "rewriteBatchedStatements";
+    // 测试数据的id范围,不和正常订单重复
+    private static final long BASE_ID = 9_000_000_000_000_000L;
+    private static final int THREADS = 32;
+    private static final int ORDERS = 4000;
+    private static final int ITEMS_PER_ORDER = 3;
+    // 和mall.order.batch-write的默认值一致
+    private static final int MAX_BATCH_SIZE = 200;
+    private static final long WRITE_TIMEOUT_MILLIS = 30000;
+
+    private final String url = System.getProperty("order.benchmark.url");
+    private final String username = System.getProperty("order.benchmark.username", "root");
+    private final String password = System.getProperty("order.benchmark.password", "");
+
+    @Test
+    void compareInsertThroughput() throws Exception {
+        Assumptions.assumeTrue(url != null, "没有指定order.benchmark.url,跳过");
+        String plainUrl = withoutRewrite(url);
+        double single = run(plainUrl, false);
+        double batch = run(plainUrl, true);
+        double rewrite = run(withRewrite(plainUrl), true);
+        log.info("{}个线程下单,每个订单{}个订单项", THREADS, ITEMS_PER_ORDER);
+        log.info("逐个订单提交: {} 订单/秒", String.format("%.0f", single));
+        log.info("OrderBatchWriter: {} 订单/秒", String.format("%.0f", batch));
+        log.info("OrderBatchWriter+rewriteBatchedStatements: {} 订单/秒", String.format("%.0f", rewrite));
+    }
+
+    // 返回每秒写入的订单数
+    private double run(String jdbcUrl, boolean batchWrite) throws Exception {
+        DruidDataSource dataSource = new DruidDataSource();
+        dataSource.setUrl(jdbcUrl);
+        dataSource.setUsername(username);
+        dataSource.setPassword(password);
+        dataSource.setMaxActive(THREADS + 1);
+        ExecutorService callers = Executors.newFixedThreadPool(THREADS);
+        OrderBatchWriter writer = null;
+        try {
+            JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+            cleanUp(jdbcTemplate);
+            SqlSessionFactory sqlSessionFactory = sqlSessionFactory(dataSource);
+            TransactionTemplate transactionTemplate =
+                    new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+            SqlSessionTemplate sqlSession = new SqlSessionTemplate(sqlSessionFactory);
+            OmsOrderMapper orderMapper = sqlSession.getMapper(OmsOrderMapper.class);
+            OmsOrderItemMapper itemMapper = sqlSession.getMapper(OmsOrderItemMapper.class);
+            OmsOrderOutboxMapper outboxMapper = sqlSession.getMapper(OmsOrderOutboxMapper.class);
+            if (batchWrite) {
+                writer = new OrderBatchWriter(transactionTemplate,
+                        new SqlSessionTemplate(sqlSessionFactory, ExecutorType.BATCH),
+                        MAX_BATCH_SIZE, 0, WRITE_TIMEOUT_MILLIS);
+            }
+            OrderBatchWriter batchWriter = writer;
+            AtomicLong sequence = new AtomicLong();
+            long start = System.nanoTime();
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                futures.add(callers.submit(() -> {
+                    long n;
+                    while ((n = sequence.getAndIncrement()) < ORDERS) {
+                        OmsOrder order = order(BASE_ID + n * (ITEMS_PER_ORDER + 1));
+                        List<OmsOrderItem> items = items(order);
+                        OmsOrderOutbox outbox = outbox(order);
+                        if (batchWriter != null) {
+                            batchWriter.write(order, items, outbox);
+                        } else {
+                            transactionTemplate.executeWithoutResult(status -> {
+                                orderMapper.insertOrder(order);
+                                itemMapper.insertOrderItemList(items);
+                                outboxMapper.insertOutbox(outbox);
+                            });
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            long nanos = System.nanoTime() - start;
+            Assertions.assertEquals(ORDERS * ITEMS_PER_ORDER, jdbcTemplate.queryForObject(
+                    "select count(*) from oms_order_item where order_id>=?", Integer.class, BASE_ID));
+            cleanUp(jdbcTemplate);
+            return ORDERS * 1e9 / nanos;
+        } finally {
+            if (writer != null) {
+                writer.close();
+            }
+            callers.shutdownNow();
+            dataSource.close();
+        }
+    }
+
+    // 和应用一样使用mapper文件和AutoUpdateTimeInterceptor
+    private static SqlSessionFactory sqlSessionFactory(DruidDataSource dataSource) throws Exception {
+        org.apache.ibatis.session.Configuration configuration = new org.apache.ibatis.session.Configuration();
+        configuration.setMapUnderscoreToCamelCase(true);
+        configuration.setCacheEnabled(false);
+        SqlSessionFactoryBean factoryBean = new SqlSessionFactoryBean();
+        factoryBean.setDataSource(dataSource);
+        factoryBean.setConfiguration(configuration);
+        factoryBean.setMapperLocations(
+                new ClassPathResource("mapper/OmsOrderMapper.xml"),
+                new ClassPathResource("mapper/OmsOrderItemMapper.xml"),
+                new ClassPathResource("mapper/OmsOrderOutboxMapper.xml"));
+        factoryBean.setPlugins(new AutoUpdateTimeInterceptor());
+        return factoryBean.getObject();
+    }
+
+    private static void cleanUp(JdbcTemplate jdbcTemplate) {
+        jdbcTemplate.update("delete from oms_order_outbox where order_id>=?", BASE_ID);
+        jdbcTemplate.update("delete from oms_order_item where order_id>=?", BASE_ID);
+        jdbcTemplate.update("delete from oms_order where id>=?", BASE_ID);
+    }
+
+    private static OmsOrder order(long id) {
+        LocalDateTime now = LocalDateTime.now();
+        OmsOrder order = new OmsOrder();
+        order.setId(id);
+        order.setSn("benchmark-" + id);
+        order.setUserId(1L);
+        order.setContactName("benchmark");
+        order.setMobilePhone("13800000000");
+        order.setTelephone("");
+        order.setProvinceCode("");
+        order.setProvinceName("");
+        order.setCityCode("");
+        order.setCityName("");
+        order.setDistrictCode("");
+        order.setDistrictName("");
+        order.setStreetCode("");
+        order.setStreetName("");
+        order.setDetailedAddress("");
+        order.setTag("");
+        order.setPaymentType(0);
+        order.setState(0);
+        order.setRewardPoint(0);
+        order.setAmountOfOriginalPrice(BigDecimal.TEN);
+        order.setAmountOfFreight(BigDecimal.ZERO);
+        order.setAmountOfDiscount(BigDecimal.ZERO);
+        order.setAmountOfActualPay(BigDecimal.TEN);
+        order.setGmtOrder(now);
+        order.setGmtCreate(now);
+        order.setGmtModified(now);
+        return order;
+    }
+
+    // 订单项的id紧跟在订单id之后
+    private static List<OmsOrderItem> items(OmsOrder order) {
+        List<OmsOrderItem> items = new ArrayList<>(ITEMS_PER_ORDER);
+        for (int i = 1; i <= ITEMS_PER_ORDER; i++) {
+            OmsOrderItem item = new OmsOrderItem();
+            item.setId(order.getId() + i);
+            item.setOrderId(order.getId());
+            item.setSkuId((long) i);
+            item.setTitle("商品" + i);
+            item.setBarCode("bar" + i);
+            item.setData("{}");
+            item.setMainPicture("");
+            item.setPrice(BigDecimal.TEN);
+            item.setQuantity(1);
+            item.setGmtCreate(order.getGmtCreate());
+            item.setGmtModified(order.getGmtCreate());
+            items.add(item);
+        }
+        return items;
+    }
+
+    private static OmsOrderOutbox outbox(OmsOrder order) {
+        OmsOrderOutbox outbox = new OmsOrderOutbox();
+        outbox.setOrderId(order.getId());
+        outbox.setState(OmsOrderOutbox.STATE_PENDING);
+        outbox.setRetries(0);
+        outbox.setGmtCreate(order.getGmtCreate());
+        outbox.setGmtModified(order.getGmtCreate());
+        return outbox;
+    }
+
+    // 去掉连接参数中的rewriteBatchedStatements,作为没有改写的对照
+    private static String withoutRewrite(String jdbcUrl) {
+        int query = jdbcUrl.indexOf('?');
+        if (query < 0) {
+            return jdbcUrl;
+        }
+        StringBuilder params = new StringBuilder();
+        for (String param : jdbcUrl.substring(query + 1).split("&")) {
+            if (param.isEmpty() || param.regionMatches(true, 0, REWRITE_PARAM + "=", 0, REWRITE_PARAM.length() + 1)) {
+                continue;
+            }
+            params.append(params.length() == 0 ? "" : "&").append(param);
+        }
+        String base = jdbcUrl.substring(0, query);
+        return params.length() == 0 ? base : base + "?" + params;
+    }
+
+    private static String withRewrite(String jdbcUrl) {
+        return jdbcUrl + (jdbcUrl.contains("?") ? "&" : "?") + REWRITE_PARAM + "=true";
+    }
+}
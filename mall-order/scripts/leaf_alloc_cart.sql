@@ -0,0 +1,4 @@
+-- 购物车id在Redis中第一次加入商品时从leaf获取,写回oms_cart时保持不变
+-- 起始值大于oms_cart中已有的id,避免和数据库自增生成的id重复
+INSERT INTO `leafdb`.`leaf_alloc` (`biz_tag`, `max_id`, `step`, `description`)
+SELECT 'cart', IFNULL(MAX(`id`), 0) + 1, 2000, '购物车id' FROM `mall_oms`.`oms_cart`;
@@ -0,0 +1,4 @@
+-- 按游标查询我的订单使用的索引
+-- 订单按(user_id,gmt_create,id)定位和排序,订单项按order_id一次查询
+ALTER TABLE `oms_order` ADD INDEX `idx_user_create` (`user_id`, `gmt_create`, `id`);
+ALTER TABLE `oms_order_item` ADD INDEX `idx_order_id` (`order_id`);
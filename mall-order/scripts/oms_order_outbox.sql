@@ -0,0 +1,13 @@
+DROP TABLE IF EXISTS `oms_order_outbox`;
+
+CREATE TABLE `oms_order_outbox` (
+  `id` bigint(20) unsigned NOT NULL AUTO_INCREMENT,
+  `order_id` bigint(20) unsigned NOT NULL COMMENT '订单id',
+  `state` tinyint(3) unsigned NOT NULL DEFAULT '0' COMMENT '状态，0=待确认库存，1=已处理，2=多次确认失败',
+  `retries` int(10) unsigned NOT NULL DEFAULT '0' COMMENT '确认失败的次数',
+  `gmt_create` datetime DEFAULT NULL,
+  `gmt_modified` datetime DEFAULT NULL,
+  PRIMARY KEY (`id`),
+  UNIQUE KEY `uk_order_id` (`order_id`),
+  KEY `idx_state` (`state`, `id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='订单库存确认的发件箱，和订单在同一个本地事务中写入';
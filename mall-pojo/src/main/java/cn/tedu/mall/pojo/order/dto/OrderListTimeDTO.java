@@ -24,4 +24,10 @@ public class OrderListTimeDTO implements OrderRegExpression,Serializable {
     private Integer page;
     @ApiModelProperty(value="条数")
     private Integer pageSize;
+    @ApiModelProperty(value="游标:上一页最后一个订单的创建时间,查询第一页时不传")
+    private LocalDateTime cursorGmtCreate;
+    @ApiModelProperty(value="游标:上一页最后一个订单的id,查询第一页时不传")
+    private Long cursorId;
+    @ApiModelProperty(value="是否查询总记录数,默认不查询")
+    private Boolean withTotal;
 }
@@ -0,0 +1,52 @@
+package cn.tedu.mall.pojo.order.model;
+
+import lombok.Data;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * <p>
+ * 订单库存确认的发件箱,和订单在同一个本地事务中写入
+ * </p>
+ */
+@Data
+public class OmsOrderOutbox implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 等待确认库存预留
+     */
+    public static final int STATE_PENDING = 0;
+    /**
+     * 已经处理(确认成功,或预留已失效并取消了订单)
+     */
+    public static final int STATE_DONE = 1;
+    /**
+     * 确认失败的次数达到上限,不再自动重试,需要人工处理
+     */
+    public static final int STATE_FAILED = 2;
+
+    private Long id;
+
+    /**
+     * 订单id
+     */
+    private Long orderId;
+
+    /**
+     * 状态，0=待确认库存，1=已处理，2=多次确认失败
+     */
+    private Integer state;
+
+    /**
+     * 确认失败的次数
+     */
+    private Integer retries;
+
+    private LocalDateTime gmtCreate;
+
+    private LocalDateTime gmtModified;
+
+}
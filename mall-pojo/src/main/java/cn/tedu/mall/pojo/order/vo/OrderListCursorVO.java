@@ -0,0 +1,39 @@
+package cn.tedu.mall.pojo.order.vo;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import lombok.Data;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * <p>
+ * 按游标分页查询我的订单的结果
+ * 查询下一页时把nextCursorGmtCreate和nextCursorId作为OrderListTimeDTO的cursorGmtCreate和cursorId
+ * </p>
+ */
+@Data
+@ApiModel(value="按游标分页查询订单的结果VO")
+public class OrderListCursorVO implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @ApiModelProperty(value="订单列表,按创建时间和id倒序")
+    private List<OrderListVO> list;
+
+    @ApiModelProperty(value="是否还有下一页")
+    private Boolean hasMore;
+
+    @ApiModelProperty(value="下一页游标:本页最后一个订单的创建时间")
+    @JsonFormat(pattern="yyyy-MM-dd HH:mm:ss",timezone = "GMT+8")
+    private LocalDateTime nextCursorGmtCreate;
+
+    @ApiModelProperty(value="下一页游标:本页最后一个订单的id")
+    private Long nextCursorId;
+
+    @ApiModelProperty(value="总记录数,查询时withTotal为true才有")
+    private Long total;
+}
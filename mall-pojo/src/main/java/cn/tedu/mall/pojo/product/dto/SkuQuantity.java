@@ -0,0 +1,23 @@
+package cn.tedu.mall.pojo.product.dto;
+
+import lombok.Data;
+
+import java.io.Serializable;
+
+/**
+ * 下单时批量减少库存的参数,一个SKU和它要减少的库存数
+ */
+@Data
+public class SkuQuantity implements Serializable {
+
+    /**
+     * SKU id
+     */
+    private Long skuId;
+
+    /**
+     * 要减少的库存数
+     */
+    private Integer quantity;
+
+}
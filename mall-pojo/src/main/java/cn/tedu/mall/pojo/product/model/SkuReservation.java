@@ -0,0 +1,67 @@
+package cn.tedu.mall.pojo.product.model;
+
+import lombok.Data;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * <p>下单时的SKU库存预留</p>
+ */
+@Data
+public class SkuReservation implements Serializable {
+
+    /**
+     * 已预留,库存已经减少,等待订单确认
+     */
+    public static final int STATE_RESERVED = 0;
+    /**
+     * 订单已经确认,库存不再归还
+     */
+    public static final int STATE_CONFIRMED = 1;
+    /**
+     * 订单没有生成或预留过期,库存已经归还
+     */
+    public static final int STATE_RELEASED = 2;
+
+    /**
+     * 记录id
+     */
+    private Long id;
+
+    /**
+     * 订单id
+     */
+    private Long orderId;
+
+    /**
+     * SKU id
+     */
+    private Long skuId;
+
+    /**
+     * 预留的库存数
+     */
+    private Integer quantity;
+
+    /**
+     * 状态，0=已预留，1=已确认，2=已释放
+     */
+    private Integer state;
+
+    /**
+     * 预留过期时间
+     */
+    private LocalDateTime gmtExpire;
+
+    /**
+     * 数据创建时间
+     */
+    private LocalDateTime gmtCreate;
+
+    /**
+     * 数据最后修改时间
+     */
+    private LocalDateTime gmtModified;
+
+}
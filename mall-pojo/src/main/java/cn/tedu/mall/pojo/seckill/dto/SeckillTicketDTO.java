@@ -0,0 +1,30 @@
+package cn.tedu.mall.pojo.seckill.dto;
+
+import lombok.Data;
+
+import java.io.Serializable;
+
+/**
+ * 异步秒杀下单时发送到消息队列的排队凭证
+ * 包含排队凭证、下单用户和秒杀订单信息,由消费者转换成订单
+ */
+@Data
+public class SeckillTicketDTO implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 排队凭证
+     */
+    private String ticket;
+
+    /**
+     * 用户id,消费者中没有SpringSecurity上下文,需要随消息传递
+     */
+    private Long userId;
+
+    /**
+     * 秒杀订单信息
+     */
+    private SeckillOrderAddDTO seckillOrderAddDTO;
+}
@@ -21,5 +21,7 @@ public class SeckillCommitVO implements Serializable {
     private LocalDateTime createTime;
     @ApiModelProperty(value="需要支付金额",name="payAmount",example ="5000")
     private BigDecimal payAmount;
+    @ApiModelProperty(value="排队凭证,异步下单时返回,用于查询下单结果",name="ticket",example ="5f1c0d7e9b2a4c6d8e0f1a2b3c4d5e6f")
+    private String ticket;
 
 }
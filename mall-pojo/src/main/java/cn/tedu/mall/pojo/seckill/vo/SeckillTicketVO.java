@@ -0,0 +1,50 @@
+package cn.tedu.mall.pojo.seckill.vo;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import lombok.Data;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * 异步秒杀下单的排队结果
+ * 秒杀准入成功后先返回排队凭证,前端凭ticket轮询下单结果
+ */
+@ApiModel(value="秒杀排队结果VO")
+@Data
+public class SeckillTicketVO implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 排队中
+     */
+    public static final int STATE_QUEUING = 0;
+    /**
+     * 下单成功
+     */
+    public static final int STATE_SUCCESS = 1;
+    /**
+     * 下单失败
+     */
+    public static final int STATE_FAILED = 2;
+
+    @ApiModelProperty(value="排队凭证",name="ticket",example ="5f1c0d7e9b2a4c6d8e0f1a2b3c4d5e6f")
+    private String ticket;
+    @ApiModelProperty(value="状态,0=排队中,1=下单成功,2=下单失败",name="state",example ="0")
+    private Integer state;
+    @ApiModelProperty(value="下单失败的原因",name="message",example ="对不起您购买的商品暂时售罄")
+    private String message;
+    @ApiModelProperty(value="订单id",name="id",example = "1")
+    private Long id;
+    @ApiModelProperty(value="订单编号",name="sn",example = "sn")
+    private String sn;
+    @ApiModelProperty(value="创建时间",name="createTime",example ="2022-03-31 10:32:22")
+    @JsonFormat(pattern="yyyy-MM-dd HH:mm:ss",timezone = "GMT+8")
+    private LocalDateTime createTime;
+    @ApiModelProperty(value="需要支付金额",name="payAmount",example ="5000")
+    private BigDecimal payAmount;
+}
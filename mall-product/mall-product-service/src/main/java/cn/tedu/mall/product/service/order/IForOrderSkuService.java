@@ -1,10 +1,48 @@
 package cn.tedu.mall.product.service.order;
 
+import cn.tedu.mall.pojo.product.dto.SkuQuantity;
 import cn.tedu.mall.pojo.product.vo.SkuStandardVO;
 
+import java.util.List;
+
 public interface IForOrderSkuService {
 
     int reduceStockNum(Long skuId, Integer quantity);
+
+    /**
+     * 一次减少订单中所有SKU的库存,任何一个SKU库存不足时全部不减少
+     *
+     * @param skuQuantities 订单中的SKU和购买数量,同一个SKU出现多次时数量累加
+     * @throws cn.tedu.mall.common.exception.CoolSharkServiceException 库存不足或SKU不存在
+     */
+    void reduceStockBatch(List<SkuQuantity> skuQuantities);
+
+    /**
+     * 为订单预留库存,库存在本地事务中直接减少,预留过期前没有确认时归还
+     * 同一个订单重复调用时不会重复减少库存
+     *
+     * @param orderId       订单id
+     * @param skuQuantities 订单中的SKU和购买数量
+     * @param ttlMillis     预留的有效时间(毫秒)
+     * @throws cn.tedu.mall.common.exception.CoolSharkServiceException 库存不足或SKU不存在
+     */
+    void reserveStock(Long orderId, List<SkuQuantity> skuQuantities, long ttlMillis);
+
+    /**
+     * 订单已经生成,确认库存预留
+     *
+     * @param orderId 订单id
+     * @return 确认成功或已经确认过返回true,预留不存在或已经释放返回false
+     */
+    boolean confirmReservation(Long orderId);
+
+    /**
+     * 订单没有生成,释放库存预留并归还库存,已经确认或释放过的预留不会处理
+     *
+     * @param orderId 订单id
+     */
+    void releaseReservation(Long orderId);
+
     /**
      * 根据SKU id查询SKU详情
      *
@@ -12,4 +50,12 @@ public interface IForOrderSkuService {
      * @return 匹配的SKU详情，如果没有匹配的数据，则返回null
      */
     SkuStandardVO getById(Long id);
+
+    /**
+     * 批量查询SKU详情,一次Dubbo调用返回多个SKU
+     *
+     * @param skuIds SKU id
+     * @return 匹配的SKU详情,不存在的id没有对应的元素
+     */
+    List<SkuStandardVO> getSkusByIds(List<Long> skuIds);
 }
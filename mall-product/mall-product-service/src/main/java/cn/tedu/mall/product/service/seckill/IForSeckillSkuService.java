@@ -2,6 +2,11 @@ package cn.tedu.mall.product.service.seckill;
 
 import cn.tedu.mall.pojo.product.vo.SkuStandardVO;
 
+import java.util.List;
+
 public interface IForSeckillSkuService {
     SkuStandardVO getById(Long skuId);
+
+    // 批量查询,一次Dubbo调用返回多个sku,不存在的id没有对应的元素
+    List<SkuStandardVO> getSkusByIds(List<Long> skuIds);
 }
@@ -3,8 +3,13 @@ package cn.tedu.mall.product.service.seckill;
 import cn.tedu.mall.pojo.product.vo.SpuDetailStandardVO;
 import cn.tedu.mall.pojo.product.vo.SpuStandardVO;
 
+import java.util.List;
+
 public interface IForSeckillSpuService {
     SpuStandardVO getSpuById(Long spuId);
 
+    // 批量查询,一次Dubbo调用返回多个spu,不存在的id没有对应的元素
+    List<SpuStandardVO> getSpusByIds(List<Long> spuIds);
+
     SpuDetailStandardVO getSpuDetailById(Long spuId);
 }
@@ -1,5 +1,6 @@
 package cn.tedu.mall.product.mapper;
 
+import cn.tedu.mall.pojo.product.dto.SkuQuantity;
 import cn.tedu.mall.pojo.product.model.Sku;
 import cn.tedu.mall.pojo.product.vo.SkuStandardVO;
 import org.apache.ibatis.annotations.Param;
@@ -73,6 +74,14 @@ public interface SkuMapper {
      */
     SkuStandardVO getById(Long id);
 
+    /**
+     * 根据多个SKU id查询SKU详情
+     *
+     * @param ids SKU id列表
+     * @return SKU详情列表，不存在的id没有对应的元素，如果没有匹配的数据，将返回长度为0的列表
+     */
+    List<SkuStandardVO> listByIds(@Param("ids") List<Long> ids);
+
     /**
      * 根据SPU id查询SKU列表
      *
@@ -88,4 +97,20 @@ public interface SkuMapper {
      * @return
      */
     int updateStockById(@Param("id")Long skuId, @Param("stock")Integer quantity);
+
+    /**
+     * 一条UPDATE批量减少多个SKU的库存,库存不足的SKU不会被修改
+     *
+     * @param skuQuantities SKU id和减少的库存数,SKU id不能重复
+     * @return 受影响的行数,小于参数长度表示有SKU库存不足或不存在
+     */
+    int updateStockBatch(@Param("list") List<SkuQuantity> skuQuantities);
+
+    /**
+     * 一条UPDATE批量归还多个SKU的库存,释放库存预留时使用
+     *
+     * @param skuQuantities SKU id和归还的库存数,SKU id不能重复
+     * @return 受影响的行数
+     */
+    int restoreStockBatch(@Param("list") List<SkuQuantity> skuQuantities);
 }
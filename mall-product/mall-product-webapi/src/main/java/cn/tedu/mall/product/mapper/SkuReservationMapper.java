@@ -0,0 +1,60 @@
+package cn.tedu.mall.product.mapper;
+
+import cn.tedu.mall.pojo.product.model.SkuReservation;
+import org.apache.ibatis.annotations.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * <p>SKU库存预留Mapper接口</p>
+ */
+@Repository
+public interface SkuReservationMapper {
+
+    /**
+     * 批量新增库存预留
+     *
+     * @param reservations 同一个订单的库存预留
+     * @return 受影响的行数
+     */
+    int insertBatch(List<SkuReservation> reservations);
+
+    /**
+     * 查询订单的库存预留
+     *
+     * @param orderId 订单id
+     * @return 订单的库存预留，没有预留时返回长度为0的列表
+     */
+    List<SkuReservation> listByOrderId(Long orderId);
+
+    /**
+     * 查询订单的库存预留并加锁，释放库存时使用，防止重复归还
+     *
+     * @param orderId 订单id
+     * @return 订单的库存预留，没有预留时返回长度为0的列表
+     */
+    List<SkuReservation> listByOrderIdForUpdate(Long orderId);
+
+    /**
+     * 修改订单所有库存预留的状态
+     *
+     * @param orderId   订单id
+     * @param fromState 原状态，只修改处于这个状态的预留
+     * @param toState   新状态
+     * @return 受影响的行数
+     */
+    int updateStateByOrderId(@Param("orderId") Long orderId,
+                             @Param("fromState") Integer fromState,
+                             @Param("toState") Integer toState);
+
+    /**
+     * 查询已经过期但仍处于预留状态的订单id
+     *
+     * @param now   当前时间
+     * @param limit 最多返回的订单数
+     * @return 订单id列表
+     */
+    List<Long> listExpiredOrderIds(@Param("now") LocalDateTime now, @Param("limit") Integer limit);
+}
@@ -104,6 +104,14 @@ public interface SpuMapper {
      */
     SpuStandardVO getById(Long id);
 
+    /**
+     * 根据多个SPU id查询SPU详情
+     *
+     * @param ids SPU id列表
+     * @return SPU详情列表，不存在的id没有对应的元素，如果没有匹配的数据，将返回长度为0的列表
+     */
+    List<SpuStandardVO> listByIds(@Param("ids") List<Long> ids);
+
     /**
      * 查询SPU列表
      *
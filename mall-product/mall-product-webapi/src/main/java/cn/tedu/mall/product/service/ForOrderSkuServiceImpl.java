@@ -2,19 +2,34 @@ package cn.tedu.mall.product.service;
 
 import cn.tedu.mall.common.exception.CoolSharkServiceException;
 import cn.tedu.mall.common.restful.ResponseCode;
+import cn.tedu.mall.pojo.product.dto.SkuQuantity;
+import cn.tedu.mall.pojo.product.model.SkuReservation;
 import cn.tedu.mall.pojo.product.vo.SkuStandardVO;
 import cn.tedu.mall.product.mapper.SkuMapper;
+import cn.tedu.mall.product.mapper.SkuReservationMapper;
 import cn.tedu.mall.product.service.order.IForOrderSkuService;
 import io.seata.spring.annotation.GlobalTransactional;
+import lombok.extern.slf4j.Slf4j;
 import org.apache.dubbo.config.annotation.DubboService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
 @DubboService
 @Service
+@Slf4j
 public class ForOrderSkuServiceImpl implements IForOrderSkuService {
     @Autowired
     private SkuMapper skuMapper;
+    @Autowired
+    private SkuReservationMapper skuReservationMapper;
     @Override
     @GlobalTransactional
     public int reduceStockNum(Long skuId, Integer quantity) {
@@ -22,6 +37,110 @@ public class ForOrderSkuServiceImpl implements IForOrderSkuService {
         return skuMapper.updateStockById(skuId,quantity);
     }
 
+    // 一次Dubbo调用、一条UPDATE减少订单中所有SKU的库存
+    // 在下单的全局事务中只产生一个分支事务
+    @Override
+    @GlobalTransactional
+    @Transactional(rollbackFor = Exception.class)
+    public void reduceStockBatch(List<SkuQuantity> skuQuantities) {
+        if (skuQuantities == null || skuQuantities.isEmpty()) {
+            return;
+        }
+        reduceStock(skuQuantities);
+    }
+
+    // 预留模式下单使用,只有本地事务,不参与Seata全局事务
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public void reserveStock(Long orderId, List<SkuQuantity> skuQuantities, long ttlMillis) {
+        if (skuQuantities == null || skuQuantities.isEmpty()) {
+            return;
+        }
+        if (!skuReservationMapper.listByOrderId(orderId).isEmpty()) {
+            // 订单模块重试时已经预留过了
+            log.debug("{}号订单已经预留过库存", orderId);
+            return;
+        }
+        List<SkuQuantity> merged = reduceStock(skuQuantities);
+        LocalDateTime expire = LocalDateTime.now().plus(ttlMillis, ChronoUnit.MILLIS);
+        List<SkuReservation> reservations = new ArrayList<>(merged.size());
+        for (SkuQuantity skuQuantity : merged) {
+            SkuReservation reservation = new SkuReservation();
+            reservation.setOrderId(orderId);
+            reservation.setSkuId(skuQuantity.getSkuId());
+            reservation.setQuantity(skuQuantity.getQuantity());
+            reservation.setState(SkuReservation.STATE_RESERVED);
+            reservation.setGmtExpire(expire);
+            reservations.add(reservation);
+        }
+        skuReservationMapper.insertBatch(reservations);
+    }
+
+    @Override
+    public boolean confirmReservation(Long orderId) {
+        int rows = skuReservationMapper.updateStateByOrderId(orderId,
+                SkuReservation.STATE_RESERVED, SkuReservation.STATE_CONFIRMED);
+        if (rows > 0) {
+            return true;
+        }
+        // 没有修改任何预留,可能是重复确认,也可能是预留已经过期释放了
+        for (SkuReservation reservation : skuReservationMapper.listByOrderId(orderId)) {
+            if (reservation.getState() == SkuReservation.STATE_CONFIRMED) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public void releaseReservation(Long orderId) {
+        // 加锁查询,多个节点同时释放同一个订单时只有一个能归还库存
+        List<SkuQuantity> restores = new ArrayList<>();
+        for (SkuReservation reservation : skuReservationMapper.listByOrderIdForUpdate(orderId)) {
+            if (reservation.getState() == SkuReservation.STATE_RESERVED) {
+                SkuQuantity skuQuantity = new SkuQuantity();
+                skuQuantity.setSkuId(reservation.getSkuId());
+                skuQuantity.setQuantity(reservation.getQuantity());
+                restores.add(skuQuantity);
+            }
+        }
+        if (restores.isEmpty()) {
+            return;
+        }
+        skuMapper.restoreStockBatch(restores);
+        skuReservationMapper.updateStateByOrderId(orderId,
+                SkuReservation.STATE_RESERVED, SkuReservation.STATE_RELEASED);
+        log.info("{}号订单的库存预留已释放,归还{}个SKU的库存", orderId, restores.size());
+    }
+
+    // 合并同一个SKU的数量后一次减少所有SKU的库存,库存不足时抛出异常
+    private List<SkuQuantity> reduceStock(List<SkuQuantity> skuQuantities) {
+        // 同一个SKU出现多次时合并数量,并按SKU id排序
+        Map<Long, Integer> merged = new TreeMap<>();
+        for (SkuQuantity skuQuantity : skuQuantities) {
+            if (skuQuantity.getSkuId() == null || skuQuantity.getQuantity() == null
+                    || skuQuantity.getQuantity() <= 0) {
+                throw new CoolSharkServiceException(ResponseCode.BAD_REQUEST, "减少库存的参数不正确！");
+            }
+            merged.merge(skuQuantity.getSkuId(), skuQuantity.getQuantity(), Integer::sum);
+        }
+        List<SkuQuantity> list = new ArrayList<>(merged.size());
+        for (Map.Entry<Long, Integer> entry : merged.entrySet()) {
+            SkuQuantity skuQuantity = new SkuQuantity();
+            skuQuantity.setSkuId(entry.getKey());
+            skuQuantity.setQuantity(entry.getValue());
+            list.add(skuQuantity);
+        }
+        int rows = skuMapper.updateStockBatch(list);
+        if (rows != list.size()) {
+            // 有SKU库存不足或不存在,抛出异常回滚已经减少的库存
+            log.error("商品库存不足,需要减少{}个SKU的库存,实际减少{}个,sku:{}", list.size(), rows, merged);
+            throw new CoolSharkServiceException(ResponseCode.BAD_REQUEST, "您要购买的商品库存不足!");
+        }
+        return list;
+    }
+
     @Override
     public SkuStandardVO getById(Long id) {
         SkuStandardVO sku = skuMapper.getById(id);
@@ -30,4 +149,12 @@ public class ForOrderSkuServiceImpl implements IForOrderSkuService {
         }
         return sku;
     }
+
+    @Override
+    public List<SkuStandardVO> getSkusByIds(List<Long> skuIds) {
+        if (skuIds == null || skuIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return skuMapper.listByIds(skuIds);
+    }
 }
@@ -6,6 +6,9 @@ import cn.tedu.mall.product.service.seckill.IForSeckillSkuService;
 import org.apache.dubbo.config.annotation.DubboService;
 import org.springframework.beans.factory.annotation.Autowired;
 
+import java.util.ArrayList;
+import java.util.List;
+
 @DubboService
 public class ForSeckillSkuServiceImpl implements IForSeckillSkuService {
     @Autowired
@@ -14,4 +17,12 @@ public class ForSeckillSkuServiceImpl implements IForSeckillSkuService {
     public SkuStandardVO getById(Long skuId) {
         return skuMapper.getById(skuId);
     }
+
+    @Override
+    public List<SkuStandardVO> getSkusByIds(List<Long> skuIds) {
+        if (skuIds == null || skuIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return skuMapper.listByIds(skuIds);
+    }
 }
@@ -9,6 +9,9 @@ import org.apache.dubbo.config.annotation.DubboService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.List;
+
 @DubboService
 @Service
 public class ForSeckillSpuServiceImpl implements IForSeckillSpuService {
@@ -21,6 +24,14 @@ public class ForSeckillSpuServiceImpl implements IForSeckillSpuService {
         return spuMapper.getById(spuId);
     }
 
+    @Override
+    public List<SpuStandardVO> getSpusByIds(List<Long> spuIds) {
+        if (spuIds == null || spuIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return spuMapper.listByIds(spuIds);
+    }
+
     @Override
     public SpuDetailStandardVO getSpuDetailById(Long spuId) {
         return spuDetailMapper.getBySpuId(spuId);
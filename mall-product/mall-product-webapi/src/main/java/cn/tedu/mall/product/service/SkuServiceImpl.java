@@ -11,7 +11,7 @@ import cn.tedu.mall.pojo.product.dto.SkuUpdateFullInfoDTO;
 import cn.tedu.mall.pojo.product.model.Sku;
 import cn.tedu.mall.pojo.product.model.SkuSpecification;
 import cn.tedu.mall.pojo.product.vo.SkuStandardVO;
-import cn.tedu.mall.product.utils.IdGeneratorUtils;
+import cn.tedu.mall.common.utils.IdGeneratorUtils;
 import cn.tedu.mall.product.utils.ListConvertUtils;
 import com.github.pagehelper.PageHelper;
 import com.github.pagehelper.PageInfo;
@@ -40,7 +40,7 @@ public class SkuServiceImpl implements ISkuService {
     @Override
     public void addNew(SkuAddNewDTO skuAddNewDTO) {
         log.debug("skuAddNewDTO = {}", skuAddNewDTO);
-        Long skuId = IdGeneratorUtils.getDistributeId(IdGeneratorUtils.Key.SKU);
+        Long skuId = IdGeneratorUtils.getDistributeId("sku");
 
         Sku sku = new Sku();
         BeanUtils.copyProperties(skuAddNewDTO, sku);
@@ -14,7 +14,7 @@ import cn.tedu.mall.pojo.product.vo.SpuListItemVO;
 import cn.tedu.mall.pojo.product.vo.SpuStandardVO;
 import cn.tedu.mall.product.constant.DataCommonConst;
 import cn.tedu.mall.product.mapper.*;
-import cn.tedu.mall.product.utils.IdGeneratorUtils;
+import cn.tedu.mall.common.utils.IdGeneratorUtils;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.github.pagehelper.PageHelper;
@@ -51,7 +51,7 @@ public class SpuServiceImpl implements ISpuService {
     @Override
     public void addNew(SpuAddNewDTO spuAddNewDTO) {
         // 获取分布式ID
-        Long spuId = IdGeneratorUtils.getDistributeId(IdGeneratorUtils.Key.SPU);
+        Long spuId = IdGeneratorUtils.getDistributeId("spu");
 
         // 获取类别ID
         Long categoryId = spuAddNewDTO.getCategoryId();
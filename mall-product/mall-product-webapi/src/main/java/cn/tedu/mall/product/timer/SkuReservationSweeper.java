@@ -0,0 +1,80 @@
+package cn.tedu.mall.product.timer;
+
+import cn.tedu.mall.product.mapper.SkuReservationMapper;
+import cn.tedu.mall.product.service.order.IForOrderSkuService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 释放过期的库存预留
+ * 订单模块预留库存后没有生成订单(例如进程退出),或者一直没有确认时,预留过期后归还库存
+ * 多个product节点同时释放同一个订单时,释放方法中的行锁保证库存只归还一次
+ */
+@Slf4j
+@Component
+public class SkuReservationSweeper {
+
+    // 每次最多处理的订单数
+    private static final int BATCH_SIZE = 100;
+
+    @Value("${custom.reservation.sweep-interval-millis:10000}")
+    private long sweepIntervalMillis;
+
+    @Autowired
+    private SkuReservationMapper skuReservationMapper;
+    // 通过代理调用,释放库存在事务中执行
+    @Autowired
+    private IForOrderSkuService forOrderSkuService;
+
+    private ScheduledExecutorService scheduler;
+
+    @PostConstruct
+    public void start() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "sku-reservation-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::sweep,
+                sweepIntervalMillis, sweepIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * 释放已经过期的库存预留
+     * @return 处理的订单数
+     */
+    public int sweep() {
+        int count = 0;
+        try {
+            List<Long> orderIds;
+            do {
+                orderIds = skuReservationMapper.listExpiredOrderIds(LocalDateTime.now(), BATCH_SIZE);
+                for (Long orderId : orderIds) {
+                    forOrderSkuService.releaseReservation(orderId);
+                    count++;
+                }
+            } while (orderIds.size() == BATCH_SIZE);
+        } catch (RuntimeException e) {
+            log.error("释放过期的库存预留失败", e);
+        }
+        if (count > 0) {
+            log.info("释放了{}个订单过期的库存预留", count);
+        }
+        return count;
+    }
+}
@@ -16,4 +16,9 @@ public class SqlScript {
      */
     public static final String INSERT_ALL_TEST_DATA = "classpath:sql/insert_all_test_data.sql";
 
+    /**
+     * 清空库存预留表的SQL脚本,需要先执行mall-product/scripts/pms_sku_reservation.sql建表
+     */
+    public static final String TRUNCATE_SKU_RESERVATION = "classpath:sql/truncate_sku_reservation.sql";
+
 }
@@ -1,5 +1,6 @@
 package cn.tedu.mall.product.mapper;
 
+import cn.tedu.mall.pojo.product.dto.SkuQuantity;
 import cn.tedu.mall.pojo.product.model.Sku;
 import cn.tedu.mall.product.SqlScript;
 import cn.tedu.mall.product.constant.DMLConst;
@@ -129,4 +130,64 @@ public class SkuMapperTests {
         }
     }
 
+    @Test
+    @Sql(scripts = {SqlScript.TRUNCATE_ALL_TABLE})
+    @Sql(scripts = {SqlScript.TRUNCATE_ALL_TABLE, SqlScript.INSERT_ALL_TEST_DATA}, executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+    void testUpdateStockBatchSuccessfully() {
+        insertSkuWithStock(1L, 10);
+        insertSkuWithStock(2L, 10);
+        int rows = mapper.updateStockBatch(skuQuantities(1L, 3, 2L, 9));
+        Assertions.assertEquals(2, rows);
+        Assertions.assertEquals(7, mapper.getById(1L).getStock());
+        Assertions.assertEquals(1, mapper.getById(2L).getStock());
+        log.debug("测试通过！");
+    }
+
+    @Test
+    @Sql(scripts = {SqlScript.TRUNCATE_ALL_TABLE})
+    @Sql(scripts = {SqlScript.TRUNCATE_ALL_TABLE, SqlScript.INSERT_ALL_TEST_DATA}, executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+    void testUpdateStockBatchFailureBecauseQuantityEqualsStock() {
+        insertSkuWithStock(1L, 10);
+        insertSkuWithStock(2L, 2);
+        // 和updateStockById一样,购买数量等于库存时不减少
+        int rows = mapper.updateStockBatch(skuQuantities(1L, 3, 2L, 2));
+        Assertions.assertEquals(DMLConst.AffectedRows.ONE, rows);
+        Assertions.assertEquals(2, mapper.getById(2L).getStock());
+        log.debug("测试通过！");
+    }
+
+    @Test
+    @Sql(scripts = {SqlScript.TRUNCATE_ALL_TABLE})
+    @Sql(scripts = {SqlScript.TRUNCATE_ALL_TABLE, SqlScript.INSERT_ALL_TEST_DATA}, executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+    void testUpdateStockBatchFailureBecauseStockNotEnough() {
+        insertSkuWithStock(1L, 10);
+        insertSkuWithStock(2L, 1);
+        int rows = mapper.updateStockBatch(skuQuantities(1L, 3, 2L, 2));
+        // 库存不足的SKU不会被修改,由业务层根据受影响的行数回滚
+        Assertions.assertEquals(DMLConst.AffectedRows.ONE, rows);
+        Assertions.assertEquals(1, mapper.getById(2L).getStock());
+        log.debug("测试通过！");
+    }
+
+    private void insertSkuWithStock(Long id, Integer stock) {
+        Sku sku = new Sku();
+        sku.setId(id);
+        sku.setSpuId(1L);
+        sku.setStock(stock);
+        mapper.insert(sku);
+    }
+
+    private List<SkuQuantity> skuQuantities(Long skuId1, Integer quantity1, Long skuId2, Integer quantity2) {
+        List<SkuQuantity> list = new ArrayList<>();
+        SkuQuantity first = new SkuQuantity();
+        first.setSkuId(skuId1);
+        first.setQuantity(quantity1);
+        list.add(first);
+        SkuQuantity second = new SkuQuantity();
+        second.setSkuId(skuId2);
+        second.setQuantity(quantity2);
+        list.add(second);
+        return list;
+    }
+
 }
@@ -0,0 +1,65 @@
+package cn.tedu.mall.product.mapper;
+
+import cn.tedu.mall.pojo.product.model.SkuReservation;
+import cn.tedu.mall.product.SqlScript;
+import cn.tedu.mall.product.constant.DMLConst;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.jdbc.Sql;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+@SpringBootTest
+@Slf4j
+public class SkuReservationMapperTests {
+
+    @Autowired
+    SkuReservationMapper mapper;
+
+    @Test
+    @Sql(scripts = {SqlScript.TRUNCATE_SKU_RESERVATION})
+    @Sql(scripts = {SqlScript.TRUNCATE_SKU_RESERVATION}, executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+    void testInsertBatchAndUpdateState() {
+        int rows = mapper.insertBatch(reservations(1L, LocalDateTime.now().plusMinutes(5)));
+        Assertions.assertEquals(2, rows);
+        Assertions.assertEquals(2, mapper.listByOrderId(1L).size());
+        rows = mapper.updateStateByOrderId(1L, SkuReservation.STATE_RESERVED, SkuReservation.STATE_CONFIRMED);
+        Assertions.assertEquals(2, rows);
+        // 已经确认的预留不会被释放
+        rows = mapper.updateStateByOrderId(1L, SkuReservation.STATE_RESERVED, SkuReservation.STATE_RELEASED);
+        Assertions.assertEquals(DMLConst.AffectedRows.ZERO, rows);
+        log.debug("测试通过！");
+    }
+
+    @Test
+    @Sql(scripts = {SqlScript.TRUNCATE_SKU_RESERVATION})
+    @Sql(scripts = {SqlScript.TRUNCATE_SKU_RESERVATION}, executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+    void testListExpiredOrderIds() {
+        mapper.insertBatch(reservations(1L, LocalDateTime.now().minusMinutes(1)));
+        mapper.insertBatch(reservations(2L, LocalDateTime.now().plusMinutes(5)));
+        List<Long> orderIds = mapper.listExpiredOrderIds(LocalDateTime.now(), 100);
+        Assertions.assertEquals(1, orderIds.size());
+        Assertions.assertEquals(1L, orderIds.get(0));
+        log.debug("测试通过！");
+    }
+
+    private List<SkuReservation> reservations(Long orderId, LocalDateTime expire) {
+        List<SkuReservation> list = new ArrayList<>();
+        for (long skuId = 1; skuId <= 2; skuId++) {
+            SkuReservation reservation = new SkuReservation();
+            reservation.setOrderId(orderId);
+            reservation.setSkuId(skuId);
+            reservation.setQuantity(1);
+            reservation.setState(SkuReservation.STATE_RESERVED);
+            reservation.setGmtExpire(expire);
+            list.add(reservation);
+        }
+        return list;
+    }
+
+}
@@ -0,0 +1 @@
+truncate pms_sku_reservation;
\ No newline at end of file
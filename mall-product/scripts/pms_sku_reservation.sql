@@ -0,0 +1,15 @@
+DROP TABLE IF EXISTS `pms_sku_reservation`;
+
+CREATE TABLE `pms_sku_reservation` (
+  `id` bigint(20) unsigned NOT NULL AUTO_INCREMENT,
+  `order_id` bigint(20) unsigned NOT NULL COMMENT '订单id',
+  `sku_id` bigint(20) unsigned NOT NULL COMMENT 'SKU id',
+  `quantity` int(10) unsigned NOT NULL COMMENT '预留的库存数',
+  `state` tinyint(3) unsigned NOT NULL DEFAULT '0' COMMENT '状态，0=已预留，1=已确认，2=已释放',
+  `gmt_expire` datetime NOT NULL COMMENT '预留过期时间，过期未确认时释放库存',
+  `gmt_create` datetime DEFAULT NULL,
+  `gmt_modified` datetime DEFAULT NULL,
+  PRIMARY KEY (`id`),
+  UNIQUE KEY `uk_order_sku` (`order_id`, `sku_id`),
+  KEY `idx_state_expire` (`state`, `gmt_expire`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='下单时的SKU库存预留';
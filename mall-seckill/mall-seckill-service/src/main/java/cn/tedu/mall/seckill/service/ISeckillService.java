@@ -1,8 +1,16 @@
 package cn.tedu.mall.seckill.service;
 
 import cn.tedu.mall.pojo.seckill.dto.SeckillOrderAddDTO;
+import cn.tedu.mall.pojo.seckill.dto.SeckillTicketDTO;
 import cn.tedu.mall.pojo.seckill.vo.SeckillCommitVO;
+import cn.tedu.mall.pojo.seckill.vo.SeckillTicketVO;
 
 public interface ISeckillService {
     SeckillCommitVO commitSeckill(SeckillOrderAddDTO seckillOrderAddDTO);
+
+    // 根据排队凭证查询当前用户异步秒杀下单的结果
+    SeckillTicketVO getSeckillTicket(String ticket);
+
+    // 消费者调用,将排队凭证转换成订单,同一个凭证重复调用时只生成一次订单
+    void processSeckillTicket(SeckillTicketDTO seckillTicketDTO);
 }
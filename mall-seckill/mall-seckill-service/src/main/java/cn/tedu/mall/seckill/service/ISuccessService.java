@@ -1,5 +1,9 @@
 package cn.tedu.mall.seckill.service;
 
+import cn.tedu.mall.pojo.seckill.model.Success;
+
+import java.util.List;
+
 /**
  * <p>
  * 秒杀成功表格 服务类
@@ -10,4 +14,6 @@ package cn.tedu.mall.seckill.service;
  */
 public interface ISuccessService{
 
+    // 批量保存秒杀成功记录,同时按sku汇总减少秒杀库存
+    void saveSuccessBatch(List<Success> successes);
 }
@@ -1,26 +1,59 @@
 package cn.tedu.mall.seckill.config;
 
+import org.springframework.amqp.core.AcknowledgeMode;
 import org.springframework.amqp.core.Binding;
 import org.springframework.amqp.core.BindingBuilder;
 import org.springframework.amqp.core.DirectExchange;
 import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.core.QueueBuilder;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.amqp.SimpleRabbitListenerContainerFactoryConfigurer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 /**
  * 生成必要的rabbtimq组件
- * 1个交换机
- * 1个队列
- * 1个路由key值
+ * 2个交换机: 秒杀交换机,死信交换机
+ * 3个队列: 秒杀成功记录队列,异步秒杀下单队列,秒杀成功记录的死信队列
+ * 3个路由key值
  */
 @Configuration
 public class RabbitMqComponentConfiguration {
     public static final String SECKILL_EX="seckill_ex";
     public static final String SECKILL_QUEUE="seckill_queue";
     public static final String SECKILL_RK="seckill_routing_key";
+    // 异步秒杀下单,准入成功的排队凭证发送到这个队列,由消费者生成订单
+    public static final String SECKILL_ORDER_QUEUE="seckill_order_queue";
+    public static final String SECKILL_ORDER_RK="seckill_order_routing_key";
+    // 秒杀成功记录重试后仍保存失败的消息,转入死信队列人工处理
+    public static final String SECKILL_DL_EX="seckill_dl_ex";
+    public static final String SECKILL_DL_QUEUE="seckill_dl_queue";
+    public static final String SECKILL_DL_RK="seckill_dl_routing_key";
+
+    // 生成订单的消费者数量
+    @Value("${custom.seckill.order.concurrency:4}")
+    private Integer orderConcurrency;
+    // 每个消费者一次最多取出的排队凭证数
+    @Value("${custom.seckill.order.batch-size:20}")
+    private Integer orderBatchSize;
+    // 秒杀成功记录消费者的预取数量
+    @Value("${custom.seckill.success.prefetch:200}")
+    private Integer successPrefetch;
+    // 秒杀成功记录每批最多保存的条数
+    @Value("${custom.seckill.success.batch-size:100}")
+    private Integer successBatchSize;
+    // 等待下一条消息的最长时间(毫秒),超过时不再凑批,有多少条处理多少条
+    @Value("${custom.seckill.success.max-wait:1000}")
+    private Long successMaxWait;
+
     @Bean
     public Queue seckillQueue(){
-        return new Queue(SECKILL_QUEUE);
+        return QueueBuilder.durable(SECKILL_QUEUE)
+                .deadLetterExchange(SECKILL_DL_EX)
+                .deadLetterRoutingKey(SECKILL_DL_RK)
+                .build();
     }
     @Bean
     public DirectExchange seckillExchange(){
@@ -30,4 +63,60 @@ public class RabbitMqComponentConfiguration {
     public Binding seckillBinding(){
         return BindingBuilder.bind(seckillQueue()).to(seckillExchange()).with(SECKILL_RK);
     }
+    @Bean
+    public Queue seckillOrderQueue(){
+        return new Queue(SECKILL_ORDER_QUEUE);
+    }
+    @Bean
+    public Binding seckillOrderBinding(){
+        return BindingBuilder.bind(seckillOrderQueue()).to(seckillExchange()).with(SECKILL_ORDER_RK);
+    }
+
+    @Bean
+    public Queue seckillDeadLetterQueue(){
+        return new Queue(SECKILL_DL_QUEUE);
+    }
+    @Bean
+    public DirectExchange seckillDeadLetterExchange(){
+        return new DirectExchange(SECKILL_DL_EX);
+    }
+    @Bean
+    public Binding seckillDeadLetterBinding(){
+        return BindingBuilder.bind(seckillDeadLetterQueue()).to(seckillDeadLetterExchange()).with(SECKILL_DL_RK);
+    }
+
+    // 秒杀成功记录消费者使用的批量监听容器,手动确认,数据库事务提交后才确认消息
+    @Bean
+    public SimpleRabbitListenerContainerFactory seckillSuccessContainerFactory(
+            SimpleRabbitListenerContainerFactoryConfigurer configurer,
+            ConnectionFactory connectionFactory){
+        SimpleRabbitListenerContainerFactory factory=new SimpleRabbitListenerContainerFactory();
+        configurer.configure(factory,connectionFactory);
+        factory.setAcknowledgeMode(AcknowledgeMode.MANUAL);
+        factory.setPrefetchCount(successPrefetch);
+        factory.setBatchListener(true);
+        factory.setConsumerBatchEnabled(true);
+        factory.setBatchSize(successBatchSize);
+        // receiveTimeout是等待下一条消息的时间,每收到一条消息重新计时
+        // 消息持续到达时整批最长等待batchSize个max-wait,没有新消息超过max-wait时立即处理已收到的消息
+        factory.setReceiveTimeout(successMaxWait);
+        return factory;
+    }
+
+    // 异步下单消费者使用的批量监听容器,手动确认,每个凭证处理完成后单独确认
+    @Bean
+    public SimpleRabbitListenerContainerFactory seckillOrderContainerFactory(
+            SimpleRabbitListenerContainerFactoryConfigurer configurer,
+            ConnectionFactory connectionFactory){
+        SimpleRabbitListenerContainerFactory factory=new SimpleRabbitListenerContainerFactory();
+        configurer.configure(factory,connectionFactory);
+        factory.setAcknowledgeMode(AcknowledgeMode.MANUAL);
+        factory.setConcurrentConsumers(orderConcurrency);
+        factory.setMaxConcurrentConsumers(orderConcurrency);
+        factory.setPrefetchCount(orderBatchSize);
+        factory.setBatchListener(true);
+        factory.setConsumerBatchEnabled(true);
+        factory.setBatchSize(orderBatchSize);
+        return factory;
+    }
 }
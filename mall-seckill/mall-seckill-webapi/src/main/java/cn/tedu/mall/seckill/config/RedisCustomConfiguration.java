@@ -1,9 +1,16 @@
 package cn.tedu.mall.seckill.config;
 
+import cn.tedu.mall.common.cache.SingleFlightCacheLoader;
+import cn.tedu.mall.common.redis.RedisValueSerializers;
+import cn.tedu.mall.seckill.utils.SeckillRandCodeCache;
+import cn.tedu.mall.seckill.utils.SeckillSoldOutCache;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.RedisSerializer;
 
 /**
@@ -13,14 +20,46 @@ import org.springframework.data.redis.serializer.RedisSerializer;
  */
 @Configuration
 public class RedisCustomConfiguration {
+    // Redis值的序列化方式:java,read-smile,write-smile,smile
+    @Value("${custom.redis.value-serializer:read-smile}")
+    private String valueSerializerMode;
+    // 缓存逻辑过期后仍然返回旧值并后台刷新的时间
+    @Value("${custom.cache.stale-millis:30000}")
+    private Long cacheStaleMillis;
+    // 跨节点加载缓存时Redis锁的时长
+    @Value("${custom.cache.lock-millis:3000}")
+    private Long cacheLockMillis;
+
     @Bean(name="redisTemplate")
     public RedisTemplate<String,Object> initRedisTemplate(RedisConnectionFactory redisConnectionFactory){
         RedisTemplate<String,Object> redisTemplate=new RedisTemplate<String,Object>();
         redisTemplate.setConnectionFactory(redisConnectionFactory);
         redisTemplate.setKeySerializer(RedisSerializer.string());
-        redisTemplate.setValueSerializer(RedisSerializer.java());
+        // 值的序列化方式由配置决定,默认仍写入Java序列化,同时能读取其它节点写入的Smile格式
+        RedisSerializer<Object> valueSerializer=RedisValueSerializers.of(valueSerializerMode);
+        redisTemplate.setValueSerializer(valueSerializer);
         redisTemplate.setHashKeySerializer(RedisSerializer.string());
-        redisTemplate.setHashValueSerializer(RedisSerializer.java());
+        redisTemplate.setHashValueSerializer(valueSerializer);
         return redisTemplate;
     }
+
+    // 防止缓存击穿的缓存加载工具,商品信息缓存使用
+    @Bean
+    public SingleFlightCacheLoader singleFlightCacheLoader(RedisTemplate<String,Object> redisTemplate){
+        return new SingleFlightCacheLoader(redisTemplate,cacheStaleMillis,cacheLockMillis);
+    }
+
+    // 订阅售罄通知和随机码发布,所有秒杀节点同步本地售罄标记和随机码
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer(
+            RedisConnectionFactory redisConnectionFactory, SeckillSoldOutCache soldOutCache,
+            SeckillRandCodeCache randCodeCache){
+        RedisMessageListenerContainer container=new RedisMessageListenerContainer();
+        container.setConnectionFactory(redisConnectionFactory);
+        container.addMessageListener(soldOutCache,
+                new ChannelTopic(SeckillSoldOutCache.SOLD_OUT_CHANNEL));
+        container.addMessageListener(randCodeCache,
+                new ChannelTopic(SeckillRandCodeCache.RAND_CODE_CHANNEL));
+        return container;
+    }
 }
@@ -0,0 +1,60 @@
+package cn.tedu.mall.seckill.consumer;
+
+import cn.tedu.mall.pojo.seckill.dto.SeckillTicketDTO;
+import cn.tedu.mall.seckill.config.RabbitMqComponentConfiguration;
+import cn.tedu.mall.seckill.service.ISeckillService;
+import com.rabbitmq.client.Channel;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.amqp.support.converter.SimpleMessageConverter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * 异步秒杀下单的消费者
+ * 批量取出准入成功的排队凭证,逐个转换成订单并记录下单结果,每个凭证处理完成后单独确认
+ * 每个订单仍然是一次addOrder调用:每个订单各自在全局事务中减少库存,
+ * 合并成一次调用会让一个订单的失败回滚同一批其它用户的订单
+ */
+@Slf4j
+@Component
+public class SeckillOrderConsumer {
+
+    @Autowired
+    private ISeckillService seckillService;
+
+    // 消息体的转换器,和发送方RabbitTemplate默认的转换器一致
+    private final MessageConverter messageConverter = new SimpleMessageConverter();
+
+    @RabbitListener(queues = RabbitMqComponentConfiguration.SECKILL_ORDER_QUEUE,
+            containerFactory = "seckillOrderContainerFactory")
+    public void process(List<Message> messages, Channel channel) throws IOException {
+        log.info("本批次需要生成订单的排队凭证数:{}",messages.size());
+        for(Message message : messages){
+            long deliveryTag=message.getMessageProperties().getDeliveryTag();
+            SeckillTicketDTO ticket;
+            try {
+                ticket=(SeckillTicketDTO) messageConverter.fromMessage(message);
+            }catch (RuntimeException e){
+                // 无法解析的消息重试也不会成功,直接丢弃
+                log.error("排队凭证消息无法解析,丢弃",e);
+                channel.basicNack(deliveryTag,false,false);
+                continue;
+            }
+            try {
+                // 单个凭证下单失败只影响它自己,失败结果已记录到排队状态中
+                seckillService.processSeckillTicket(ticket);
+                channel.basicAck(deliveryTag,false);
+            }catch (RuntimeException e){
+                // 凭证正在由其它消费者处理(租约未过期)或Redis不可用时抛出,重新投递这一条
+                log.error("排队凭证{}处理失败,重新投递",ticket.getTicket(),e);
+                channel.basicNack(deliveryTag,false,true);
+            }
+        }
+    }
+}
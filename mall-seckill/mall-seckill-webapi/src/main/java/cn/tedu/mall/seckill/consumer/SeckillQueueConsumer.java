@@ -2,38 +2,97 @@ package cn.tedu.mall.seckill.consumer;
 
 import cn.tedu.mall.pojo.seckill.model.Success;
 import cn.tedu.mall.seckill.config.RabbitMqComponentConfiguration;
-import cn.tedu.mall.seckill.mapper.SeckillSkuMapper;
-import cn.tedu.mall.seckill.mapper.SuccessMapper;
-import io.swagger.annotations.Api;
+import cn.tedu.mall.seckill.service.ISuccessService;
+import com.rabbitmq.client.Channel;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.amqp.rabbit.annotation.RabbitHandler;
+import org.springframework.amqp.core.Message;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.amqp.support.converter.SimpleMessageConverter;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 @Slf4j
 @Component
-@RabbitListener(queues = RabbitMqComponentConfiguration.SECKILL_QUEUE)
 public class SeckillQueueConsumer {
 
     @Autowired
-    private SeckillSkuMapper seckillSkuMapper;
+    private ISuccessService successService;
 
-    @Autowired
-    private SuccessMapper successMapper;
-
-    //下面方法时队列接收到消息时运行的方法
-    @RabbitHandler
-    public void process(Success success){
-        //先减少库存
-        seckillSkuMapper.updateReduceStockBySkuId(success.getSkuId(),
-                success.getQuantity());
-        //新增Success对象到数据库
-        successMapper.saveSuccess(success);
-        //如果上面两个数据库操作发生异常引发了事务问题
-        //1.如果不要求精确统计,不处理也可以
-        //2如果要求精确统计首先可以编写try-catch快进行连库操作重试
-        //如果重试失败,可以将失败的情况汇总后,提交到死信队列
-        //因为死信队列是人工处理,所以效率不能保证,实际开发中要慎重使用死信队列
+    // 整批保存失败后的重试次数
+    @Value("${custom.seckill.success.max-retry:3}")
+    private Integer maxRetry;
+
+    // 消息体的转换器,和发送方RabbitTemplate默认的转换器一致
+    private final MessageConverter messageConverter = new SimpleMessageConverter();
+
+    //下面方法时队列接收到一批消息时运行的方法
+    @RabbitListener(queues = RabbitMqComponentConfiguration.SECKILL_QUEUE,
+            containerFactory = "seckillSuccessContainerFactory")
+    public void process(List<Message> messages, Channel channel) throws IOException {
+        List<Success> successes = new ArrayList<>();
+        List<Message> converted = new ArrayList<>();
+        for (Message message : messages) {
+            try {
+                successes.add((Success) messageConverter.fromMessage(message));
+                converted.add(message);
+            } catch (RuntimeException e) {
+                // 无法转换的消息重试也不会成功,直接转入死信队列
+                log.error("秒杀成功记录消息无法解析,转入死信队列", e);
+                channel.basicNack(deliveryTag(message), false, false);
+            }
+        }
+        if (successes.isEmpty()) {
+            return;
+        }
+        //一个事务中汇总减少库存并批量新增Success对象到数据库
+        //事务提交后再确认消息,事务失败消息不会丢失
+        if (saveWithRetry(successes)) {
+            // 一次确认本批次中到最后一条为止的所有消息
+            channel.basicAck(deliveryTag(converted.get(converted.size() - 1)), true);
+            return;
+        }
+        //整批重试仍然失败,逐条保存找出有问题的记录
+        //单条保存失败的消息转入死信队列,由人工处理
+        for (int i = 0; i < successes.size(); i++) {
+            long deliveryTag = deliveryTag(converted.get(i));
+            try {
+                successService.saveSuccessBatch(Collections.singletonList(successes.get(i)));
+                channel.basicAck(deliveryTag, false);
+            } catch (RuntimeException e) {
+                log.error("订单{}的秒杀成功记录保存失败,转入死信队列",
+                        successes.get(i).getOrderSn(), e);
+                channel.basicNack(deliveryTag, false, false);
+            }
+        }
+    }
+
+    private boolean saveWithRetry(List<Success> successes) {
+        for (int attempt = 1; attempt <= maxRetry; attempt++) {
+            try {
+                successService.saveSuccessBatch(successes);
+                return true;
+            } catch (RuntimeException e) {
+                log.warn("第{}次批量保存{}条秒杀成功记录失败", attempt, successes.size(), e);
+                try {
+                    // 短暂等待后重试,等待时间随重试次数增加
+                    Thread.sleep(100L * attempt);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        }
+        return false;
+    }
+
+    private long deliveryTag(Message message) {
+        return message.getMessageProperties().getDeliveryTag();
     }
-}
\ No newline at end of file
+}
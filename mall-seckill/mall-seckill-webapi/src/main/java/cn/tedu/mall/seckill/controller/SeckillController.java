@@ -5,23 +5,27 @@ import cn.tedu.mall.common.restful.JsonResult;
 import cn.tedu.mall.common.restful.ResponseCode;
 import cn.tedu.mall.pojo.seckill.dto.SeckillOrderAddDTO;
 import cn.tedu.mall.pojo.seckill.vo.SeckillCommitVO;
+import cn.tedu.mall.pojo.seckill.vo.SeckillTicketVO;
 import cn.tedu.mall.seckill.exception.SeckillBlockHandler;
 import cn.tedu.mall.seckill.exception.SeckillFallBack;
 import cn.tedu.mall.seckill.service.ISeckillService;
-import cn.tedu.mall.seckill.utils.SeckillCacheUtils;
+import cn.tedu.mall.seckill.utils.SeckillRandCodeCache;
+import cn.tedu.mall.seckill.utils.SeckillSoldOutCache;
 import com.alibaba.csp.sentinel.annotation.SentinelResource;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiImplicitParam;
 import io.swagger.annotations.ApiOperation;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.validation.annotation.Validated;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.util.Map;
+
 @RestController
 @RequestMapping("seckill")
 @Api(tags = "执行秒杀模块")
@@ -30,7 +34,9 @@ public class SeckillController {
     @Autowired
     private ISeckillService seckillService;
     @Autowired
-    private RedisTemplate redisTemplate;
+    private SeckillRandCodeCache randCodeCache;
+    @Autowired
+    private SeckillSoldOutCache soldOutCache;
 
     @PostMapping("/{randCode}")
     @ApiOperation("验证随机码并提交秒杀订单")
@@ -44,31 +50,47 @@ public class SeckillController {
             @PathVariable String randCode,
             @Validated SeckillOrderAddDTO seckillOrderAddDTO
     ) {
+        //已经售罄的sku直接在内存中拒绝,不再访问Redis
+        if (soldOutCache.isSoldOut(seckillOrderAddDTO.getSeckillOrderItemAddDTO().getSkuId())) {
+            throw new CoolSharkServiceException(
+                    ResponseCode.BAD_REQUEST, "对不起您购买的商品暂时售罄");
+        }
         //先获取spuId
         Long spuId = seckillOrderAddDTO.getSpuId();
-        //获取这个SpuId对应的随机码的Key
-        String randCodeKey = SeckillCacheUtils.getRandCodeKey(spuId);
-        //先判断这个Key是否存在
-        if (redisTemplate.hasKey(randCodeKey)) {
-            //如果key存在,获取redis中预热的随机码
-            String redisRandCode = redisTemplate.boundValueOps(randCodeKey).get().toString();
-            //判断前端发来的随机码和redis中的随机码是否一致
-            if (!randCode.equals(redisRandCode)) {
-                // 前端随机码和redis随机码不一致,抛出异常
-                throw new CoolSharkServiceException(
-                        ResponseCode.NOT_FOUND, "没有找到指定商品(随机码不匹配)"
-                );
-            }
-            //运行到此处,表示随机码匹配调用业务逻辑层
-            SeckillCommitVO commitVO =
-                    seckillService.commitSeckill(seckillOrderAddDTO);
-            return JsonResult.ok(commitVO);
-        } else {
+        //从本地缓存中获取预热的随机码,本地没有时才访问redis
+        String redisRandCode = randCodeCache.getRandCode(spuId);
+        if (redisRandCode == null) {
             //如果不存在抛出异常,终止程序
             throw new CoolSharkServiceException(
                     ResponseCode.NOT_FOUND, "没有找到指定商品"
             );
         }
+        //判断前端发来的随机码和redis中的随机码是否一致
+        if (!randCode.equals(redisRandCode)) {
+            // 前端随机码和redis随机码不一致,抛出异常
+            throw new CoolSharkServiceException(
+                    ResponseCode.NOT_FOUND, "没有找到指定商品(随机码不匹配)"
+            );
+        }
+        //运行到此处,表示随机码匹配调用业务逻辑层
+        SeckillCommitVO commitVO =
+                seckillService.commitSeckill(seckillOrderAddDTO);
+        return JsonResult.ok(commitVO);
+    }
+
+    @GetMapping("/ticket/{ticket}")
+    @ApiOperation("根据排队凭证查询异步秒杀下单结果")
+    @ApiImplicitParam(value = "排队凭证", name = "ticket", required = true)
+    @PreAuthorize("hasRole('user')")
+    public JsonResult<SeckillTicketVO> getSeckillTicket(@PathVariable String ticket) {
+        SeckillTicketVO ticketVO = seckillService.getSeckillTicket(ticket);
+        return JsonResult.ok(ticketVO);
     }
-}
 
+    @GetMapping("/rand-code/stats")
+    @ApiOperation("查询随机码本地缓存的命中统计")
+    @PreAuthorize("hasAuthority('/pms/product/read')")
+    public JsonResult<Map<String, Long>> randCodeStats() {
+        return JsonResult.ok(randCodeCache.stats());
+    }
+}
@@ -2,20 +2,26 @@ package cn.tedu.mall.seckill.mapper;
 
 import cn.tedu.mall.pojo.seckill.model.SeckillSku;
 import org.apache.ibatis.annotations.Param;
-import org.springframework.security.core.parameters.P;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
+import java.util.Map;
 
 @Repository
 public interface SeckillSkuMapper {
     // 根据spuId查询秒杀sku列表
     List<SeckillSku> findSeckillSkusBySpuId(Long spuId);
 
+    // 根据多个spuId一次查询出所有秒杀sku,缓存预热时使用
+    List<SeckillSku> findSeckillSkusBySpuIds(@Param("spuIds") List<Long> spuIds);
+
     // 根据skuId减少库存数的方法
     int updateReduceStockBySkuId(@Param("skuId") Long skuId,
                                  @Param("quantity") Integer quantity);
 
+    // 批量减少库存数的方法,key为skuId,value为该sku需要减少的库存数,一条update完成
+    int updateReduceStockBatch(@Param("stocks") Map<Long, Integer> stocks);
+
 
 
 
@@ -1,10 +1,19 @@
 package cn.tedu.mall.seckill.mapper;
 
 import cn.tedu.mall.pojo.seckill.model.Success;
+import org.apache.ibatis.annotations.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
+
 @Repository
 public interface SuccessMapper {
     //声明新增Success类型对象到数据库的方法
     int saveSuccess(Success success);
+
+    //批量新增Success对象到数据库的方法
+    int saveSuccessBatch(List<Success> successes);
+
+    //查询已经保存过的订单号,重新投递的消息按订单号去重
+    List<String> listSavedOrderSns(@Param("orderSns") List<String> orderSns);
 }
@@ -8,38 +8,54 @@ import cn.tedu.mall.pojo.order.dto.OrderAddDTO;
 import cn.tedu.mall.pojo.order.dto.OrderItemAddDTO;
 import cn.tedu.mall.pojo.order.vo.OrderAddVO;
 import cn.tedu.mall.pojo.seckill.dto.SeckillOrderAddDTO;
+import cn.tedu.mall.pojo.seckill.dto.SeckillTicketDTO;
 import cn.tedu.mall.pojo.seckill.model.Success;
 import cn.tedu.mall.pojo.seckill.vo.SeckillCommitVO;
+import cn.tedu.mall.pojo.seckill.vo.SeckillTicketVO;
 import cn.tedu.mall.seckill.config.RabbitMqComponentConfiguration;
 import cn.tedu.mall.seckill.service.ISeckillService;
+import cn.tedu.mall.seckill.utils.SeckillAdmissionUtils;
 import cn.tedu.mall.seckill.utils.SeckillCacheUtils;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.dubbo.config.annotation.DubboReference;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 @Service
 @Slf4j
 public class SeckillServiceImpl implements ISeckillService {
 
-    // 秒杀业务中,需要使用redis的是判断用户重复购买和判断库存数,都是操作字符串的
-    // 所以使用stringRedisTemplate
-    @Autowired
-    private StringRedisTemplate stringRedisTemplate;
     // 秒杀生成订单直接调用普通订单生成的方法即可,dubbo调用order模块
     @DubboReference
     private IOmsOrderService dubboOrderService;
     // 将秒杀成功信息发送给rabbitMQ
     @Autowired
     private RabbitTemplate rabbitTemplate;
+    // 执行秒杀准入lua脚本的工具类
+    @Autowired
+    private SeckillAdmissionUtils seckillAdmissionUtils;
+    // 保存异步下单排队结果的对象
+    @Autowired
+    private RedisTemplate redisTemplate;
+    // 是否开启异步下单,开启后准入成功只返回排队凭证,由消息队列的消费者生成订单
+    @Value("${custom.seckill.order.async:false}")
+    private Boolean asyncOrder;
+    // 排队结果在Redis中保存的时间
+    private static final long TICKET_EXPIRE_MINUTES=30;
+    // 凭证正在生成订单的租约时间,要大于一次addOrder调用(含dubbo重试)的最长时间
+    // 消费者在生成订单的过程中退出时,租约过期后重新投递的消息可以再次处理
+    private static final long TICKET_CLAIM_LEASE_SECONDS=30;
     /*
     1.判断用户是否为重复购买和Redis中该Sku是否有库存
     2.秒杀订单转换成普通订单,需要使用dubbo调用order模块的生成订单方法
@@ -56,49 +72,124 @@ public class SeckillServiceImpl implements ISeckillService {
         Long userId=getUserId();
         // 我们明确了本次请求是哪个用户要购买哪个sku商品(userId和skuId的值)
         // 根据秒杀业务规则,一个用户每件sku只能购买1次
-        // 所以我们可以结合userId和skuId生成一个检查重复购买的key
-        // mall:seckill:reseckill:2:1
-        String reSeckillCheckKey= SeckillCacheUtils.getReseckillCheckKey(skuId,userId);
-        // 用上面的key向redis中发送命令,利用stringRedisTemplate的increment()方法
-        // 可以实现下面效果
-        // 1.如果上面的key在Redis中不存在,redis中会创建这个key,并生成一个值,值为1
-        // 2.如果上面的key在Redis中存在,那么就会在当前数值的基础上再加1后保存
-        //      例如已经是1了,就变为2保存起来
-        // 3.无论这个key存在与否,都会将最后的值返回给程序
-        // 综上,只有用户之前没有调用这个方法,返回值才为1,为1才表示用户是第一次购买这个sku
-        Long seckillTimes=stringRedisTemplate
-                .boundValueOps(reSeckillCheckKey).increment();
-        // 如果seckillTimes值大于1,就是用户已经购买过了
-        if(seckillTimes>100){
-            // 抛出异常,提示不能重复购买,终止程序
+        // 防重复购买、判断库存是否存在、扣减库存、记录购买用户这几步
+        // 由lua脚本在Redis中原子性的一次完成,只需要一次网络往返,也不会出现超卖
+        SeckillAdmissionUtils.AdmissionResult admission=seckillAdmissionUtils.admit(
+                skuId,userId,seckillOrderAddDTO.getSeckillOrderItemAddDTO().getQuantity());
+        if(admission.getStatus()!= SeckillAdmissionUtils.AdmissionStatus.SUCCESS){
+            // 重复购买、没有库存信息或库存不足,都抛出异常终止程序
+            log.info("sku:{}用户:{}秒杀准入失败:{}",skuId,userId,admission.getStatus());
             throw new CoolSharkServiceException(
-                    ResponseCode.FORBIDDEN,"您已经购买过这个商品了,谢谢您的支持");
+                    admission.getStatus().getResponseCode(),
+                    admission.getStatus().getMessage());
         }
-        // 程序运行到此处,表示当前用户是第一次购买这个商品
-        // 下面判断当前sku是否还有库存
-        // 库存数是在缓存预热是加载到Redis中的,要获取对应sku的key
-        // mall:seckill:sku:stock:2
-        String skuStockKey=SeckillCacheUtils.getStockKey(skuId);
-        // 判断这个key是否存在
-        if(!stringRedisTemplate.hasKey(skuStockKey)){
-            // 如果key不存在,抛出异常
-            throw new CoolSharkServiceException(
-                    ResponseCode.INTERNAL_SERVER_ERROR,"缓存中没有库存信息,购买失败");
+        // 到此为止,用户通过了重复购买和库存数的判断,可以开始生成订单了
+        if(asyncOrder){
+            // 异步下单模式:库存已经在Redis中预留,只生成排队凭证发送给消息队列
+            // 由消费者批量生成订单,前端凭ticket轮询下单结果
+            return queueSeckillOrder(seckillOrderAddDTO,userId);
+        }
+        OrderAddVO orderAddVO=createSeckillOrder(seckillOrderAddDTO,userId);
+        // 第四阶段:秒杀订单信息返回
+        // 返回值SeckillCommitVO和提交订单获得的返回值OrderAddVO属性完全一致
+        // 直接把同名属性赋值之后返回即可
+        SeckillCommitVO commitVO=new SeckillCommitVO();
+        BeanUtils.copyProperties(orderAddVO,commitVO);
+        // 修改返回值为commitVO
+
+        return commitVO;
+    }
+
+    // 生成排队凭证,保存排队状态到Redis后发送给消息队列
+    private SeckillCommitVO queueSeckillOrder(SeckillOrderAddDTO seckillOrderAddDTO,Long userId){
+        String ticket=UUID.randomUUID().toString().replace("-","");
+        SeckillTicketVO ticketVO=new SeckillTicketVO();
+        ticketVO.setTicket(ticket);
+        ticketVO.setState(SeckillTicketVO.STATE_QUEUING);
+        saveTicket(userId,ticketVO);
+        SeckillTicketDTO ticketDTO=new SeckillTicketDTO();
+        ticketDTO.setTicket(ticket);
+        ticketDTO.setUserId(userId);
+        ticketDTO.setSeckillOrderAddDTO(seckillOrderAddDTO);
+        try {
+            rabbitTemplate.convertAndSend(
+                    RabbitMqComponentConfiguration.SECKILL_EX,
+                    RabbitMqComponentConfiguration.SECKILL_ORDER_RK,
+                    ticketDTO);
+        }catch (RuntimeException e){
+            // 消息发送失败,归还预留的库存
+            seckillAdmissionUtils.release(
+                    seckillOrderAddDTO.getSeckillOrderItemAddDTO().getSkuId(),userId);
+            redisTemplate.delete(SeckillCacheUtils.getTicketKey(userId,ticket));
+            throw e;
         }
-        // 下面判断库存数是否允许购买,使用stringRedisTemplate的decrement()方法
-        // 这里的decrement()和increment()向反,效果是能够将key对应的值减1,然后返回
-        Long leftStock=stringRedisTemplate.boundValueOps(skuStockKey).decrement();
-        // leftStock是当前库存数减1之后返回的
-        // 返回0时,表示当前用户购买到了最后一件库存商品
-        // 只有返回值小于0,为负值时,才表示已经没有库存了
-        /*if(leftStock<0){
-            // 没有库存了,抛出异常终止
-            // 但是要先将用户购买这个商品的记录恢复为0
-            stringRedisTemplate.boundValueOps(reSeckillCheckKey).decrement();
+        SeckillCommitVO commitVO=new SeckillCommitVO();
+        commitVO.setTicket(ticket);
+        return commitVO;
+    }
+
+    @Override
+    public SeckillTicketVO getSeckillTicket(String ticket) {
+        // 排队凭证的key中包含用户id,用户只能查询到自己的下单结果
+        String ticketKey=SeckillCacheUtils.getTicketKey(getUserId(),ticket);
+        SeckillTicketVO ticketVO=(SeckillTicketVO)redisTemplate
+                .boundValueOps(ticketKey).get();
+        if(ticketVO==null){
             throw new CoolSharkServiceException(
-                    ResponseCode.BAD_REQUEST,"对不起您购买的商品暂时售罄");
-        }*/
-        // 到此为止,用户通过了重复购买和库存数的判断,可以开始生成订单了
+                    ResponseCode.NOT_FOUND,"排队凭证不存在或已过期");
+        }
+        return ticketVO;
+    }
+
+    @Override
+    public void processSeckillTicket(SeckillTicketDTO seckillTicketDTO) {
+        // 同一个凭证的消息可能重复投递(例如确认前消费者重启)
+        // 先用短租约标记凭证正在处理,生成订单结束后再标记为已处理
+        String claimKey=SeckillCacheUtils.getTicketClaimKey(seckillTicketDTO.getTicket());
+        Boolean claimed=redisTemplate.boundValueOps(claimKey).setIfAbsent(
+                SeckillTicketVO.STATE_QUEUING,TICKET_CLAIM_LEASE_SECONDS,TimeUnit.SECONDS);
+        if(!Boolean.TRUE.equals(claimed)){
+            Object claimState=redisTemplate.boundValueOps(claimKey).get();
+            if(claimState!=null && !String.valueOf(SeckillTicketVO.STATE_QUEUING).equals(claimState.toString())){
+                log.warn("排队凭证{}已经处理过,忽略重复的消息",seckillTicketDTO.getTicket());
+                return;
+            }
+            // 其它消费者正在处理,或处理中的消费者已经退出,抛出异常重新投递,租约过期后再处理
+            throw new IllegalStateException("排队凭证"+seckillTicketDTO.getTicket()+"正在处理中");
+        }
+        SeckillTicketVO ticketVO=new SeckillTicketVO();
+        ticketVO.setTicket(seckillTicketDTO.getTicket());
+        try {
+            OrderAddVO orderAddVO=createSeckillOrder(
+                    seckillTicketDTO.getSeckillOrderAddDTO(),seckillTicketDTO.getUserId());
+            BeanUtils.copyProperties(orderAddVO,ticketVO);
+            ticketVO.setState(SeckillTicketVO.STATE_SUCCESS);
+        }catch (RuntimeException e){
+            // 业务失败时库存已经在createSeckillOrder中归还,调用异常时订单可能已经生成,这里只记录结果
+            log.error("排队凭证{}生成订单失败",seckillTicketDTO.getTicket(),e);
+            ticketVO.setState(SeckillTicketVO.STATE_FAILED);
+            ticketVO.setMessage(e instanceof CoolSharkServiceException
+                    ? e.getMessage() : "下单结果未知,请稍后在订单列表中查看");
+        }
+        try {
+            // 生成订单已经结束,标记为已处理,重新投递的消息不会再生成订单
+            redisTemplate.boundValueOps(claimKey)
+                    .set(ticketVO.getState(),TICKET_EXPIRE_MINUTES,TimeUnit.MINUTES);
+            saveTicket(seckillTicketDTO.getUserId(),ticketVO);
+        }catch (RuntimeException e){
+            // 订单已经处理,不抛出异常,消息被确认后不会重新投递,记录日志即可
+            log.error("排队凭证{}的下单结果{}保存失败",seckillTicketDTO.getTicket(),ticketVO,e);
+        }
+    }
+
+    private void saveTicket(Long userId,SeckillTicketVO ticketVO){
+        redisTemplate.boundValueOps(SeckillCacheUtils.getTicketKey(userId,ticketVO.getTicket()))
+                .set(ticketVO,TICKET_EXPIRE_MINUTES,TimeUnit.MINUTES);
+    }
+
+    // 第二阶段和第三阶段:生成订单并发送秒杀成功记录,同步下单和异步下单的消费者共用
+    private OrderAddVO createSeckillOrder(SeckillOrderAddDTO seckillOrderAddDTO,Long userId){
+        Long skuId=seckillOrderAddDTO.getSeckillOrderItemAddDTO().getSkuId();
         // 第二阶段:秒杀订单转换成普通订单,需要使用dubbo调用order模块的生成订单方法
         // 目标是将参数SeckillOrderAddDTO转换成OrderAddDTO
         // 要观察这两个类的不同,然后编写转换方法完成转换
@@ -108,7 +199,20 @@ public class SeckillServiceImpl implements ISeckillService {
         // 但是userId要单独赋值,前端传入的参数中不会包含userId
         orderAddDTO.setUserId(userId);
         // dubbo调用order模块生成订单的方法,完成订单的新增
-        OrderAddVO orderAddVO = dubboOrderService.addOrder(orderAddDTO);
+        OrderAddVO orderAddVO;
+        try {
+            orderAddVO = dubboOrderService.addOrder(orderAddDTO);
+        }catch (CoolSharkServiceException e){
+            // order模块明确返回的业务失败(例如库存不足),订单没有生成
+            // 要归还Redis中扣减的库存并删除购买记录,用户可以重新秒杀
+            seckillAdmissionUtils.release(skuId,userId);
+            throw e;
+        }catch (RuntimeException e){
+            // dubbo超时等调用异常时订单可能已经提交,归还库存会导致同一用户重复购买和超卖
+            // 保留准入记录,由订单超时取消等流程处理
+            log.error("sku:{}用户:{}生成订单的结果未知,保留秒杀准入",skuId,userId,e);
+            throw e;
+        }
         // 第三阶段:使用消息队列(RabbitMQ)将秒杀成功记录信息保存到success表中
         // 业务要求我们记录秒杀成功的信息,但是它并不需要立即运行,可以由消息队列完成
         // 我们要创建Success秒杀记录对象,然后将它发送给RabbitMQ
@@ -122,18 +226,16 @@ public class SeckillServiceImpl implements ISeckillService {
                             .getSeckillOrderItemAddDTO().getPrice());
         success.setOrderSn(orderAddVO.getSn());
         // success对象赋值完备后,将发送给RabbitMQ
-        rabbitTemplate.convertAndSend(
-                RabbitMqComponentConfiguration.SECKILL_EX,
-                RabbitMqComponentConfiguration.SECKILL_RK,
-                success);
-        // 第四阶段:秒杀订单信息返回
-        // 返回值SeckillCommitVO和提交订单获得的返回值OrderAddVO属性完全一致
-        // 直接把同名属性赋值之后返回即可
-        SeckillCommitVO commitVO=new SeckillCommitVO();
-        BeanUtils.copyProperties(orderAddVO,commitVO);
-        // 修改返回值为commitVO
-
-        return commitVO;
+        // 订单已经生成,秒杀成功记录发送失败不影响下单结果,记录日志即可
+        try {
+            rabbitTemplate.convertAndSend(
+                    RabbitMqComponentConfiguration.SECKILL_EX,
+                    RabbitMqComponentConfiguration.SECKILL_RK,
+                    success);
+        }catch (RuntimeException e){
+            log.error("订单{}的秒杀成功记录发送失败",orderAddVO.getSn(),e);
+        }
+        return orderAddVO;
     }
 
     private OrderAddDTO convertSeckillOrderToOrder(SeckillOrderAddDTO seckillOrderAddDTO) {
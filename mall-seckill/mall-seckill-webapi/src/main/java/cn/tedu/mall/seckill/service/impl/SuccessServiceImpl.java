@@ -0,0 +1,66 @@
+package cn.tedu.mall.seckill.service.impl;
+
+import cn.tedu.mall.pojo.seckill.model.Success;
+import cn.tedu.mall.seckill.mapper.SeckillSkuMapper;
+import cn.tedu.mall.seckill.mapper.SuccessMapper;
+import cn.tedu.mall.seckill.service.ISuccessService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+@Service
+@Slf4j
+public class SuccessServiceImpl implements ISuccessService {
+
+    @Autowired
+    private SeckillSkuMapper seckillSkuMapper;
+
+    @Autowired
+    private SuccessMapper successMapper;
+
+    // 减库存和新增秒杀成功记录在同一个事务中,要么全部成功,要么全部回滚
+    // 部分确认后重新投递的消息可能已经保存过,按订单号去重,不重复减少库存
+    // 两个消费者同时保存同一个订单时由order_sn的唯一索引回滚其中一个事务,重试时去重
+    @Transactional
+    @Override
+    public void saveSuccessBatch(List<Success> successes) {
+        if (successes == null || successes.isEmpty()) {
+            return;
+        }
+        successes = removeSaved(successes);
+        if (successes.isEmpty()) {
+            return;
+        }
+        // 同一批次中相同sku的购买数量先汇总,每个sku只需要减少一次库存
+        Map<Long, Integer> stocks = new LinkedHashMap<>();
+        for (Success success : successes) {
+            stocks.merge(success.getSkuId(), success.getQuantity(), Integer::sum);
+        }
+        seckillSkuMapper.updateReduceStockBatch(stocks);
+        successMapper.saveSuccessBatch(successes);
+        log.debug("批量保存秒杀成功记录{}条,涉及sku{}个", successes.size(), stocks.size());
+    }
+
+    // 去掉同一批次中重复的和数据库中已经保存过的订单
+    private List<Success> removeSaved(List<Success> successes) {
+        Map<String, Success> unique = new LinkedHashMap<>();
+        for (Success success : successes) {
+            unique.putIfAbsent(success.getOrderSn(), success);
+        }
+        Set<String> saved = new HashSet<>(successMapper.listSavedOrderSns(new ArrayList<>(unique.keySet())));
+        if (saved.isEmpty() && unique.size() == successes.size()) {
+            return successes;
+        }
+        log.warn("忽略{}条重复的秒杀成功记录", successes.size() - unique.size() + saved.size());
+        unique.keySet().removeAll(saved);
+        return new ArrayList<>(unique.values());
+    }
+}
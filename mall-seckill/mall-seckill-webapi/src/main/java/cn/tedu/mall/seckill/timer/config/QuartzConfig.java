@@ -26,23 +26,6 @@ public class QuartzConfig {
                 .withSchedule(cron)
                 .build();
     }
-    @Bean
-    public JobDetail bloomJobDetail(){
-        return JobBuilder.newJob(SeckillBloomJob.class)
-                .withIdentity("bloomJobDetial")
-                .build();
-    }
-    @Bean
-    public Trigger bloomTrigger(){
-        CronScheduleBuilder cron = CronScheduleBuilder.cronSchedule("0 0/1 * * * ?");
-        return TriggerBuilder.newTrigger()
-                .withSchedule(cron)
-                .forJob(initJobDetail())
-                .withIdentity("bloomTrigger")
-                .withSchedule(cron)
-                .build();
-    }
-
     @Bean
     public JobDetail bloomJobDetail(){
         return JobBuilder.newJob(SeckillBloomJob.class)
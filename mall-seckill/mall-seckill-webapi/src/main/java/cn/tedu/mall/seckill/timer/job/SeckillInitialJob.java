@@ -1,23 +1,32 @@
 package cn.tedu.mall.seckill.timer.job;
 
-import cn.tedu.mall.common.config.PrefixConfiguration;
 import cn.tedu.mall.pojo.seckill.model.SeckillSku;
 import cn.tedu.mall.pojo.seckill.model.SeckillSpu;
 import cn.tedu.mall.seckill.mapper.SeckillSkuMapper;
 import cn.tedu.mall.seckill.mapper.SeckillSpuMapper;
 import cn.tedu.mall.seckill.utils.SeckillCacheUtils;
+import cn.tedu.mall.seckill.utils.SeckillRandCodeCache;
+import cn.tedu.mall.seckill.utils.SeckillSnapshotUtils;
+import cn.tedu.mall.seckill.utils.SeckillSoldOutCache;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang.math.RandomUtils;
 import org.quartz.Job;
 import org.quartz.JobExecutionContext;
 import org.quartz.JobExecutionException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.serializer.RedisSerializer;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.concurrent.TimeUnit;
+import java.util.Map;
 
 @Slf4j
 public class SeckillInitialJob implements Job {
@@ -47,64 +56,103 @@ public class SeckillInitialJob implements Job {
      */
     @Autowired
     private StringRedisTemplate stringRedisTemplate;
+    // 生成秒杀商品VO快照
+    @Autowired
+    private SeckillSnapshotUtils snapshotUtils;
 
     // 在秒杀开始前5分钟,进行秒杀信息的预热工作,将秒杀过程中的热点数据保存到Redis
+    // 同一分钟开始的秒杀商品可能有上千个,逐个查询数据库、逐个访问Redis会让预热在秒杀开始时还没有完成
+    // 所以一次查询出所有sku,再使用管道批量写入Redis
     @Override
     public void execute(JobExecutionContext jobExecutionContext) throws JobExecutionException {
+        long begin=System.currentTimeMillis();
         // 先将5分钟后要开始进行秒杀的商品信息查询出来,所以要先获得一个5分钟后的时间对象
         LocalDateTime time=LocalDateTime.now().plusMinutes(5);
         // 查询这个时间进行秒杀的商品列表
         List<SeckillSpu> seckillSpus = spuMapper.findSeckillSpusByTime(time);
-        // 遍历查询出的所有商品集合
+        if(seckillSpus.isEmpty()){
+            return;
+        }
+        List<Long> spuIds=new ArrayList<>();
+        // 库存和随机码在秒杀结束后才过期,和VO快照一致
+        Map<Long,LocalDateTime> endTimes=new HashMap<>();
         for (SeckillSpu spu : seckillSpus){
-            // 要预热当前spu对应的所有秒杀sku中的库存数到Redis
-            // 所以要根据spuId查询出它对应的sku列表
-            List<SeckillSku> seckillSkus =
-                            skuMapper.findSeckillSkusBySpuId(spu.getSpuId());
-            // 再遍历seckillSkus集合,获取库存数
+            spuIds.add(spu.getSpuId());
+            endTimes.put(spu.getSpuId(),spu.getEndTime());
+        }
+        // 一次查询出所有spu对应的秒杀sku,避免每个spu查询一次数据库
+        List<SeckillSku> seckillSkus=skuMapper.findSeckillSkusBySpuIds(spuIds);
+        // 库存和随机码都使用SETNX语义写入(key不存在时才写入),已经预热过的key不会被覆盖
+        // 随机码在写入前先生成好,写入成功的随机码才需要通知其它节点
+        Map<Long,Integer> randCodes=new LinkedHashMap<>();
+        Map<Long,Long> randCodeTtls=new HashMap<>();
+        for (Long spuId : spuIds){
+            // 生成的随机码这里范围定为1000000~9999999
+            randCodes.put(spuId,RandomUtils.nextInt(9000000)+1000000);
+            randCodeTtls.put(spuId,SeckillSnapshotUtils.ttlUntilEnd(endTimes.get(spuId)));
+        }
+        RedisSerializer<String> keySerializer=stringRedisTemplate.getStringSerializer();
+        RedisSerializer<Object> valueSerializer=redisTemplate.getValueSerializer();
+        // 第一个管道:写入库存和随机码,返回值和写入命令一一对应,表示是否写入成功
+        List<Object> written=stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
             for(SeckillSku sku: seckillSkus){
-                log.info("开始将{}号sku商品的库存数预热到redis",sku.getSkuId());
-                // 要想将库存数保存到Redis,先确定使用的key
-                // SeckillCacheUtils.getStockKey是获取库存字符串常量的方法
-                // 方法参数传入sku.getSkuId(),会追加在字符串常量之后
-                // 最终skuStockKey的实际值可能是:   mall:seckill:sku:stock:1
-                String skuStockKey=SeckillCacheUtils.getStockKey(sku.getSkuId());
-                // 获取了key之后,检查Redis中是否已经包含这个key
-                if(redisTemplate.hasKey(skuStockKey)){
-                    // 如果这个Key已经存在了,证明之前已经完成了缓存,直接跳过即可
-                    log.info("{}号sku的库存数已经缓存过了",sku.getSkuId());
-                }else{
-                    stringRedisTemplate.boundValueOps(skuStockKey).set(
-                            sku.getSeckillStock()+"",
-                            // 秒杀时间+提前的5分钟+防雪崩随机数(30秒)
-                            // 1000*60*60*2+1000*60*5+ RandomUtils.nextInt(30000),
-                            1000*60*5+RandomUtils.nextInt(30000),
-                            TimeUnit.MILLISECONDS);
-                    log.info("{}号sku商品库存成功预热到Redis!",sku.getSkuId());
-                }
+                // 库存的key  mall:seckill:sku:stock:1
+                // 库存使用字符串保存,秒杀时才能直接在Redis中扣减
+                connection.stringCommands().set(
+                        keySerializer.serialize(SeckillCacheUtils.getStockKey(sku.getSkuId())),
+                        keySerializer.serialize(sku.getSeckillStock()+""),
+                        // 到秒杀结束+5分钟+防雪崩随机数(30秒)
+                        Expiration.milliseconds(SeckillSnapshotUtils.ttlUntilEnd(endTimes.get(sku.getSpuId()))),
+                        RedisStringCommands.SetOption.SET_IF_ABSENT);
+            }
+            for(Map.Entry<Long,Integer> entry: randCodes.entrySet()){
+                // 随机码key  mall:seckill:spu:url:rand:code:2
+                // 随机码由redisTemplate读取,要使用它的序列化方式
+                connection.stringCommands().set(
+                        keySerializer.serialize(SeckillCacheUtils.getRandCodeKey(entry.getKey())),
+                        valueSerializer.serialize(entry.getValue()),
+                        Expiration.milliseconds(randCodeTtls.get(entry.getKey())),
+                        RedisStringCommands.SetOption.SET_IF_ABSENT);
             }
-            // 在内层循环结束后,外层循环结束前,编写spu对应的随机码的预热
-            // 随机码就是一个随机数,随机范围自定即可
-            // 随机生成后保存到Redis中即可,使用方式后面会讲
-            // 随机码key  mall:seckill:spu:url:rand:code:2
-            String randCodeKey=SeckillCacheUtils.getRandCodeKey(spu.getSpuId());
-            // 判断当前随机码key是否已经存在
-            if (redisTemplate.hasKey(randCodeKey)){
-                // 如果已经存在了,不需要任何其它操作
-                // 为了方法今后的测试,我们取出这个随机码输出到控制台用于测试
-                int randCode=(int)redisTemplate.boundValueOps(randCodeKey).get();
-                log.info("{}号spu的商品随机码已经缓存了,值为:{}",spu.getSpuId(),randCode);
-            }else{
-                // 如果不存在,生成随机码
-                // 生成的随机码这里范围定为1000000~9999999
-                int randCode=RandomUtils.nextInt(9000000)+1000000;
-                // 将生成的随机码保存到redis中
-                redisTemplate.boundValueOps(randCodeKey).set(
-                        randCode,
-                        1000*60*5+RandomUtils.nextInt(30000),
-                        TimeUnit.MILLISECONDS);
-                log.info("{}号spu的随机码预热完成!值为:{}",spu.getSpuId(),randCode);
+            return null;
+        });
+        // 第二个管道:通知所有秒杀节点,新预热库存的sku取消售罄标记,新生成的随机码保存到本地缓存
+        int stockCount=0;
+        int randCodeCount=0;
+        List<String> stockMessages=new ArrayList<>();
+        List<String> randCodeMessages=new ArrayList<>();
+        for(int i=0;i<seckillSkus.size();i++){
+            if(Boolean.TRUE.equals(written.get(i))){
+                stockCount++;
+                stockMessages.add(SeckillSoldOutCache.restockMessage(seckillSkus.get(i).getSkuId()));
             }
         }
+        int index=seckillSkus.size();
+        for(Map.Entry<Long,Integer> entry: randCodes.entrySet()){
+            if(Boolean.TRUE.equals(written.get(index++))){
+                randCodeCount++;
+                randCodeMessages.add(SeckillRandCodeCache.randCodeMessage(
+                        entry.getKey(),entry.getValue(),randCodeTtls.get(entry.getKey())));
+                log.info("{}号spu的随机码预热完成!值为:{}",entry.getKey(),entry.getValue());
+            }
+        }
+        if(!stockMessages.isEmpty() || !randCodeMessages.isEmpty()){
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for(String message: stockMessages){
+                    connection.publish(keySerializer.serialize(SeckillSoldOutCache.SOLD_OUT_CHANNEL),
+                            keySerializer.serialize(message));
+                }
+                for(String message: randCodeMessages){
+                    connection.publish(keySerializer.serialize(SeckillRandCodeCache.RAND_CODE_CHANNEL),
+                            keySerializer.serialize(message));
+                }
+                return null;
+            });
+        }
+        // 最后生成商品VO快照,秒杀期间查询商品信息不再调用product模块
+        int snapshotCount=snapshotUtils.build(seckillSpus,seckillSkus);
+        log.info("秒杀缓存预热完成,spu:{}个,sku:{}个,新写入库存key:{}个,随机码key:{}个,VO快照:{}个,耗时:{}ms",
+                spuIds.size(),seckillSkus.size(),stockCount,randCodeCount,snapshotCount,
+                System.currentTimeMillis()-begin);
     }
 }
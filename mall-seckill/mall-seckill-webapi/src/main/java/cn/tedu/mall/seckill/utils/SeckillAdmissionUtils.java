@@ -0,0 +1,138 @@
+package cn.tedu.mall.seckill.utils;
+
+import cn.tedu.mall.common.restful.ResponseCode;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scripting.support.ResourceScriptSource;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 秒杀准入工具类
+ * 利用lua脚本在Redis服务端原子性的完成防重复购买判断、库存判断、扣减库存和记录购买用户
+ * 一次请求只需要和Redis交互一次
+ */
+@Component
+public class SeckillAdmissionUtils {
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    // 本地售罄标记,售罄的sku不再访问Redis
+    @Autowired
+    private SeckillSoldOutCache soldOutCache;
+
+    private static final DefaultRedisScript<List> admissionScript = new DefaultRedisScript<>();
+
+    private static final DefaultRedisScript<Long> releaseScript = new DefaultRedisScript<>();
+
+    static {
+        admissionScript.setScriptSource(
+                new ResourceScriptSource(new ClassPathResource("lua/seckill_admission.lua")));
+        admissionScript.setResultType(List.class);
+        releaseScript.setScriptSource(
+                new ResourceScriptSource(new ClassPathResource("lua/seckill_release.lua")));
+        releaseScript.setResultType(Long.class);
+    }
+
+    /**
+     * 秒杀准入
+     * @param skuId 商品skuId
+     * @param userId 用户id
+     * @param quantity 购买数量
+     * @return 准入结果和扣减后的剩余库存
+     */
+    public AdmissionResult admit(Long skuId, Long userId, Integer quantity) {
+        if (soldOutCache.isSoldOut(skuId)) {
+            return new AdmissionResult(AdmissionStatus.SOLD_OUT, 0L);
+        }
+        List<String> keys = Arrays.asList(
+                SeckillCacheUtils.getReseckillCheckKey(skuId, userId),
+                SeckillCacheUtils.getStockKey(skuId));
+        int buyCount = (quantity == null || quantity < 1) ? 1 : quantity;
+        List<Long> result = stringRedisTemplate.execute(admissionScript, keys, String.valueOf(buyCount));
+        AdmissionResult admission =
+                new AdmissionResult(AdmissionStatus.valueOf(result.get(0).intValue()), result.get(1));
+        // 库存已经为0(库存不足,或者当前请求买走了最后的库存),标记为售罄
+        // 剩余库存少于购买数量但不为0时不标记,购买数量更少的请求仍可能成功
+        if ((admission.getStatus() == AdmissionStatus.SOLD_OUT
+                || admission.getStatus() == AdmissionStatus.SUCCESS) && admission.getLeftStock() <= 0) {
+            soldOutCache.markSoldOut(skuId);
+        }
+        return admission;
+    }
+
+    /**
+     * 准入成功后,后续业务失败时归还库存并删除购买记录
+     * @param skuId 商品skuId
+     * @param userId 用户id
+     * @return 归还的库存数
+     */
+    public Long release(Long skuId, Long userId) {
+        List<String> keys = Arrays.asList(
+                SeckillCacheUtils.getReseckillCheckKey(skuId, userId),
+                SeckillCacheUtils.getStockKey(skuId));
+        Long released = stringRedisTemplate.execute(releaseScript, keys);
+        // 有库存归还,通知所有节点取消售罄标记
+        // 售罄标记可能只在其它节点上,不能只根据本节点的标记判断是否需要通知
+        if (released != null && released > 0) {
+            soldOutCache.markRestocked(skuId);
+        }
+        return released;
+    }
+
+    @Data
+    @AllArgsConstructor
+    public static class AdmissionResult {
+        private AdmissionStatus status;
+        // 扣减后的剩余库存,没有库存信息或重复购买时为-1
+        private Long leftStock;
+    }
+
+    /**
+     * 准入脚本的结果码
+     */
+    public enum AdmissionStatus {
+
+        SUCCESS(0, ResponseCode.OK, "秒杀成功"),
+        REPEAT(1, ResponseCode.FORBIDDEN, "您已经购买过这个商品了,谢谢您的支持"),
+        NO_STOCK_CACHE(2, ResponseCode.INTERNAL_SERVER_ERROR, "缓存中没有库存信息,购买失败"),
+        SOLD_OUT(3, ResponseCode.BAD_REQUEST, "对不起您购买的商品暂时售罄");
+
+        private final int code;
+        private final ResponseCode responseCode;
+        private final String message;
+
+        AdmissionStatus(int code, ResponseCode responseCode, String message) {
+            this.code = code;
+            this.responseCode = responseCode;
+            this.message = message;
+        }
+
+        public int getCode() {
+            return code;
+        }
+
+        public ResponseCode getResponseCode() {
+            return responseCode;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        public static AdmissionStatus valueOf(int code) {
+            for (AdmissionStatus status : values()) {
+                if (status.code == code) {
+                    return status;
+                }
+            }
+            throw new IllegalArgumentException("未知的秒杀准入结果码:" + code);
+        }
+    }
+}
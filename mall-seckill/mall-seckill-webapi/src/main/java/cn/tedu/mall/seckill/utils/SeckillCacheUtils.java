@@ -34,6 +34,18 @@ public class SeckillCacheUtils {
         return  PrefixConfiguration.SeckillPrefixConfiguration.SECKILL_SPU_VO_PREFIX+spuId;
     }
 
+    public static String getSeckillSpuDetailKey(Long spuId) {
+        return PrefixConfiguration.SeckillPrefixConfiguration.SECKILL_SPU_DETAIL_PREFIX+spuId;
+    }
+
+    /**
+     * @param spuId 商品spuId
+     * @return spu下所有秒杀sku的VO列表的key
+     */
+    public static String getSeckillSpuSkusKey(Long spuId) {
+        return PrefixConfiguration.SeckillPrefixConfiguration.SECKILL_SPU_SKUS_PREFIX+spuId;
+    }
+
     public static String getBloomFilterKey(LocalDate day) {
         return PrefixConfiguration.SpuPrefixConfiguration.SPU_BLOOM_FILTER_PREFIX+day.toString();
     }
@@ -41,4 +53,21 @@ public class SeckillCacheUtils {
     public static String getSeckillSkuVOKey(Long skuId) {
         return PrefixConfiguration.SeckillPrefixConfiguration.SECKILL_SKU_VO_PREFIX+skuId;
     }
+
+    /**
+     * @param userId 用户id
+     * @param ticket 排队凭证
+     * @return
+     */
+    public static String getTicketKey(Long userId, String ticket) {
+        return PrefixConfiguration.SeckillPrefixConfiguration.SECKILL_TICKET_PREFIX+userId+":"+ticket;
+    }
+
+    /**
+     * @param ticket 排队凭证
+     * @return 凭证已经开始生成订单的标记的key
+     */
+    public static String getTicketClaimKey(String ticket) {
+        return PrefixConfiguration.SeckillPrefixConfiguration.SECKILL_TICKET_CLAIM_PREFIX+ticket;
+    }
 }
@@ -0,0 +1,136 @@
+package cn.tedu.mall.seckill.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 秒杀随机码的本地缓存
+ * 缓存预热生成随机码后通过Redis发布订阅通知所有秒杀节点,各节点保存到本地
+ * 验证随机码时只需要查询一次本地Map,本地没有时才访问Redis
+ * 本地缓存的过期时间和Redis中随机码的过期时间一致
+ */
+@Slf4j
+@Component
+public class SeckillRandCodeCache implements MessageListener {
+
+    // 随机码发布的频道
+    public static final String RAND_CODE_CHANNEL = "mall:seckill:channel:rand:code";
+    // 本地没有时从Redis加载,Redis中没有过期时间时,本地最多保存的时间
+    private static final long DEFAULT_TTL_MILLIS = 30 * 1000;
+
+    // 本地最多缓存的spu数量
+    @Value("${custom.seckill.rand-code.max-size:10000}")
+    private Integer maxSize;
+
+    @Autowired
+    private RedisTemplate redisTemplate;
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    private final Map<Long, RandCode> randCodes = new ConcurrentHashMap<>();
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+
+    /**
+     * 获取spu的随机码,本地没有或已过期时从Redis加载
+     * @param spuId 商品spuId
+     * @return 随机码,Redis中也没有时返回null
+     */
+    public String getRandCode(Long spuId) {
+        RandCode randCode = randCodes.get(spuId);
+        if (randCode != null && !randCode.isExpired()) {
+            hitCount.increment();
+            return randCode.getCode();
+        }
+        missCount.increment();
+        String randCodeKey = SeckillCacheUtils.getRandCodeKey(spuId);
+        Object code = redisTemplate.boundValueOps(randCodeKey).get();
+        if (code == null) {
+            randCodes.remove(spuId);
+            return null;
+        }
+        Long ttl = redisTemplate.getExpire(randCodeKey, TimeUnit.MILLISECONDS);
+        put(spuId, code.toString(), ttl == null || ttl <= 0 ? DEFAULT_TTL_MILLIS : ttl);
+        return code.toString();
+    }
+
+    /**
+     * 缓存预热生成随机码后调用,通知所有秒杀节点
+     * @param spuId 商品spuId
+     * @param randCode 随机码
+     * @param ttlMillis 随机码在Redis中的过期时间
+     */
+    public void publish(Long spuId, Object randCode, long ttlMillis) {
+        put(spuId, randCode.toString(), ttlMillis);
+        stringRedisTemplate.convertAndSend(RAND_CODE_CHANNEL, randCodeMessage(spuId, randCode, ttlMillis));
+    }
+
+    /**
+     * 随机码通知的内容,批量预热时在管道中直接发送
+     */
+    public static String randCodeMessage(Long spuId, Object randCode, long ttlMillis) {
+        return spuId + ":" + randCode + ":" + ttlMillis;
+    }
+
+    // 接收其它节点(也包括自己)发布的随机码
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        String[] parts = body.split(":");
+        try {
+            put(Long.valueOf(parts[0]), parts[1], Long.parseLong(parts[2]));
+        } catch (RuntimeException e) {
+            log.warn("无法识别的随机码通知:{}", body);
+        }
+    }
+
+    public Map<String, Long> stats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("size", (long) randCodes.size());
+        stats.put("hitCount", hitCount.sum());
+        stats.put("missCount", missCount.sum());
+        return stats;
+    }
+
+    private void put(Long spuId, String code, long ttlMillis) {
+        if (randCodes.size() >= maxSize && !randCodes.containsKey(spuId)) {
+            // 超过上限时先清理过期的随机码,仍然超过上限就不缓存,直接使用Redis
+            randCodes.values().removeIf(RandCode::isExpired);
+            if (randCodes.size() >= maxSize) {
+                return;
+            }
+        }
+        randCodes.put(spuId, new RandCode(code, System.currentTimeMillis() + ttlMillis));
+    }
+
+    private static class RandCode {
+        private final String code;
+        private final long expireAt;
+
+        RandCode(String code, long expireAt) {
+            this.code = code;
+            this.expireAt = expireAt;
+        }
+
+        String getCode() {
+            return code;
+        }
+
+        boolean isExpired() {
+            return System.currentTimeMillis() >= expireAt;
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package cn.tedu.mall.seckill.utils;
+
+import cn.tedu.mall.pojo.product.vo.SkuStandardVO;
+import cn.tedu.mall.pojo.product.vo.SpuDetailStandardVO;
+import cn.tedu.mall.pojo.product.vo.SpuStandardVO;
+import cn.tedu.mall.pojo.seckill.model.SeckillSku;
+import cn.tedu.mall.pojo.seckill.model.SeckillSpu;
+import cn.tedu.mall.pojo.seckill.vo.SeckillSkuVO;
+import cn.tedu.mall.pojo.seckill.vo.SeckillSpuDetailSimpleVO;
+import cn.tedu.mall.pojo.seckill.vo.SeckillSpuVO;
+import cn.tedu.mall.product.service.seckill.IForSeckillSkuService;
+import cn.tedu.mall.product.service.seckill.IForSeckillSpuService;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang.math.RandomUtils;
+import org.apache.dubbo.config.annotation.DubboReference;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 秒杀商品VO快照
+ * 缓存预热时一次性查询商品常规信息,和秒杀信息组装成SeckillSpuVO、SeckillSpuDetailSimpleVO
+ * 和每个spu的SeckillSkuVO列表保存到Redis,查询sku列表时只读取spu对应的列表
+ * 快照的过期时间覆盖整个秒杀时间段,秒杀期间的请求不再需要Dubbo调用product模块
+ */
+@Slf4j
+@Component
+public class SeckillSnapshotUtils {
+
+    // 秒杀结束后快照继续保留的时间,和原来VO缓存的过期时间一致
+    private static final long RETAIN_MILLIS = 1000 * 60 * 5;
+
+    @Autowired
+    private RedisTemplate redisTemplate;
+    @DubboReference
+    private IForSeckillSpuService dubboSeckillSpuService;
+    @DubboReference
+    private IForSeckillSkuService dubboSkuService;
+
+    /**
+     * 生成秒杀商品的VO快照并保存到Redis
+     * @param seckillSpus 即将开始秒杀的spu
+     * @param seckillSkus 这些spu下的秒杀sku
+     * @return 成功生成快照的spu数量
+     */
+    public int build(List<SeckillSpu> seckillSpus, List<SeckillSku> seckillSkus) {
+        Map<Long, List<SeckillSku>> skusBySpuId = new HashMap<>();
+        List<Long> skuIds = new ArrayList<>();
+        for (SeckillSku sku : seckillSkus) {
+            skusBySpuId.computeIfAbsent(sku.getSpuId(), k -> new ArrayList<>()).add(sku);
+            skuIds.add(sku.getSkuId());
+        }
+        List<Long> spuIds = new ArrayList<>();
+        for (SeckillSpu seckillSpu : seckillSpus) {
+            spuIds.add(seckillSpu.getSpuId());
+        }
+        // spu和sku的常规信息各用一次Dubbo调用批量查询
+        Map<Long, SpuStandardVO> spuStandardVOs = new HashMap<>();
+        for (SpuStandardVO spuStandardVO : dubboSeckillSpuService.getSpusByIds(spuIds)) {
+            spuStandardVOs.put(spuStandardVO.getId(), spuStandardVO);
+        }
+        Map<Long, SkuStandardVO> skuStandardVOs = new HashMap<>();
+        if (!skuIds.isEmpty()) {
+            for (SkuStandardVO skuStandardVO : dubboSkuService.getSkusByIds(skuIds)) {
+                skuStandardVOs.put(skuStandardVO.getId(), skuStandardVO);
+            }
+        }
+        // key和要保存的快照,过期时间各自计算
+        Map<String, Object> snapshots = new LinkedHashMap<>();
+        Map<String, Long> ttls = new HashMap<>();
+        int count = 0;
+        for (SeckillSpu seckillSpu : seckillSpus) {
+            Long spuId = seckillSpu.getSpuId();
+            long ttl = ttlUntilEnd(seckillSpu.getEndTime());
+            SpuStandardVO spuStandardVO = spuStandardVOs.get(spuId);
+            if (spuStandardVO == null) {
+                log.warn("{}号spu对应的商品不存在,不生成秒杀快照", spuId);
+                continue;
+            }
+            try {
+                // 商品详情没有批量查询,每个spu查询一次
+                SpuDetailStandardVO spuDetailStandardVO = dubboSeckillSpuService.getSpuDetailById(spuId);
+                List<SeckillSkuVO> seckillSkuVOs = new ArrayList<>();
+                for (SeckillSku sku : skusBySpuId.getOrDefault(spuId, new ArrayList<>())) {
+                    SkuStandardVO skuStandardVO = skuStandardVOs.get(sku.getSkuId());
+                    if (skuStandardVO == null) {
+                        log.warn("{}号sku对应的商品不存在,不生成秒杀快照", sku.getSkuId());
+                        continue;
+                    }
+                    seckillSkuVOs.add(toSeckillSkuVO(sku, skuStandardVO));
+                }
+                put(snapshots, ttls, SeckillCacheUtils.getSeckillSpuVOKey(spuId),
+                        toSeckillSpuVO(seckillSpu, spuStandardVO), ttl);
+                put(snapshots, ttls, SeckillCacheUtils.getSeckillSpuDetailKey(spuId),
+                        toSeckillSpuDetailVO(spuDetailStandardVO), ttl);
+                put(snapshots, ttls, SeckillCacheUtils.getSeckillSpuSkusKey(spuId), seckillSkuVOs, ttl);
+                count++;
+            } catch (RuntimeException e) {
+                // 快照生成失败不影响秒杀,请求时仍然可以查询product模块
+                log.error("{}号spu的秒杀快照生成失败", spuId, e);
+            }
+        }
+        if (snapshots.isEmpty()) {
+            return count;
+        }
+        RedisSerializer<String> keySerializer = redisTemplate.getKeySerializer();
+        RedisSerializer<Object> valueSerializer = redisTemplate.getValueSerializer();
+        // 快照在秒杀开始前可能被修改过,这里直接覆盖,保证和数据库一致
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (Map.Entry<String, Object> entry : snapshots.entrySet()) {
+                connection.stringCommands().set(
+                        keySerializer.serialize(entry.getKey()),
+                        valueSerializer.serialize(entry.getValue()),
+                        Expiration.milliseconds(ttls.get(entry.getKey())),
+                        RedisStringCommands.SetOption.UPSERT);
+            }
+            return null;
+        });
+        return count;
+    }
+
+    /**
+     * 预热数据的过期时间:到秒杀结束再保留5分钟,加上防雪崩的随机数(30秒)
+     * 库存、随机码和VO快照使用相同的过期时间,秒杀期间都不会过期
+     * @param endTime 秒杀结束时间
+     */
+    public static long ttlUntilEnd(LocalDateTime endTime) {
+        return Duration.between(LocalDateTime.now(), endTime).toMillis()
+                + RETAIN_MILLIS + RandomUtils.nextInt(30000);
+    }
+
+    /**
+     * 组装SeckillSpuVO,常规信息来自product模块,秒杀信息来自秒杀表
+     */
+    public static SeckillSpuVO toSeckillSpuVO(SeckillSpu seckillSpu, SpuStandardVO spuStandardVO) {
+        SeckillSpuVO seckillSpuVO = new SeckillSpuVO();
+        BeanUtils.copyProperties(spuStandardVO, seckillSpuVO);
+        seckillSpuVO.setSeckillListPrice(seckillSpu.getListPrice());
+        seckillSpuVO.setStartTime(seckillSpu.getStartTime());
+        seckillSpuVO.setEndTime(seckillSpu.getEndTime());
+        return seckillSpuVO;
+    }
+
+    /**
+     * 组装SeckillSkuVO,常规信息来自product模块,秒杀信息来自秒杀表
+     */
+    public static SeckillSkuVO toSeckillSkuVO(SeckillSku seckillSku, SkuStandardVO skuStandardVO) {
+        SeckillSkuVO seckillSkuVO = new SeckillSkuVO();
+        BeanUtils.copyProperties(skuStandardVO, seckillSkuVO);
+        seckillSkuVO.setSeckillPrice(seckillSku.getSeckillPrice());
+        seckillSkuVO.setStock(seckillSku.getSeckillStock());
+        seckillSkuVO.setSeckillLimit(seckillSku.getSeckillLimit());
+        return seckillSkuVO;
+    }
+
+    public static SeckillSpuDetailSimpleVO toSeckillSpuDetailVO(SpuDetailStandardVO spuDetailStandardVO) {
+        SeckillSpuDetailSimpleVO simpleVO = new SeckillSpuDetailSimpleVO();
+        BeanUtils.copyProperties(spuDetailStandardVO, simpleVO);
+        return simpleVO;
+    }
+
+    private void put(Map<String, Object> snapshots, Map<String, Long> ttls,
+                     String key, Object snapshot, long ttl) {
+        snapshots.put(key, snapshot);
+        ttls.put(key, ttl);
+    }
+}
@@ -0,0 +1,97 @@
+package cn.tedu.mall.seckill.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 本地售罄标记
+ * sku售罄后在当前JVM中做标记,并通过Redis发布订阅通知所有秒杀节点
+ * 之后对这个sku的秒杀请求直接在内存中拒绝,不再访问Redis
+ * 发布订阅不保证售罄和取消售罄通知的顺序,收到售罄通知时先标记再检查Redis中的库存,
+ * 有库存时取消标记;归还库存在通知之前已经写入Redis,所以晚到的售罄通知不会留下错误的标记
+ */
+@Slf4j
+@Component
+public class SeckillSoldOutCache implements MessageListener {
+
+    // 售罄通知的频道
+    public static final String SOLD_OUT_CHANNEL = "mall:seckill:channel:sold:out";
+    // 消息内容为 前缀+skuId
+    private static final String SOLD_OUT = "soldout:";
+    private static final String RESTOCK = "restock:";
+
+    private final Set<Long> soldOutSkuIds = ConcurrentHashMap.newKeySet();
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    public boolean isSoldOut(Long skuId) {
+        return skuId != null && soldOutSkuIds.contains(skuId);
+    }
+
+    /**
+     * 标记sku售罄,并通知其它节点
+     */
+    public void markSoldOut(Long skuId) {
+        // 本节点已经标记过的,说明已经通知过了,不需要重复发送
+        if (soldOutSkuIds.add(skuId)) {
+            log.info("{}号sku已售罄,通知所有秒杀节点", skuId);
+            stringRedisTemplate.convertAndSend(SOLD_OUT_CHANNEL, SOLD_OUT + skuId);
+        }
+    }
+
+    /**
+     * 库存归还或重新预热后,取消sku的售罄标记,并通知其它节点
+     * 本节点没有标记时也要通知,各节点收到通知后取消自己的标记
+     */
+    public void markRestocked(Long skuId) {
+        soldOutSkuIds.remove(skuId);
+        stringRedisTemplate.convertAndSend(SOLD_OUT_CHANNEL, restockMessage(skuId));
+    }
+
+    /**
+     * 取消售罄标记的通知内容,批量预热时在管道中直接发送
+     */
+    public static String restockMessage(Long skuId) {
+        return RESTOCK + skuId;
+    }
+
+    // 接收其它节点(也包括自己)发送的通知
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        try {
+            if (body.startsWith(SOLD_OUT)) {
+                Long skuId = Long.valueOf(body.substring(SOLD_OUT.length()));
+                soldOutSkuIds.add(skuId);
+                if (hasStock(skuId)) {
+                    // 售罄之后已经有库存归还,这条通知已经过时
+                    soldOutSkuIds.remove(skuId);
+                    log.info("{}号sku在售罄通知之后有库存归还,不标记售罄", skuId);
+                }
+            } else if (body.startsWith(RESTOCK)) {
+                soldOutSkuIds.remove(Long.valueOf(body.substring(RESTOCK.length())));
+            }
+        } catch (NumberFormatException e) {
+            log.warn("无法识别的售罄通知:{}", body);
+        }
+    }
+
+    // 库存key不存在时(没有预热或已经过期)按没有库存处理
+    private boolean hasStock(Long skuId) {
+        String stock = stringRedisTemplate.opsForValue().get(SeckillCacheUtils.getStockKey(skuId));
+        try {
+            return stock != null && Long.parseLong(stock) > 0;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+}
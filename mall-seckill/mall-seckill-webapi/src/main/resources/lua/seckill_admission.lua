@@ -0,0 +1,25 @@
+-- 秒杀准入脚本: 在Redis中一次性完成 防重复购买 + 库存存在判断 + 扣减库存 + 记录购买用户
+-- KEYS[1] 防重复购买的key   mall:seckill:reseckill:{skuId}:{userId}
+-- KEYS[2] sku库存的key      mall:seckill:sku:stock:{skuId}
+-- ARGV[1] 本次购买数量
+-- 返回 {结果码, 剩余库存}
+--   0 准入成功  1 重复购买  2 缓存中没有库存信息  3 库存不足
+if redis.call('exists', KEYS[1]) == 1 then
+    return {1, -1}
+end
+local stock = redis.call('get', KEYS[2])
+if not stock then
+    return {2, -1}
+end
+local quantity = tonumber(ARGV[1])
+if tonumber(stock) < quantity then
+    return {3, tonumber(stock)}
+end
+local left = redis.call('decrby', KEYS[2], quantity)
+redis.call('set', KEYS[1], quantity)
+-- 购买记录和库存一起过期,避免防重复key在秒杀结束后长期占用内存
+local ttl = redis.call('pttl', KEYS[2])
+if ttl > 0 then
+    redis.call('pexpire', KEYS[1], ttl)
+end
+return {0, left}
@@ -0,0 +1,13 @@
+-- 秒杀准入回滚脚本: 准入成功但后续生成订单失败时,归还库存并删除购买记录
+-- KEYS[1] 防重复购买的key
+-- KEYS[2] sku库存的key
+-- 返回 归还的数量,购买记录不存在时返回0
+local quantity = redis.call('get', KEYS[1])
+if not quantity then
+    return 0
+end
+redis.call('del', KEYS[1])
+if redis.call('exists', KEYS[2]) == 1 then
+    redis.call('incrby', KEYS[2], quantity)
+end
+return tonumber(quantity)
@@ -0,0 +1,3 @@
+-- 秒杀成功记录按订单号去重
+-- 部分确认后重新投递的消息不会重复保存记录和重复减少库存
+ALTER TABLE `success` ADD UNIQUE INDEX `uk_order_sn` (`order_sn`);
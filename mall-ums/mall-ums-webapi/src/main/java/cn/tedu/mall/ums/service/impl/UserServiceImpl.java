@@ -12,7 +12,7 @@ import cn.tedu.mall.pojo.ums.vo.UserVO;
 import cn.tedu.mall.ums.mapper.ChangePasswordLogMapper;
 import cn.tedu.mall.ums.mapper.UserMapper;
 import cn.tedu.mall.ums.service.IUserService;
-import cn.tedu.mall.ums.utils.IdGeneratorUtils;
+import cn.tedu.mall.common.utils.IdGeneratorUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.dubbo.config.annotation.DubboService;
 import org.springframework.beans.BeanUtils;